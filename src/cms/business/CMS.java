@@ -2,11 +2,13 @@ package cms.business;
 
 import pim.business.Image;
 import pim.business.Product;
+import shared.ChangeFeed;
 
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface describing the functionality that must be provided by all cms implementations.
@@ -58,6 +60,46 @@ public interface CMS {
 	 */
 	String getProductPage(int productID) throws IOException;
 
+	/**
+	 * Get the html of the page with the specified id asynchronously, as with {@link #getPage(int)}. This and the other
+	 * asynchronous methods run on the executor of the CMS, and complete exceptionally with an IOException if the
+	 * operation failed. The template, content and products of the page are loaded in parallel where possible.
+	 *
+	 * @param id the id of the page
+	 * @return a future completed with the html of the page, or with null if the page does not exist
+	 */
+	CompletableFuture<String> getPageAsync(int id);
+
+	/**
+	 * Get the html of the landing page asynchronously, as with {@link #getLandingPage()}.
+	 *
+	 * @return a future completed with the html of the landing page, or with null if the page does not exist
+	 */
+	CompletableFuture<String> getLandingPageAsync();
+
+	/**
+	 * Get the product page for the product with the specified id asynchronously, as with
+	 * {@link #getProductPage(int)}.
+	 *
+	 * @param productID the id of the product
+	 * @return a future completed with the html of the product page, or with null if the page does not exist
+	 */
+	CompletableFuture<String> getProductPageAsync(int productID);
+
+	/**
+	 * Get the ids and names of all guide pages asynchronously, as with {@link #getGuidePages()}.
+	 *
+	 * @return a future completed with a map from the ids to the names of the pages
+	 */
+	CompletableFuture<Map<Integer, String>> getGuidePagesAsync();
+
+	/**
+	 * Get the ids and names of all article pages asynchronously, as with {@link #getArticlePages()}.
+	 *
+	 * @return a future completed with a map from the ids to the names of the pages
+	 */
+	CompletableFuture<Map<Integer, String>> getArticlePagesAsync();
+
 	/**
 	 * Get a collection of templates that support the specified type of page.
 	 *
@@ -194,6 +236,13 @@ public interface CMS {
 	 */
 	List<Product> getAllProducts() throws IOException;
 
+	/**
+	 * Get the feed of all changes made to pages, by this or any other instance of the application.
+	 *
+	 * @return the change feed
+	 */
+	ChangeFeed getChangeFeed();
+
 	/**
 	 * A type of page handled by this cms.
 	 */
@@ -2,6 +2,8 @@ package cms.business;
 
 import pim.business.PIM;
 
+import java.util.concurrent.Executor;
+
 /**
  * A factory for creating objects to interact with the business layer of the CMS.
  *
@@ -18,4 +20,16 @@ public class CMSFacade {
 		//Currently the only implementation
 		return new CMSImpl(pim);
 	}
+
+	/**
+	 * Get an object for interacting with the business layer of the CMS, which runs asynchronous operations on the
+	 * specified executor.
+	 *
+	 * @param pim      the mediator for the pim subsystem
+	 * @param executor the executor of asynchronous operations
+	 * @return an object for interacting with the business layer
+	 */
+	public static CMS createCMS(PIM pim, Executor executor) {
+		return new CMSImpl(pim, executor);
+	}
 }
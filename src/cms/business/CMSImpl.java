@@ -4,9 +4,13 @@ import cms.persistence.CMSPersistenceFactory;
 import pim.business.Image;
 import pim.business.PIM;
 import pim.business.Product;
+import shared.Async;
+import shared.ChangeFeed;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Implementation of the cms interface.
@@ -19,54 +23,85 @@ public class CMSImpl implements CMS {
 	private final CMSPersistenceFacade persistence;
 	private final PageManager pageManager;
 	private final PIM pim;
+	private final Executor executor;
 
 	/**
-	 * Constructs a new cms implementation.
+	 * Constructs a new cms implementation, which runs asynchronous operations on the default executor.
 	 *
 	 * @param pim the mediator for the pim subsystem
 	 */
 	public CMSImpl(PIM pim) {
+		this(pim, Async.defaultExecutor());
+	}
+
+	/**
+	 * Constructs a new cms implementation.
+	 *
+	 * @param pim      the mediator for the pim subsystem
+	 * @param executor the executor of asynchronous operations
+	 */
+	public CMSImpl(PIM pim, Executor executor) {
 		persistence = CMSPersistenceFactory.createDatabaseMediator();
-		pageManager = new PageManager(persistence);
+		pageManager = new PageManager(persistence, executor);
 		this.pim = pim;
+		this.executor = executor;
 	}
 
 	@Override
 	public String getPage(int id) throws IOException {
-		//Get ids of referenced products on page
-		List<Integer> productIDs = pageManager.getProductIDsFromPage(id);
-		Map<Integer, Product> products = new HashMap<>();
-
-		//Get products from the pim
-		for (int i : productIDs) {
-			products.put(i, pim.getProductInformation(i));
-		}
-
-		//Construct the page
-		return pageManager.constructPage(id, products);
+		return Async.join(getPageAsync(id));
 	}
 
 	@Override
 	public String getLandingPage() throws IOException {
-		// We know the pageID probably should've been retrieved from the database,
-		// but there's no proper user interface to change such things, so it was left out for now.
-		Set<Product> popularProducts = pim.getPopularProducts(5);
-		Map<Integer, Product> products = new HashMap<>();
-		for (Product product : popularProducts) {
-			products.put(product.getID(), product);
-		}
-		return pageManager.constructPage(8, products);
+		return Async.join(getLandingPageAsync());
 	}
 
 	@Override
 	public String getProductPage(int productID) throws IOException {
-		//Get product from pim
-		Map<Integer, Product> product = new HashMap<>();
-		product.put(productID, pim.getProductInformation(productID));
+		return Async.join(getProductPageAsync(productID));
+	}
+
+	@Override
+	public CompletableFuture<String> getPageAsync(int id) {
+		//The referenced products are only known once the page has been loaded
+		return pageManager.constructPageAsync(id, pim::getProductInformationAsync);
+	}
 
-		//Construct the page. We know the pageID probably should've been retrieved from the database,
+	@Override
+	public CompletableFuture<String> getLandingPageAsync() {
+		//Load the popular products while the page loads. We know the pageID probably should've been retrieved from the
+		//database, but there's no proper user interface to change such things, so it was left out for now.
+		CompletableFuture<Map<Integer, Product>> products = pim.getPopularProductsAsync(5).thenApply(popularProducts -> {
+			Map<Integer, Product> productMap = new HashMap<>();
+			for (Product product : popularProducts) {
+				productMap.put(product.getID(), product);
+			}
+			return productMap;
+		});
+		return pageManager.constructPageAsync(8, productIDs -> products);
+	}
+
+	@Override
+	public CompletableFuture<String> getProductPageAsync(int productID) {
+		//Load the product while the page loads. We know the pageID probably should've been retrieved from the database,
 		// but there's no proper user interface to change such things, so it was left out for now.
-		return pageManager.constructPage(7, product);
+		CompletableFuture<Map<Integer, Product>> product = pim.getProductInformationAsync(productID).thenApply(p -> {
+			Map<Integer, Product> productMap = new HashMap<>();
+			productMap.put(productID, p);
+			return productMap;
+		});
+		return pageManager.constructPageAsync(7, productIDs -> product);
+	}
+
+	@Override
+	public CompletableFuture<Map<Integer, String>> getGuidePagesAsync() {
+		return Async.supply(this::getGuidePages, executor);
+	}
+
+	@Override
+	public CompletableFuture<Map<Integer, String>> getArticlePagesAsync() {
+		return Async.supply(this::getArticlePages, executor);
 	}
 
 	@Override
@@ -148,4 +183,9 @@ public class CMSImpl implements CMS {
 	public List<Product> getAllProducts() throws IOException {
 		return pim.getProducts();
 	}
+
+	@Override
+	public ChangeFeed getChangeFeed() {
+		return persistence.getChangeFeed();
+	}
 }
@@ -1,5 +1,7 @@
 package cms.business;
 
+import shared.ChangeFeed;
+
 import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
@@ -83,6 +85,13 @@ public interface CMSPersistenceFacade {
 	 */
 	Map<Integer, String> getPageInfo() throws IOException;
 
+	/**
+	 * Get the feed of all changes made to pages in the database.
+	 *
+	 * @return the change feed
+	 */
+	ChangeFeed getChangeFeed();
+
 	/**
 	 * Dispose all resources used by this persistence facade. This includes closing all currently open connections.
 	 */
@@ -3,12 +3,16 @@ package cms.business;
 import pim.business.Image;
 import pim.business.Product;
 import pim.business.Tag;
+import shared.Async;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,6 +24,7 @@ import java.util.regex.Pattern;
 class PageManager {
 
 	private final CMSPersistenceFacade persistence;
+	private final Executor executor;
 	private Template activeTemplate;
 	private DynamicPage activePage;
 
@@ -27,64 +32,59 @@ class PageManager {
 	 * Constructs a new page manager.
 	 *
 	 * @param persistence the persistence facade
+	 * @param executor    the executor for loading pages asynchronously
 	 */
-	public PageManager(CMSPersistenceFacade persistence) {
+	public PageManager(CMSPersistenceFacade persistence, Executor executor) {
 		this.persistence = persistence;
+		this.executor = executor;
 	}
 
 	/**
-	 * Get the ids of all products referenced in the specified page.
+	 * Construct the page with the specified id asynchronously. The template and the content of the page are loaded
+	 * concurrently, after which the products referenced in the page are requested from the product loader. A loader
+	 * that has already started loading the products can ignore the ids, in which case the products load concurrently
+	 * with the page as well.
 	 *
-	 * @param pageID the id of the page to get product ids from
-	 * @return the product ids in the specified page, may be empty
-	 * @throws IOException if there was an error loading the page
+	 * @param pageID        the id of the page to get
+	 * @param productLoader function from the ids of the products referenced in the page to the products by id
+	 * @return a future completed with the html representation of the page, or with null if no such page was found
 	 */
-	public List<Integer> getProductIDsFromPage(int pageID) throws IOException {
-		ArrayList<Integer> listOfIDs = new ArrayList<>();
-		Template template = persistence.getTemplateForPage(pageID);
-		if (template != null) {
-			DynamicPage page = persistence.getPage(pageID);
-			if (page != null) {
-				String html = template.enrichPage(page).toString();
-				Pattern pattern = Pattern.compile("(\\[@ref=)([\\w]+)");
-				Matcher matcher = pattern.matcher(html);
-				while (matcher.find()) {
-					listOfIDs.add(Integer.parseInt(matcher.group(2)));
+	public CompletableFuture<String> constructPageAsync(int pageID,
+	                                                    Function<List<Integer>, CompletableFuture<Map<Integer, Product>>> productLoader) {
+		CompletableFuture<Template> template = Async.supply(() -> persistence.getTemplateForPage(pageID), executor);
+		CompletableFuture<DynamicPage> page = Async.supply(() -> persistence.getPage(pageID), executor);
+
+		return CompletableFuture.allOf(template, page).thenCompose(v -> {
+			Template t = template.join();
+			DynamicPage p = page.join();
+			if (t == null || p == null) return CompletableFuture.completedFuture(null);
+
+			String html = t.enrichPage(p).toString();
+			return productLoader.apply(getProductIDs(html)).thenApply(products -> {
+				if (t.getType() == CMS.PageType.PRODUCT_PAGE) {
+					return constructProductPage(html, products);
+				} else if (t.getType() == CMS.PageType.LANDING_PAGE) {
+					return constructLandingPage(html, products);
+				} else {
+					return constructRegularPage(html, products);
 				}
-			}
-		}
-		return listOfIDs;
+			});
+		});
 	}
 
 	/**
-	 * Construct the page with the specified id and make it ready for web use.
+	 * Get the ids of all products referenced in the specified html.
 	 *
-	 * @param pageID   the id of the page to get
-	 * @param products the products to enrich the page with
-	 * @return the html representation of the page, or null if no such page was found
-	 * @throws IOException if there was an error loading the page
+	 * @param html the html of a page
+	 * @return the referenced product ids, may be empty
 	 */
-	public String constructPage(int pageID, Map<Integer, Product> products) throws IOException {
-		//Read the page template
-		Template template = persistence.getTemplateForPage(pageID);
-		if (template != null) {
-
-			//If this succeeded, read the page content
-			DynamicPage page = persistence.getPage(pageID);
-			if (page != null) {
-				String html = template.enrichPage(page).toString();
-
-				if (template.getType() == CMS.PageType.PRODUCT_PAGE) {
-					return constructProductPage(html, products);
-				} else if (template.getType() == CMS.PageType.LANDING_PAGE) {
-					return constructLandingPage(html, products);
-				} else {
-					return constructRegularPage(html, products);
-				}
-			}
+	private List<Integer> getProductIDs(String html) {
+		List<Integer> productIDs = new ArrayList<>();
+		Matcher matcher = Pattern.compile("(\\[@ref=)([\\w]+)").matcher(html);
+		while (matcher.find()) {
+			productIDs.add(Integer.parseInt(matcher.group(2)));
 		}
-
-		return null;
+		return productIDs;
 	}
 
 	/**
@@ -120,7 +120,7 @@ class PageManager {
 							break;
 						case IMAGE:
 							StringBuilder builderImg = new StringBuilder();
-							for (Image img : product.getImages()) {
+							for (Image img : product.getImagesView()) {
 								//This was a quickfix for preventing images in the webshop from becoming too large
 								BufferedImage image = img.getImage();
 								int height = (int) (((float) image.getHeight()) / image.getWidth() * 400);
@@ -133,7 +133,7 @@ class PageManager {
 							replacement = product.getDescription();
 							break;
 						case TAGS:
-							Set<Tag> tags = product.getTags();
+							Set<Tag> tags = product.getTagsView();
 							StringBuilder builder = new StringBuilder();
 							for (Tag t : tags) {
 								builder.append(t.toString()).append(", ");
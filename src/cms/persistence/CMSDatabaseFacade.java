@@ -4,6 +4,9 @@ import cms.business.CMSPersistenceFacade;
 import cms.business.DynamicPage;
 import cms.business.DynamicPageImpl;
 import cms.business.Template;
+import shared.ChangeFeed;
+import shared.ChangeJournal;
+import shared.ConnectionPool;
 import shared.DBUtil;
 
 import java.io.IOException;
@@ -28,20 +31,31 @@ class CMSDatabaseFacade implements CMSPersistenceFacade {
 	private final static String password = "1234";
 
 	/**
-	 * The database connection.
+	 * The type of change recorded in the change journal when a page is saved or deleted.
 	 */
-	private Connection conn;
+	private final static String PAGE_CHANGE = "page";
+
+	/**
+	 * The database connections, one for each thread.
+	 */
+	private final ConnectionPool connectionPool;
+
+	/**
+	 * Journal of all changes made to the database.
+	 */
+	private final ChangeJournal changeJournal;
 
 	/**
 	 * Constructs a new persistence facade for use with JDBC.
 	 */
 	public CMSDatabaseFacade() {
-
+		connectionPool = new ConnectionPool(() -> DriverManager.getConnection(url, user, password));
+		changeJournal = new ChangeJournal(this::getConnection);
 	}
 
 	/**
-	 * Get the connection to the database. If the connection has been closed because of inactivity, it will be
-	 * automatically reopened.
+	 * Get the connection to the database of the current thread. If the connection has been closed because of
+	 * inactivity, it will be automatically reopened.
 	 *
 	 * @return the connection to the database
 	 * @throws IOException if a connection could not be established
@@ -49,11 +63,7 @@ class CMSDatabaseFacade implements CMSPersistenceFacade {
 	@SuppressWarnings("Duplicates")
 	public Connection getConnection() throws IOException {
 		try {
-			if (conn == null || conn.isClosed()) {
-				return conn = DriverManager.getConnection(url, user, password);
-			} else {
-				return conn;
-			}
+			return connectionPool.getConnection();
 		} catch (SQLException e) {
 			throw new IOException(String.format("Could not establish a database connection on\n\t%s\n\tUser: %s\n\tPassword: %s", url, user, password), e);
 		}
@@ -244,6 +254,7 @@ class CMSDatabaseFacade implements CMSPersistenceFacade {
 			}
 
 			//Commit changes
+			changeJournal.append(connection, PAGE_CHANGE, page.getID());
 			connection.commit();
 
 		} catch (SQLException e) {
@@ -265,11 +276,25 @@ class CMSDatabaseFacade implements CMSPersistenceFacade {
 		Connection connection = getConnection();
 
 		try (PreparedStatement deletePageData = connection.prepareStatement("DELETE FROM page WHERE pageid = ?")) {
+			//Turn of auto commit so that the deletion is recorded in the same transaction
+			connection.setAutoCommit(false);
+
 			//Delete page entry. The constraints in the database should ensure that the deletion is cascaded
 			deletePageData.setInt(1, id);
 			deletePageData.executeUpdate();
+			changeJournal.append(connection, PAGE_CHANGE, id);
+			connection.commit();
 		} catch (SQLException e) {
 			throw new IOException("Unable to delete page with id " + id + "!", e);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+
+				//We should close the connection to ensure that it causes no more harm
+				DBUtil.close(connection);
+			}
 		}
 	}
 
@@ -291,8 +316,13 @@ class CMSDatabaseFacade implements CMSPersistenceFacade {
 		}
 	}
 
+	@Override
+	public ChangeFeed getChangeFeed() {
+		return changeJournal;
+	}
+
 	@Override
 	public void dispose() {
-		DBUtil.close(conn);
+		connectionPool.close();
 	}
 }
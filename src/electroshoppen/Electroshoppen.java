@@ -1,56 +1,104 @@
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
-package electroshoppen;
-
-import cms.business.CMS;
-import cms.business.CMSFacade;
-import dam.business.DAM;
-import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
-import javafx.stage.Stage;
-import pim.business.PIM;
-import pim.business.PIMFacade;
-import shared.presentation.ElectroshopController;
-import webshop.business.WebshopFacade;
-
-/**
- * Main class for the application.
- *
- * @author Kasper
- */
-public class Electroshoppen extends Application {
-
-	@Override
-	public void start(Stage stage) throws Exception {
-		//Load the main fxml file
-		FXMLLoader loader = new FXMLLoader(getClass().getResource("/shared/presentation/ElectroshopView.fxml"));
-		Parent root = loader.load();
-
-		//Load up the mediators for the controllers
-		ElectroshopController controller = loader.getController();
-		PIM pim = PIMFacade.createPIM();
-		CMS cms = CMSFacade.createCMS(pim);
-		controller.setPIM(pim);
-		controller.setCMS(cms);
-		controller.setWebshop(WebshopFacade.createWebshop(cms, pim));
-		controller.setDAM(new DAM((stage.getOwner()))); //Don't mind this, the DAM is a dummy class
-
-		//Set up the scene and show the gui
-		Scene scene = new Scene(root);
-		stage.setScene(scene);
-		stage.setTitle("Next Gen PIM/CMS/Webshop");
-		stage.show();
-	}
-
-	/**
-	 * @param args the command line arguments
-	 */
-	public static void main(String[] args) {
-		launch(args);
-	}
-}
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package electroshoppen;
+
+import cms.business.CMS;
+import cms.business.CMSFacade;
+import dam.business.DAM;
+import javafx.application.Application;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import pim.business.PIM;
+import pim.business.PIMFacade;
+import shared.RequestExecutor;
+import shared.presentation.ElectroshopController;
+import webshop.business.WebshopFacade;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Main class for the application.
+ *
+ * @author Kasper
+ */
+public class Electroshoppen extends Application {
+
+	/**
+	 * The file containing the snapshot of the catalog, which is loaded on startup and written on exit.
+	 */
+	private static final File SNAPSHOT_FILE = new File(System.getProperty("user.home"), ".electroshoppen/catalog.snapshot");
+
+	/**
+	 * The file holding product saves until they have been written to the database.
+	 */
+	private static final File SAVE_QUEUE_FILE = new File(System.getProperty("user.home"), ".electroshoppen/product-saves.queue");
+
+	private PIM pim;
+	private RequestExecutor requestExecutor;
+
+	@Override
+	public void start(Stage stage) throws Exception {
+		//Load the main fxml file
+		FXMLLoader loader = new FXMLLoader(getClass().getResource("/shared/presentation/ElectroshopView.fxml"));
+		Parent root = loader.load();
+
+		//Load up the mediators for the controllers
+		ElectroshopController controller = loader.getController();
+		//Serve lookups on virtual threads where supported, limited to the size of the connection pools
+		requestExecutor = new RequestExecutor();
+		pim = PIMFacade.createPIM(requestExecutor);
+		try {
+			pim.loadSnapshot(SNAPSHOT_FILE);
+		} catch (IOException e) {
+			//The catalog is read from the database instead
+			e.printStackTrace();
+		}
+		try {
+			//Saving a product in the editor should not wait for the database
+			pim.enableWriteBehind(SAVE_QUEUE_FILE);
+		} catch (IOException e) {
+			//Products are saved directly instead
+			e.printStackTrace();
+		}
+		CMS cms = CMSFacade.createCMS(pim, requestExecutor);
+		controller.setPIM(pim);
+		controller.setCMS(cms);
+		controller.setWebshop(WebshopFacade.createWebshop(cms, pim));
+		controller.setDAM(new DAM((stage.getOwner()))); //Don't mind this, the DAM is a dummy class
+
+		//Set up the scene and show the gui
+		Scene scene = new Scene(root);
+		stage.setScene(scene);
+		stage.setTitle("Next Gen PIM/CMS/Webshop");
+		stage.show();
+	}
+
+	@Override
+	public void stop() {
+		try {
+			pim.flush();
+		} catch (IOException e) {
+			//The saves remain in the queue file, and are written on next startup
+			e.printStackTrace();
+		}
+		try {
+			pim.writeSnapshot(SNAPSHOT_FILE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		requestExecutor.close();
+	}
+
+	/**
+	 * @param args the command line arguments
+	 */
+	public static void main(String[] args) {
+		launch(args);
+	}
+}
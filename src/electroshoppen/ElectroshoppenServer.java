@@ -0,0 +1,62 @@
+package electroshoppen;
+
+import cms.business.CMS;
+import cms.business.CMSFacade;
+import pim.business.PIM;
+import pim.business.PIMFacade;
+import shared.RequestExecutor;
+import webshop.business.WebshopFacade;
+import webshop.server.WebshopServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Main class for running the webshop as an HTTP server, without a user interface. The port to listen on can be given
+ * as an argument, and is 8080 by default.
+ *
+ * @author Kasper
+ */
+public class ElectroshoppenServer {
+
+	private static final int DEFAULT_PORT = 8080;
+
+	/**
+	 * The file containing the snapshot of the catalog, which is loaded on startup and written on exit.
+	 */
+	private static final File SNAPSHOT_FILE = new File(System.getProperty("user.home"), ".electroshoppen/catalog.snapshot");
+
+	/**
+	 * @param args the command line arguments
+	 * @throws IOException if the server could not be started
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+		RequestExecutor requestExecutor = new RequestExecutor();
+		PIM pim = PIMFacade.createPIM(requestExecutor);
+		try {
+			pim.loadSnapshot(SNAPSHOT_FILE);
+		} catch (IOException e) {
+			//The catalog is read from the database instead
+			e.printStackTrace();
+		}
+		CMS cms = CMSFacade.createCMS(pim, requestExecutor);
+
+		WebshopServer server = new WebshopServer(WebshopFacade.createWebshop(cms, pim), new InetSocketAddress(port));
+		server.start();
+		System.out.println("Webshop listening on port " + server.getAddress().getPort());
+
+		//Stop when the process is terminated
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(5);
+			try {
+				pim.writeSnapshot(SNAPSHOT_FILE);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			requestExecutor.close();
+		}, "Webshop shutdown"));
+	}
+}
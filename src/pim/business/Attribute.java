@@ -20,15 +20,15 @@ public class Attribute implements Comparable<Attribute> {
 	/**
 	 * The id of this attribute.
 	 */
-	private int id;
+	private volatile int id;
 	/**
 	 * The name of this attribute to be displayed to the user.
 	 */
-	private String name;
+	private volatile String name;
 	/**
 	 * The default value of the attribute.
 	 */
-	private Object defaultValue;
+	private volatile Object defaultValue;
 
 	/**
 	 * Constructs a new attribute with the specified name and with a missing id. The id should be generated when the
@@ -129,7 +129,7 @@ public class Attribute implements Comparable<Attribute> {
 	 *
 	 * @param id the id of the attribute
 	 */
-	public void setID(int id) {
+	public synchronized void setID(int id) {
 		if (this.id < 0) {
 			this.id = id;
 		}
@@ -1,28 +1,37 @@
 package pim.business;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
- * Manages attribute creation and ensures no duplicates (same id) are made.
+ * Manages attribute creation and ensures no duplicates (same id) are made, even when attributes are loaded by multiple
+ * threads at once. Attributes are only held weakly, so that the ones no longer referenced by the rest of the
+ * application can be reclaimed. All attributes that pass through the manager are registered in the
+ * {@link CategoryAttributeIndex}.
  *
  * @author Mikkel
  * @author Kasper
  */
 class AttributeManager {
 
-	private final HashMap<Integer, Attribute> attributes;
+	private final WeakValueMap<Integer, Attribute> attributes;
 	private final PIMPersistenceFacade persistence;
+	private final CategoryAttributeIndex index;
+	private final ExistenceFilter<Integer> attributeExistence;
 
 	/**
 	 * Constructs a new attribute manager.
 	 *
 	 * @param persistence the persistence facade
+	 * @param index       the index of categories and attributes, shared with the category manager
 	 */
-	public AttributeManager(PIMPersistenceFacade persistence) {
-		attributes = new HashMap<>();
+	public AttributeManager(PIMPersistenceFacade persistence, CategoryAttributeIndex index) {
+		attributes = new WeakValueMap<>();
 		this.persistence = persistence;
+		this.index = index;
+		attributeExistence = new ExistenceFilter<>(() -> persistence.isNotifiedOfChanges());
 	}
 
 	/**
@@ -49,17 +58,13 @@ class AttributeManager {
 	 * @return returns a reference to the created/existing attribute with the given id.
 	 */
 	public Attribute constructAttribute(int id, String name, Object defaultValue, Set<Object> legalValues) {
-		Attribute a;
-
-		if (attributes.get(id) == null) {
-			a = new Attribute(id, name, defaultValue, legalValues);
-			attributes.put(id, a);
-		} else {
-			a = attributes.get(id);
-			a.setName(name);
-			a.setDefaultValue(defaultValue);
-			//Legal values are immutable
-		}
+		Attribute a = attributes.computeIfAbsent(id, i -> new Attribute(i, name, defaultValue, legalValues));
+
+		//If the attribute already existed, update its data. For a new attribute this has no effect. Legal values are
+		//immutable
+		a.setName(name);
+		a.setDefaultValue(defaultValue);
+		index.putAttribute(a);
 
 		return a;
 	}
@@ -76,7 +81,9 @@ class AttributeManager {
 	public Attribute createAttribute(String name, Object defaultValue, Set<Object> legalValues) throws IOException {
 		Attribute attribute = new Attribute(name, defaultValue, legalValues);
 		persistence.saveAttribute(attribute);
+		attributeExistence.markExists(attribute.getID());
 		attributes.put(attribute.getID(), attribute); //Attribute should have a valid id after it has been saved
+		index.putAttribute(attribute);
 		return attribute;
 	}
 
@@ -88,7 +95,50 @@ class AttributeManager {
 	 * @throws IOException if something goes wrong
 	 */
 	public Attribute getAttribute(int attributeID) throws IOException {
-		return persistence.getAttributeByID(attributeID);
+		//Attributes in memory are kept up to date for as long as changes made elsewhere are received
+		if (persistence.isNotifiedOfChanges()) {
+			Attribute a = attributes.get(attributeID);
+			if (a != null) return a;
+		}
+
+		if (attributeExistence.isKnownMissing(attributeID)) return null;
+
+		long version = attributeExistence.getVersion();
+		Attribute a = persistence.getAttributeByID(attributeID);
+		if (a == null) {
+			attributeExistence.markMissing(attributeID, version);
+		}
+		return a;
+	}
+
+	/**
+	 * Read the attribute with the specified id from persistence again, because it has been changed by another instance
+	 * of the application. The attribute in memory is updated, as is the index.
+	 *
+	 * @param attributeID the id of the attribute
+	 * @return the attribute, or null if it has been deleted
+	 * @throws IOException if something goes wrong
+	 */
+	public Attribute reloadAttribute(int attributeID) throws IOException {
+		//The attribute has been created or changed. If it has been deleted, being thought to exist does no harm
+		attributeExistence.markExists(attributeID);
+
+		//Reading the attribute updates the instance in memory and the index
+		Attribute a = persistence.getAttributeByID(attributeID);
+		if (a == null) {
+			attributes.remove(attributeID);
+			index.removeAttribute(attributeID);
+		}
+		return a;
+	}
+
+	/**
+	 * Get the attributes that are currently in memory.
+	 *
+	 * @return a list of the attributes in memory
+	 */
+	public List<Attribute> getLoadedAttributes() {
+		return attributes.values();
 	}
 
 	/**
@@ -108,7 +158,22 @@ class AttributeManager {
 	 * @throws IOException if something goes wrong
 	 */
 	public Set<Attribute> getAttributes() throws IOException {
-		return persistence.getAttributes();
+		long version = attributeExistence.getVersion();
+		Set<Attribute> all = persistence.getAttributes();
+
+		List<Integer> ids = new ArrayList<>(all.size());
+		for (Attribute a : all) {
+			ids.add(a.getID());
+		}
+		attributeExistence.rebuild(ids, version);
+		return all;
+	}
+
+	/**
+	 * Forget what is known about which attributes exist. This must be called when changes may have been missed.
+	 */
+	public void invalidateExistence() {
+		attributeExistence.invalidate();
 	}
 
 	/**
@@ -119,7 +184,9 @@ class AttributeManager {
 	 */
 	public void saveAttribute(Attribute attribute) throws IOException {
 		persistence.saveAttribute(attribute);
+		attributeExistence.markExists(attribute.getID());
 		attributes.put(attribute.getID(), attribute);
+		index.putAttribute(attribute);
 	}
 
 	/**
@@ -131,5 +198,6 @@ class AttributeManager {
 	public void deleteAttribute(int attributeID) throws IOException {
 		persistence.deleteAttribute(attributeID);
 		attributes.remove(attributeID);
+		index.removeAttribute(attributeID);
 	}
 }
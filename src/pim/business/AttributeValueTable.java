@@ -0,0 +1,203 @@
+package pim.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The attribute values of a single product, keyed by attribute. Along with the value, the table keeps a reference
+ * count per attribute telling how many of the product's categories contain the attribute, so that adding or removing a
+ * category only has to look at the attributes of that category.
+ * <p>
+ * The table uses open addressing with linear probing over plain arrays, which keeps it compact and avoids allocating
+ * an entry object per attribute. Attributes are compared by identity, as an attribute may not have been assigned an id
+ * yet. The table is not thread safe, and is guarded by the product owning it.
+ *
+ * @author Kasper
+ */
+class AttributeValueTable {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private Attribute[] keys;
+	private Attribute.AttributeValue[] values;
+	private int[] counts;
+	private int size;
+
+	/**
+	 * Constructs a new, empty table.
+	 */
+	AttributeValueTable() {
+		keys = new Attribute[INITIAL_CAPACITY];
+		values = new Attribute.AttributeValue[INITIAL_CAPACITY];
+		counts = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Increment the reference count of the specified attribute. If the attribute was not in the table already, it is
+	 * added with its default value.
+	 *
+	 * @param attribute the attribute to retain
+	 * @return true if the attribute was added to the table, false if it was already there
+	 */
+	boolean retain(Attribute attribute) {
+		int slot = find(attribute);
+		if (keys[slot] != null) {
+			counts[slot]++;
+			return false;
+		}
+
+		keys[slot] = attribute;
+		values[slot] = attribute.createValue();
+		counts[slot] = 1;
+
+		//Keep the load factor at or below one half
+		if (++size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decrement the reference count of the specified attribute. When the count reaches zero, the attribute and its
+	 * value are removed from the table.
+	 *
+	 * @param attribute the attribute to release
+	 * @return true if the attribute was removed from the table, false otherwise
+	 */
+	boolean release(Attribute attribute) {
+		int slot = find(attribute);
+		if (keys[slot] == null) return false;
+
+		if (--counts[slot] > 0) return false;
+
+		delete(slot);
+		return true;
+	}
+
+	/**
+	 * Replace the value of the attribute of the specified value, if the attribute is in the table.
+	 *
+	 * @param value the new value
+	 * @return true if the value was replaced, false if the attribute is not in the table
+	 */
+	boolean replace(Attribute.AttributeValue value) {
+		int slot = find(value.getParent());
+		if (keys[slot] == null) return false;
+
+		values[slot] = value;
+		return true;
+	}
+
+	/**
+	 * Get the value of the specified attribute.
+	 *
+	 * @param attribute the attribute
+	 * @return the value of the attribute, or null if it is not in the table
+	 */
+	Attribute.AttributeValue get(Attribute attribute) {
+		return values[find(attribute)];
+	}
+
+	/**
+	 * Test whether the specified attribute is in the table.
+	 *
+	 * @param attribute the attribute to test for
+	 * @return true if the attribute is in the table, false otherwise
+	 */
+	boolean contains(Attribute attribute) {
+		return keys[find(attribute)] != null;
+	}
+
+	/**
+	 * Get the number of attributes in the table.
+	 *
+	 * @return the number of attributes in the table
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Get a list of all the values in the table.
+	 *
+	 * @return a new list of all the values in the table
+	 */
+	List<Attribute.AttributeValue> values() {
+		List<Attribute.AttributeValue> list = new ArrayList<>(size);
+		for (Attribute.AttributeValue value : values) {
+			if (value != null) {
+				list.add(value);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Find the slot of the specified key, or the empty slot where it would be inserted.
+	 */
+	private int find(Attribute key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Empty the specified slot, and shift back the entries after it that would otherwise become unreachable.
+	 */
+	private void delete(int slot) {
+		int mask = keys.length - 1;
+		int hole = slot;
+		int next = slot;
+
+		while (true) {
+			next = (next + 1) & mask;
+			if (keys[next] == null) break;
+
+			//An entry may only move into the hole if its ideal slot is not cyclically between the hole and itself
+			int ideal = hash(keys[next]) & mask;
+			boolean staysReachable = hole <= next ? (hole < ideal && ideal <= next) : (hole < ideal || ideal <= next);
+			if (staysReachable) continue;
+
+			keys[hole] = keys[next];
+			values[hole] = values[next];
+			counts[hole] = counts[next];
+			hole = next;
+		}
+
+		keys[hole] = null;
+		values[hole] = null;
+		counts[hole] = 0;
+		size--;
+	}
+
+	private void resize(int capacity) {
+		Attribute[] oldKeys = keys;
+		Attribute.AttributeValue[] oldValues = values;
+		int[] oldCounts = counts;
+
+		keys = new Attribute[capacity];
+		values = new Attribute.AttributeValue[capacity];
+		counts = new int[capacity];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	/**
+	 * Spread the bits of the identity hash code of an attribute, as only the low bits are used for the slot.
+	 */
+	private static int hash(Attribute key) {
+		int h = System.identityHashCode(key) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
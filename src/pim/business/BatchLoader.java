@@ -0,0 +1,142 @@
+package pim.business;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects loads of single keys requested within a short window, and loads them together as one batch. The first key
+ * requested after a batch has been dispatched opens a new window, and the keys requested until the window closes are
+ * loaded with a single call to the batch function. A batch is dispatched early if it reaches its maximum size. Keys
+ * requested more than once in the same window are only loaded once.
+ * <p>
+ * This is used for reading products from persistence, where a page referencing dozens of products would otherwise
+ * cost dozens of round trips to the database, each with its own queries.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ * @author Kasper
+ */
+class BatchLoader<K, V> {
+
+	/**
+	 * The timer closing the windows of all batch loaders. Batches are run on the executor of their loader, so this
+	 * thread only waits.
+	 */
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "Batch loader timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final BatchFunction<K, V> function;
+	private final Executor executor;
+	private final long windowMicros;
+	private final int maxBatchSize;
+
+	/**
+	 * The keys requested in the current window, or null if no window is open. Guarded by this.
+	 */
+	private Map<K, CompletableFuture<V>> pending;
+
+	/**
+	 * Constructs a new batch loader.
+	 *
+	 * @param function     the function loading a batch of keys
+	 * @param executor     the executor to run the batches on
+	 * @param windowMicros the number of microseconds to collect keys for before loading them
+	 * @param maxBatchSize the maximum number of keys in a batch
+	 */
+	public BatchLoader(BatchFunction<K, V> function, Executor executor, long windowMicros, int maxBatchSize) {
+		this.function = function;
+		this.executor = executor;
+		this.windowMicros = windowMicros;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Load the specified key as part of the current batch.
+	 *
+	 * @param key the key to load
+	 * @return a future completed with the result of the key, which is null if the batch had no result for it, or
+	 * completed exceptionally with the failure of the batch
+	 */
+	public CompletableFuture<V> load(K key) {
+		Map<K, CompletableFuture<V>> full = null;
+		CompletableFuture<V> result;
+		synchronized (this) {
+			if (pending == null) {
+				Map<K, CompletableFuture<V>> batch = new HashMap<>();
+				pending = batch;
+				TIMER.schedule(() -> closeWindow(batch), windowMicros, TimeUnit.MICROSECONDS);
+			}
+
+			result = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+			if (pending.size() >= maxBatchSize) {
+				full = pending;
+				pending = null;
+			}
+		}
+
+		if (full != null) {
+			dispatch(full);
+		}
+		return result;
+	}
+
+	/**
+	 * Dispatch the specified batch when its window closes, unless it has been dispatched already for being full.
+	 */
+	private void closeWindow(Map<K, CompletableFuture<V>> batch) {
+		synchronized (this) {
+			if (pending != batch) return;
+			pending = null;
+		}
+		dispatch(batch);
+	}
+
+	/**
+	 * Load a batch on the executor, and complete the futures of its keys. The batch is no longer pending, so it is not
+	 * modified by other threads.
+	 */
+	private void dispatch(Map<K, CompletableFuture<V>> batch) {
+		executor.execute(() -> {
+			try {
+				Map<K, V> results = function.load(Collections.unmodifiableSet(batch.keySet()));
+				for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+					entry.getValue().complete(results.get(entry.getKey()));
+				}
+			} catch (IOException | RuntimeException e) {
+				for (CompletableFuture<V> future : batch.values()) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * A function loading a batch of keys at once.
+	 *
+	 * @param <K> the type of the keys
+	 * @param <V> the type of the results
+	 */
+	@FunctionalInterface
+	interface BatchFunction<K, V> {
+
+		/**
+		 * Load the specified keys.
+		 *
+		 * @param keys the keys to load
+		 * @return the results by key, which may leave out keys that have no result
+		 * @throws IOException if the keys could not be loaded
+		 */
+		Map<K, V> load(Set<K> keys) throws IOException;
+	}
+}
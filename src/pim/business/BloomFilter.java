@@ -0,0 +1,88 @@
+package pim.business;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set that can tell for certain that a key is not in it, but only that a key probably is. Keys take up a few bits
+ * each regardless of their size, so the keys of an entire catalog fit in little memory. Keys can be added, but not
+ * removed. Keys can be added and tested by multiple threads at once.
+ *
+ * @author Kasper
+ */
+class BloomFilter {
+
+	private final AtomicLongArray bits;
+	private final int bitCount;
+	private final int hashCount;
+
+	/**
+	 * Constructs a new, empty bloom filter.
+	 *
+	 * @param expectedKeys      the number of keys the filter should hold
+	 * @param falsePositiveRate the rate of keys not in the filter that should be reported as probably in it, once the
+	 *                          expected number of keys have been added
+	 */
+	public BloomFilter(int expectedKeys, double falsePositiveRate) {
+		int n = Math.max(expectedKeys, 1);
+		double ln2 = Math.log(2);
+		long optimalBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+		bitCount = (int) Math.min(Math.max(optimalBits, 64), Integer.MAX_VALUE - 63);
+		hashCount = Math.max(1, (int) Math.round((double) bitCount / n * ln2));
+		bits = new AtomicLongArray((bitCount + 63) / 64);
+	}
+
+	/**
+	 * Add the specified key to this filter.
+	 *
+	 * @param key the key to add
+	 */
+	public void add(Object key) {
+		long hash = mix(key.hashCode());
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashCount; i++) {
+			int bit = index(h1 + i * h2);
+			int word = bit >>> 6;
+			long mask = 1L << bit;
+
+			long current = bits.get(word);
+			while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+				current = bits.get(word);
+			}
+		}
+	}
+
+	/**
+	 * Test whether the specified key may have been added to this filter.
+	 *
+	 * @param key the key to test
+	 * @return false if the key has certainly not been added, true if it probably has
+	 */
+	public boolean mightContain(Object key) {
+		long hash = mix(key.hashCode());
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashCount; i++) {
+			int bit = index(h1 + i * h2);
+			if ((bits.get(bit >>> 6) & (1L << bit)) == 0) return false;
+		}
+		return true;
+	}
+
+	private int index(int combinedHash) {
+		return (combinedHash & Integer.MAX_VALUE) % bitCount;
+	}
+
+	/**
+	 * Spread the bits of a hash code over a long, so that similar keys such as consecutive ids end up far apart.
+	 */
+	private static long mix(int hashCode) {
+		long h = hashCode * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
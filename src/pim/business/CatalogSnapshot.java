@@ -0,0 +1,430 @@
+package pim.business;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A compact binary snapshot of the catalog, stored in a local file. The snapshot contains all attributes, categories,
+ * tags and products, along with the ids of the images of the products, so that the catalog can be put into memory on
+ * startup without reading it from the database. The image data itself is not included, and is read from persistence
+ * the first time it is needed.
+ * <p>
+ * The snapshot records the sequence number of the change journal at which it was taken. After loading it, the changes
+ * made since then must be applied to bring the catalog up to date.
+ * <p>
+ * The file starts with a header of a magic number, a format version and the sequence number, followed by a section
+ * for each kind of entity. Categories refer to attributes by id, and products refer to categories and tags by their
+ * position in the file, so that every name is only stored once. Strings are stored as their length in bytes followed
+ * by their UTF-8 encoding, with a length of -1 denoting null. Files are read by mapping them into memory, and written to
+ * a temporary file which then replaces the old snapshot, so that a snapshot is never read while half written.
+ *
+ * @author Kasper
+ */
+class CatalogSnapshot {
+
+	private static final int MAGIC = 0x45534350;
+	private static final int VERSION = 1;
+
+	/* Types of attribute values. Values of other types are stored using Java serialization */
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte CHARACTER = 5;
+	private static final byte LONG = 6;
+	private static final byte FLOAT = 7;
+	private static final byte SERIALIZED = 8;
+
+	private final ProductManager productManager;
+	private final AttributeManager attributeManager;
+	private final CategoryManager categoryManager;
+	private final TagManager tagManager;
+
+	/**
+	 * Constructs a new catalog snapshot, which loads entities through the specified managers.
+	 *
+	 * @param productManager   the product manager
+	 * @param attributeManager the attribute manager
+	 * @param categoryManager  the category manager
+	 * @param tagManager       the tag manager
+	 */
+	public CatalogSnapshot(ProductManager productManager, AttributeManager attributeManager,
+	                       CategoryManager categoryManager, TagManager tagManager) {
+		this.productManager = productManager;
+		this.attributeManager = attributeManager;
+		this.categoryManager = categoryManager;
+		this.tagManager = tagManager;
+	}
+
+	/**
+	 * Write a snapshot of the specified entities to a file, replacing any existing snapshot. Categories and attributes
+	 * used by the products are included even if they are missing from the specified collections.
+	 *
+	 * @param file       the file to write to
+	 * @param sequence   the sequence number of the change journal at which the entities were read
+	 * @param attributes all attributes
+	 * @param categories all categories
+	 * @param products   all products
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public void write(File file, long sequence, Collection<Attribute> attributes, Collection<Category> categories,
+	                  Collection<Product> products) throws IOException {
+		//Collect the tables of entities referred to by products
+		Map<Integer, Attribute> attributeTable = new LinkedHashMap<>();
+		Map<String, Integer> categoryTable = new LinkedHashMap<>();
+		List<Category> categoryList = new ArrayList<>();
+		Map<String, Integer> tagTable = new LinkedHashMap<>();
+		for (Attribute attribute : attributes) {
+			attributeTable.put(attribute.getID(), attribute);
+		}
+		for (Category category : categories) {
+			addCategory(category, categoryTable, categoryList, attributeTable);
+		}
+		for (Product product : products) {
+			for (Category category : product.getCategoriesView()) {
+				addCategory(category, categoryTable, categoryList, attributeTable);
+			}
+			for (Attribute.AttributeValue value : product.getAttributeValuesView()) {
+				attributeTable.putIfAbsent(value.getParent().getID(), value.getParent());
+			}
+			for (Tag tag : product.getTagsView()) {
+				tagTable.putIfAbsent(tag.getName(), tagTable.size());
+			}
+		}
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory + "!");
+		}
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(sequence);
+
+				out.writeInt(attributeTable.size());
+				for (Attribute attribute : attributeTable.values()) {
+					out.writeInt(attribute.getID());
+					writeString(out, attribute.getName());
+					writeValue(out, attribute.getDefaultValue());
+
+					Set<Object> legalValues = attribute.getLegalValues();
+					out.writeInt(legalValues == null ? -1 : legalValues.size());
+					if (legalValues != null) {
+						for (Object value : legalValues) {
+							writeValue(out, value);
+						}
+					}
+				}
+
+				out.writeInt(categoryList.size());
+				for (Category category : categoryList) {
+					writeString(out, category.getName());
+					Set<Attribute> categoryAttributes = category.getAttributesView();
+					out.writeInt(categoryAttributes.size());
+					for (Attribute attribute : categoryAttributes) {
+						out.writeInt(attribute.getID());
+					}
+				}
+
+				out.writeInt(tagTable.size());
+				for (String tag : tagTable.keySet()) {
+					writeString(out, tag);
+				}
+
+				out.writeInt(products.size());
+				for (Product product : products) {
+					writeProduct(out, product, categoryTable, tagTable);
+				}
+			}
+
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * Read a snapshot from a file, constructing all its entities through the managers. Entities that are already in
+	 * memory are updated with the data from the snapshot.
+	 *
+	 * @param file the file to read from
+	 * @return the contents of the snapshot
+	 * @throws IOException if the file could not be read or is not a valid snapshot
+	 */
+	public Contents read(File file) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			//The mapping remains valid after the channel has been closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+				throw new IOException(file + " is not a catalog snapshot!");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported catalog snapshot version " + version + " in " + file + "!");
+			}
+			long sequence = buffer.getLong();
+
+			Map<Integer, Attribute> attributes = new HashMap<>();
+			int attributeCount = buffer.getInt();
+			for (int i = 0; i < attributeCount; i++) {
+				int id = buffer.getInt();
+				String name = readString(buffer);
+				Object defaultValue = readValue(buffer);
+
+				int legalCount = buffer.getInt();
+				Set<Object> legalValues = null;
+				if (legalCount >= 0) {
+					legalValues = new HashSet<>();
+					for (int j = 0; j < legalCount; j++) {
+						legalValues.add(readValue(buffer));
+					}
+				}
+
+				attributes.put(id, attributeManager.constructAttribute(id, name, defaultValue, legalValues));
+			}
+
+			Category[] categories = new Category[buffer.getInt()];
+			for (int i = 0; i < categories.length; i++) {
+				String name = readString(buffer);
+				Set<Attribute> categoryAttributes = new HashSet<>();
+				int count = buffer.getInt();
+				for (int j = 0; j < count; j++) {
+					categoryAttributes.add(attributes.get(buffer.getInt()));
+				}
+				categories[i] = categoryManager.constructCategory(name, categoryAttributes);
+			}
+
+			Tag[] tags = new Tag[buffer.getInt()];
+			for (int i = 0; i < tags.length; i++) {
+				tags[i] = tagManager.createTag(readString(buffer));
+			}
+
+			int productCount = buffer.getInt();
+			List<Product> products = new ArrayList<>(productCount);
+			for (int i = 0; i < productCount; i++) {
+				products.add(readProduct(buffer, attributes, categories, tags));
+			}
+
+			return new Contents(sequence, products);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException e) {
+			throw new IOException("The catalog snapshot in " + file + " is corrupt!", e);
+		}
+	}
+
+	private static void addCategory(Category category, Map<String, Integer> categoryTable, List<Category> categoryList,
+	                                Map<Integer, Attribute> attributeTable) {
+		if (categoryTable.putIfAbsent(category.getName(), categoryList.size()) != null) return;
+
+		categoryList.add(category);
+		for (Attribute attribute : category.getAttributesView()) {
+			attributeTable.putIfAbsent(attribute.getID(), attribute);
+		}
+	}
+
+	private static void writeProduct(DataOutputStream out, Product product, Map<String, Integer> categoryTable,
+	                                 Map<String, Integer> tagTable) throws IOException {
+		out.writeInt(product.getID());
+		writeString(out, product.getName());
+		writeString(out, product.getDescription());
+		out.writeDouble(product.getPrice());
+
+		List<Category> productCategories = product.getCategoriesView();
+		out.writeInt(productCategories.size());
+		for (Category category : productCategories) {
+			out.writeInt(categoryTable.get(category.getName()));
+		}
+
+		List<Attribute.AttributeValue> values = product.getAttributeValuesView();
+		out.writeInt(values.size());
+		for (Attribute.AttributeValue value : values) {
+			out.writeInt(value.getParent().getID());
+			writeValue(out, value.getValue());
+		}
+
+		Set<Tag> productTags = product.getTagsView();
+		out.writeInt(productTags.size());
+		for (Tag tag : productTags) {
+			out.writeInt(tagTable.get(tag.getName()));
+		}
+
+		//Images without ids have not been saved, and cannot be read again
+		List<Integer> imageIDs = new ArrayList<>();
+		for (Image image : product.getImagesView()) {
+			if (image.hasValidID()) {
+				imageIDs.add(image.getID());
+			}
+		}
+		out.writeInt(imageIDs.size());
+		for (int id : imageIDs) {
+			out.writeInt(id);
+		}
+	}
+
+	private Product readProduct(ByteBuffer buffer, Map<Integer, Attribute> attributes, Category[] categories,
+	                            Tag[] tags) throws IOException {
+		int id = buffer.getInt();
+		String name = readString(buffer);
+		String description = readString(buffer);
+		double price = buffer.getDouble();
+		Product product = productManager.constructProduct(id, name, description, price);
+
+		List<Category> productCategories = new ArrayList<>();
+		int categoryCount = buffer.getInt();
+		for (int i = 0; i < categoryCount; i++) {
+			productCategories.add(categories[buffer.getInt()]);
+		}
+		product.setCategories(productCategories);
+
+		//Values are set after the categories, as adding a category gives the product the default values of its
+		//attributes
+		int valueCount = buffer.getInt();
+		for (int i = 0; i < valueCount; i++) {
+			Attribute attribute = attributes.get(buffer.getInt());
+			product.setAttribute(attribute, readValue(buffer));
+		}
+
+		Set<Tag> productTags = new HashSet<>();
+		int tagCount = buffer.getInt();
+		for (int i = 0; i < tagCount; i++) {
+			productTags.add(tags[buffer.getInt()]);
+		}
+		product.setTags(productTags);
+
+		Set<Image> images = new HashSet<>();
+		int imageCount = buffer.getInt();
+		for (int i = 0; i < imageCount; i++) {
+			images.add(productManager.constructImage(buffer.getInt()));
+		}
+		product.setImages(images);
+
+		return product;
+	}
+
+	static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) return null;
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Character) {
+			out.writeByte(CHARACTER);
+			out.writeChar((Character) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream oOut = new ObjectOutputStream(bytes)) {
+				oOut.writeObject(value);
+			}
+			out.writeByte(SERIALIZED);
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+		}
+	}
+
+	static Object readValue(ByteBuffer buffer) throws IOException {
+		byte type = buffer.get();
+		switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(buffer);
+			case INTEGER:
+				return buffer.getInt();
+			case DOUBLE:
+				return buffer.getDouble();
+			case BOOLEAN:
+				return buffer.get() != 0;
+			case CHARACTER:
+				return buffer.getChar();
+			case LONG:
+				return buffer.getLong();
+			case FLOAT:
+				return buffer.getFloat();
+			case SERIALIZED:
+				byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+				try (ObjectInputStream oIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+					return oIn.readObject();
+				} catch (ClassNotFoundException e) {
+					throw new IOException("Unable to read attribute value!", e);
+				}
+			default:
+				throw new IOException("Unknown type of attribute value " + type + "!");
+		}
+	}
+
+	/**
+	 * The contents of a snapshot that has been read.
+	 */
+	static class Contents {
+
+		/**
+		 * The sequence number of the change journal at which the snapshot was taken.
+		 */
+		final long sequence;
+
+		/**
+		 * All products in the snapshot.
+		 */
+		final List<Product> products;
+
+		private Contents(long sequence, List<Product> products) {
+			this.sequence = sequence;
+			this.products = products;
+		}
+	}
+}
@@ -5,6 +5,16 @@ import java.util.*;
 /**
  * A category is used to group products. A category can also have attributes, that the products in the category will
  * inherit. A product in a category must provide a value for all the attributes associated with that category.
+ * <p>
+ * Categories are safe for use by multiple threads. The attributes and listeners are guarded by the category itself,
+ * where the attributes are held in an unmodifiable set that is replaced rather than modified, so that they can be read
+ * without locking or copying. Listeners are notified after this lock has been released, so that a category never holds
+ * its own lock while waiting for that of a product. Each modification is delivered to all listeners as a single change,
+ * and changes are delivered one at a time under a separate notification lock, so that they reach the listeners in the
+ * order they were made. A product joining or leaving the category holds the notification lock while doing so, meaning
+ * that the lock order is always notification lock, then product, then category.
+ * <p>
+ * Listeners are held through weak references, so a category does not keep the products that belong to it alive.
  *
  * @author Mads
  * @author Kasper
@@ -12,9 +22,17 @@ import java.util.*;
  */
 public class Category implements Comparable<Category> {
 
+	/**
+	 * The number of listeners above which changes are delivered in parallel.
+	 */
+	private static final int PARALLEL_NOTIFICATION_THRESHOLD = 1024;
+
 	private final String name;
-	private final Set<Attribute> attributes;
-	private final Set<CategoryChangeListener> changeListeners;
+	private final WeakListenerSet<CategoryChangeListener> changeListeners;
+	private final Object notificationLock;
+
+	/* An unmodifiable set, replaced with a modified copy while holding the lock of this category */
+	private volatile Set<Attribute> attributes;
 
 	/**
 	 * Constructs a new category with the specified name.
@@ -23,8 +41,9 @@ public class Category implements Comparable<Category> {
 	 */
 	Category(String name) {
 		this.name = name;
-		this.attributes = new HashSet<>();
-		this.changeListeners = new HashSet<>();
+		this.attributes = Collections.emptySet();
+		this.changeListeners = new WeakListenerSet<>();
+		this.notificationLock = new Object();
 	}
 
 	/**
@@ -37,8 +56,10 @@ public class Category implements Comparable<Category> {
 		this.name = name;
 		//We must ensure that the attribute set is not null (otherwise we cannot add new attributes), and that we copy
 		//the specified array so that new attributes can only be added using the methods below
-		this.attributes = (attributes == null ? new HashSet<>() : new HashSet<>(attributes));
-		this.changeListeners = new HashSet<>();
+		this.attributes = (attributes == null ? Collections.emptySet() :
+				Collections.unmodifiableSet(new HashSet<>(attributes)));
+		this.changeListeners = new WeakListenerSet<>();
+		this.notificationLock = new Object();
 	}
 
 	/**
@@ -56,12 +77,17 @@ public class Category implements Comparable<Category> {
 	 * @param attribute the attribute to add
 	 */
 	public void addAttribute(Attribute attribute) {
-		boolean success = attributes.add(attribute);
-
-		if (success) {
-			for (CategoryChangeListener listener : changeListeners) {
-				listener.attributeAdded(attribute);
+		synchronized (notificationLock) {
+			List<CategoryChangeListener> listeners;
+			synchronized (this) {
+				if (attributes.contains(attribute)) return;
+				Set<Attribute> newAttributes = new HashSet<>(attributes);
+				newAttributes.add(attribute);
+				attributes = Collections.unmodifiableSet(newAttributes);
+				listeners = changeListeners.snapshot();
 			}
+
+			notifyListeners(listeners, Collections.singletonList(attribute), Collections.emptyList());
 		}
 	}
 
@@ -71,12 +97,17 @@ public class Category implements Comparable<Category> {
 	 * @param attribute the attribute to remove
 	 */
 	public void removeAttribute(Attribute attribute) {
-		boolean success = attributes.remove(attribute);
-
-		if (success) {
-			for (CategoryChangeListener listener : changeListeners) {
-				listener.attributeRemoved(attribute);
+		synchronized (notificationLock) {
+			List<CategoryChangeListener> listeners;
+			synchronized (this) {
+				if (!attributes.contains(attribute)) return;
+				Set<Attribute> newAttributes = new HashSet<>(attributes);
+				newAttributes.remove(attribute);
+				attributes = Collections.unmodifiableSet(newAttributes);
+				listeners = changeListeners.snapshot();
 			}
+
+			notifyListeners(listeners, Collections.emptyList(), Collections.singletonList(attribute));
 		}
 	}
 
@@ -90,27 +121,75 @@ public class Category implements Comparable<Category> {
 	}
 
 	/**
-	 * Set the attributes of this category to the ones in the specified collection.
+	 * Get a read-only view of the attributes of this category. The view is the set held by this category, which is
+	 * replaced rather than modified, so it will not reflect later modifications and reading it does not allocate.
+	 *
+	 * @return an unmodifiable view of the attributes of this category
+	 */
+	public Set<Attribute> getAttributesView() {
+		return attributes;
+	}
+
+	/**
+	 * Get the number of attributes of this category.
+	 *
+	 * @return the number of attributes of this category
+	 */
+	public int getAttributeCount() {
+		return attributes.size();
+	}
+
+	/**
+	 * Set the attributes of this category to the ones in the specified collection. The listeners of this category are
+	 * notified of all added and removed attributes in a single change.
 	 *
 	 * @param attributes the attributes to set
 	 */
 	public void setAttributes(Collection<Attribute> attributes) {
-		//Remove attributes
-		//Prevent concurrent modification
-		List<Attribute> toRemove = new ArrayList<>();
-		for (Attribute a : this.attributes) {
-			if (!attributes.contains(a)) {
-				toRemove.add(a);
+		Set<Attribute> newAttributes = new HashSet<>(attributes);
+
+		synchronized (notificationLock) {
+			List<Attribute> added = new ArrayList<>();
+			List<Attribute> removed = new ArrayList<>();
+			List<CategoryChangeListener> listeners;
+			synchronized (this) {
+				for (Attribute a : this.attributes) {
+					if (!newAttributes.contains(a)) {
+						removed.add(a);
+					}
+				}
+				for (Attribute a : newAttributes) {
+					if (!this.attributes.contains(a)) {
+						added.add(a);
+					}
+				}
+				if (added.isEmpty() && removed.isEmpty()) return;
+
+				this.attributes = Collections.unmodifiableSet(newAttributes);
+				listeners = changeListeners.snapshot();
 			}
-		}
 
-		for (Attribute a : toRemove) {
-			removeAttribute(a);
+			notifyListeners(listeners, Collections.unmodifiableList(added), Collections.unmodifiableList(removed));
 		}
+	}
 
-		//Add attributes
-		for (Attribute a : attributes) {
-			addAttribute(a);
+	/**
+	 * Deliver a change to the specified listeners. This must only be called while holding the notification lock. Large
+	 * numbers of listeners, such as the products of a big category, are notified in parallel, which is safe as every
+	 * listener is only notified once.
+	 *
+	 * @param listeners the listeners to notify
+	 * @param added     the attributes that were added
+	 * @param removed   the attributes that were removed
+	 */
+	private void notifyListeners(List<CategoryChangeListener> listeners, Collection<Attribute> added,
+								 Collection<Attribute> removed) {
+		if (listeners.size() > PARALLEL_NOTIFICATION_THRESHOLD) {
+			listeners.parallelStream().forEach(listener -> listener.attributesChanged(this, added, removed));
+		} else {
+			for (CategoryChangeListener listener : listeners) {
+				listener.attributesChanged(this, added, removed);
+			}
 		}
 	}
 
@@ -125,11 +204,12 @@ public class Category implements Comparable<Category> {
 	}
 
 	/**
-	 * Add a change listener to this category.
+	 * Add a change listener to this category. The listener is held through a weak reference, so the caller must keep
+	 * it reachable for as long as it should be notified.
 	 *
 	 * @param listener the listener to add
 	 */
-	public void addChangeListener(CategoryChangeListener listener) {
+	public synchronized void addChangeListener(CategoryChangeListener listener) {
 		changeListeners.add(listener);
 	}
 
@@ -138,8 +218,44 @@ public class Category implements Comparable<Category> {
 	 *
 	 * @param listener the listener to remove
 	 */
-	public void removeChangeListener(CategoryChangeListener listener) {
+	public synchronized void removeChangeListener(CategoryChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+
+	/**
+	 * Get the lock under which changes to this category are delivered to its listeners. While holding this lock, no
+	 * changes are in the process of being delivered.
+	 *
+	 * @return the notification lock of this category
+	 */
+	Object getNotificationLock() {
+		return notificationLock;
+	}
+
+	/**
+	 * Add a change listener to this category and get the attributes of the category at the time of registration. When
+	 * called while holding the notification lock, the listener will be notified of exactly those changes that are not
+	 * reflected in the returned set.
+	 *
+	 * @param listener the listener to add
+	 * @return a read-only view of the attributes of this category
+	 */
+	synchronized Set<Attribute> attachListener(CategoryChangeListener listener) {
+		changeListeners.add(listener);
+		return getAttributesView();
+	}
+
+	/**
+	 * Remove a change listener from this category and get the attributes of the category at the time of removal. When
+	 * called while holding the notification lock, the listener will have been notified of exactly those changes that
+	 * are reflected in the returned set.
+	 *
+	 * @param listener the listener to remove
+	 * @return a read-only view of the attributes of this category
+	 */
+	synchronized Set<Attribute> detachListener(CategoryChangeListener listener) {
 		changeListeners.remove(listener);
+		return getAttributesView();
 	}
 
 	@Override
@@ -0,0 +1,199 @@
+package pim.business;
+
+import java.util.*;
+
+/**
+ * An in-memory index of which attributes belong to which categories, as they are stored in persistence. The index can
+ * be queried in both directions, so that finding the attributes of a category or the categories having an attribute
+ * does not require reading and scanning all categories.
+ * <p>
+ * The index is maintained by the category and attribute managers whenever categories and attributes are loaded,
+ * created, saved or deleted. It is considered complete once all categories and attributes have been loaded at least
+ * once, and until then it must not be used for answering queries. Unlike the identity maps of the managers, the index
+ * holds its categories and attributes strongly. These are few compared to products, and since products are only
+ * listened to weakly, this does not keep any products in memory.
+ * <p>
+ * This index is safe for use by multiple threads.
+ *
+ * @author Kasper
+ */
+class CategoryAttributeIndex {
+
+	private final Map<String, Category> categories;
+	private final Map<Integer, Attribute> attributes;
+	private final Map<String, Set<Integer>> attributesByCategory;
+	private final Map<Integer, Set<String>> categoriesByAttribute;
+	private boolean complete;
+
+	/**
+	 * Constructs a new, empty index.
+	 */
+	public CategoryAttributeIndex() {
+		categories = new HashMap<>();
+		attributes = new HashMap<>();
+		attributesByCategory = new HashMap<>();
+		categoriesByAttribute = new HashMap<>();
+	}
+
+	/**
+	 * Test whether the index contains all categories and attributes in persistence.
+	 *
+	 * @return true if the index is complete, false otherwise
+	 */
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Mark the index as complete. This should be called after all categories and attributes have been loaded, while
+	 * still holding the lock of this index, so that no other thread can change the index in between.
+	 */
+	public synchronized void markComplete() {
+		complete = true;
+	}
+
+	/**
+	 * Remove everything from the index and mark it as incomplete. This should be called when the index may no longer
+	 * reflect persistence, so that it is loaded again on next use.
+	 */
+	public synchronized void clear() {
+		categories.clear();
+		attributes.clear();
+		attributesByCategory.clear();
+		categoriesByAttribute.clear();
+		complete = false;
+	}
+
+	/**
+	 * Add or update an attribute in the index.
+	 *
+	 * @param attribute the attribute
+	 */
+	public synchronized void putAttribute(Attribute attribute) {
+		attributes.put(attribute.getID(), attribute);
+	}
+
+	/**
+	 * Remove the attribute with the specified id from the index, including from all categories having it.
+	 *
+	 * @param attributeID the id of the attribute
+	 */
+	public synchronized void removeAttribute(int attributeID) {
+		attributes.remove(attributeID);
+		Set<String> categoryNames = categoriesByAttribute.remove(attributeID);
+		if (categoryNames != null) {
+			for (String name : categoryNames) {
+				attributesByCategory.get(name).remove(attributeID);
+			}
+		}
+	}
+
+	/**
+	 * Add or update a category in the index with the specified attributes. Any attributes previously registered on the
+	 * category, but not among the specified ones, are removed from the category.
+	 *
+	 * @param category   the category
+	 * @param attributes the attributes of the category
+	 */
+	public synchronized void putCategory(Category category, Collection<Attribute> attributes) {
+		String name = category.getName();
+		categories.put(name, category);
+
+		Set<Integer> newIDs = new HashSet<>();
+		for (Attribute attribute : attributes) {
+			newIDs.add(attribute.getID());
+			this.attributes.put(attribute.getID(), attribute);
+		}
+
+		//Only update the reverse entries of attributes that were added or removed
+		Set<Integer> oldIDs = attributesByCategory.put(name, newIDs);
+		if (oldIDs != null) {
+			for (int id : oldIDs) {
+				if (!newIDs.contains(id)) {
+					removeReverseEntry(id, name);
+				}
+			}
+		}
+		for (int id : newIDs) {
+			if (oldIDs == null || !oldIDs.contains(id)) {
+				categoriesByAttribute.computeIfAbsent(id, i -> new HashSet<>()).add(name);
+			}
+		}
+	}
+
+	/**
+	 * Remove the category with the specified name from the index.
+	 *
+	 * @param name the name of the category
+	 */
+	public synchronized void removeCategory(String name) {
+		categories.remove(name);
+		Set<Integer> attributeIDs = attributesByCategory.remove(name);
+		if (attributeIDs != null) {
+			for (int id : attributeIDs) {
+				removeReverseEntry(id, name);
+			}
+		}
+	}
+
+	/**
+	 * Get the categories that have the attribute with the specified id.
+	 *
+	 * @param attributeID the id of the attribute
+	 * @return a new list of the categories having the attribute
+	 */
+	public synchronized List<Category> getCategoriesWithAttribute(int attributeID) {
+		Set<String> names = categoriesByAttribute.getOrDefault(attributeID, Collections.emptySet());
+		List<Category> result = new ArrayList<>(names.size());
+		for (String name : names) {
+			result.add(categories.get(name));
+		}
+		return result;
+	}
+
+	/**
+	 * Get the attributes of the category with the specified name.
+	 *
+	 * @param categoryName the name of the category
+	 * @return a new list of the attributes of the category, or null if the category is not in the index
+	 */
+	public synchronized List<Attribute> getAttributesOfCategory(String categoryName) {
+		Set<Integer> ids = attributesByCategory.get(categoryName);
+		if (ids == null) return null;
+
+		List<Attribute> result = new ArrayList<>(ids.size());
+		for (int id : ids) {
+			result.add(attributes.get(id));
+		}
+		return result;
+	}
+
+	/**
+	 * Get the attributes that the category with the specified name does not have.
+	 *
+	 * @param categoryName the name of the category
+	 * @return a new list of the attributes not on the category, or null if the category is not in the index
+	 */
+	public synchronized List<Attribute> getAttributesNotInCategory(String categoryName) {
+		Set<Integer> ids = attributesByCategory.get(categoryName);
+		if (ids == null) return null;
+
+		List<Attribute> result = new ArrayList<>(Math.max(0, attributes.size() - ids.size()));
+		for (Map.Entry<Integer, Attribute> entry : attributes.entrySet()) {
+			if (!ids.contains(entry.getKey())) {
+				result.add(entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	private void removeReverseEntry(int attributeID, String categoryName) {
+		Set<String> names = categoriesByAttribute.get(attributeID);
+		if (names != null) {
+			names.remove(categoryName);
+			if (names.isEmpty()) {
+				categoriesByAttribute.remove(attributeID);
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package pim.business;
 
+import java.util.Collection;
+
 /**
  * Interface describing an object that can listen to changes on a category in terms of adding and removing attributes.
  *
@@ -8,16 +10,13 @@ package pim.business;
 public interface CategoryChangeListener {
 
 	/**
-	 * Called when an attribute has been added to the category.
-	 *
-	 * @param attribute the attribute that was added
-	 */
-	void attributeAdded(Attribute attribute);
-
-	/**
-	 * Called when an attribute has been removed from a category.
+	 * Called when the attributes of a category have changed. A single modification of the category, such as setting
+	 * all of its attributes at once, results in a single call to this method. Changes to the same category are
+	 * delivered in the order they were made.
 	 *
-	 * @param attribute the attribute that was removed
+	 * @param category the category that was changed
+	 * @param added    the attributes that were added, never null
+	 * @param removed  the attributes that were removed, never null
 	 */
-	void attributeRemoved(Attribute attribute);
+	void attributesChanged(Category category, Collection<Attribute> added, Collection<Attribute> removed);
 }
@@ -1,11 +1,19 @@
 package pim.business;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
- * Manages category creation and ensures no duplicates (same name) are made.
+ * Manages category creation and ensures no duplicates (same name) are made, even when categories are loaded by multiple
+ * threads at once. Categories are only held weakly, so that the ones no longer referenced by the rest of the
+ * application can be reclaimed.
+ * <p>
+ * Along with the attribute manager, the category manager maintains the {@link CategoryAttributeIndex}, which is used
+ * for answering queries about the relationship between categories and attributes.
  *
  * @author Mikkel
  * @author Kasper
@@ -14,16 +22,21 @@ import java.util.Set;
 class CategoryManager {
 
 	private final PIMPersistenceFacade persistence;
-	private HashMap<String, Category> categories;
+	private final WeakValueMap<String, Category> categories;
+	private final CategoryAttributeIndex index;
+	private final ExistenceFilter<String> categoryExistence;
 
 	/**
 	 * Constructs a new category manager.
 	 *
 	 * @param persistence the persistence facade
+	 * @param index       the index of categories and attributes, shared with the attribute manager
 	 */
-	public CategoryManager(PIMPersistenceFacade persistence) {
-		categories = new HashMap<>();
+	public CategoryManager(PIMPersistenceFacade persistence, CategoryAttributeIndex index) {
+		categories = new WeakValueMap<>();
 		this.persistence = persistence;
+		this.index = index;
+		categoryExistence = new ExistenceFilter<>(() -> persistence.isNotifiedOfChanges());
 	}
 
 	/**
@@ -46,15 +59,11 @@ class CategoryManager {
 	 * @return a reference to the created/existing category with the given name
 	 */
 	public Category constructCategory(String name, Set<Attribute> attributes) {
-		Category c;
-
-		if (categories.get(name) == null) {
-			c = new Category(name, attributes);
-			categories.put(name, c);
-		} else {
-			c = categories.get(name);
-			c.setAttributes(attributes);
-		}
+		Category c = categories.computeIfAbsent(name, n -> new Category(n, attributes));
+
+		//If the category already existed, update its attributes. For a new category this has no effect
+		c.setAttributes(attributes);
+		index.putCategory(c, attributes);
 
 		return c;
 	}
@@ -77,8 +86,10 @@ class CategoryManager {
 		//Category guaranteed to not exist, so make it
 		Category category = new Category(name);
 		persistence.saveCategory(category);
-		categories.put(name, category); //Add to memory only is save is successful
-		return category;
+		categoryExistence.markExists(name);
+		Category result = categories.computeIfAbsent(name, n -> category); //Add to memory only is save is successful
+		index.putCategory(result, Collections.emptySet());
+		return result;
 	}
 
 	/**
@@ -88,7 +99,24 @@ class CategoryManager {
 	 * @throws IOException if something goes wrong
 	 */
 	public Set<Category> getCategories() throws IOException {
-		return persistence.getCategories();
+		long version = categoryExistence.getVersion();
+		Set<Category> all = persistence.getCategories();
+		rebuildExistence(all, version);
+		return all;
+	}
+
+	/**
+	 * Build the filter of existing categories from all categories.
+	 *
+	 * @param all     all categories
+	 * @param version the version of the filter from before the categories were read
+	 */
+	private void rebuildExistence(Collection<Category> all, long version) {
+		List<String> names = new ArrayList<>(all.size());
+		for (Category c : all) {
+			names.add(c.getName());
+		}
+		categoryExistence.rebuild(names, version);
 	}
 
 	/**
@@ -99,7 +127,70 @@ class CategoryManager {
 	 * @throws IOException if something goes wrong
 	 */
 	public Category getCategory(String categoryName) throws IOException {
-		return persistence.getCategoryByName(categoryName);
+		//Categories in memory are kept up to date for as long as changes made elsewhere are received
+		if (persistence.isNotifiedOfChanges()) {
+			Category c = categories.get(categoryName);
+			if (c != null) return c;
+		}
+
+		//Misspelled and deleted categories are often looked up repeatedly
+		if (categoryExistence.isKnownMissing(categoryName)) return null;
+
+		long version = categoryExistence.getVersion();
+		Category c = persistence.getCategoryByName(categoryName);
+		if (c == null) {
+			categoryExistence.markMissing(categoryName, version);
+		}
+		return c;
+	}
+
+	/**
+	 * Read the category with the specified name from persistence again, because it has been changed by another
+	 * instance of the application. The category in memory is updated, as is the index.
+	 *
+	 * @param categoryName the name of the category
+	 * @return the category, or null if it has been deleted
+	 * @throws IOException if something goes wrong
+	 */
+	public Category reloadCategory(String categoryName) throws IOException {
+		//The category has been created or changed. If it has been deleted, being thought to exist does no harm
+		categoryExistence.markExists(categoryName);
+
+		//Reading the category updates the instance in memory and the index
+		Category c = persistence.getCategoryByName(categoryName);
+		if (c == null) {
+			categories.remove(categoryName);
+			index.removeCategory(categoryName);
+		}
+		return c;
+	}
+
+	/**
+	 * Get the categories that are currently in memory.
+	 *
+	 * @return a list of the categories in memory
+	 */
+	public List<Category> getLoadedCategories() {
+		return categories.values();
+	}
+
+	/**
+	 * Discard the contents of the index of categories and attributes, so that it is loaded again on next use. What is
+	 * known about which categories exist is discarded as well, as this is used when changes may have been missed.
+	 */
+	public void invalidateIndex() {
+		index.clear();
+		categoryExistence.invalidate();
+	}
+
+	/**
+	 * Mark the index of categories and attributes as complete. This must only be called once all attributes and
+	 * categories have been constructed, when they have been read from somewhere other than persistence.
+	 */
+	public void markIndexComplete() {
+		synchronized (index) {
+			index.markComplete();
+		}
 	}
 
 	/**
@@ -131,7 +222,11 @@ class CategoryManager {
 	 * @throws IOException if something goes wrong
 	 */
 	public void saveCategory(Category category) throws IOException {
+		//Read the attributes before saving, so that the index reflects exactly what was saved
+		Set<Attribute> attributes = category.getAttributesView();
 		persistence.saveCategory(category);
+		categoryExistence.markExists(category.getName());
+		index.putCategory(category, attributes);
 	}
 
 	/**
@@ -143,5 +238,64 @@ class CategoryManager {
 	public void deleteCategory(String categoryName) throws IOException {
 		persistence.deleteCategory(categoryName);
 		categories.remove(categoryName);
+		index.removeCategory(categoryName);
+	}
+
+	/**
+	 * Get the categories that have the attribute with the specified id.
+	 *
+	 * @param attributeID the id of the attribute
+	 * @return a list of the categories having the attribute
+	 * @throws IOException if something goes wrong
+	 */
+	public List<Category> getCategoriesWithAttribute(int attributeID) throws IOException {
+		ensureIndexComplete();
+		return index.getCategoriesWithAttribute(attributeID);
+	}
+
+	/**
+	 * Get the attributes of the category with the specified name, as they are stored in persistence.
+	 *
+	 * @param categoryName the name of the category
+	 * @return a list of the attributes of the category, or an empty list if no such category exists
+	 * @throws IOException if something goes wrong
+	 */
+	public List<Attribute> getAttributesOfCategory(String categoryName) throws IOException {
+		ensureIndexComplete();
+		List<Attribute> attributes = index.getAttributesOfCategory(categoryName);
+		return attributes == null ? Collections.emptyList() : attributes;
+	}
+
+	/**
+	 * Get the attributes that the category with the specified name does not have, as they are stored in persistence.
+	 *
+	 * @param categoryName the name of the category
+	 * @return a list of the attributes not on the category, or an empty list if no such category exists
+	 * @throws IOException if something goes wrong
+	 */
+	public List<Attribute> getAttributesNotInCategory(String categoryName) throws IOException {
+		ensureIndexComplete();
+		List<Attribute> attributes = index.getAttributesNotInCategory(categoryName);
+		return attributes == null ? Collections.emptyList() : attributes;
+	}
+
+	/**
+	 * Fill the index by loading all attributes and categories, unless this has already been done. Loading happens
+	 * while holding the lock of the index, so that changes made by other threads in the meantime are applied after
+	 * the load rather than being overwritten by it.
+	 *
+	 * @throws IOException if something goes wrong
+	 */
+	private void ensureIndexComplete() throws IOException {
+		if (index.isComplete()) return;
+
+		synchronized (index) {
+			if (index.isComplete()) return;
+
+			//Loading constructs the attributes and categories, which puts them into the index
+			persistence.getAttributes();
+			getCategories();
+			index.markComplete();
+		}
 	}
 }
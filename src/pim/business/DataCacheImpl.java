@@ -3,6 +3,7 @@ package pim.business;
 import pim.persistence.DataCache;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -35,8 +36,18 @@ class DataCacheImpl implements DataCache {
 	}
 
 	@Override
-	public Product createProduct(int id, String name, String description, double price) {
-		return productManager.constructProduct(id, name, description, price);
+	public Product createProduct(int id, String name, String description, double price, String version) {
+		return productManager.constructProduct(id, name, description, price, version);
+	}
+
+	@Override
+	public String getProductVersion(int id) {
+		return productManager.getProductVersion(id);
+	}
+
+	@Override
+	public Product getCurrentProduct(int id, String version) {
+		return productManager.getCurrentProduct(id, version);
 	}
 
 	@Override
@@ -68,4 +79,53 @@ class DataCacheImpl implements DataCache {
 	public Image createImage(int id, BufferedImage img) {
 		return productManager.constructImage(id, img);
 	}
+
+	@Override
+	public void productChanged(int id) throws IOException {
+		productManager.reloadProduct(id);
+	}
+
+	@Override
+	public void categoryChanged(String name) throws IOException {
+		Category loaded = categoryManager.getCategoryIfLoaded(name);
+		if (categoryManager.reloadCategory(name) == null) {
+			//The deletion has removed the category from all products in persistence, but not from those in memory
+			if (loaded != null) {
+				productManager.removeCategoryFromProducts(loaded);
+			}
+			productManager.removeCategoryFromIndexes(name);
+		}
+	}
+
+	@Override
+	public void attributeChanged(int id) throws IOException {
+		Attribute loaded = attributeManager.getLoadedAttribute(id);
+		if (attributeManager.reloadAttribute(id) == null) {
+			//The deletion has removed the attribute from all categories and products in persistence, but not from
+			//those in memory
+			if (loaded != null) {
+				categoryManager.removeAttributeFromCategories(loaded);
+			}
+			productManager.invalidateIndexes();
+		}
+	}
+
+	@Override
+	public void changesMissed() {
+		categoryManager.invalidateIndex();
+		attributeManager.invalidateExistence();
+		productManager.invalidateIndexes();
+
+		try {
+			for (Attribute attribute : attributeManager.getLoadedAttributes()) {
+				attributeChanged(attribute.getID());
+			}
+			for (Category category : categoryManager.getLoadedCategories()) {
+				categoryChanged(category.getName());
+			}
+			productManager.reloadProducts();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 }
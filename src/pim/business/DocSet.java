@@ -0,0 +1,147 @@
+package pim.business;
+
+import java.util.Arrays;
+
+/**
+ * A set of document numbers, used by the product indexes to represent the products having some property. Small sets are
+ * stored as a sorted array, and a set is converted into a bitmap once that takes up less space, so that both rare and
+ * common properties are stored compactly. Bitmaps make intersecting and counting common properties cheap.
+ * <p>
+ * This class is not thread safe, and is guarded by the index using it.
+ *
+ * @author Kasper
+ */
+class DocSet {
+
+	/**
+	 * The minimum size of a set before it is considered for conversion into a bitmap.
+	 */
+	private static final int MIN_BITMAP_SIZE = 64;
+
+	private int[] array;
+	private long[] words;
+	private int size;
+
+	/**
+	 * Constructs a new, empty set.
+	 */
+	DocSet() {
+		array = new int[4];
+	}
+
+	/**
+	 * Add a document to this set.
+	 *
+	 * @param doc the document number
+	 */
+	void add(int doc) {
+		if (words != null) {
+			int index = doc >>> 6;
+			if (index >= words.length) {
+				words = Arrays.copyOf(words, Math.max(index + 1, words.length * 2));
+			}
+			if ((words[index] & (1L << doc)) == 0) {
+				words[index] |= 1L << doc;
+				size++;
+			}
+			return;
+		}
+
+		int position = Arrays.binarySearch(array, 0, size, doc);
+		if (position >= 0) return;
+		position = -position - 1;
+
+		if (size == array.length) {
+			array = Arrays.copyOf(array, size * 2);
+		}
+		System.arraycopy(array, position, array, position + 1, size - position);
+		array[position] = doc;
+		size++;
+
+		//A bitmap uses one bit per document up to the largest one, while the array uses 32 bits per member
+		if (size >= MIN_BITMAP_SIZE && (long) size * 32 > array[size - 1] + 1) {
+			convertToBitmap();
+		}
+	}
+
+	/**
+	 * Remove a document from this set.
+	 *
+	 * @param doc the document number
+	 */
+	void remove(int doc) {
+		if (words != null) {
+			int index = doc >>> 6;
+			if (index < words.length && (words[index] & (1L << doc)) != 0) {
+				words[index] &= ~(1L << doc);
+				size--;
+			}
+			return;
+		}
+
+		int position = Arrays.binarySearch(array, 0, size, doc);
+		if (position < 0) return;
+		System.arraycopy(array, position + 1, array, position, size - position - 1);
+		size--;
+	}
+
+	/**
+	 * Get the number of documents in this set.
+	 *
+	 * @return the number of documents
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Add the documents of this set to the specified bitmap.
+	 *
+	 * @param target the bitmap, which must be large enough to hold all documents of this set
+	 */
+	void orInto(long[] target) {
+		if (words != null) {
+			//The bitmap may have room for more documents than there are
+			int length = Math.min(words.length, target.length);
+			for (int i = 0; i < length; i++) {
+				target[i] |= words[i];
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				target[array[i] >>> 6] |= 1L << array[i];
+			}
+		}
+	}
+
+	/**
+	 * Count the documents of this set that are also in the specified bitmap.
+	 *
+	 * @param filter the bitmap
+	 * @return the number of documents in both
+	 */
+	int countIn(long[] filter) {
+		int count = 0;
+		if (words != null) {
+			int length = Math.min(words.length, filter.length);
+			for (int i = 0; i < length; i++) {
+				count += Long.bitCount(words[i] & filter[i]);
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				int doc = array[i];
+				if ((doc >>> 6) < filter.length && (filter[doc >>> 6] & (1L << doc)) != 0) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private void convertToBitmap() {
+		words = new long[(array[size - 1] >>> 6) + 1];
+		for (int i = 0; i < size; i++) {
+			words[array[i] >>> 6] |= 1L << array[i];
+		}
+		array = null;
+	}
+}
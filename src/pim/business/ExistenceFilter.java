@@ -0,0 +1,174 @@
+package pim.business;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Answers lookups of keys that do not exist without asking persistence. A link to a deleted product or a misspelled
+ * category name would otherwise read from the database every time it is followed.
+ * <p>
+ * Two sources are used. A {@link BloomFilter} of all existing keys is built whenever all of them have been read, and
+ * keys not in it certainly did not exist. It is only used while changes made by other instances of the application
+ * are received, as keys they create are not added to it otherwise. Keys that were looked up and found missing are also
+ * remembered for a short while, which covers the time before the bloom filter has been built, or when changes are not
+ * received. A key that is created is removed from the missing keys and added to the bloom filter, both when it is
+ * created by this instance and when a change to it is received from another.
+ * <p>
+ * To build the bloom filter, get the {@link #getVersion() version} of the filter before reading all keys, and pass it
+ * to {@link #rebuild(Collection, long)} along with the keys. If a key was created while they were being read, the keys
+ * read may not include it, so the bloom filter is not built until the next time. The same goes for keys found missing,
+ * which are not remembered if a key was created during the lookup.
+ *
+ * @param <K> the type of the keys
+ * @author Kasper
+ */
+class ExistenceFilter<K> {
+
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * The number of milliseconds to remember missing keys for by default. This is how long it may take for a key
+	 * created by another instance of the application to be found, if changes are not received.
+	 */
+	private static final long DEFAULT_TTL_MILLIS = 10_000;
+
+	/**
+	 * The number of missing keys above which expired ones are removed.
+	 */
+	private static final int MAX_MISSING = 10_000;
+
+	private final long ttlNanos;
+	private final BooleanSupplier complete;
+	private final ConcurrentMap<K, Long> missing;
+
+	private volatile BloomFilter existing;
+	private int capacity;
+	private int size;
+	private volatile long version;
+
+	/**
+	 * Constructs a new existence filter, which knows of no keys until it is built, and remembers missing keys for ten
+	 * seconds.
+	 *
+	 * @param complete tells whether all keys created are added to the filter, which is required for using the bloom
+	 *                 filter
+	 */
+	public ExistenceFilter(BooleanSupplier complete) {
+		this(DEFAULT_TTL_MILLIS, complete);
+	}
+
+	/**
+	 * Constructs a new existence filter, which knows of no keys until it is built.
+	 *
+	 * @param ttlMillis the number of milliseconds to remember keys that were found missing
+	 * @param complete  tells whether all keys created are added to the filter, which is required for using the bloom
+	 *                  filter
+	 */
+	public ExistenceFilter(long ttlMillis, BooleanSupplier complete) {
+		ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.complete = complete;
+		missing = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Test whether the specified key is known not to exist.
+	 *
+	 * @param key the key to test
+	 * @return true if the key certainly does not exist, false if it may exist
+	 */
+	public boolean isKnownMissing(K key) {
+		Long expiry = missing.get(key);
+		if (expiry != null) {
+			if (expiry - System.nanoTime() > 0) return true;
+			missing.remove(key, expiry);
+		}
+
+		BloomFilter filter = existing;
+		return filter != null && complete.getAsBoolean() && !filter.mightContain(key);
+	}
+
+	/**
+	 * Remember that the specified key was looked up and not found.
+	 *
+	 * @param key     the key that does not exist
+	 * @param version the version of this filter from before the key was looked up
+	 */
+	public synchronized void markMissing(K key, long version) {
+		if (this.version != version) return;
+
+		long now = System.nanoTime();
+		if (missing.size() >= MAX_MISSING) {
+			missing.values().removeIf(expiry -> expiry - now <= 0);
+			if (missing.size() >= MAX_MISSING) {
+				//All are recent, so this is likely a scan of made up keys that would push out the useful ones anyway
+				missing.clear();
+			}
+		}
+		missing.put(key, now + ttlNanos);
+	}
+
+	/**
+	 * Register that the specified key exists, because it has been created or changed.
+	 *
+	 * @param key the key that exists
+	 */
+	public synchronized void markExists(K key) {
+		version++;
+		missing.remove(key);
+
+		BloomFilter filter = existing;
+		if (filter != null) {
+			filter.add(key);
+			if (++size > capacity) {
+				//The filter is too full to be useful, so it is discarded until it is built again
+				existing = null;
+			}
+		}
+	}
+
+	/**
+	 * Get the version of this filter, which changes whenever a key is created.
+	 *
+	 * @return the version of this filter
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Build the filter from all existing keys. Missing keys are forgotten, as the bulk change that caused the rebuild
+	 * may have created them. If a key has been created since the keys were read, the bloom filter is not built.
+	 *
+	 * @param keys    all keys that exist
+	 * @param version the version of this filter from before the keys were read
+	 */
+	public void rebuild(Collection<K> keys, long version) {
+		//Leave room for the keys created until the filter is built again
+		int expected = Math.max(keys.size() * 2, 1024);
+		BloomFilter filter = new BloomFilter(expected, FALSE_POSITIVE_RATE);
+		for (K key : keys) {
+			filter.add(key);
+		}
+
+		synchronized (this) {
+			missing.clear();
+			if (this.version != version) return;
+
+			capacity = expected;
+			size = keys.size();
+			existing = filter;
+		}
+	}
+
+	/**
+	 * Forget everything known about which keys exist. This is used when changes may have been missed.
+	 */
+	public synchronized void invalidate() {
+		version++;
+		existing = null;
+		missing.clear();
+	}
+}
@@ -0,0 +1,295 @@
+package pim.business;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index for filtering products by category, tag, attribute value and price, and for counting how many of
+ * the matching products have each category, tag and attribute value. Attribute values are stored serialized in the
+ * database, which therefore cannot filter on them.
+ * <p>
+ * Each product is given a document number, and for every category, tag and attribute value, the index keeps the set of
+ * documents having it. A filter is evaluated by combining these sets into a bitmap of the matching documents, which is
+ * then used for counting the matches of every set. The price of every document is kept in an array, and is checked only
+ * for the documents matching the other criteria.
+ * <p>
+ * Products keep their document number when they are updated, so the order of results is stable between queries. The
+ * number of a removed product is not reused before the index is rebuilt. Queries may run concurrently with each other,
+ * while updates are exclusive.
+ *
+ * @author Kasper
+ */
+class FacetIndex implements ProductIndex {
+
+	private final ReadWriteLock lock;
+	private Data data;
+
+	/**
+	 * Constructs a new, empty facet index.
+	 */
+	public FacetIndex() {
+		lock = new ReentrantReadWriteLock();
+		data = new Data();
+	}
+
+	@Override
+	public void rebuild(Collection<Product> products) {
+		//Number documents by product id, so that results initially come in that order
+		List<Product> sorted = new ArrayList<>(products);
+		sorted.sort(Comparator.comparingInt(Product::getID));
+
+		Data newData = new Data();
+		for (Product product : sorted) {
+			if (product.hasValidID()) {
+				newData.put(product);
+			}
+		}
+
+		lock.writeLock().lock();
+		try {
+			data = newData;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void update(Product product) {
+		update(Collections.singleton(product));
+	}
+
+	@Override
+	public void update(Collection<Product> products) {
+		lock.writeLock().lock();
+		try {
+			for (Product product : products) {
+				if (product.hasValidID()) {
+					data.put(product);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(int productID) {
+		lock.writeLock().lock();
+		try {
+			data.remove(productID);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeCategory(String categoryName) {
+		lock.writeLock().lock();
+		try {
+			//Documents may still refer to the set, but nothing can reach it any longer
+			data.categories.remove(categoryName);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the products matching the specified filter, along with the facet counts of all matching products.
+	 *
+	 * @param filter the filter
+	 * @param offset the number of matching products to skip
+	 * @param limit  the maximum number of product ids to return
+	 * @return the matches
+	 */
+	public Matches filter(ProductFilter filter, int offset, int limit) {
+		lock.readLock().lock();
+		try {
+			return data.filter(filter, offset, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The result of filtering, with the matching products given by id.
+	 */
+	static class Matches {
+
+		final int[] productIDs;
+		final int totalCount;
+		final Map<String, Integer> categoryCounts;
+		final Map<String, Integer> tagCounts;
+		final Map<Integer, Map<Object, Integer>> attributeCounts;
+
+		private Matches(int[] productIDs, int totalCount, Map<String, Integer> categoryCounts,
+						Map<String, Integer> tagCounts, Map<Integer, Map<Object, Integer>> attributeCounts) {
+			this.productIDs = productIDs;
+			this.totalCount = totalCount;
+			this.categoryCounts = categoryCounts;
+			this.tagCounts = tagCounts;
+			this.attributeCounts = attributeCounts;
+		}
+	}
+
+	/**
+	 * The contents of the index.
+	 */
+	private static class Data {
+
+		private final Map<String, DocSet> categories = new HashMap<>();
+		private final Map<String, DocSet> tags = new HashMap<>();
+		private final Map<Integer, Map<Object, DocSet>> attributes = new HashMap<>();
+
+		/* Document data, indexed by document number */
+		private int[] productIDs = new int[1024];
+		private double[] prices = new double[1024];
+		private DocSet[][] memberships = new DocSet[1024][];
+		private final BitSet removed = new BitSet();
+		private int docCount;
+
+		private final Map<Integer, Integer> documents = new HashMap<>();
+
+		private void put(Product product) {
+			Integer doc = documents.get(product.getID());
+			if (doc == null) {
+				if (docCount == productIDs.length) {
+					productIDs = Arrays.copyOf(productIDs, docCount * 2);
+					prices = Arrays.copyOf(prices, docCount * 2);
+					memberships = Arrays.copyOf(memberships, docCount * 2);
+				}
+				doc = docCount++;
+				productIDs[doc] = product.getID();
+				documents.put(product.getID(), doc);
+			} else {
+				//Remove the document from the sets it was in before the update
+				for (DocSet set : memberships[doc]) {
+					set.remove(doc);
+				}
+			}
+
+			List<DocSet> sets = new ArrayList<>();
+			for (Category category : product.getCategoriesView()) {
+				sets.add(categories.computeIfAbsent(category.getName(), name -> new DocSet()));
+			}
+			for (Tag tag : product.getTagsView()) {
+				sets.add(tags.computeIfAbsent(tag.getName(), name -> new DocSet()));
+			}
+			for (Attribute.AttributeValue value : product.getAttributeValuesView()) {
+				if (value.getValue() != null) {
+					sets.add(attributes.computeIfAbsent(value.getParent().getID(), id -> new HashMap<>())
+							.computeIfAbsent(value.getValue(), v -> new DocSet()));
+				}
+			}
+
+			for (DocSet set : sets) {
+				set.add(doc);
+			}
+			memberships[doc] = sets.toArray(new DocSet[0]);
+			prices[doc] = product.getPrice();
+		}
+
+		private void remove(int productID) {
+			Integer doc = documents.remove(productID);
+			if (doc == null) return;
+
+			for (DocSet set : memberships[doc]) {
+				set.remove(doc);
+			}
+			memberships[doc] = new DocSet[0];
+			removed.set(doc);
+		}
+
+		private Matches filter(ProductFilter filter, int offset, int limit) {
+			int wordCount = (docCount + 63) >>> 6;
+
+			//Start out with all documents that have not been removed
+			long[] result = new long[wordCount];
+			Arrays.fill(result, -1L);
+			if (docCount % 64 != 0) {
+				result[wordCount - 1] = (1L << docCount) - 1;
+			}
+			for (int doc = removed.nextSetBit(0); doc >= 0; doc = removed.nextSetBit(doc + 1)) {
+				result[doc >>> 6] &= ~(1L << doc);
+			}
+
+			//Intersect with the union of the chosen sets of every criterion
+			if (!filter.getCategories().isEmpty()) {
+				intersect(result, union(categories, filter.getCategories(), wordCount));
+			}
+			if (!filter.getTags().isEmpty()) {
+				intersect(result, union(tags, filter.getTags(), wordCount));
+			}
+			for (Map.Entry<Integer, Set<Object>> entry : filter.getAttributeValues().entrySet()) {
+				Map<Object, DocSet> values = attributes.getOrDefault(entry.getKey(), Collections.emptyMap());
+				intersect(result, union(values, entry.getValue(), wordCount));
+			}
+
+			//Check the price of the remaining documents, and collect the requested page
+			double minPrice = filter.getMinPrice();
+			double maxPrice = filter.getMaxPrice();
+			boolean checkPrice = minPrice != Double.NEGATIVE_INFINITY || maxPrice != Double.POSITIVE_INFINITY;
+			int[] page = new int[Math.max(0, limit)];
+			int pageSize = 0;
+			int total = 0;
+			for (int i = 0; i < wordCount; i++) {
+				long word = result[i];
+				while (word != 0) {
+					int doc = (i << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+
+					if (checkPrice && !(prices[doc] >= minPrice && prices[doc] < maxPrice)) {
+						result[i] &= ~(1L << doc);
+						continue;
+					}
+
+					if (total >= offset && pageSize < page.length) {
+						page[pageSize++] = productIDs[doc];
+					}
+					total++;
+				}
+			}
+
+			//Count the matches of every set
+			Map<Integer, Map<Object, Integer>> attributeCounts = new HashMap<>();
+			for (Map.Entry<Integer, Map<Object, DocSet>> entry : attributes.entrySet()) {
+				Map<Object, Integer> counts = count(entry.getValue(), result);
+				if (!counts.isEmpty()) {
+					attributeCounts.put(entry.getKey(), counts);
+				}
+			}
+
+			return new Matches(Arrays.copyOf(page, pageSize), total, count(categories, result), count(tags, result),
+					attributeCounts);
+		}
+
+		private static <K> long[] union(Map<K, DocSet> sets, Set<? extends K> keys, int wordCount) {
+			long[] union = new long[wordCount];
+			for (K key : keys) {
+				DocSet set = sets.get(key);
+				if (set != null) {
+					set.orInto(union);
+				}
+			}
+			return union;
+		}
+
+		private static void intersect(long[] result, long[] other) {
+			for (int i = 0; i < result.length; i++) {
+				result[i] &= other[i];
+			}
+		}
+
+		private static <K> Map<K, Integer> count(Map<K, DocSet> sets, long[] result) {
+			Map<K, Integer> counts = new HashMap<>();
+			for (Map.Entry<K, DocSet> entry : sets.entrySet()) {
+				int count = entry.getValue().countIn(result);
+				if (count > 0) {
+					counts.put(entry.getKey(), count);
+				}
+			}
+			return counts;
+		}
+	}
+}
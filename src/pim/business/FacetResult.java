@@ -0,0 +1,86 @@
+package pim.business;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of filtering products in the PIM. Besides a page of the matching products, the result tells how many of
+ * the matching products are in each category, have each tag and have each attribute value. This can be used for
+ * showing the user how many products remain when narrowing the filter further.
+ *
+ * @author Kasper
+ */
+public class FacetResult {
+
+	private final List<Product> products;
+	private final int totalCount;
+	private final Map<String, Integer> categoryCounts;
+	private final Map<String, Integer> tagCounts;
+	private final Map<Integer, Map<Object, Integer>> attributeCounts;
+
+	/**
+	 * Constructs a new facet result.
+	 *
+	 * @param products        the requested page of matching products
+	 * @param totalCount      the total number of matching products
+	 * @param categoryCounts  the number of matching products in each category
+	 * @param tagCounts       the number of matching products with each tag
+	 * @param attributeCounts the number of matching products with each value of each attribute, by attribute id
+	 */
+	FacetResult(List<Product> products, int totalCount, Map<String, Integer> categoryCounts,
+				Map<String, Integer> tagCounts, Map<Integer, Map<Object, Integer>> attributeCounts) {
+		this.products = products;
+		this.totalCount = totalCount;
+		this.categoryCounts = categoryCounts;
+		this.tagCounts = tagCounts;
+		this.attributeCounts = attributeCounts;
+	}
+
+	/**
+	 * Get the requested page of matching products.
+	 *
+	 * @return the matching products
+	 */
+	public List<Product> getProducts() {
+		return products;
+	}
+
+	/**
+	 * Get the total number of matching products.
+	 *
+	 * @return the number of matching products
+	 */
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Get the number of matching products in each category. Categories without matching products are left out.
+	 *
+	 * @return a map from category names to product counts
+	 */
+	public Map<String, Integer> getCategoryCounts() {
+		return categoryCounts;
+	}
+
+	/**
+	 * Get the number of matching products with each tag. Tags without matching products are left out.
+	 *
+	 * @return a map from tag names to product counts
+	 */
+	public Map<String, Integer> getTagCounts() {
+		return tagCounts;
+	}
+
+	/**
+	 * Get the number of matching products with each value of the specified attribute. Values without matching products
+	 * are left out.
+	 *
+	 * @param attribute the attribute
+	 * @return a map from attribute values to product counts, may be empty
+	 */
+	public Map<Object, Integer> getAttributeCounts(Attribute attribute) {
+		return attributeCounts.getOrDefault(attribute.getID(), Collections.emptyMap());
+	}
+}
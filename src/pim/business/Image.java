@@ -14,9 +14,10 @@ import java.util.Arrays;
  */
 public class Image {
 
-	private BufferedImage img;
-	private String url;
-	private int id;
+	private final String url;
+	private final ImageSource source;
+	private volatile BufferedImage img;
+	private volatile int id;
 
 	/**
 	 * Constructs a new image from the specified url.
@@ -31,6 +32,7 @@ public class Image {
 		}
 
 		this.url = url;
+		this.source = null;
 		this.id = -1;
 	}
 
@@ -53,14 +55,29 @@ public class Image {
 	 * @throws IllegalArgumentException if the image is null
 	 */
 	public Image(int id, BufferedImage img) {
-		this.id = id;
-
 		if (img == null) {
 			throw new IllegalArgumentException("Image cannot be null!");
 		}
+
+		this.id = id;
+		this.url = null;
+		this.source = null;
 		this.img = img;
 	}
 
+	/**
+	 * Constructs a new image whose data is read from the specified source the first time it is needed. This is used
+	 * when the image is known to exist, but its data has not been read yet.
+	 *
+	 * @param id     the id of this image
+	 * @param source the source of the image data
+	 */
+	Image(int id, ImageSource source) {
+		this.id = id;
+		this.url = null;
+		this.source = source;
+	}
+
 	/**
 	 * Test whether the id of this image is valid.
 	 *
@@ -85,7 +102,7 @@ public class Image {
 	 *
 	 * @param id the id of the image
 	 */
-	public void setID(int id) {
+	public synchronized void setID(int id) {
 		if (this.id < 0) {
 			this.id = id;
 		}
@@ -101,13 +118,22 @@ public class Image {
 	}
 
 	/**
-	 * Get a buffered image representation of this image. If this image was constructed using a url, this method will
-	 * use lazy loading.
+	 * Get a buffered image representation of this image. If this image was constructed using a url or an image
+	 * source, this method will use lazy loading.
 	 *
 	 * @return a buffered image representation of this image
 	 */
-	public BufferedImage getImage() {
-		if (img == null) {
+	public synchronized BufferedImage getImage() {
+		if (img == null && source != null) {
+			try {
+				img = source.load(id);
+			} catch (IOException e) {
+				throw new IllegalStateException("Error reading image with id " + id + ".", e);
+			}
+			if (img == null) {
+				throw new IllegalStateException("The image with id " + id + " no longer exists.");
+			}
+		} else if (img == null) {
 			//If the image data is null, then the url must specify a valid image (ensured in the constructors)
 			try {
 				img = ImageIO.read(new File(url));
@@ -118,4 +144,19 @@ public class Image {
 
 		return img;
 	}
+
+	/**
+	 * Interface describing a source from which the data of images can be read.
+	 */
+	interface ImageSource {
+
+		/**
+		 * Read the data of the image with the specified id.
+		 *
+		 * @param id the id of the image
+		 * @return the image data, or null if no such image exists
+		 * @throws IOException if something goes wrong
+		 */
+		BufferedImage load(int id) throws IOException;
+	}
 }
@@ -0,0 +1,408 @@
+package pim.business;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index for listing the products of a category a page at a time, in any {@link ProductOrder}. For every
+ * category the index keeps the ids of its products in arrays already sorted by price, by name and by popularity, so a
+ * page is read by copying a range of an array rather than by loading and sorting the whole category.
+ * <p>
+ * Saved products are moved to their new positions by binary search, without sorting anything again. The popularity of
+ * products changes with reviews rather than with saves, so it is read when the index is built and then refreshed
+ * periodically on a background thread, which sorts the listings by popularity again. Queries may run concurrently
+ * with each other, while updates are exclusive.
+ *
+ * @author Kasper
+ */
+class ListingIndex implements ProductIndex {
+
+	private static final Comparator<Entry> BY_PRICE = (e1, e2) -> {
+		int result = Double.compare(e1.price, e2.price);
+		return result != 0 ? result : Integer.compare(e1.id, e2.id);
+	};
+	private static final Comparator<Entry> BY_NAME = (e1, e2) -> {
+		int result = String.CASE_INSENSITIVE_ORDER.compare(e1.name, e2.name);
+		return result != 0 ? result : Integer.compare(e1.id, e2.id);
+	};
+	private static final Comparator<Entry> BY_POPULARITY = (e1, e2) -> {
+		int result = Double.compare(e2.popularity, e1.popularity);
+		return result != 0 ? result : Integer.compare(e1.id, e2.id);
+	};
+
+	/**
+	 * The time between refreshes of the popularity of products, the same as for suggestions.
+	 */
+	private static final long POPULARITY_REFRESH_MILLIS = 5 * 60 * 1000;
+
+	private final SuggestionIndex.PopularitySource popularitySource;
+	private final ReadWriteLock lock;
+	private Map<Integer, Entry> entries;
+	private Map<String, Listing> listings;
+	private Map<Integer, Double> popularity;
+	private boolean built;
+
+	private final ScheduledExecutorService refresher;
+
+	/**
+	 * Constructs a new, empty listing index.
+	 *
+	 * @param popularitySource the source of the popularity of products
+	 */
+	public ListingIndex(SuggestionIndex.PopularitySource popularitySource) {
+		this(popularitySource, POPULARITY_REFRESH_MILLIS);
+	}
+
+	/**
+	 * Constructs a new, empty listing index refreshing the popularity of products at the specified interval.
+	 *
+	 * @param popularitySource        the source of the popularity of products
+	 * @param popularityRefreshMillis the time between refreshes of the popularity in milliseconds
+	 */
+	ListingIndex(SuggestionIndex.PopularitySource popularitySource, long popularityRefreshMillis) {
+		this.popularitySource = popularitySource;
+		lock = new ReentrantReadWriteLock();
+		entries = new HashMap<>();
+		listings = new HashMap<>();
+		popularity = Collections.emptyMap();
+
+		refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Listing index popularity refresher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresher.scheduleWithFixedDelay(this::refreshPopularity, popularityRefreshMillis, popularityRefreshMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void rebuild(Collection<Product> products) {
+		Map<Integer, Double> newPopularity = readPopularity();
+		if (newPopularity == null) {
+			//Keep ordering by the previous popularity rather than not building the index at all
+			lock.readLock().lock();
+			try {
+				newPopularity = popularity;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		Map<Integer, Entry> newEntries = new HashMap<>();
+		Map<String, List<Entry>> members = new HashMap<>();
+		for (Product product : products) {
+			if (!product.hasValidID()) continue;
+
+			Entry entry = new Entry(product, newPopularity);
+			newEntries.put(entry.id, entry);
+			for (String category : entry.categories) {
+				members.computeIfAbsent(category, c -> new ArrayList<>()).add(entry);
+			}
+		}
+
+		Map<String, Listing> newListings = new HashMap<>();
+		for (Map.Entry<String, List<Entry>> category : members.entrySet()) {
+			newListings.put(category.getKey(), new Listing(category.getValue()));
+		}
+
+		lock.writeLock().lock();
+		try {
+			entries = newEntries;
+			listings = newListings;
+			popularity = newPopularity;
+			built = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void update(Product product) {
+		update(Collections.singleton(product));
+	}
+
+	@Override
+	public void update(Collection<Product> products) {
+		lock.writeLock().lock();
+		try {
+			for (Product product : products) {
+				if (!product.hasValidID()) continue;
+
+				removeEntry(product.getID());
+				Entry entry = new Entry(product, popularity);
+				entries.put(entry.id, entry);
+				for (String category : entry.categories) {
+					listings.computeIfAbsent(category, c -> new Listing(Collections.emptyList())).add(entry);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(int productID) {
+		lock.writeLock().lock();
+		try {
+			removeEntry(productID);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the product with the specified id from the listings, using its old data, as that determines where it is
+	 * in the listings.
+	 */
+	private void removeEntry(int productID) {
+		Entry old = entries.remove(productID);
+		if (old == null) return;
+
+		for (String category : old.categories) {
+			Listing listing = listings.get(category);
+			if (listing != null) {
+				listing.remove(old);
+			}
+		}
+	}
+
+	/**
+	 * Read the popularity of products again, and sort the listings by it.
+	 */
+	private void refreshPopularity() {
+		//There is nothing to sort before the index has been built
+		lock.readLock().lock();
+		try {
+			if (!built) return;
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		Map<Integer, Double> newPopularity = readPopularity();
+		if (newPopularity == null) return;
+
+		lock.writeLock().lock();
+		try {
+			popularity = newPopularity;
+			for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+				entry.setValue(new Entry(entry.getValue(), newPopularity));
+			}
+			for (Listing listing : listings.values()) {
+				listing.sortByPopularity(entries);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Read the popularity of products, or return null if it could not be read.
+	 */
+	private Map<Integer, Double> readPopularity() {
+		try {
+			return popularitySource.getPopularity();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	@Override
+	public void removeCategory(String categoryName) {
+		lock.writeLock().lock();
+		try {
+			listings.remove(categoryName);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the ids of a page of the products in the specified category.
+	 *
+	 * @param categoryName the name of the category
+	 * @param order        the order of the products
+	 * @param offset       the number of products to skip, where a negative offset skips none
+	 * @param limit        the maximum number of product ids to return
+	 * @return the ids of the products on the page, in order
+	 */
+	public int[] getPage(String categoryName, ProductOrder order, int offset, int limit) {
+		//Skip none for a negative offset, just as when filtering products
+		offset = Math.max(0, offset);
+
+		lock.readLock().lock();
+		try {
+			Listing listing = listings.get(categoryName);
+			if (listing == null || offset >= listing.size || limit <= 0) return new int[0];
+
+			int length = Math.min(limit, listing.size - offset);
+			switch (order) {
+				case PRICE_ASCENDING:
+					return Arrays.copyOfRange(listing.byPrice.ids, offset, offset + length);
+				case PRICE_DESCENDING:
+					//Read the ascending order from the end
+					int[] page = new int[length];
+					for (int i = 0; i < length; i++) {
+						page[i] = listing.byPrice.ids[listing.size - 1 - offset - i];
+					}
+					return page;
+				case NAME:
+					return Arrays.copyOfRange(listing.byName.ids, offset, offset + length);
+				default:
+					return Arrays.copyOfRange(listing.byPopularity.ids, offset, offset + length);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the number of products in the specified category.
+	 *
+	 * @param categoryName the name of the category
+	 * @return the number of products in the category
+	 */
+	public int getCount(String categoryName) {
+		lock.readLock().lock();
+		try {
+			Listing listing = listings.get(categoryName);
+			return listing == null ? 0 : listing.size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The data of a product that determines its position in the listings.
+	 */
+	private static class Entry {
+
+		private final int id;
+		private final String name;
+		private final double price;
+		private final double popularity;
+		private final String[] categories;
+
+		private Entry(Product product, Map<Integer, Double> popularity) {
+			id = product.getID();
+			name = product.getName() == null ? "" : product.getName();
+			price = product.getPrice();
+			this.popularity = popularity.getOrDefault(id, 0.0);
+
+			List<Category> productCategories = product.getCategoriesView();
+			categories = new String[productCategories.size()];
+			for (int i = 0; i < categories.length; i++) {
+				categories[i] = productCategories.get(i).getName();
+			}
+		}
+
+		private Entry(Entry entry, Map<Integer, Double> popularity) {
+			id = entry.id;
+			name = entry.name;
+			price = entry.price;
+			this.popularity = popularity.getOrDefault(id, 0.0);
+			categories = entry.categories;
+		}
+	}
+
+	/**
+	 * The products of a single category, in every order.
+	 */
+	private static class Listing {
+
+		private final SortedEntries byPrice;
+		private final SortedEntries byName;
+		private SortedEntries byPopularity;
+		private int size;
+
+		private Listing(List<Entry> members) {
+			byPrice = new SortedEntries(members, BY_PRICE);
+			byName = new SortedEntries(members, BY_NAME);
+			byPopularity = new SortedEntries(members, BY_POPULARITY);
+			size = members.size();
+		}
+
+		private void add(Entry entry) {
+			if (byPrice.add(entry)) {
+				byName.add(entry);
+				byPopularity.add(entry);
+				size++;
+			}
+		}
+
+		private void remove(Entry entry) {
+			if (byPrice.remove(entry)) {
+				byName.remove(entry);
+				byPopularity.remove(entry);
+				size--;
+			}
+		}
+
+		/**
+		 * Sort the products by popularity again, using the specified entries, which hold their current popularity.
+		 */
+		private void sortByPopularity(Map<Integer, Entry> entries) {
+			List<Entry> members = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				members.add(entries.get(byPrice.ids[i]));
+			}
+			byPopularity = new SortedEntries(members, BY_POPULARITY);
+		}
+	}
+
+	/**
+	 * Entries sorted in a single order. The ids are kept in an array of their own, so that pages are copied directly.
+	 */
+	private static class SortedEntries {
+
+		private final Comparator<Entry> comparator;
+		private Entry[] entries;
+		private int[] ids;
+		private int size;
+
+		private SortedEntries(List<Entry> members, Comparator<Entry> comparator) {
+			this.comparator = comparator;
+			entries = members.toArray(new Entry[Math.max(4, members.size())]);
+			size = members.size();
+			Arrays.sort(entries, 0, size, comparator);
+
+			ids = new int[entries.length];
+			for (int i = 0; i < size; i++) {
+				ids[i] = entries[i].id;
+			}
+		}
+
+		private boolean add(Entry entry) {
+			int position = Arrays.binarySearch(entries, 0, size, entry, comparator);
+			if (position >= 0) return false;
+			position = -position - 1;
+
+			if (size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			System.arraycopy(entries, position, entries, position + 1, size - position);
+			System.arraycopy(ids, position, ids, position + 1, size - position);
+			entries[position] = entry;
+			ids[position] = entry.id;
+			size++;
+			return true;
+		}
+
+		private boolean remove(Entry entry) {
+			int position = Arrays.binarySearch(entries, 0, size, entry, comparator);
+			if (position < 0) return false;
+
+			System.arraycopy(entries, position + 1, entries, position, size - position - 1);
+			System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+			entries[--size] = null;
+			return true;
+		}
+	}
+}
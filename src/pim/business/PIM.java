@@ -1,8 +1,15 @@
 package pim.business;
 
+import shared.ChangeFeed;
+
+import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Interface describing the functionality that must be provided by all PIM implementations.
@@ -46,6 +53,80 @@ public interface PIM {
 	 */
 	Image createImage(String url) throws IOException;
 
+	/**
+	 * Get the currently loaded products that use the specified image.
+	 *
+	 * @param image the image
+	 * @return a list of the loaded products using the image, may be empty
+	 * @throws IOException if the operation failed
+	 */
+	List<Product> getProductsUsingImage(Image image) throws IOException;
+
+	/**
+	 * Search for products by their name, description, tags and textual attribute values. The results are ranked by
+	 * relevance, and words with small typos still match. The first search builds the search index, which may take a
+	 * while for a large catalog.
+	 *
+	 * @param query the words to search for
+	 * @param limit the maximum number of products to return
+	 * @return a list of the matching products, best match first
+	 * @throws IOException if the operation failed
+	 */
+	List<Product> search(String query, int limit) throws IOException;
+
+	/**
+	 * Search for products in the same way as {@link #search(String, int)}, but visit the listing data of the matching
+	 * products instead of loading them. The visitor is given the same row for every product, so it must not keep it,
+	 * and it must not modify the PIM.
+	 *
+	 * @param query   the words to search for
+	 * @param limit   the maximum number of products to visit
+	 * @param visitor the visitor of the matching products, best match first
+	 * @throws IOException if the operation failed
+	 */
+	void visitSearchResults(String query, int limit, Consumer<ProductRow> visitor) throws IOException;
+
+	/**
+	 * Get suggestions for completing a search as it is being typed. The suggestions are product names and tags that
+	 * have a word starting with the specified prefix, with the most popular first. This does not access the database,
+	 * except for building the index on first use.
+	 *
+	 * @param prefix the text typed so far
+	 * @param limit  the maximum number of suggestions to return
+	 * @return a list of suggestions, best first
+	 * @throws IOException if the operation failed
+	 */
+	List<String> getSuggestions(String prefix, int limit) throws IOException;
+
+	/**
+	 * Find the products matching the specified filter, along with the number of matching products in every category,
+	 * with every tag and with every attribute value. The counts are over all matching products, not just the returned
+	 * page. This does not access the database, except for building the index on first use and for loading the returned
+	 * products.
+	 *
+	 * @param filter the filter
+	 * @param offset the number of matching products to skip
+	 * @param limit  the maximum number of products to return
+	 * @return the matching products and facet counts
+	 * @throws IOException if the operation failed
+	 */
+	FacetResult filterProducts(ProductFilter filter, int offset, int limit) throws IOException;
+
+	/**
+	 * Filter products in the same way as {@link #filterProducts(ProductFilter, int, int)}, but visit the listing data
+	 * of the matching products on the page instead of loading them. The returned result has the facet counts, but no
+	 * products. The visitor is given the same row for every product, so it must not keep it, and it must not modify
+	 * the PIM.
+	 *
+	 * @param filter  the filter
+	 * @param offset  the number of matching products to skip
+	 * @param limit   the maximum number of products to visit
+	 * @param visitor the visitor of the matching products
+	 * @return the facet counts
+	 * @throws IOException if the operation failed
+	 */
+	FacetResult filterProducts(ProductFilter filter, int offset, int limit, Consumer<ProductRow> visitor) throws IOException;
+
 	/**
 	 * To retrieve products from a specific category
 	 *
@@ -55,6 +136,42 @@ public interface PIM {
 	 */
 	List<Product> getProducts(String categoryName) throws IOException;
 
+	/**
+	 * Get a page of the products in a specific category, in the specified order. Only the products on the page are
+	 * loaded, and the category is not sorted for every request.
+	 *
+	 * @param categoryName the category to get products from
+	 * @param order        the order of the products
+	 * @param offset       the number of products to skip
+	 * @param limit        the maximum number of products to return
+	 * @return a list of the products on the page, in order
+	 * @throws IOException if the operation failed
+	 */
+	List<Product> getProducts(String categoryName, ProductOrder order, int offset, int limit) throws IOException;
+
+	/**
+	 * Visit the listing data of a page of the products in a specific category, in the specified order, without loading
+	 * the products. The visitor is given the same row for every product, so it must not keep it, and it must not
+	 * modify the PIM.
+	 *
+	 * @param categoryName the category to visit products in
+	 * @param order        the order of the products
+	 * @param offset       the number of products to skip
+	 * @param limit        the maximum number of products to visit
+	 * @param visitor      the visitor of the products on the page
+	 * @throws IOException if the operation failed
+	 */
+	void visitProducts(String categoryName, ProductOrder order, int offset, int limit, Consumer<ProductRow> visitor) throws IOException;
+
+	/**
+	 * Get the number of products in a specific category.
+	 *
+	 * @param categoryName the category to count products in
+	 * @return the number of products in the category
+	 * @throws IOException if the operation failed
+	 */
+	int getProductCount(String categoryName) throws IOException;
+
 	/**
 	 * Get a list of all products in the PIM.
 	 *
@@ -189,4 +306,138 @@ public interface PIM {
 	 * @return the tag that was created
 	 */
 	Tag createTag(String name);
-}
\ No newline at end of file
+
+	/**
+	 * Get the feed of all changes made to the PIM, by this or any other instance of the application. Anything derived
+	 * from the PIM can use this for catching up with changes rather than reading everything again.
+	 *
+	 * @return the change feed
+	 */
+	ChangeFeed getChangeFeed();
+
+	/**
+	 * Write a snapshot of the entire catalog to the specified file, so that it can be {@link #loadSnapshot(File)
+	 * loaded} on a later startup instead of being read from the database. Image data is not included.
+	 *
+	 * @param file the file to write to
+	 * @throws IOException if the operation failed
+	 */
+	void writeSnapshot(File file) throws IOException;
+
+	/**
+	 * Load the catalog from a snapshot written by {@link #writeSnapshot(File)}, and bring it up to date by applying the
+	 * changes made since the snapshot was written. This should be done on startup, before the PIM is used.
+	 *
+	 * @param file the file to read from
+	 * @return true if the snapshot was loaded, false if the file does not exist
+	 * @throws IOException if the operation failed
+	 */
+	boolean loadSnapshot(File file) throws IOException;
+
+	/**
+	 * Save products in the background from now on, so that {@link #saveProduct(Product)} returns as soon as the save
+	 * has been stored in the specified file. Saves of the same product made in quick succession are carried out as one.
+	 * Saves left in the file by a previous run are carried out first. This should be done on startup, after the
+	 * snapshot has been loaded.
+	 *
+	 * @param file the file to store the saves in until they have been carried out
+	 * @throws IOException if the operation failed
+	 */
+	void enableWriteBehind(File file) throws IOException;
+
+	/**
+	 * Wait for all products saved so far to be written to the database. This is needed before reading products that
+	 * have just been saved from the database when saving in the background, and has no effect otherwise.
+	 *
+	 * @throws IOException if some of the products could not be saved
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Get the product with the specified id asynchronously, as with {@link #getProductInformation(int)}. This and the
+	 * other asynchronous methods run on the executor of the PIM, and complete exceptionally with an IOException if
+	 * the operation failed.
+	 *
+	 * @param id the id of the product to retrieve
+	 * @return a future completed with the product, or with null if no such product could be retrieved
+	 */
+	CompletableFuture<Product> getProductInformationAsync(int id);
+
+	/**
+	 * Get the products with the specified ids asynchronously. The products are retrieved in parallel.
+	 *
+	 * @param ids the ids of the products to retrieve
+	 * @return a future completed with the products by id, where products that could not be retrieved are null
+	 */
+	CompletableFuture<Map<Integer, Product>> getProductInformationAsync(Collection<Integer> ids);
+
+	/**
+	 * Get the most popular products asynchronously, as with {@link #getPopularProducts(int)}.
+	 *
+	 * @param amount the amount of popular products to retrieve
+	 * @return a future completed with the most popular products
+	 */
+	CompletableFuture<Set<Product>> getPopularProductsAsync(int amount);
+
+	/**
+	 * Get the products in a specific category asynchronously, as with {@link #getProducts(String)}.
+	 *
+	 * @param categoryName the category to get products from
+	 * @return a future completed with the products in the category
+	 */
+	CompletableFuture<List<Product>> getProductsAsync(String categoryName);
+
+	/**
+	 * Get a page of the products in a specific category asynchronously, as with
+	 * {@link #getProducts(String, ProductOrder, int, int)}.
+	 *
+	 * @param categoryName the category to get products from
+	 * @param order        the order of the products
+	 * @param offset       the number of products to skip
+	 * @param limit        the maximum number of products to return
+	 * @return a future completed with the products on the page, in order
+	 */
+	CompletableFuture<List<Product>> getProductsAsync(String categoryName, ProductOrder order, int offset, int limit);
+
+	/**
+	 * Get all products asynchronously, as with {@link #getProducts()}.
+	 *
+	 * @return a future completed with all products
+	 */
+	CompletableFuture<List<Product>> getProductsAsync();
+
+	/**
+	 * Search for products asynchronously, as with {@link #search(String, int)}.
+	 *
+	 * @param query the words to search for
+	 * @param limit the maximum number of products to return
+	 * @return a future completed with the matching products, best match first
+	 */
+	CompletableFuture<List<Product>> searchAsync(String query, int limit);
+
+	/**
+	 * Get suggestions for completing a search asynchronously, as with {@link #getSuggestions(String, int)}.
+	 *
+	 * @param prefix the text typed so far
+	 * @param limit  the maximum number of suggestions to return
+	 * @return a future completed with the suggestions, best first
+	 */
+	CompletableFuture<List<String>> getSuggestionsAsync(String prefix, int limit);
+
+	/**
+	 * Filter products asynchronously, as with {@link #filterProducts(ProductFilter, int, int)}.
+	 *
+	 * @param filter the filter
+	 * @param offset the number of matching products to skip
+	 * @param limit  the maximum number of products to return
+	 * @return a future completed with the matching products and facet counts
+	 */
+	CompletableFuture<FacetResult> filterProductsAsync(ProductFilter filter, int offset, int limit);
+
+	/**
+	 * Get all categories asynchronously, as with {@link #getCategories()}.
+	 *
+	 * @return a future completed with all categories
+	 */
+	CompletableFuture<List<Category>> getCategoriesAsync();
+}
@@ -1,5 +1,7 @@
 package pim.business;
 
+import java.util.concurrent.Executor;
+
 /**
  * A factory for creating objects to interact with the business layer.
  *
@@ -16,4 +18,15 @@ public class PIMFacade {
 		//Currently the only implementation
 		return new PIMImpl();
 	}
+
+	/**
+	 * Get an object for interacting with the business layer, which runs asynchronous operations on the specified
+	 * executor.
+	 *
+	 * @param executor the executor of asynchronous operations
+	 * @return an object for interacting with the business layer
+	 */
+	public static PIM createPIM(Executor executor) {
+		return new PIMImpl(executor);
+	}
 }
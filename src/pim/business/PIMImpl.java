@@ -2,10 +2,16 @@ package pim.business;
 
 import erp.business.SupplierIntegrator;
 import pim.persistence.PIMPersistenceFactory;
+import shared.Async;
+import shared.ChangeFeed;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * Implementation of the PIM interface.
@@ -15,27 +21,98 @@ import java.util.concurrent.TimeoutException;
  */
 class PIMImpl implements PIM {
 
+	/**
+	 * The number of microseconds to collect product requests for before reading them at once. This is added to the
+	 * time of reading a product that is not in memory, and is short compared to a round trip to the database.
+	 */
+	private static final long PRODUCT_BATCH_WINDOW_MICROS = 1000;
+
+	/**
+	 * The maximum number of products read at once.
+	 */
+	private static final int PRODUCT_BATCH_SIZE = 200;
+
+	/**
+	 * The number of milliseconds to collect product saves for before writing them, when saving in the background.
+	 */
+	private static final long WRITE_BEHIND_DELAY_MILLIS = 200;
+
+	/**
+	 * The maximum number of products written at once, when saving in the background.
+	 */
+	private static final int WRITE_BEHIND_BATCH_SIZE = 100;
+
 	/**
 	 * Facade for the persistence layer.
 	 */
 	private final PIMPersistenceFacade persistence;
 
+	/**
+	 * Executor of asynchronous operations.
+	 */
+	private final Executor executor;
+
 	/* Entity managers */
 	private final ProductManager productManager;
 	private final AttributeManager attributeManager;
 	private final CategoryManager categoryManager;
 	private final TagManager tagManager;
 
+	/* Product indexes */
+	private final SearchIndex searchIndex;
+	private final SuggestionIndex suggestionIndex;
+	private final FacetIndex facetIndex;
+	private final ListingIndex listingIndex;
+	private final ProductTable productTable;
+
+	private final CatalogSnapshot snapshot;
+
 	/**
-	 * Constructs a new PIM implementation.
+	 * Batches the products requested one at a time, so that a page referencing many products reads them all at once.
+	 */
+	private final BatchLoader<Integer, Product> productBatches;
+
+	/**
+	 * Saves products in the background, or null if products are saved directly.
+	 */
+	private volatile ProductSaveQueue saveQueue;
+
+	/**
+	 * Constructs a new PIM implementation, which runs asynchronous operations on the default executor.
 	 */
 	public PIMImpl() {
+		this(Async.defaultExecutor());
+	}
+
+	/**
+	 * Constructs a new PIM implementation.
+	 *
+	 * @param executor the executor of asynchronous operations
+	 */
+	public PIMImpl(Executor executor) {
+		this.executor = executor;
 		persistence = PIMPersistenceFactory.createDatabaseMediator();
 		productManager = new ProductManager(persistence);
-		attributeManager = new AttributeManager(persistence);
-		categoryManager = new CategoryManager(persistence);
+		productBatches = new BatchLoader<>(productManager::getProducts, executor, PRODUCT_BATCH_WINDOW_MICROS,
+				PRODUCT_BATCH_SIZE);
+		CategoryAttributeIndex categoryAttributeIndex = new CategoryAttributeIndex();
+		attributeManager = new AttributeManager(persistence, categoryAttributeIndex);
+		categoryManager = new CategoryManager(persistence, categoryAttributeIndex);
 		tagManager = new TagManager();
 		persistence.setCache(new DataCacheImpl(productManager, attributeManager, categoryManager, tagManager));
+
+		searchIndex = new SearchIndex();
+		productManager.addIndex(searchIndex);
+		suggestionIndex = new SuggestionIndex(productManager::getPopularity);
+		productManager.addIndex(suggestionIndex);
+		facetIndex = new FacetIndex();
+		productManager.addIndex(facetIndex);
+		listingIndex = new ListingIndex(productManager::getPopularity);
+		productManager.addIndex(listingIndex);
+		productTable = new ProductTable();
+		productManager.addIndex(productTable);
+
+		snapshot = new CatalogSnapshot(productManager, attributeManager, categoryManager, tagManager);
 	}
 
 	@Override
@@ -127,19 +204,80 @@ class PIMImpl implements PIM {
 		return productManager.createImage(url);
 	}
 
+	@Override
+	public List<Product> getProductsUsingImage(Image image) throws IOException {
+		return new ArrayList<>(productManager.getProducts(productManager.getProductIDsUsingImage(image)).values());
+	}
+
 	@Override
 	public List<Product> getProducts(String categoryName) throws IOException {
 		return new ArrayList<>(productManager.getProductsByCategory(categoryName));
 	}
 
+	@Override
+	public List<Product> getProducts(String categoryName, ProductOrder order, int offset, int limit) throws IOException {
+		productManager.ensureIndexesBuilt();
+		return productManager.getProducts(listingIndex.getPage(categoryName, order, offset, limit));
+	}
+
+	@Override
+	public void visitProducts(String categoryName, ProductOrder order, int offset, int limit, Consumer<ProductRow> visitor) throws IOException {
+		productManager.ensureIndexesBuilt();
+		productTable.visit(listingIndex.getPage(categoryName, order, offset, limit), visitor);
+	}
+
+	@Override
+	public int getProductCount(String categoryName) throws IOException {
+		productManager.ensureIndexesBuilt();
+		return listingIndex.getCount(categoryName);
+	}
+
 	@Override
 	public List<Product> getProducts() throws IOException {
 		return new ArrayList<>(productManager.getProducts());
 	}
 
+	@Override
+	public List<Product> search(String query, int limit) throws IOException {
+		productManager.ensureIndexesBuilt();
+		return productManager.getProducts(searchIndex.search(query, limit));
+	}
+
+	@Override
+	public void visitSearchResults(String query, int limit, Consumer<ProductRow> visitor) throws IOException {
+		productManager.ensureIndexesBuilt();
+		productTable.visit(searchIndex.search(query, limit), visitor);
+	}
+
+	@Override
+	public List<String> getSuggestions(String prefix, int limit) throws IOException {
+		productManager.ensureIndexesBuilt();
+		return suggestionIndex.suggest(prefix, limit);
+	}
+
+	@Override
+	public FacetResult filterProducts(ProductFilter filter, int offset, int limit) throws IOException {
+		productManager.ensureIndexesBuilt();
+		FacetIndex.Matches matches = facetIndex.filter(filter, offset, limit);
+		return new FacetResult(productManager.getProducts(matches.productIDs), matches.totalCount,
+				matches.categoryCounts, matches.tagCounts, matches.attributeCounts);
+	}
+
+	@Override
+	public FacetResult filterProducts(ProductFilter filter, int offset, int limit, Consumer<ProductRow> visitor) throws IOException {
+		productManager.ensureIndexesBuilt();
+		FacetIndex.Matches matches = facetIndex.filter(filter, offset, limit);
+		productTable.visit(matches.productIDs, visitor);
+		return new FacetResult(Collections.emptyList(), matches.totalCount, matches.categoryCounts, matches.tagCounts,
+				matches.attributeCounts);
+	}
+
 	@Override
 	public void saveProduct(Product product) throws IOException {
-		productManager.saveProduct(product);
+		ProductSaveQueue queue = saveQueue;
+		if (queue == null || !queue.enqueue(product)) {
+			productManager.saveProduct(product);
+		}
 	}
 
 	@Override
@@ -178,16 +316,7 @@ class PIMImpl implements PIM {
 
 	@Override
 	public List<Category> getCategoriesWithAttribute(int attributeID) throws IOException {
-		List<Category> categories = new ArrayList<>();
-		for (Category category : categoryManager.getCategories()) {
-			for (Attribute attribute : category.getAttributes()) {
-				if (attribute.getID() == attributeID) {
-					categories.add(category);
-					break;
-				}
-			}
-		}
-		return categories;
+		return categoryManager.getCategoriesWithAttribute(attributeID);
 	}
 
 	@Override
@@ -202,15 +331,12 @@ class PIMImpl implements PIM {
 
 	@Override
 	public List<Attribute> getAttributesFromCategory(String categoryName) throws IOException {
-		return new ArrayList<>(persistence.getCategoryByName(categoryName).getAttributes());
+		return categoryManager.getAttributesOfCategory(categoryName);
 	}
 
 	@Override
 	public List<Attribute> getAttributesNotInTheCategory(String categoryName) throws IOException {
-		Set<Attribute> attributes = persistence.getAttributes();
-		Set<Attribute> aOnCategory = persistence.getCategoryByName(categoryName).getAttributes();
-		attributes.removeAll(aOnCategory);
-		return new ArrayList<>(attributes);
+		return categoryManager.getAttributesNotInCategory(categoryName);
 	}
 
 	@Override
@@ -227,6 +353,7 @@ class PIMImpl implements PIM {
 		}
 
 		categoryManager.deleteCategory(categoryName);
+		productManager.removeCategoryFromIndexes(categoryName);
 	}
 
 	@Override
@@ -234,8 +361,106 @@ class PIMImpl implements PIM {
 		return tagManager.createTag(name);
 	}
 
+	@Override
+	public ChangeFeed getChangeFeed() {
+		return persistence.getChangeFeed();
+	}
+
 	@Override
 	public Category createCategory(String categoryName) throws IOException {
 		return categoryManager.createCategory(categoryName);
 	}
+
+	@Override
+	public void writeSnapshot(File file) throws IOException {
+		//Read the sequence first, so that changes made while reading the catalog are applied again when loading
+		long sequence = persistence.getChangeFeed().getLatestSequence();
+		snapshot.write(file, sequence, attributeManager.getAttributes(), categoryManager.getCategories(),
+				productManager.getProducts());
+	}
+
+	@Override
+	public boolean loadSnapshot(File file) throws IOException {
+		if (!file.isFile()) return false;
+
+		CatalogSnapshot.Contents contents = snapshot.read(file);
+
+		//The snapshot contains every attribute and category, and all products
+		categoryManager.markIndexComplete();
+		productManager.buildIndexes(contents.products);
+		persistence.catchUp(contents.sequence);
+		return true;
+	}
+
+	@Override
+	public synchronized void enableWriteBehind(File file) throws IOException {
+		if (saveQueue != null) return;
+
+		saveQueue = new ProductSaveQueue(file, productManager::saveProducts, productManager, attributeManager,
+				categoryManager, tagManager, WRITE_BEHIND_DELAY_MILLIS, WRITE_BEHIND_BATCH_SIZE);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ProductSaveQueue queue = saveQueue;
+		if (queue != null) {
+			queue.flush();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Product> getProductInformationAsync(int id) {
+		Product p = productManager.getLoadedProduct(id);
+		if (p != null) return CompletableFuture.completedFuture(p);
+
+		//Read along with the other products requested at about the same time
+		return productBatches.load(id);
+	}
+
+	@Override
+	public CompletableFuture<Map<Integer, Product>> getProductInformationAsync(Collection<Integer> ids) {
+		//All the products are known, so there is no need to wait for others
+		List<Integer> idList = new ArrayList<>(ids);
+		return Async.supply(() -> productManager.getProducts(idList), executor);
+	}
+
+	@Override
+	public CompletableFuture<Set<Product>> getPopularProductsAsync(int amount) {
+		return Async.supply(() -> getPopularProducts(amount), executor);
+	}
+
+	@Override
+	public CompletableFuture<List<Product>> getProductsAsync(String categoryName) {
+		return Async.supply(() -> getProducts(categoryName), executor);
+	}
+
+	@Override
+	public CompletableFuture<List<Product>> getProductsAsync(String categoryName, ProductOrder order, int offset, int limit) {
+		return Async.supply(() -> getProducts(categoryName, order, offset, limit), executor);
+	}
+
+	@Override
+	public CompletableFuture<List<Product>> getProductsAsync() {
+		return Async.supply(this::getProducts, executor);
+	}
+
+	@Override
+	public CompletableFuture<List<Product>> searchAsync(String query, int limit) {
+		return Async.supply(() -> search(query, limit), executor);
+	}
+
+	@Override
+	public CompletableFuture<List<String>> getSuggestionsAsync(String prefix, int limit) {
+		return Async.supply(() -> getSuggestions(prefix, limit), executor);
+	}
+
+	@Override
+	public CompletableFuture<FacetResult> filterProductsAsync(ProductFilter filter, int offset, int limit) {
+		return Async.supply(() -> filterProducts(filter, offset, limit), executor);
+	}
+
+	@Override
+	public CompletableFuture<List<Category>> getCategoriesAsync() {
+		return Async.supply(this::getCategories, executor);
+	}
 }
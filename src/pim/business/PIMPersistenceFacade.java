@@ -1,7 +1,9 @@
 package pim.business;
 
 import pim.persistence.DataCache;
+import shared.ChangeFeed;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Set;
@@ -23,6 +25,15 @@ public interface PIMPersistenceFacade {
 	 */
 	Product getProductByID(int id) throws IOException;
 
+	/**
+	 * Get the products with the specified ids, reading them all at once.
+	 *
+	 * @param ids the ids of the products
+	 * @return the products with the specified ids that exist, in no particular order
+	 * @throws IOException if the operation fails
+	 */
+	Set<Product> getProductsByIDs(Collection<Integer> ids) throws IOException;
+
 	/**
 	 * Get the product with the specified name.
 	 *
@@ -78,10 +89,20 @@ public interface PIMPersistenceFacade {
 	 * Save the specified products. If any of the products have no ids, new ones will be generated.
 	 *
 	 * @param products the products to save
-	 * @throws IOException if the operation fails
+	 * @throws PartialSaveException if some of the products could not be saved while the others were
+	 * @throws IOException          if the operation fails
 	 */
 	void saveProducts(Collection<Product> products) throws IOException;
 
+	/**
+	 * Set the number of entities that share a transaction when saving several products, attributes, categories, tags
+	 * or images at once. An entity that cannot be saved does not prevent the others in its transaction from being
+	 * saved. Larger groups make bulk saves faster, but more is lost if a transaction fails to commit.
+	 *
+	 * @param size the number of entities to commit at a time, at least 1
+	 */
+	void setGroupCommitSize(int size);
+
 	/**
 	 * Delete the product with the specified id.
 	 *
@@ -234,6 +255,15 @@ public interface PIMPersistenceFacade {
 	 */
 	Set<Image> getImages() throws IOException;
 
+	/**
+	 * Get the data of the image with the specified id.
+	 *
+	 * @param id the id of the image
+	 * @return the data of the image, or null if no such image exists
+	 * @throws IOException if the operation fails
+	 */
+	BufferedImage getImageData(int id) throws IOException;
+
 	/**
 	 * Save the specified image.
 	 *
@@ -264,6 +294,32 @@ public interface PIMPersistenceFacade {
 	 */
 	void setCache(DataCache cache);
 
+	/**
+	 * Get the feed of all changes made to persistence.
+	 *
+	 * @return the change feed
+	 */
+	ChangeFeed getChangeFeed();
+
+	/**
+	 * Get whether this facade is currently notified of all changes made to persistence by other instances of the
+	 * application. While this is the case, the data that has been read into memory is kept up to date through the
+	 * {@link DataCache}, and can be used without reading it again.
+	 *
+	 * @return true if changes made elsewhere are being received, false otherwise
+	 */
+	boolean isNotifiedOfChanges();
+
+	/**
+	 * Apply all changes made to persistence after the specified sequence number in the {@link #getChangeFeed() change
+	 * feed} to the data cache. This is used for bringing data that was read from somewhere other than persistence up
+	 * to date.
+	 *
+	 * @param sequence the sequence number at which the data was read
+	 * @throws IOException if the operation fails
+	 */
+	void catchUp(long sequence) throws IOException;
+
 	/**
 	 * Dispose all resources used by this persistence facade. This includes closing all currently open connections.
 	 */
@@ -0,0 +1,38 @@
+package pim.business;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Signals that some of the entities of a save could not be saved, while the others were. The entities are saved in
+ * groups, so the failure of one does not undo the saves of the others.
+ *
+ * @author Kasper
+ */
+public class PartialSaveException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Collection<?> unsaved;
+
+	/**
+	 * Constructs a new partial save exception.
+	 *
+	 * @param message the detail message
+	 * @param unsaved the entities that were not saved
+	 * @param cause   the failure of the first entity that was not saved
+	 */
+	public PartialSaveException(String message, Collection<?> unsaved, Throwable cause) {
+		super(message, cause);
+		this.unsaved = unsaved;
+	}
+
+	/**
+	 * Get the entities that were not saved. All other entities of the save were saved.
+	 *
+	 * @return the entities that were not saved
+	 */
+	public Collection<?> getUnsaved() {
+		return unsaved;
+	}
+}
@@ -4,21 +4,38 @@ import java.util.*;
 
 /**
  * A business entity representation of a product in the PIM.
+ * <p>
+ * Products are safe for use by multiple threads. The basic data fields are volatile, while the collections of the
+ * product are guarded by the product itself, making each product its own lock. Listeners are always notified after
+ * this lock has been released, so that a product never holds its own lock while waiting for that of another object.
+ * <p>
+ * Besides the getters returning copies, the collections can be read through views. The categories, tags and images
+ * are held in unmodifiable collections that are replaced rather than modified, so their views are the collections
+ * themselves, and reading them neither copies nor locks. The attribute values are kept in a table that is modified in
+ * place, so their view is a snapshot that is built on first access after a modification and then reused.
  *
  * @author Niels
  * @author Kasper
  */
 public class Product implements CategoryChangeListener {
 
-	private final Set<ProductChangeListener> changeListeners;
-	private int id;
-	private String name;
-	private String description;
-	private double price;
-	private Set<Category> categories;
-	private Set<Attribute.AttributeValue> attributes;
-	private Set<Tag> tags;
-	private Set<Image> images;
+	private final WeakListenerSet<ProductChangeListener> changeListeners;
+	private final AttributeValueTable attributes;
+
+	/* Unmodifiable collections, replaced with modified copies while holding the lock of this product */
+	private volatile List<Category> categories;
+	private volatile Set<Tag> tags;
+	private volatile Set<Image> images;
+	private volatile int id;
+	private volatile String name;
+	private volatile String description;
+	private volatile double price;
+
+	/* The version of the row this product was last read from, or null if it may differ from it */
+	private volatile String persistedVersion;
+
+	/* Cached read-only view of the attribute values, or null if it must be rebuilt after a modification */
+	private volatile List<Attribute.AttributeValue> attributesView;
 
 	/**
 	 * Constructs a new product.
@@ -34,12 +51,12 @@ public class Product implements CategoryChangeListener {
 		this.description = description;
 		this.price = price;
 
-		//Initialize sets
-		categories = new HashSet<>();
-		attributes = new HashSet<>();
-		images = new HashSet<>();
-		tags = new HashSet<>();
-		changeListeners = new HashSet<>();
+		//Initialize collections
+		categories = Collections.emptyList();
+		attributes = new AttributeValueTable();
+		images = Collections.emptySet();
+		tags = Collections.emptySet();
+		changeListeners = new WeakListenerSet<>();
 	}
 
 	/**
@@ -66,12 +83,31 @@ public class Product implements CategoryChangeListener {
 	 *
 	 * @param id the id of the product
 	 */
-	public void setID(int id) {
+	public synchronized void setID(int id) {
 		if (this.id < 0) {
 			this.id = id;
 		}
 	}
 
+	/**
+	 * Get the version of the persisted row that this product was last read from, unchanged.
+	 *
+	 * @return the version, or null if it is not known or this product may have been changed since
+	 */
+	String getPersistedVersion() {
+		return persistedVersion;
+	}
+
+	/**
+	 * Set the version of the persisted row that this product was last read from. This is cleared when the product is
+	 * saved, as a save that fails would otherwise leave changes in memory that persistence does not have.
+	 *
+	 * @param persistedVersion the version, or null if it is not known
+	 */
+	void setPersistedVersion(String persistedVersion) {
+		this.persistedVersion = persistedVersion;
+	}
+
 	/**
 	 * Get the name of this product.
 	 *
@@ -133,18 +169,25 @@ public class Product implements CategoryChangeListener {
 	 * @param category the category to add
 	 */
 	public void addCategory(Category category) {
-		boolean categoryWasNew = categories.add(category);
-		if (!categoryWasNew) return;
-
-		//Listen to category
-		category.addChangeListener(this);
-
-		//When adding a new category, add attribute values (default values) for all new attributes
-		Set<Attribute> newAttributes = category.getAttributes();
-		Set<Attribute> allAttributes = this.getAllAttributes();
-		for (Attribute attrib : newAttributes) {
-			if (!allAttributes.contains(attrib)) {
-				attributes.add(attrib.createValue());
+		//No changes to the category can be delivered while we hold its notification lock, so that no change is either
+		//missed or counted twice
+		synchronized (category.getNotificationLock()) {
+			synchronized (this) {
+				if (categories.contains(category)) return;
+				List<Category> newCategories = new ArrayList<>(categories);
+				newCategories.add(category);
+				categories = Collections.unmodifiableList(newCategories);
+
+				//Listen to category
+				Set<Attribute> newAttributes = category.attachListener(this);
+
+				//When adding a new category, add attribute values (default values) for all new attributes. Attributes
+				//shared with other categories of this product only have their reference count incremented
+				for (Attribute attrib : newAttributes) {
+					if (attributes.retain(attrib)) {
+						attributesView = null;
+					}
+				}
 			}
 		}
 	}
@@ -156,15 +199,25 @@ public class Product implements CategoryChangeListener {
 	 * @param category the category to remove
 	 */
 	public void removeCategory(Category category) {
-		boolean categoryWasRemoved = categories.remove(category);
-		if (!categoryWasRemoved) return;
-
-		//Stop listening to category
-		category.removeChangeListener(this);
-
-		//Remove attribute values that are no longer valid for this product
-		Set<Attribute> allAttributes = this.getAllCategoryAttributes();
-		attributes.removeIf(attributeValue -> !allAttributes.contains(attributeValue.getParent()));
+		synchronized (category.getNotificationLock()) {
+			synchronized (this) {
+				if (!categories.contains(category)) return;
+				List<Category> newCategories = new ArrayList<>(categories);
+				newCategories.remove(category);
+				categories = Collections.unmodifiableList(newCategories);
+
+				//Stop listening to category
+				Set<Attribute> oldAttributes = category.detachListener(this);
+
+				//Remove attribute values that are no longer valid for this product, that is those attributes that are
+				//not also in another category of this product
+				for (Attribute attrib : oldAttributes) {
+					if (attributes.release(attrib)) {
+						attributesView = null;
+					}
+				}
+			}
+		}
 	}
 
 	/**
@@ -177,13 +230,32 @@ public class Product implements CategoryChangeListener {
 	}
 
 	/**
-	 * Set the categories of this product to the ones in the specified collection.
+	 * Get a read-only view of the categories of this product. The view is the collection held by this product, which
+	 * is replaced rather than modified, so it will not reflect later modifications.
+	 *
+	 * @return an unmodifiable view of the categories of this product
+	 */
+	public List<Category> getCategoriesView() {
+		return categories;
+	}
+
+	/**
+	 * Get the number of categories of this product.
+	 *
+	 * @return the number of categories of this product
+	 */
+	public int getCategoryCount() {
+		return categories.size();
+	}
+
+	/**
+	 * Set the categories of this product to the ones in the specified collection. Each category is added or removed
+	 * separately, as the notification lock of a category must be acquired before the lock of this product.
 	 *
 	 * @param categories the categories to set
 	 */
 	public void setCategories(Collection<Category> categories) {
 		//Remove categories
-		//Prevent concurrent modification
 		List<Category> toRemove = new ArrayList<>();
 		for (Category c : this.categories) {
 			if (!categories.contains(c)) {
@@ -219,17 +291,15 @@ public class Product implements CategoryChangeListener {
 	 * @param value     the value to set
 	 * @throws IllegalArgumentException if the value is illegal for the specified attribute
 	 */
-	public void setAttribute(Attribute attribute, Object value) {
+	public synchronized void setAttribute(Attribute attribute, Object value) {
 		try {
 			//Try to construct attribute value. If it fails, the rest is skipped
 			Attribute.AttributeValue aVal = attribute.createValue(value);
 
-			//Remove the existing value for this attribute
-			boolean attributeExists = attributes.removeIf(attributeValue -> attributeValue.getParent() == attribute);
-			if (!attributeExists) return;
-
-			//Add new value
-			attributes.add(aVal);
+			//Replace the existing value for this attribute, if any
+			if (attributes.replace(aVal)) {
+				attributesView = null;
+			}
 		} catch (IllegalArgumentException e) {
 			throw new IllegalArgumentException("Illegal value for attribute!", e);
 		}
@@ -240,34 +310,48 @@ public class Product implements CategoryChangeListener {
 	 *
 	 * @return the values for all the attributes of this product
 	 */
-	public List<Attribute.AttributeValue> getAttributeValues() {
-		return new ArrayList<>(attributes);
+	public synchronized List<Attribute.AttributeValue> getAttributeValues() {
+		return attributes.values();
 	}
 
 	/**
-	 * Get a set containing all the attributes currently registered on this product.
+	 * Get a read-only view of the values for all the attributes of this product. The view is a snapshot that will not
+	 * reflect later modifications, and it is reused until the attribute values change. A copy is required here, as the
+	 * table of values is modified in place under the lock of this product, and could not be read safely without it.
 	 *
-	 * @return the set of all the product's attributes
+	 * @return an unmodifiable view of the values for all the attributes of this product
 	 */
-	private Set<Attribute> getAllAttributes() {
-		Set<Attribute> attribs = new HashSet<>();
-		for (Attribute.AttributeValue a : attributes) {
-			attribs.add(a.getParent());
+	public List<Attribute.AttributeValue> getAttributeValuesView() {
+		List<Attribute.AttributeValue> view = attributesView;
+		if (view == null) {
+			synchronized (this) {
+				if (attributesView == null) {
+					attributesView = Collections.unmodifiableList(attributes.values());
+				}
+				view = attributesView;
+			}
 		}
-		return attribs;
+
+		return view;
 	}
 
 	/**
-	 * Get a set containing all the attributes of the categories of this product.
+	 * Get the number of attribute values of this product.
 	 *
-	 * @return the set of all the product's attributes
+	 * @return the number of attribute values of this product
 	 */
-	private Set<Attribute> getAllCategoryAttributes() {
-		Set<Attribute> attribs = new HashSet<>();
-		for (Category c : categories) {
-			attribs.addAll(c.getAttributes());
-		}
-		return attribs;
+	public synchronized int getAttributeValueCount() {
+		return attributes.size();
+	}
+
+	/**
+	 * Test whether this product has a value for the specified attribute.
+	 *
+	 * @param attribute the attribute to test for
+	 * @return true if this product has a value for the attribute, false otherwise
+	 */
+	public synchronized boolean hasAttribute(Attribute attribute) {
+		return attributes.contains(attribute);
 	}
 
 	/**
@@ -275,8 +359,12 @@ public class Product implements CategoryChangeListener {
 	 *
 	 * @param tag the tag to add
 	 */
-	public void addTag(Tag tag) {
-		tags.add(tag);
+	public synchronized void addTag(Tag tag) {
+		if (tags.contains(tag)) return;
+
+		Set<Tag> newTags = new HashSet<>(tags);
+		newTags.add(tag);
+		tags = Collections.unmodifiableSet(newTags);
 	}
 
 	/**
@@ -285,8 +373,13 @@ public class Product implements CategoryChangeListener {
 	 * @param tag the tag to remove
 	 * @return true if this product contained the tag
 	 */
-	public boolean removeTag(Tag tag) {
-		return tags.remove(tag);
+	public synchronized boolean removeTag(Tag tag) {
+		if (!tags.contains(tag)) return false;
+
+		Set<Tag> newTags = new HashSet<>(tags);
+		newTags.remove(tag);
+		tags = Collections.unmodifiableSet(newTags);
+		return true;
 	}
 
 	/**
@@ -298,17 +391,35 @@ public class Product implements CategoryChangeListener {
 		return new HashSet<>(tags);
 	}
 
+	/**
+	 * Get a read-only view of the tags of this product. The view is the collection held by this product, which is
+	 * replaced rather than modified, so it will not reflect later modifications.
+	 *
+	 * @return an unmodifiable view of the tags of this product
+	 */
+	public Set<Tag> getTagsView() {
+		return tags;
+	}
+
+	/**
+	 * Get the number of tags of this product.
+	 *
+	 * @return the number of tags of this product
+	 */
+	public int getTagCount() {
+		return tags.size();
+	}
+
 	/**
 	 * Set the tags of this product to the ones in the specified collection.
 	 *
 	 * @param tags the tags to set
 	 */
-	public void setTags(Collection<Tag> tags) {
-		//Remove tags
-		this.tags.removeIf(tag -> !tags.contains(tag));
-
-		//Add tags
-		this.tags.addAll(tags);
+	public synchronized void setTags(Collection<Tag> tags) {
+		Set<Tag> newTags = new HashSet<>(tags);
+		if (!newTags.equals(this.tags)) {
+			this.tags = Collections.unmodifiableSet(newTags);
+		}
 	}
 
 	/**
@@ -327,7 +438,22 @@ public class Product implements CategoryChangeListener {
 	 * @param image the image to add
 	 */
 	public void addImage(Image image) {
-		this.images.add(image);
+		boolean added;
+		synchronized (this) {
+			added = !images.contains(image);
+			if (added) {
+				Set<Image> newImages = new HashSet<>(images);
+				newImages.add(image);
+				images = Collections.unmodifiableSet(newImages);
+			}
+		}
+
+		//Notify listeners outside of the lock
+		if (added) {
+			for (ProductChangeListener listener : changeListeners.snapshot()) {
+				listener.imageAdded(this, image);
+			}
+		}
 	}
 
 	/**
@@ -336,12 +462,20 @@ public class Product implements CategoryChangeListener {
 	 * @param image the image to remove
 	 */
 	public void removeImage(Image image) {
-		boolean removed = this.images.remove(image);
+		boolean removed;
+		synchronized (this) {
+			removed = images.contains(image);
+			if (removed) {
+				Set<Image> newImages = new HashSet<>(images);
+				newImages.remove(image);
+				images = Collections.unmodifiableSet(newImages);
+			}
+		}
 
-		//Notify listeners
+		//Notify listeners outside of the lock
 		if (removed) {
-			for (ProductChangeListener listener : changeListeners) {
-				listener.imageRemoved(image);
+			for (ProductChangeListener listener : changeListeners.snapshot()) {
+				listener.imageRemoved(this, image);
 			}
 		}
 	}
@@ -355,21 +489,80 @@ public class Product implements CategoryChangeListener {
 		return new HashSet<>(images);
 	}
 
+	/**
+	 * Get a read-only view of the images of this product. The view is the collection held by this product, which is
+	 * replaced rather than modified, so it will not reflect later modifications.
+	 *
+	 * @return an unmodifiable view of the images of this product
+	 */
+	public Set<Image> getImagesView() {
+		return images;
+	}
+
+	/**
+	 * Get the number of images of this product.
+	 *
+	 * @return the number of images of this product
+	 */
+	public int getImageCount() {
+		return images.size();
+	}
+
+	/**
+	 * Test whether this product contains the specified image.
+	 *
+	 * @param image the image to test for
+	 * @return true if this product contains the image, false otherwise
+	 */
+	public boolean containsImage(Image image) {
+		return images.contains(image);
+	}
+
 	/**
 	 * Set the images of this product to the ones in the specified collection.
 	 *
 	 * @param images the images to set
 	 */
 	public void setImages(Collection<Image> images) {
-		//Remove images
-		this.images.removeIf(image -> !images.contains(image));
+		List<Image> removed = new ArrayList<>();
+		List<Image> added = new ArrayList<>();
+
+		synchronized (this) {
+			Set<Image> newImages = new HashSet<>(images);
+
+			//Remove images
+			for (Image image : this.images) {
+				if (!newImages.contains(image)) {
+					removed.add(image);
+				}
+			}
+
+			//Add images
+			for (Image image : newImages) {
+				if (!this.images.contains(image)) {
+					added.add(image);
+				}
+			}
 
-		//Add images
-		this.images.addAll(images);
+			if (!removed.isEmpty() || !added.isEmpty()) {
+				this.images = Collections.unmodifiableSet(newImages);
+			}
+		}
+
+		//Notify listeners outside of the lock
+		for (ProductChangeListener listener : changeListeners.snapshot()) {
+			for (Image image : removed) {
+				listener.imageRemoved(this, image);
+			}
+			for (Image image : added) {
+				listener.imageAdded(this, image);
+			}
+		}
 	}
 
 	/**
-	 * Add a change listener to this product.
+	 * Add a change listener to this product. The listener is held through a weak reference, so the caller must keep it
+	 * reachable for as long as it should be notified.
 	 *
 	 * @param listener the listener to add
 	 */
@@ -392,18 +585,22 @@ public class Product implements CategoryChangeListener {
 	}
 
 	@Override
-	public void attributeAdded(Attribute attribute) {
-		//Ensure that the attribute is not already present
-		if (!getAllAttributes().contains(attribute)) {
-			attributes.add(attribute.createValue());
+	public synchronized void attributesChanged(Category category, Collection<Attribute> added,
+											   Collection<Attribute> removed) {
+		boolean changed = false;
+
+		//Only removes a value if the attribute is not present through another category
+		for (Attribute attribute : removed) {
+			changed |= attributes.release(attribute);
 		}
-	}
 
-	@Override
-	public void attributeRemoved(Attribute attribute) {
-		//Ensure that the attribute is not present in another category before removing
-		if (!getAllCategoryAttributes().contains(attribute)) {
-			attributes.removeIf(attributeValue -> attributeValue.getParent() == attribute);
+		//Only adds a value if the attribute is not already present through another category
+		for (Attribute attribute : added) {
+			changed |= attributes.retain(attribute);
+		}
+
+		if (changed) {
+			attributesView = null;
 		}
 	}
 }
@@ -1,16 +1,25 @@
 package pim.business;
 
 /**
- * Interface describing an object that can listen to changes on a product in terms of removing images.
+ * Interface describing an object that can listen to changes on a product in terms of adding and removing images.
  *
  * @author Kasper
  */
 public interface ProductChangeListener {
 
+	/**
+	 * Called when an image has been added to a product.
+	 *
+	 * @param product the product that the image was added to
+	 * @param image   the image that was added
+	 */
+	void imageAdded(Product product, Image image);
+
 	/**
 	 * Called when an image has been removed from a product.
 	 *
-	 * @param image the image that was removed
+	 * @param product the product that the image was removed from
+	 * @param image   the image that was removed
 	 */
-	void imageRemoved(Image image);
+	void imageRemoved(Product product, Image image);
 }
@@ -0,0 +1,89 @@
+package pim.business;
+
+import java.util.*;
+
+/**
+ * A filter describing which products to find in the PIM. A product matches the filter if it is in one of the chosen
+ * categories, has one of the chosen tags, has one of the chosen values for every attribute the filter has values for,
+ * and its price is within the chosen range. Criteria that have not been set do not restrict the products.
+ *
+ * @author Kasper
+ */
+public class ProductFilter {
+
+	private final Set<String> categories;
+	private final Set<String> tags;
+	private final Map<Integer, Set<Object>> attributeValues;
+	private double minPrice;
+	private double maxPrice;
+
+	/**
+	 * Constructs a new filter matching all products.
+	 */
+	public ProductFilter() {
+		categories = new HashSet<>();
+		tags = new HashSet<>();
+		attributeValues = new HashMap<>();
+		minPrice = Double.NEGATIVE_INFINITY;
+		maxPrice = Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Add a category to the categories that products may be in.
+	 *
+	 * @param categoryName the name of the category
+	 */
+	public void addCategory(String categoryName) {
+		categories.add(categoryName);
+	}
+
+	/**
+	 * Add a tag to the tags that products may have.
+	 *
+	 * @param tagName the name of the tag
+	 */
+	public void addTag(String tagName) {
+		tags.add(tagName);
+	}
+
+	/**
+	 * Add a value to the values that products may have for the specified attribute.
+	 *
+	 * @param attribute the attribute
+	 * @param value     the value
+	 */
+	public void addAttributeValue(Attribute attribute, Object value) {
+		attributeValues.computeIfAbsent(attribute.getID(), id -> new HashSet<>()).add(value);
+	}
+
+	/**
+	 * Set the range of prices that products may have.
+	 *
+	 * @param minPrice the minimum price, inclusive
+	 * @param maxPrice the maximum price, exclusive
+	 */
+	public void setPriceRange(double minPrice, double maxPrice) {
+		this.minPrice = minPrice;
+		this.maxPrice = maxPrice;
+	}
+
+	Set<String> getCategories() {
+		return categories;
+	}
+
+	Set<String> getTags() {
+		return tags;
+	}
+
+	Map<Integer, Set<Object>> getAttributeValues() {
+		return attributeValues;
+	}
+
+	double getMinPrice() {
+		return minPrice;
+	}
+
+	double getMaxPrice() {
+		return maxPrice;
+	}
+}
@@ -0,0 +1,63 @@
+package pim.business;
+
+import java.util.Collection;
+
+/**
+ * Interface describing an in-memory index over the products in the PIM. Indexes are registered with the product
+ * manager, which builds them from all products the first time they are needed, and keeps them up to date whenever
+ * products are saved or deleted, or categories are deleted.
+ * <p>
+ * The product manager never calls an index from more than one thread at a time, but implementations must still allow
+ * queries to run concurrently with updates.
+ *
+ * @author Kasper
+ */
+interface ProductIndex {
+
+	/**
+	 * Replace the contents of this index with the specified products.
+	 *
+	 * @param products all products in the PIM
+	 */
+	void rebuild(Collection<Product> products);
+
+	/**
+	 * Add the specified product to this index, or update it if it is already in the index.
+	 *
+	 * @param product the product that was saved
+	 */
+	void update(Product product);
+
+	/**
+	 * Add or update all the specified products in this index. Indexes that are expensive to change should override
+	 * this, so that a large batch of products, such as those saved by a synchronization, is applied in one step.
+	 *
+	 * @param products the products that were saved
+	 */
+	default void update(Collection<Product> products) {
+		for (Product product : products) {
+			update(product);
+		}
+	}
+
+	/**
+	 * Remove the product with the specified id from this index. The product has been deleted. Nothing happens if the
+	 * product is not in the index. Indexes that cannot remove a single product do not override this, and are rebuilt
+	 * instead.
+	 *
+	 * @param productID the id of the deleted product
+	 * @return true if the product was removed, or false if this index must be rebuilt to remove it
+	 */
+	default boolean remove(int productID) {
+		return false;
+	}
+
+	/**
+	 * Remove the specified category from all products in this index. The category has been deleted, which removes it
+	 * from the products without saving them.
+	 *
+	 * @param categoryName the name of the deleted category
+	 */
+	default void removeCategory(String categoryName) {
+	}
+}
@@ -3,18 +3,49 @@ package pim.business;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Manages loading products from the persistence layer and storing them in memory for faster retrieval. This manager
- * ensures that only one instance of any product is made.
+ * ensures that only one instance of any product is made, even when products are loaded by multiple threads at once.
+ * Products and images are only held weakly, so that the ones no longer referenced by the rest of the application can be
+ * reclaimed.
+ * <p>
+ * The manager also maintains the registered {@link ProductIndex product indexes}. These are built from all products the
+ * first time they are needed, and are updated whenever products are saved or deleted. Index maintenance happens under a
+ * single lock, so that a save taking place while the indexes are being built is applied after the build rather than
+ * lost.
+ * <p>
+ * Concurrent reads of the same product, the same category or all products share a single read from persistence, see
+ * {@link SingleFlight}. Without this, a popular product requested by many threads at once would be read by each of
+ * them, and each read would overwrite the same product instance in turn. Lookups of products that do not exist are
+ * answered without reading from persistence when possible, see {@link ExistenceFilter}.
  *
  * @author Kasper
  */
 class ProductManager implements ProductChangeListener {
 
-	private final Map<Integer, Product> products;
+	/**
+	 * The number of products in memory above which reloading them reads all products at once.
+	 */
+	private static final int RELOAD_ALL_THRESHOLD = 50;
+
+	private final WeakValueMap<Integer, Product> products;
+	private final WeakValueMap<Integer, Image> images;
+	/**
+	 * Index from the id of every image in use to the ids of the products using it.
+	 */
+	private final ConcurrentMap<Integer, Set<Integer>> imageOwners;
 	private final PIMPersistenceFacade persistence;
-	private HashMap<Integer, Image> images;
+	private final List<ProductIndex> indexes;
+	private final Object indexLock;
+	private volatile boolean indexesBuilt;
+	private final SingleFlight<Integer, Product> productLoads;
+	private final SingleFlight<String, Set<Product>> categoryLoads;
+	private final SingleFlight<Boolean, Set<Product>> allLoads;
+	private final ExistenceFilter<Integer> productExistence;
 
 	/**
 	 * Constructs a new product manager.
@@ -22,9 +53,16 @@ class ProductManager implements ProductChangeListener {
 	 * @param persistence the persistence facade
 	 */
 	public ProductManager(PIMPersistenceFacade persistence) {
-		products = new HashMap<>();
-		images = new HashMap<>();
+		products = new WeakValueMap<>();
+		images = new WeakValueMap<>();
+		imageOwners = new ConcurrentHashMap<>();
 		this.persistence = persistence;
+		indexes = new CopyOnWriteArrayList<>();
+		indexLock = new Object();
+		productLoads = new SingleFlight<>();
+		categoryLoads = new SingleFlight<>();
+		allLoads = new SingleFlight<>();
+		productExistence = new ExistenceFilter<>(() -> persistence.isNotifiedOfChanges());
 	}
 
 	/**
@@ -38,73 +76,106 @@ class ProductManager implements ProductChangeListener {
 	 * @return the created product
 	 */
 	public Product constructProduct(int id, String name, String description, double price) {
-		Product p;
+		return constructProduct(id, name, description, price, null);
+	}
 
-		if (products.get(id) == null) {
-			p = new Product(id, name, description, price);
-			p.addChangeListener(this);
-			products.put(id, p);
-		} else {
-			p = products.get(id);
-			p.setName(name);
-			p.setDescription(description);
-			p.setPrice(price);
-		}
+	/**
+	 * Construct a new product read from the specified version of its row, or update the existing one with the same id.
+	 * Knowing the version allows later reads of the product to be skipped, for as long as the row is not changed.
+	 *
+	 * @param id          the id of the product
+	 * @param name        the name of the product
+	 * @param description the description of the product
+	 * @param price       the price of the product
+	 * @param version     the version of the row the data was read from, or null if it is not known
+	 * @return the constructed product
+	 */
+	public Product constructProduct(int id, String name, String description, double price, String version) {
+		Product p = products.computeIfAbsent(id, i -> {
+			Product newProduct = new Product(i, name, description, price);
+			newProduct.addChangeListener(this);
+			return newProduct;
+		});
+
+		//If the product already existed, update its data. For a new product this has no effect
+		p.setName(name);
+		p.setDescription(description);
+		p.setPrice(price);
+		p.setPersistedVersion(version);
 
 		return p;
 	}
 
-	public Set<Product> getPopularProducts(int amount) throws IOException {
-		Set<ProductReview> reviews = persistence.getProductReviews();
-		HashMap<Integer, ArrayList<Double>> reviewMap = new HashMap<>();
-		Set<Integer> popularProductIds = new HashSet<>();
-		Set<Product> popularProducts = new HashSet<>();
-
-		for (ProductReview next : reviews) {
-			int productId = next.getProductid();
-			Date date = next.getTime();
-			int rating = next.getRating();
-
-			Calendar c = Calendar.getInstance();
-			c.add(Calendar.MONTH, -2);
-			Date currentDate = c.getTime();
-
-			if (!reviewMap.containsKey(productId)) {
-				reviewMap.put(productId, new ArrayList<Double>());
-			}
-
-			if (date.compareTo(currentDate) > 0) {
-				reviewMap.get(productId).add((double) next.getRating());
-			} else {
-				reviewMap.get(productId).add(next.getRating() * 0.5);
-			}
+	/**
+	 * Get the version of the row that the product with the specified id in memory was last read from.
+	 *
+	 * @param productID the id of the product
+	 * @return the version, or null if the product is not in memory or its version is not known
+	 */
+	public String getProductVersion(int productID) {
+		Product p = products.get(productID);
+		return p == null ? null : p.getPersistedVersion();
+	}
 
+	/**
+	 * Get the product with the specified id from memory, if it was last read from the specified version of its row.
+	 *
+	 * @param productID the id of the product
+	 * @param version   the current version of the row
+	 * @return the product, or null if it is not in memory or must be read again
+	 */
+	public Product getCurrentProduct(int productID, String version) {
+		Product p = products.get(productID);
+		if (p != null && version.equals(p.getPersistedVersion())) {
+			return p;
 		}
+		return null;
+	}
 
-		for (int i = 0; i < amount; i++) {
-			double biggest = 0;
-			int productId = 0;
-			for (Map.Entry<Integer, ArrayList<Double>> entry : reviewMap.entrySet()) {
-				double ratingSum = 0;
-				for (int j = 0; j < entry.getValue().size(); j++) {
-					ratingSum += entry.getValue().get(j);
-				}
-				ratingSum = ratingSum / entry.getValue().size();
-				if (ratingSum > biggest) {
-					productId = entry.getKey();
-					biggest = ratingSum;
-				}
-			}
+	/**
+	 * Get the popularity of every reviewed product. The popularity of a product is its average rating, where ratings
+	 * older than two months only count half.
+	 *
+	 * @return a map from the ids of reviewed products to their popularity
+	 * @throws IOException if something goes wrong
+	 */
+	public Map<Integer, Double> getPopularity() throws IOException {
+		Calendar c = Calendar.getInstance();
+		c.add(Calendar.MONTH, -2);
+		Date recent = c.getTime();
 
-			reviewMap.remove(productId);
-			popularProductIds.add(productId);
+		//Sum and count of the weighted ratings of each product
+		Map<Integer, double[]> ratings = new HashMap<>();
+		for (ProductReview review : persistence.getProductReviews()) {
+			double weight = review.getTime().compareTo(recent) > 0 ? 1 : 0.5;
+			double[] sum = ratings.computeIfAbsent(review.getProductid(), id -> new double[2]);
+			sum[0] += review.getRating() * weight;
+			sum[1]++;
+		}
 
+		Map<Integer, Double> popularity = new HashMap<>();
+		for (Map.Entry<Integer, double[]> entry : ratings.entrySet()) {
+			popularity.put(entry.getKey(), entry.getValue()[0] / entry.getValue()[1]);
 		}
+		return popularity;
+	}
+
+	/**
+	 * Get the most popular products, as determined by {@link #getPopularity()}.
+	 *
+	 * @param amount the maximum number of products to get
+	 * @return the most popular products
+	 * @throws IOException if something goes wrong
+	 */
+	public Set<Product> getPopularProducts(int amount) throws IOException {
+		List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(getPopularity().entrySet());
+		ranked.sort(Map.Entry.<Integer, Double>comparingByValue().reversed());
 
-		for (Integer popularProductId : popularProductIds) {
-			popularProducts.add(persistence.getProductByID(popularProductId));
+		List<Integer> ids = new ArrayList<>();
+		for (int i = 0; i < amount && i < ranked.size(); i++) {
+			ids.add(ranked.get(i).getKey());
 		}
-		return popularProducts;
+		return new HashSet<>(getProducts(ids).values());
 	}
 
 	/**
@@ -114,7 +185,8 @@ class ProductManager implements ProductChangeListener {
 	 * @throws IOException if something goes wrong
 	 */
 	public Set<Product> getProducts() throws IOException {
-		return persistence.getProducts();
+		//The set is shared by all threads that were waiting for it, so each gets a copy
+		return new HashSet<>(allLoads.load(true, persistence::getProducts));
 	}
 
 	/**
@@ -124,9 +196,155 @@ class ProductManager implements ProductChangeListener {
 	 * @return the product with the specified id, or null if no such product could be retrieved
 	 * @throws IOException if something goes wrong
 	 */
-
 	public Product getProduct(int productID) throws IOException {
-		return persistence.getProductByID(productID);
+		Product p = getLoadedProduct(productID);
+		if (p != null) return p;
+
+		return loadProduct(productID);
+	}
+
+	/**
+	 * Get the product with the specified id if it is in memory and up to date, without reading it from persistence.
+	 *
+	 * @param productID the id of the product
+	 * @return the product with the specified id, or null if it must be read from persistence
+	 */
+	public Product getLoadedProduct(int productID) {
+		//Products in memory are kept up to date for as long as changes made elsewhere are received
+		if (persistence.isNotifiedOfChanges()) {
+			return products.get(productID);
+		}
+		return null;
+	}
+
+	/**
+	 * Get the products with the specified ids. The products that are not in memory, or may not be up to date, are
+	 * read from persistence all at once.
+	 *
+	 * @param productIDs the ids of the products
+	 * @return the products by id, leaving out ids of products that do not exist
+	 * @throws IOException if something goes wrong
+	 */
+	public Map<Integer, Product> getProducts(Collection<Integer> productIDs) throws IOException {
+		Map<Integer, Product> result = new HashMap<>();
+		Set<Integer> missing = new HashSet<>();
+		for (int id : productIDs) {
+			Product p = getLoadedProduct(id);
+			if (p != null) {
+				result.put(id, p);
+			} else {
+				missing.add(id);
+			}
+		}
+
+		result.putAll(loadProducts(missing));
+		return result;
+	}
+
+	/**
+	 * Read the product with the specified id from persistence, or wait for the read of it in progress.
+	 *
+	 * @param productID the id of the product
+	 * @return the product with the specified id, or null if it does not exist
+	 * @throws IOException if something goes wrong
+	 */
+	private Product loadProduct(int productID) throws IOException {
+		if (productExistence.isKnownMissing(productID)) return null;
+
+		long version = productExistence.getVersion();
+		Product p = productLoads.load(productID, () -> persistence.getProductByID(productID));
+		if (p == null) {
+			productExistence.markMissing(productID, version);
+		}
+		return p;
+	}
+
+	/**
+	 * Read the products with the specified ids from persistence at once, leaving out the ones known not to exist.
+	 *
+	 * @param productIDs the ids of the products
+	 * @return the products that exist by id
+	 * @throws IOException if something goes wrong
+	 */
+	private Map<Integer, Product> loadProducts(Set<Integer> productIDs) throws IOException {
+		Set<Integer> ids = new HashSet<>();
+		for (int id : productIDs) {
+			if (!productExistence.isKnownMissing(id)) {
+				ids.add(id);
+			}
+		}
+		if (ids.size() == 1) {
+			//A single product can share a read in progress
+			int id = ids.iterator().next();
+			Product p = loadProduct(id);
+			return p == null ? new HashMap<>() : Collections.singletonMap(id, p);
+		}
+
+		Map<Integer, Product> loaded = new HashMap<>();
+		long version = productExistence.getVersion();
+		for (Product p : persistence.getProductsByIDs(ids)) {
+			loaded.put(p.getID(), p);
+		}
+		for (int id : ids) {
+			if (!loaded.containsKey(id)) {
+				productExistence.markMissing(id, version);
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Read the product with the specified id from persistence again, because it has been changed by another instance
+	 * of the application. The product in memory is updated, as are the indexes. This does nothing if the product is
+	 * neither in memory nor in the indexes.
+	 *
+	 * @param productID the id of the product
+	 * @throws IOException if something goes wrong
+	 */
+	public void reloadProduct(int productID) throws IOException {
+		//The product has been created or changed. If it has been deleted, being thought to exist does no harm
+		productExistence.markExists(productID);
+		if (!indexesBuilt && !products.containsKey(productID)) return;
+
+		//Reading the product updates the instance in memory. A read in progress may have started before the change, so
+		//it is not shared
+		Product p = persistence.getProductByID(productID);
+		if (p != null) {
+			updateIndexes(Collections.singleton(p));
+		} else {
+			products.remove(productID);
+			removeFromIndexes(productID);
+		}
+	}
+
+	/**
+	 * Read all products in memory from persistence again, and rebuild the indexes on next use. This is used when
+	 * changes made by other instances of the application may have been missed.
+	 *
+	 * @throws IOException if something goes wrong
+	 */
+	public void reloadProducts() throws IOException {
+		invalidateIndexes();
+
+		List<Product> loaded = products.values();
+		if (loaded.size() > RELOAD_ALL_THRESHOLD) {
+			//Reading everything at once is cheaper than a query for each product
+			Set<Integer> existing = new HashSet<>();
+			for (Product p : persistence.getProducts()) {
+				existing.add(p.getID());
+			}
+			for (Product p : loaded) {
+				if (!existing.contains(p.getID())) {
+					products.remove(p.getID());
+				}
+			}
+		} else {
+			for (Product p : loaded) {
+				if (persistence.getProductByID(p.getID()) == null) {
+					products.remove(p.getID());
+				}
+			}
+		}
 	}
 
 	/**
@@ -137,7 +355,7 @@ class ProductManager implements ProductChangeListener {
 	 * @throws IOException if something goes wrong
 	 */
 	public Set<Product> getProductsByCategory(String categoryName) throws IOException {
-		return persistence.getProductsByCategory(categoryName);
+		return new HashSet<>(categoryLoads.load(categoryName, () -> persistence.getProductsByCategory(categoryName)));
 	}
 
 	/**
@@ -151,6 +369,22 @@ class ProductManager implements ProductChangeListener {
 		}
 	}
 
+	/**
+	 * Remove the specified category from all products in the registered indexes. This must be called when a category
+	 * is deleted, as that removes it from the products in the database without saving them.
+	 *
+	 * @param categoryName the name of the deleted category
+	 */
+	public void removeCategoryFromIndexes(String categoryName) {
+		synchronized (indexLock) {
+			if (!indexesBuilt) return;
+
+			for (ProductIndex index : indexes) {
+				index.removeCategory(categoryName);
+			}
+		}
+	}
+
 	/**
 	 * Save the information about the specified product in the database.
 	 *
@@ -158,21 +392,192 @@ class ProductManager implements ProductChangeListener {
 	 * @throws IOException if something goes wrong
 	 */
 	public void saveProduct(Product product) throws IOException {
+		product.setPersistedVersion(null);
 		persistence.saveProduct(product);
+		productExistence.markExists(product.getID());
 		products.put(product.getID(), product);
+		registerImageOwnership(product);
+		updateIndexes(Collections.singleton(product));
 	}
 
 	/**
-	 * Save the information about all the specified products in the database.
+	 * Save the information about all the specified products in the database. If only some of the products could be
+	 * saved, those that were are still registered and added to the indexes before the failure is thrown.
 	 *
 	 * @param productCollection the products to save
 	 * @throws IOException if something goes wrong
 	 */
 	public void saveProducts(Collection<Product> productCollection) throws IOException {
-		persistence.saveProducts(productCollection);
+		for (Product product : productCollection) {
+			product.setPersistedVersion(null);
+		}
 
+		PartialSaveException failure = null;
+		try {
+			persistence.saveProducts(productCollection);
+		} catch (PartialSaveException e) {
+			failure = e;
+		}
+
+		List<Product> saved = new ArrayList<>(productCollection.size());
 		for (Product product : productCollection) {
+			if (failure != null && failure.getUnsaved().contains(product)) continue;
+
+			productExistence.markExists(product.getID());
 			products.put(product.getID(), product);
+			registerImageOwnership(product);
+			saved.add(product);
+		}
+		updateIndexes(saved);
+
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Get the products with the specified ids, in the same order. Products that are in memory and up to date are not
+	 * read from persistence, and ids of products that no longer exist are skipped.
+	 *
+	 * @param productIDs the ids of the products
+	 * @return a list of the products with the specified ids
+	 * @throws IOException if something goes wrong
+	 */
+	public List<Product> getProducts(int[] productIDs) throws IOException {
+		Product[] found = new Product[productIDs.length];
+		Set<Integer> missing = new HashSet<>();
+		for (int i = 0; i < productIDs.length; i++) {
+			found[i] = getLoadedProduct(productIDs[i]);
+			if (found[i] == null) {
+				missing.add(productIDs[i]);
+			}
+		}
+
+		//Read the missing products at once rather than one at a time
+		Map<Integer, Product> loaded = loadProducts(missing);
+
+		List<Product> result = new ArrayList<>(productIDs.length);
+		for (int i = 0; i < productIDs.length; i++) {
+			Product p = found[i] != null ? found[i] : loaded.get(productIDs[i]);
+			if (p != null) {
+				result.add(p);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Register an index to be maintained by this manager. Indexes should be registered before they are first used.
+	 *
+	 * @param index the index to register
+	 */
+	public void addIndex(ProductIndex index) {
+		synchronized (indexLock) {
+			indexes.add(index);
+
+			//An index registered after the others have been built causes all of them to be rebuilt on next use
+			indexesBuilt = false;
+		}
+	}
+
+	/**
+	 * Build the registered indexes from all products, unless this has already been done.
+	 *
+	 * @throws IOException if something goes wrong
+	 */
+	public void ensureIndexesBuilt() throws IOException {
+		if (indexesBuilt) return;
+
+		synchronized (indexLock) {
+			if (indexesBuilt) return;
+
+			long version = productExistence.getVersion();
+			buildIndexes(persistence.getProducts(), version);
+		}
+	}
+
+	/**
+	 * Build the registered indexes from the specified products, which must be all products. This is used when all
+	 * products have been read from somewhere other than persistence.
+	 *
+	 * @param all all products
+	 */
+	public void buildIndexes(Collection<Product> all) {
+		buildIndexes(all, productExistence.getVersion());
+	}
+
+	/**
+	 * Build the registered indexes and the filter of existing products from all products.
+	 *
+	 * @param all     all products
+	 * @param version the version of the filter of existing products from before the products were read
+	 */
+	private void buildIndexes(Collection<Product> all, long version) {
+		synchronized (indexLock) {
+			for (ProductIndex index : indexes) {
+				index.rebuild(all);
+			}
+			rebuildExistence(all, version);
+			indexesBuilt = true;
+		}
+	}
+
+	/**
+	 * Build the filter of existing products from all products.
+	 *
+	 * @param all     all products
+	 * @param version the version of the filter from before the products were read
+	 */
+	private void rebuildExistence(Collection<Product> all, long version) {
+		List<Integer> ids = new ArrayList<>(all.size());
+		for (Product p : all) {
+			ids.add(p.getID());
+		}
+		productExistence.rebuild(ids, version);
+	}
+
+	/**
+	 * Discard the contents of the registered indexes, so that they are built again on next use. What is known about
+	 * which products exist is discarded as well, as this is used when products may have changed in bulk.
+	 */
+	public void invalidateIndexes() {
+		synchronized (indexLock) {
+			indexesBuilt = false;
+			productExistence.invalidate();
+		}
+	}
+
+	/**
+	 * Update the registered indexes with the specified products. If the indexes have not been built yet, there is
+	 * nothing to update, as the products will be included once they are built. The lock is always taken, as a build
+	 * in progress may have read the products before these were saved.
+	 *
+	 * @param changedProducts the products that have changed
+	 */
+	private void updateIndexes(Collection<Product> changedProducts) {
+		synchronized (indexLock) {
+			if (!indexesBuilt) return;
+
+			for (ProductIndex index : indexes) {
+				index.update(changedProducts);
+			}
+		}
+	}
+
+	/**
+	 * Remove the product with the specified id from the registered indexes, because it has been deleted. If any of the
+	 * indexes cannot remove it, the indexes are built again on next use.
+	 *
+	 * @param productID the id of the deleted product
+	 */
+	private void removeFromIndexes(int productID) {
+		synchronized (indexLock) {
+			if (!indexesBuilt) return;
+
+			for (ProductIndex index : indexes) {
+				if (!index.remove(productID)) {
+					invalidateIndexes();
+					return;
+				}
+			}
 		}
 	}
 
@@ -187,6 +592,17 @@ class ProductManager implements ProductChangeListener {
 		return images.computeIfAbsent(id, (i) -> new Image(i, img));
 	}
 
+	/**
+	 * Constructs an image whose data is read from persistence the first time it is needed, or returns the existing
+	 * one with the same id if it already exists.
+	 *
+	 * @param id the id of the image
+	 * @return the created image object
+	 */
+	public Image constructImage(int id) {
+		return images.computeIfAbsent(id, i -> new Image(i, imageID -> persistence.getImageData(imageID)));
+	}
+
 	/**
 	 * Create a new image from the specified url in the PIM. This image will automatically be saved.
 	 *
@@ -202,20 +618,69 @@ class ProductManager implements ProductChangeListener {
 	}
 
 	/**
-	 * Called when an image is removed from a product. This will test if no more references to the image exist, and in
-	 * this case remove the image from memory.
+	 * Get the ids of the loaded products that use the specified image.
 	 *
-	 * @param image the image that was removed
+	 * @param image the image
+	 * @return the ids of the loaded products using the image, may be empty
 	 */
-	@Override
-	public void imageRemoved(Image image) {
-		for (Product p : products.values()) {
-			if (p.getImages().contains(image)) {
-				return;
-			}
+	public Set<Integer> getProductIDsUsingImage(Image image) {
+		Set<Integer> owners = imageOwners.get(image.getID());
+		return owners == null ? new HashSet<>() : new HashSet<>(owners);
+	}
+
+	/**
+	 * Register the specified product as an owner of all its images. This is needed for products that did not have a
+	 * valid id when their images were added.
+	 *
+	 * @param product the product to register
+	 */
+	private void registerImageOwnership(Product product) {
+		for (Image image : product.getImagesView()) {
+			imageAdded(product, image);
 		}
+	}
 
-		//No products contained the image, so free from memory (automatically removed from db)
-		images.remove(image.getID());
+	/**
+	 * Called when an image is added to a product. This will register the product as an owner of the image.
+	 *
+	 * @param product the product that the image was added to
+	 * @param image   the image that was added
+	 */
+	@Override
+	public void imageAdded(Product product, Image image) {
+		//Images and products without ids cannot be tracked until they have been saved
+		if (!image.hasValidID() || !product.hasValidID()) return;
+
+		//The owner is added within the atomic update, so that a concurrent removal of the last owner cannot discard the
+		//set after it has been looked up
+		imageOwners.compute(image.getID(), (id, owners) -> {
+			if (owners == null) owners = ConcurrentHashMap.newKeySet();
+			owners.add(product.getID());
+			return owners;
+		});
+	}
+
+	/**
+	 * Called when an image is removed from a product. This will unregister the product as an owner of the image, and
+	 * if the image has no more owners, remove it from memory.
+	 *
+	 * @param product the product that the image was removed from
+	 * @param image   the image that was removed
+	 */
+	@Override
+	public void imageRemoved(Product product, Image image) {
+		if (!image.hasValidID()) return;
+
+		//Remove the owner, and the entire entry if it was the last one. This is done atomically, so that a concurrent
+		//addition is not lost
+		Set<Integer> remainingOwners = imageOwners.computeIfPresent(image.getID(), (id, owners) -> {
+			owners.remove(product.getID());
+			return owners.isEmpty() ? null : owners;
+		});
+
+		//No products contain the image, so free from memory (automatically removed from db)
+		if (remainingOwners == null) {
+			images.remove(image.getID());
+		}
 	}
 }
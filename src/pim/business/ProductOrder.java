@@ -0,0 +1,30 @@
+package pim.business;
+
+/**
+ * The orders in which the products of a category can be listed. Products that are equal in the chosen order are listed
+ * by id.
+ *
+ * @author Kasper
+ */
+public enum ProductOrder {
+
+	/**
+	 * Cheapest products first.
+	 */
+	PRICE_ASCENDING,
+
+	/**
+	 * Most expensive products first.
+	 */
+	PRICE_DESCENDING,
+
+	/**
+	 * Alphabetically by name, ignoring case.
+	 */
+	NAME,
+
+	/**
+	 * Most popular products first.
+	 */
+	POPULARITY
+}
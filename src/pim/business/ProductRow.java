@@ -0,0 +1,103 @@
+package pim.business;
+
+/**
+ * Read-only access to the fields of a product needed for listing it, without loading the product itself. A single row
+ * is moved over all the products being visited, so it is only valid during the call it was given to, and must not be
+ * kept afterwards. Use {@link PIM#getProductInformation(int)} with the id of the row to get the full product.
+ *
+ * @author Kasper
+ */
+public final class ProductRow {
+
+	private ProductTable.Columns columns;
+	private int row;
+
+	/**
+	 * Constructs a new product row, which must be moved to a product before it is used.
+	 */
+	ProductRow() {
+	}
+
+	/**
+	 * Move this row to the specified row of a product table.
+	 *
+	 * @param columns the columns of the table
+	 * @param row     the row to move to
+	 */
+	void moveTo(ProductTable.Columns columns, int row) {
+		this.columns = columns;
+		this.row = row;
+	}
+
+	/**
+	 * Get the id of the product.
+	 *
+	 * @return the id of the product
+	 */
+	public int getID() {
+		return columns.getID(row);
+	}
+
+	/**
+	 * Get the name of the product.
+	 *
+	 * @return the name of the product
+	 */
+	public String getName() {
+		return columns.getName(row);
+	}
+
+	/**
+	 * Get the price of the product.
+	 *
+	 * @return the price of the product
+	 */
+	public double getPrice() {
+		return columns.getPrice(row);
+	}
+
+	/**
+	 * Get the number of categories of the product.
+	 *
+	 * @return the number of categories
+	 */
+	public int getCategoryCount() {
+		return columns.getCategoryCount(row);
+	}
+
+	/**
+	 * Get the name of a category of the product.
+	 *
+	 * @param index the index of the category, from 0 to {@link #getCategoryCount()} exclusive
+	 * @return the name of the category
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public String getCategoryName(int index) {
+		return columns.getCategoryName(row, index);
+	}
+
+	/**
+	 * Get the number of tags of the product.
+	 *
+	 * @return the number of tags
+	 */
+	public int getTagCount() {
+		return columns.getTagCount(row);
+	}
+
+	/**
+	 * Get the name of a tag of the product.
+	 *
+	 * @param index the index of the tag, from 0 to {@link #getTagCount()} exclusive
+	 * @return the name of the tag
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public String getTagName(int index) {
+		return columns.getTagName(row, index);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + getID() + "] " + getName();
+	}
+}
@@ -0,0 +1,522 @@
+package pim.business;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves products in the background, so that saving a product does not keep the caller waiting for the transaction.
+ * Saves are collected for a short while and then saved together on a background thread. A product saved again before
+ * its previous save has been carried out is only saved once, with its latest data.
+ * <p>
+ * Every save is appended to a local file before it is accepted, so that saves are not lost if the application stops
+ * before they have been carried out. The saves left in the file are read again when a queue is opened on it, and
+ * carried out first. Once saves have been carried out, the file is rewritten to hold only those that remain. Each
+ * record in the file is the length of the record followed by the data of the product, where categories and tags are
+ * stored by name and attributes and images by id. A record cut short by the application stopping is ignored.
+ * <p>
+ * A save writes the data the product had when it was queued, as stored in its record. Reading a product from
+ * persistence before its save has been carried out, such as when it is changed by another instance of the application,
+ * gives the product the data from before the save. The data of the record is therefore given back to the product just
+ * before it is saved, so that the read does not undo the save. Callers that need to read what they have saved must
+ * {@link #flush() flush} the queue first. All saves are carried out when the application shuts down.
+ * <p>
+ * Saves that could not be carried out are tried again later. A save that keeps failing while the saves of other
+ * products succeed will most likely never succeed, such as when the data of the product is rejected by the database,
+ * so it is given up after a number of attempts rather than being tried forever. The same goes for records that cannot
+ * be read. Saves given up are set aside in a file next to the queue file, named as it with {@code .failed} appended,
+ * from which they can be recovered by hand.
+ *
+ * @author Kasper
+ */
+class ProductSaveQueue implements AutoCloseable {
+
+	/**
+	 * The number of milliseconds to wait before trying again when saves could not be carried out.
+	 */
+	private static final long RETRY_DELAY_MILLIS = 5000;
+
+	/**
+	 * The number of times the save of a product may fail while other saves succeed before it is given up.
+	 */
+	private static final int MAX_ATTEMPTS = 10;
+
+	private final File file;
+	private final File failedFile;
+	private final ProductSaver saver;
+	private final ProductManager productManager;
+	private final AttributeManager attributeManager;
+	private final CategoryManager categoryManager;
+	private final TagManager tagManager;
+	private final long delayMillis;
+	private final int maxBatchSize;
+	private final ScheduledExecutorService timer;
+	private final Thread shutdownHook;
+
+	/**
+	 * Held while saves are carried out, so that a flush waits for the saves in progress on the background thread.
+	 */
+	private final Object flushLock;
+
+	/* Guarded by this */
+	private Map<Integer, PendingSave> pending;
+	private FileOutputStream out;
+	private boolean flushScheduled;
+	private boolean closed;
+
+	/**
+	 * Opens a queue on the specified file. Saves left in the file by a previous queue are read, and the products are
+	 * updated with the saved data through the managers, after which the saves are carried out in the background.
+	 *
+	 * @param file             the file to store the saves in
+	 * @param saver            the function saving a batch of products
+	 * @param productManager   the manager constructing products read from the file
+	 * @param attributeManager the manager of the attributes of products read from the file
+	 * @param categoryManager  the manager of the categories of products read from the file
+	 * @param tagManager       the manager of the tags of products read from the file
+	 * @param delayMillis      the number of milliseconds to collect saves for before carrying them out
+	 * @param maxBatchSize     the maximum number of products to save at once
+	 * @throws IOException if the file could not be read or opened for writing
+	 */
+	public ProductSaveQueue(File file, ProductSaver saver, ProductManager productManager,
+	                        AttributeManager attributeManager, CategoryManager categoryManager, TagManager tagManager,
+	                        long delayMillis, int maxBatchSize) throws IOException {
+		this.file = file;
+		failedFile = new File(file.getPath() + ".failed");
+		this.saver = saver;
+		this.productManager = productManager;
+		this.attributeManager = attributeManager;
+		this.categoryManager = categoryManager;
+		this.tagManager = tagManager;
+		this.delayMillis = delayMillis;
+		this.maxBatchSize = maxBatchSize;
+		flushLock = new Object();
+		pending = new LinkedHashMap<>();
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory + "!");
+		}
+		if (file.exists()) {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			while (buffer.remaining() >= Integer.BYTES) {
+				int length = buffer.getInt();
+				if (length < 0 || length > buffer.remaining()) break; //Cut short while written
+
+				byte[] record = new byte[length];
+				buffer.get(record);
+				try {
+					Product product = readProduct(record);
+					pending.put(product.getID(), new PendingSave(product.getID(), record));
+				} catch (InvalidRecordException e) {
+					e.printStackTrace();
+					setAside(Collections.singletonList(record));
+				}
+			}
+		}
+
+		//Leave out the saves that are no longer needed and any record cut short
+		rewrite();
+
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Product save queue");
+			thread.setDaemon(true);
+			return thread;
+		});
+		shutdownHook = new Thread(() -> {
+			try {
+				flush();
+			} catch (IOException e) {
+				//The saves remain in the file, and are carried out the next time it is opened
+				e.printStackTrace();
+			}
+		}, "Product save queue shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+		if (!pending.isEmpty()) {
+			scheduleFlush(0);
+		}
+	}
+
+	/**
+	 * Add a save of the specified product to this queue. The save is stored in the file before this method returns, and
+	 * carried out in the background. Products without an id cannot be queued, as saves are collected by id, and neither
+	 * can products with images that have not been saved, as their images could not be read from the file. These must
+	 * be saved directly.
+	 *
+	 * @param product the product to save
+	 * @return true if the save was queued, false if the product must be saved directly
+	 * @throws IOException if the save could not be stored
+	 */
+	public boolean enqueue(Product product) throws IOException {
+		if (!product.hasValidID()) return false;
+		for (Image image : product.getImagesView()) {
+			if (!image.hasValidID()) return false;
+		}
+
+		byte[] record = writeProduct(product);
+		synchronized (this) {
+			if (closed) throw new IOException("The save queue has been closed!");
+
+			out.write(ByteBuffer.allocate(Integer.BYTES + record.length).putInt(record.length).put(record).array());
+			out.getChannel().force(false);
+
+			//A product saved again is only saved once, and the order of saves does not matter
+			pending.put(product.getID(), new PendingSave(product.getID(), record));
+			if (!flushScheduled) {
+				scheduleFlush(delayMillis);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Carry out all saves in this queue, and wait for them to finish. Once this method returns, all saves queued before
+	 * it was called have been carried out, so their products can be read from persistence.
+	 *
+	 * @throws IOException if some of the saves could not be carried out. These remain in the queue, unless they have been
+	 *                     given up
+	 */
+	public void flush() throws IOException {
+		synchronized (flushLock) {
+			List<PendingSave> batch;
+			synchronized (this) {
+				if (pending.isEmpty()) return;
+				batch = new ArrayList<>(pending.values());
+				pending = new LinkedHashMap<>();
+			}
+
+			List<PendingSave> failed = new ArrayList<>();
+			List<PendingSave> givenUp = new ArrayList<>();
+			PartialSaveException failure = null;
+			int saved = 0;
+			try {
+				while (saved < batch.size()) {
+					int end = Math.min(saved + maxBatchSize, batch.size());
+					List<PendingSave> saves = new ArrayList<>();
+					List<Product> products = new ArrayList<>();
+					for (PendingSave save : batch.subList(saved, end)) {
+						//The product may have been read from persistence since it was queued
+						try {
+							products.add(readProduct(save.record));
+							saves.add(save);
+						} catch (InvalidRecordException e) {
+							e.printStackTrace();
+							givenUp.add(save);
+						}
+					}
+
+					try {
+						if (!products.isEmpty()) saver.save(products);
+					} catch (PartialSaveException e) {
+						//Only the products that were not saved are tried again
+						Set<Integer> unsaved = new HashSet<>();
+						for (Object product : e.getUnsaved()) {
+							unsaved.add(((Product) product).getID());
+						}
+						for (PendingSave save : saves) {
+							if (!unsaved.contains(save.productID)) continue;
+
+							if (++save.attempts >= MAX_ATTEMPTS) {
+								new IOException("Giving up saving product " + save.productID + " after " + save.attempts
+										+ " attempts! The save is set aside in " + failedFile + ".", e).printStackTrace();
+								givenUp.add(save);
+							} else {
+								failed.add(save);
+							}
+						}
+
+						if (failure == null) {
+							failure = e;
+						} else {
+							failure.addSuppressed(e);
+						}
+					}
+					saved = end;
+				}
+			} finally {
+				synchronized (this) {
+					if (saved < batch.size() || !failed.isEmpty()) {
+						//Put back the saves that were not carried out, unless the product has been queued again since
+						Map<Integer, PendingSave> remaining = new LinkedHashMap<>();
+						for (PendingSave save : failed) {
+							remaining.put(save.productID, save);
+						}
+						for (PendingSave save : batch.subList(saved, batch.size())) {
+							if (!givenUp.contains(save)) {
+								remaining.put(save.productID, save);
+							}
+						}
+						remaining.putAll(pending);
+						pending = remaining;
+					}
+					if (!givenUp.isEmpty()) {
+						List<byte[]> records = new ArrayList<>();
+						for (PendingSave save : givenUp) {
+							records.add(save.record);
+						}
+						setAside(records);
+					}
+					if (!closed) {
+						rewrite();
+					}
+				}
+			}
+
+			if (failure != null) throw failure;
+		}
+	}
+
+	/**
+	 * Get the number of products waiting to be saved.
+	 *
+	 * @return the number of products in this queue
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Carry out all saves in this queue and close the file. Saves that could not be carried out remain in the file.
+	 *
+	 * @throws IOException if some of the saves could not be carried out
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			//The application is shutting down, and the hook flushes the queue
+		}
+		timer.shutdown();
+
+		try {
+			flush();
+		} finally {
+			synchronized (this) {
+				closed = true;
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Carry out the saves after the specified delay. Guarded by this.
+	 */
+	private void scheduleFlush(long delay) {
+		//Saves queued while closing are carried out by the close
+		if (timer.isShutdown()) return;
+
+		flushScheduled = true;
+		timer.schedule(() -> {
+			synchronized (this) {
+				flushScheduled = false;
+			}
+			try {
+				flush();
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+				synchronized (this) {
+					if (!flushScheduled && !closed) {
+						scheduleFlush(RETRY_DELAY_MILLIS);
+					}
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Replace the file with one holding only the saves still in the queue, and open it for appending. A temporary file
+	 * is moved into place, so that the saves are in the file whenever the application stops. Guarded by this.
+	 */
+	private void rewrite() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			try (FileOutputStream tempOut = new FileOutputStream(temp)) {
+				DataOutputStream data = new DataOutputStream(new BufferedOutputStream(tempOut));
+				for (PendingSave save : pending.values()) {
+					data.writeInt(save.record.length);
+					data.write(save.record);
+				}
+				data.flush();
+				tempOut.getChannel().force(false);
+			}
+
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+
+		out = new FileOutputStream(file, true);
+	}
+
+	/**
+	 * Append the specified records to the file of saves that have been given up. Guarded by this.
+	 */
+	private void setAside(List<byte[]> records) throws IOException {
+		try (FileOutputStream failedOut = new FileOutputStream(failedFile, true)) {
+			DataOutputStream data = new DataOutputStream(new BufferedOutputStream(failedOut));
+			for (byte[] record : records) {
+				data.writeInt(record.length);
+				data.write(record);
+			}
+			data.flush();
+			failedOut.getChannel().force(false);
+		}
+	}
+
+	private static byte[] writeProduct(Product product) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(product.getID());
+		CatalogSnapshot.writeString(out, product.getName());
+		CatalogSnapshot.writeString(out, product.getDescription());
+		out.writeDouble(product.getPrice());
+
+		List<Category> categories = product.getCategoriesView();
+		out.writeInt(categories.size());
+		for (Category category : categories) {
+			CatalogSnapshot.writeString(out, category.getName());
+		}
+
+		List<Attribute.AttributeValue> values = product.getAttributeValuesView();
+		out.writeInt(values.size());
+		for (Attribute.AttributeValue value : values) {
+			out.writeInt(value.getParent().getID());
+			CatalogSnapshot.writeValue(out, value.getValue());
+		}
+
+		Set<Tag> tags = product.getTagsView();
+		out.writeInt(tags.size());
+		for (Tag tag : tags) {
+			CatalogSnapshot.writeString(out, tag.getName());
+		}
+
+		Set<Image> images = product.getImagesView();
+		out.writeInt(images.size());
+		for (Image image : images) {
+			out.writeInt(image.getID());
+		}
+
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Give the product of the specified record the data stored in it, constructing the product if it is not in memory.
+	 *
+	 * @throws InvalidRecordException if the record cannot be read
+	 * @throws IOException            if a category or attribute of the product could not be read
+	 */
+	private Product readProduct(byte[] record) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		try {
+			int id = buffer.getInt();
+			String name = CatalogSnapshot.readString(buffer);
+			String description = CatalogSnapshot.readString(buffer);
+			double price = buffer.getDouble();
+			Product product = productManager.constructProduct(id, name, description, price);
+
+			//Categories and attributes deleted since the save are left out
+			List<Category> categories = new ArrayList<>();
+			int categoryCount = buffer.getInt();
+			for (int i = 0; i < categoryCount; i++) {
+				String categoryName = CatalogSnapshot.readString(buffer);
+				Category category = categoryManager.getCategoryIfLoaded(categoryName);
+				if (category == null) category = categoryManager.getCategory(categoryName);
+				if (category != null) categories.add(category);
+			}
+			product.setCategories(categories);
+
+			//Values are set after the categories, as adding a category gives the product the default values of its
+			//attributes
+			int valueCount = buffer.getInt();
+			for (int i = 0; i < valueCount; i++) {
+				int attributeID = buffer.getInt();
+				Object value = CatalogSnapshot.readValue(buffer);
+				Attribute attribute = attributeManager.getLoadedAttribute(attributeID);
+				if (attribute == null) attribute = attributeManager.getAttribute(attributeID);
+				if (attribute != null && product.hasAttribute(attribute)) {
+					product.setAttribute(attribute, value);
+				}
+			}
+
+			Set<Tag> tags = new HashSet<>();
+			int tagCount = buffer.getInt();
+			for (int i = 0; i < tagCount; i++) {
+				tags.add(tagManager.createTag(CatalogSnapshot.readString(buffer)));
+			}
+			product.setTags(tags);
+
+			Set<Image> images = new HashSet<>();
+			int imageCount = buffer.getInt();
+			for (int i = 0; i < imageCount; i++) {
+				images.add(productManager.constructImage(buffer.getInt()));
+			}
+			product.setImages(images);
+
+			return product;
+		} catch (BufferUnderflowException e) {
+			throw new InvalidRecordException(e);
+		}
+	}
+
+	/**
+	 * The id of a product waiting to be saved, along with the record of it in the file and the number of times it has
+	 * failed to be saved. A product queued again starts over, as its new data may well be saved.
+	 */
+	private static class PendingSave {
+
+		private final int productID;
+		private final byte[] record;
+		private int attempts;
+
+		private PendingSave(int productID, byte[] record) {
+			this.productID = productID;
+			this.record = record;
+		}
+	}
+
+	/**
+	 * Signals that a record in the queue cannot be read, so the save in it can never be carried out.
+	 */
+	private static class InvalidRecordException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private InvalidRecordException(Throwable cause) {
+			super("Invalid record in save queue!", cause);
+		}
+	}
+
+	/**
+	 * A function saving a batch of products.
+	 */
+	@FunctionalInterface
+	interface ProductSaver {
+
+		/**
+		 * Save the specified products.
+		 *
+		 * @param products the products to save
+		 * @throws IOException if the products could not all be saved
+		 */
+		void save(Collection<Product> products) throws IOException;
+	}
+}
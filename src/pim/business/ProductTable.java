@@ -0,0 +1,496 @@
+package pim.business;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * A compact table of the fields of products needed for listing them: id, name, price, categories and tags. The table
+ * is stored by column in direct buffers outside of the Java heap, so that it costs a few dozen bytes per product and
+ * adds nothing for the garbage collector to trace. The products are read through a {@link ProductRow}, a single
+ * accessor that is moved from row to row, so listing products does not create an object for each of them.
+ * <p>
+ * Names are stored UTF-8 encoded in a byte column, and the categories and tags of each product are stored as a list
+ * of numbers in an int column, referring to a dictionary of the names of categories and tags. Saved products are
+ * updated in place, except that their names and lists are written again at the end of their columns. The space left
+ * behind is reclaimed whenever a column is full, as is that of removed products, whose rows are filled by moving the
+ * last row. Queries may run concurrently with each other, while updates are
+ * exclusive.
+ *
+ * @author Kasper
+ */
+class ProductTable implements ProductIndex {
+
+	private final ReadWriteLock lock;
+	private Columns columns;
+
+	/**
+	 * Constructs a new, empty product table.
+	 */
+	public ProductTable() {
+		lock = new ReentrantReadWriteLock();
+		columns = new Columns(16);
+	}
+
+	@Override
+	public void rebuild(Collection<Product> products) {
+		Columns newColumns = new Columns(Math.max(16, products.size()));
+		for (Product product : products) {
+			if (product.hasValidID()) {
+				newColumns.put(product);
+			}
+		}
+
+		lock.writeLock().lock();
+		try {
+			columns = newColumns;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void update(Product product) {
+		update(Collections.singleton(product));
+	}
+
+	@Override
+	public void update(Collection<Product> products) {
+		lock.writeLock().lock();
+		try {
+			for (Product product : products) {
+				if (product.hasValidID()) {
+					columns.put(product);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(int productID) {
+		lock.writeLock().lock();
+		try {
+			columns.remove(productID);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeCategory(String categoryName) {
+		lock.writeLock().lock();
+		try {
+			columns.removeCategory(categoryName);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Visit the products with the specified ids, in the same order. The visitor is given the same row for every
+	 * product, so it must not keep the row after returning. Ids of products not in the table are skipped. The table
+	 * cannot be updated while it is being visited, so the visitor must not save products.
+	 *
+	 * @param productIDs the ids of the products to visit
+	 * @param visitor    the visitor of the products
+	 */
+	public void visit(int[] productIDs, Consumer<ProductRow> visitor) {
+		lock.readLock().lock();
+		try {
+			ProductRow row = new ProductRow();
+			for (int id : productIDs) {
+				int index = columns.find(id);
+				if (index >= 0) {
+					row.moveTo(columns, index);
+					visitor.accept(row);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the number of products in the table.
+	 *
+	 * @return the number of products
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return columns.size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The columns of the table. Every product has a row, and rows are found by id through an open addressing hash
+	 * table of primitive arrays.
+	 */
+	static class Columns {
+
+		private static final int EMPTY = -1;
+
+		/* Fixed size columns, one entry per row */
+		private IntBuffer ids;
+		private DoubleBuffer prices;
+		private IntBuffer nameOffsets;
+		private IntBuffer nameLengths;
+		private IntBuffer listOffsets;
+
+		/* Variable size columns. A list holds the number of categories, their numbers, the number of tags and their
+		numbers */
+		private ByteBuffer names;
+		private IntBuffer lists;
+		private int namesEnd;
+		private int listsEnd;
+
+		/* Dictionaries of the names of categories and tags */
+		private final Dictionary categories;
+		private final Dictionary tags;
+
+		/* Hash table from product ids to rows */
+		private int[] slotIDs;
+		private int[] slotRows;
+
+		private int size;
+
+		private Columns(int capacity) {
+			ids = allocateInts(capacity);
+			prices = ByteBuffer.allocateDirect(capacity * 8).asDoubleBuffer();
+			nameOffsets = allocateInts(capacity);
+			nameLengths = allocateInts(capacity);
+			listOffsets = allocateInts(capacity);
+			names = ByteBuffer.allocateDirect(capacity * 16);
+			lists = allocateInts(capacity * 4);
+			categories = new Dictionary();
+			tags = new Dictionary();
+			slotIDs = new int[Integer.highestOneBit(capacity) * 4];
+			Arrays.fill(slotIDs, EMPTY);
+			slotRows = new int[slotIDs.length];
+		}
+
+		/**
+		 * Get the row of the product with the specified id.
+		 *
+		 * @param id the id of the product
+		 * @return the row of the product, or -1 if it is not in the table
+		 */
+		int find(int id) {
+			int slot = findSlot(id);
+			return slot < 0 ? -1 : slotRows[slot];
+		}
+
+		private int findSlot(int id) {
+			int mask = slotIDs.length - 1;
+			for (int slot = mix(id) & mask; slotIDs[slot] != EMPTY; slot = (slot + 1) & mask) {
+				if (slotIDs[slot] == id) return slot;
+			}
+			return -1;
+		}
+
+		int getID(int row) {
+			return ids.get(row);
+		}
+
+		double getPrice(int row) {
+			return prices.get(row);
+		}
+
+		String getName(int row) {
+			int offset = nameOffsets.get(row);
+			byte[] bytes = new byte[nameLengths.get(row)];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = names.get(offset + i);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		int getCategoryCount(int row) {
+			return lists.get(listOffsets.get(row));
+		}
+
+		String getCategoryName(int row, int index) {
+			int offset = listOffsets.get(row);
+			if (index < 0 || index >= lists.get(offset)) throw new IndexOutOfBoundsException("Index: " + index);
+			return categories.get(lists.get(offset + 1 + index));
+		}
+
+		int getTagCount(int row) {
+			int offset = listOffsets.get(row);
+			return lists.get(offset + 1 + lists.get(offset));
+		}
+
+		String getTagName(int row, int index) {
+			int offset = listOffsets.get(row);
+			offset += 1 + lists.get(offset);
+			if (index < 0 || index >= lists.get(offset)) throw new IndexOutOfBoundsException("Index: " + index);
+			return tags.get(lists.get(offset + 1 + index));
+		}
+
+		private void put(Product product) {
+			int row = find(product.getID());
+			if (row < 0) {
+				row = addRow(product.getID());
+			}
+
+			prices.put(row, product.getPrice());
+
+			byte[] name = product.getName() == null ? new byte[0] : product.getName().getBytes(StandardCharsets.UTF_8);
+			ensureNameSpace(name.length);
+			for (int i = 0; i < name.length; i++) {
+				names.put(namesEnd + i, name[i]);
+			}
+			nameOffsets.put(row, namesEnd);
+			nameLengths.put(row, name.length);
+			namesEnd += name.length;
+
+			List<Category> productCategories = product.getCategoriesView();
+			Set<Tag> productTags = product.getTagsView();
+			int[] list = new int[2 + productCategories.size() + productTags.size()];
+			int i = 0;
+			list[i++] = productCategories.size();
+			for (Category category : productCategories) {
+				list[i++] = categories.add(category.getName());
+			}
+			list[i++] = productTags.size();
+			for (Tag tag : productTags) {
+				list[i++] = tags.add(tag.getName());
+			}
+			putList(row, list);
+		}
+
+		private void remove(int id) {
+			int slot = findSlot(id);
+			if (slot < 0) return;
+			int row = slotRows[slot];
+			removeSlot(slot);
+
+			//Move the last row into the place of the removed one. Its name and list stay where they are
+			int last = --size;
+			if (row != last) {
+				int lastID = ids.get(last);
+				ids.put(row, lastID);
+				prices.put(row, prices.get(last));
+				nameOffsets.put(row, nameOffsets.get(last));
+				nameLengths.put(row, nameLengths.get(last));
+				listOffsets.put(row, listOffsets.get(last));
+				slotRows[findSlot(lastID)] = row;
+			}
+		}
+
+		private void removeCategory(String categoryName) {
+			int number = categories.find(categoryName);
+			if (number < 0) return;
+
+			for (int row = 0; row < size; row++) {
+				int offset = listOffsets.get(row);
+				int categoryCount = lists.get(offset);
+				int tagCount = lists.get(offset + 1 + categoryCount);
+
+				int position = -1;
+				for (int i = 0; i < categoryCount; i++) {
+					if (lists.get(offset + 1 + i) == number) {
+						position = i;
+						break;
+					}
+				}
+				if (position < 0) continue;
+
+				//Copy the list without the category
+				int[] list = new int[1 + categoryCount + tagCount];
+				int i = 0;
+				list[i++] = categoryCount - 1;
+				for (int j = 0; j < categoryCount + 1 + tagCount; j++) {
+					if (j != position) {
+						list[i++] = lists.get(offset + 1 + j);
+					}
+				}
+				putList(row, list);
+			}
+		}
+
+		private int addRow(int id) {
+			if (size == ids.capacity()) {
+				int capacity = size * 2;
+				ids = copyInts(ids, size, capacity);
+				nameOffsets = copyInts(nameOffsets, size, capacity);
+				nameLengths = copyInts(nameLengths, size, capacity);
+				listOffsets = copyInts(listOffsets, size, capacity);
+				DoubleBuffer newPrices = ByteBuffer.allocateDirect(capacity * 8).asDoubleBuffer();
+				for (int row = 0; row < size; row++) {
+					newPrices.put(row, prices.get(row));
+				}
+				prices = newPrices;
+			}
+
+			//Keep the hash table at most half full
+			if ((size + 1) * 2 > slotIDs.length) {
+				int[] oldIDs = slotIDs;
+				int[] oldRows = slotRows;
+				slotIDs = new int[oldIDs.length * 2];
+				Arrays.fill(slotIDs, EMPTY);
+				slotRows = new int[slotIDs.length];
+				for (int slot = 0; slot < oldIDs.length; slot++) {
+					if (oldIDs[slot] != EMPTY) {
+						putSlot(oldIDs[slot], oldRows[slot]);
+					}
+				}
+			}
+
+			int row = size++;
+			ids.put(row, id);
+			putSlot(id, row);
+			return row;
+		}
+
+		private void putSlot(int id, int row) {
+			int mask = slotIDs.length - 1;
+			int slot = mix(id) & mask;
+			while (slotIDs[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			slotIDs[slot] = id;
+			slotRows[slot] = row;
+		}
+
+		/**
+		 * Empty the specified slot of the hash table. The entries after it in the same run are moved back where
+		 * needed, so that they can still be found from their home slots.
+		 */
+		private void removeSlot(int slot) {
+			int mask = slotIDs.length - 1;
+			int hole = slot;
+			for (int next = (slot + 1) & mask; slotIDs[next] != EMPTY; next = (next + 1) & mask) {
+				int home = mix(slotIDs[next]) & mask;
+
+				//The entry may only be moved back if the hole is not before its home slot
+				if (((next - home) & mask) >= ((next - hole) & mask)) {
+					slotIDs[hole] = slotIDs[next];
+					slotRows[hole] = slotRows[next];
+					hole = next;
+				}
+			}
+			slotIDs[hole] = EMPTY;
+		}
+
+		private void putList(int row, int[] list) {
+			ensureListSpace(list.length);
+			for (int i = 0; i < list.length; i++) {
+				lists.put(listsEnd + i, list[i]);
+			}
+			listOffsets.put(row, listsEnd);
+			listsEnd += list.length;
+		}
+
+		/**
+		 * Make room for the specified number of bytes at the end of the name column. The names of all rows are copied
+		 * to a new column, which leaves out the space of names that have been replaced.
+		 */
+		private void ensureNameSpace(int length) {
+			if (namesEnd + length <= names.capacity()) return;
+
+			int used = length;
+			for (int row = 0; row < size; row++) {
+				used += nameLengths.get(row);
+			}
+
+			ByteBuffer newNames = ByteBuffer.allocateDirect(Math.max(names.capacity(), used * 2));
+			int end = 0;
+			for (int row = 0; row < size; row++) {
+				int offset = nameOffsets.get(row);
+				int nameLength = nameLengths.get(row);
+				for (int i = 0; i < nameLength; i++) {
+					newNames.put(end + i, names.get(offset + i));
+				}
+				nameOffsets.put(row, end);
+				end += nameLength;
+			}
+			names = newNames;
+			namesEnd = end;
+		}
+
+		/**
+		 * Make room for the specified number of ints at the end of the list column, in the same way as for names.
+		 */
+		private void ensureListSpace(int length) {
+			if (listsEnd + length <= lists.capacity()) return;
+
+			int used = length;
+			for (int row = 0; row < size; row++) {
+				used += listLength(row);
+			}
+
+			IntBuffer newLists = allocateInts(Math.max(lists.capacity(), used * 2));
+			int end = 0;
+			for (int row = 0; row < size; row++) {
+				int offset = listOffsets.get(row);
+				int listLength = listLength(row);
+				for (int i = 0; i < listLength; i++) {
+					newLists.put(end + i, lists.get(offset + i));
+				}
+				listOffsets.put(row, end);
+				end += listLength;
+			}
+			lists = newLists;
+			listsEnd = end;
+		}
+
+		private int listLength(int row) {
+			int offset = listOffsets.get(row);
+			int categoryCount = lists.get(offset);
+			return 2 + categoryCount + lists.get(offset + 1 + categoryCount);
+		}
+
+		private static int mix(int id) {
+			int h = id * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		private static IntBuffer allocateInts(int capacity) {
+			return ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+		}
+
+		private static IntBuffer copyInts(IntBuffer source, int length, int capacity) {
+			IntBuffer copy = allocateInts(capacity);
+			for (int i = 0; i < length; i++) {
+				copy.put(i, source.get(i));
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * A dictionary giving each distinct name a number. There are few categories and tags, so the dictionary is kept on
+	 * the heap.
+	 */
+	private static class Dictionary {
+
+		private final Map<String, Integer> numbers = new HashMap<>();
+		private final List<String> names = new ArrayList<>();
+
+		private int add(String name) {
+			return numbers.computeIfAbsent(name, n -> {
+				names.add(n);
+				return names.size() - 1;
+			});
+		}
+
+		private int find(String name) {
+			return numbers.getOrDefault(name, -1);
+		}
+
+		private String get(int number) {
+			return names.get(number);
+		}
+	}
+}
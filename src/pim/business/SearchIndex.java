@@ -0,0 +1,593 @@
+package pim.business;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory full-text index over products. The index covers the name, description, tag names and textual
+ * attribute values of every product, and ranks results using BM25. Words in the product name count more than words
+ * elsewhere. Query words that do not occur in any product are matched against similar words instead, found through an
+ * index of the character trigrams of all known words, so that simple typos still give results.
+ * <p>
+ * Each product is a document with a dense document number. Updating a product marks its old document as deleted and
+ * adds a new one, as does removing a product, and the deleted documents are removed once they make up a large part of
+ * the index. Until then, they are still counted in the document frequencies, which only affects ranking slightly.
+ * Words that no longer occur in any document are forgotten at the same time, so they are not suggested for typos.
+ * <p>
+ * Queries may run concurrently with each other, while updates are exclusive.
+ *
+ * @author Kasper
+ */
+class SearchIndex implements ProductIndex {
+
+	/* BM25 parameters */
+	private static final float K1 = 1.2f;
+	private static final float B = 0.75f;
+
+	/**
+	 * The number of times a word in the name of a product is counted.
+	 */
+	private static final int NAME_WEIGHT = 3;
+
+	/**
+	 * The factor applied to the score of a word matched through typo tolerance.
+	 */
+	private static final float FUZZY_WEIGHT = 0.5f;
+	private static final int MAX_FUZZY_CANDIDATES = 64;
+	private static final int MAX_FUZZY_EXPANSIONS = 4;
+
+	/**
+	 * The number of score accumulators kept for reuse. Queries are only computed on as many threads at once as there
+	 * are processors, so more would rarely be used.
+	 */
+	private static final int SCRATCH_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+	private final ReadWriteLock lock;
+	private final BlockingQueue<Scratch> scratchPool;
+	private Data data;
+
+	/**
+	 * Constructs a new, empty search index.
+	 */
+	public SearchIndex() {
+		lock = new ReentrantReadWriteLock();
+		scratchPool = new ArrayBlockingQueue<>(SCRATCH_POOL_SIZE);
+		data = new Data();
+	}
+
+	@Override
+	public void rebuild(Collection<Product> products) {
+		//Build the new index without holding the lock, so that queries can still be answered in the meantime
+		Data newData = new Data();
+		for (Product product : products) {
+			if (product.hasValidID()) {
+				newData.add(product);
+			}
+		}
+
+		lock.writeLock().lock();
+		try {
+			data = newData;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void update(Product product) {
+		update(Collections.singleton(product));
+	}
+
+	@Override
+	public void update(Collection<Product> products) {
+		lock.writeLock().lock();
+		try {
+			for (Product product : products) {
+				if (product.hasValidID()) {
+					data.remove(product.getID());
+					data.add(product);
+				}
+			}
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(int productID) {
+		lock.writeLock().lock();
+		try {
+			data.remove(productID);
+			compactIfNeeded();
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void compactIfNeeded() {
+		if (data.deletedCount > Math.max(1024, data.liveCount / 2)) {
+			data.compact();
+		}
+	}
+
+	/**
+	 * Get the number of distinct words in the index.
+	 *
+	 * @return the number of words
+	 */
+	int getTermCount() {
+		lock.readLock().lock();
+		try {
+			return data.terms.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Search for products matching the specified query.
+	 *
+	 * @param query the query to search for
+	 * @param limit the maximum number of results
+	 * @return the ids of the matching products, best match first
+	 */
+	public int[] search(String query, int limit) {
+		Set<String> tokens = new LinkedHashSet<>(tokenize(query));
+		if (tokens.isEmpty() || limit <= 0) return new int[0];
+
+		lock.readLock().lock();
+		try {
+			Data d = data;
+			//Searches may run on a new thread each, so the accumulators are shared rather than kept per thread
+			Scratch s = scratchPool.poll();
+			if (s == null) {
+				s = new Scratch();
+			}
+			s.ensureCapacity(d.docCount);
+
+			try {
+				float avgLength = d.liveCount == 0 ? 1 : (float) d.totalLength / d.liveCount;
+				for (String token : tokens) {
+					Integer termID = d.termIDs.get(token);
+					if (termID != null) {
+						d.score(termID, 1, avgLength, s);
+					} else {
+						for (int fuzzyID : d.fuzzyMatches(token)) {
+							d.score(fuzzyID, FUZZY_WEIGHT, avgLength, s);
+						}
+					}
+				}
+
+				return d.topDocuments(s, limit);
+			} finally {
+				s.reset();
+				//Accumulators beyond the size of the pool are left to the garbage collector
+				scratchPool.offer(s);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Split the specified text into lower case words, consisting of letters and digits.
+	 *
+	 * @param text the text to split, may be null
+	 * @return the words of the text, in order
+	 */
+	static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null) return tokens;
+
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Get the optimal string alignment distance between two strings, that is the number of insertions, deletions,
+	 * substitutions and transpositions of adjacent characters needed to turn one into the other.
+	 */
+	static int editDistance(String a, String b) {
+		int[] previous2 = new int[b.length() + 1];
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+					current[j] = Math.min(current[j], previous2[j - 2] + 1);
+				}
+			}
+
+			int[] temp = previous2;
+			previous2 = previous;
+			previous = current;
+			current = temp;
+		}
+
+		return previous[b.length()];
+	}
+
+	/**
+	 * Get the trigrams of a word, with the start and end of the word marked.
+	 */
+	private static List<String> trigrams(String word) {
+		String padded = "^" + word + "$";
+		List<String> grams = new ArrayList<>(padded.length() - 2);
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			grams.add(padded.substring(i, i + 3));
+		}
+		return grams;
+	}
+
+	/**
+	 * The contents of the index.
+	 */
+	private static class Data {
+
+		private final Map<String, Integer> termIDs = new HashMap<>();
+		private final List<String> terms = new ArrayList<>();
+		private final List<Postings> postings = new ArrayList<>();
+		private final Map<String, IntList> trigramTerms = new HashMap<>();
+
+		/* Document data, indexed by document number */
+		private int[] productIDs = new int[1024];
+		private int[] lengths = new int[1024];
+		private final BitSet deleted = new BitSet();
+		private int docCount;
+
+		private final Map<Integer, Integer> documents = new HashMap<>();
+		private int liveCount;
+		private int deletedCount;
+		private long totalLength;
+
+		private void add(Product product) {
+			Map<String, Integer> frequencies = new HashMap<>();
+			int length = addWords(frequencies, product.getName(), NAME_WEIGHT);
+			length += addWords(frequencies, product.getDescription(), 1);
+			for (Tag tag : product.getTagsView()) {
+				length += addWords(frequencies, tag.getName(), 1);
+			}
+			for (Attribute.AttributeValue value : product.getAttributeValuesView()) {
+				if (value.getValue() instanceof String) {
+					length += addWords(frequencies, (String) value.getValue(), 1);
+				}
+			}
+
+			if (docCount == productIDs.length) {
+				productIDs = Arrays.copyOf(productIDs, docCount * 2);
+				lengths = Arrays.copyOf(lengths, docCount * 2);
+			}
+			int doc = docCount++;
+			productIDs[doc] = product.getID();
+			lengths[doc] = length;
+			documents.put(product.getID(), doc);
+			liveCount++;
+			totalLength += length;
+
+			for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+				postings.get(termID(entry.getKey())).add(doc, entry.getValue());
+			}
+		}
+
+		private int addWords(Map<String, Integer> frequencies, String text, int weight) {
+			List<String> words = tokenize(text);
+			for (String word : words) {
+				frequencies.merge(word, weight, Integer::sum);
+			}
+			return words.size() * weight;
+		}
+
+		private int termID(String term) {
+			Integer id = termIDs.get(term);
+			if (id != null) return id;
+
+			id = terms.size();
+			termIDs.put(term, id);
+			terms.add(term);
+			postings.add(new Postings());
+			for (String gram : trigrams(term)) {
+				trigramTerms.computeIfAbsent(gram, g -> new IntList()).add(id);
+			}
+
+			return id;
+		}
+
+		private void remove(int productID) {
+			Integer doc = documents.remove(productID);
+			if (doc == null) return;
+
+			deleted.set(doc);
+			deletedCount++;
+			liveCount--;
+			totalLength -= lengths[doc];
+		}
+
+		/**
+		 * Remove all deleted documents, renumbering the remaining ones, and then the terms that no longer occur in any
+		 * document.
+		 */
+		private void compact() {
+			int[] newNumbers = new int[docCount];
+			int next = 0;
+			for (int doc = 0; doc < docCount; doc++) {
+				if (deleted.get(doc)) {
+					newNumbers[doc] = -1;
+				} else {
+					newNumbers[doc] = next;
+					productIDs[next] = productIDs[doc];
+					lengths[next] = lengths[doc];
+					next++;
+				}
+			}
+
+			for (Postings p : postings) {
+				p.renumber(newNumbers);
+			}
+
+			documents.clear();
+			for (int doc = 0; doc < next; doc++) {
+				documents.put(productIDs[doc], doc);
+			}
+
+			docCount = next;
+			deleted.clear();
+			deletedCount = 0;
+
+			pruneTerms();
+		}
+
+		/**
+		 * Remove the terms without postings, renumbering the remaining ones and rebuilding the trigram index.
+		 */
+		private void pruneTerms() {
+			int next = 0;
+			for (int id = 0; id < terms.size(); id++) {
+				if (postings.get(id).size > 0) {
+					terms.set(next, terms.get(id));
+					postings.set(next, postings.get(id));
+					next++;
+				}
+			}
+			if (next == terms.size()) return;
+
+			terms.subList(next, terms.size()).clear();
+			postings.subList(next, postings.size()).clear();
+			termIDs.clear();
+			trigramTerms.clear();
+			for (int id = 0; id < next; id++) {
+				String term = terms.get(id);
+				termIDs.put(term, id);
+				for (String gram : trigrams(term)) {
+					trigramTerms.computeIfAbsent(gram, g -> new IntList()).add(id);
+				}
+			}
+		}
+
+		/**
+		 * Add the BM25 score of the specified term to the scores of the documents containing it.
+		 */
+		private void score(int termID, float weight, float avgLength, Scratch s) {
+			Postings p = postings.get(termID);
+			int df = Math.min(p.size, liveCount);
+			float idf = (float) Math.log(1 + (liveCount - df + 0.5) / (df + 0.5));
+
+			for (int i = 0; i < p.size; i++) {
+				int doc = p.docs[i];
+				if (deleted.get(doc)) continue;
+
+				int tf = p.frequencies[i];
+				float norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+				s.add(doc, weight * idf * tf * (K1 + 1) / (tf + norm));
+			}
+		}
+
+		/**
+		 * Find the known words that are within a few edits of the specified word, closest first.
+		 */
+		private List<Integer> fuzzyMatches(String word) {
+			if (word.length() < 3) return Collections.emptyList();
+			int maxEdits = word.length() <= 5 ? 1 : 2;
+
+			//Count the trigrams shared with each known word
+			Map<Integer, Integer> shared = new HashMap<>();
+			for (String gram : trigrams(word)) {
+				IntList ids = trigramTerms.get(gram);
+				if (ids == null) continue;
+				for (int i = 0; i < ids.size; i++) {
+					shared.merge(ids.values[i], 1, Integer::sum);
+				}
+			}
+
+			//Only compute the edit distance for the words sharing the most trigrams
+			List<Map.Entry<Integer, Integer>> candidates = new ArrayList<>(shared.entrySet());
+			candidates.sort((e1, e2) -> e2.getValue() - e1.getValue());
+
+			List<int[]> matches = new ArrayList<>();
+			for (int i = 0; i < candidates.size() && i < MAX_FUZZY_CANDIDATES; i++) {
+				int id = candidates.get(i).getKey();
+				String term = terms.get(id);
+				if (Math.abs(term.length() - word.length()) > maxEdits) continue;
+
+				int distance = editDistance(word, term);
+				if (distance <= maxEdits) {
+					matches.add(new int[]{id, distance});
+				}
+			}
+			matches.sort(Comparator.comparingInt(m -> m[1]));
+
+			List<Integer> result = new ArrayList<>();
+			for (int i = 0; i < matches.size() && i < MAX_FUZZY_EXPANSIONS; i++) {
+				result.add(matches.get(i)[0]);
+			}
+			return result;
+		}
+
+		/**
+		 * Get the product ids of the highest scoring documents, using a min-heap of the best documents seen so far.
+		 */
+		private int[] topDocuments(Scratch s, int limit) {
+			int[] heap = new int[Math.min(limit, s.touchedCount)];
+			int heapSize = 0;
+			float[] scores = s.scores;
+
+			for (int i = 0; i < s.touchedCount; i++) {
+				int doc = s.touched[i];
+				if (heapSize < heap.length) {
+					heap[heapSize++] = doc;
+					siftUp(heap, heapSize - 1, scores);
+				} else if (better(doc, heap[0], scores)) {
+					heap[0] = doc;
+					siftDown(heap, heapSize, scores);
+				}
+			}
+
+			//Empty the heap from the worst document to the best
+			int[] result = new int[heapSize];
+			for (int i = heapSize - 1; i >= 0; i--) {
+				result[i] = productIDs[heap[0]];
+				heap[0] = heap[--heapSize];
+				siftDown(heap, heapSize, scores);
+			}
+			return result;
+		}
+
+		private static boolean better(int doc1, int doc2, float[] scores) {
+			//Ties are broken by document number, to make the order deterministic
+			return scores[doc1] > scores[doc2] || (scores[doc1] == scores[doc2] && doc1 < doc2);
+		}
+
+		private static void siftUp(int[] heap, int i, float[] scores) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!better(heap[parent], heap[i], scores)) break;
+				swap(heap, i, parent);
+				i = parent;
+			}
+		}
+
+		private static void siftDown(int[] heap, int size, float[] scores) {
+			int i = 0;
+			while (true) {
+				int worst = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if (left < size && better(heap[worst], heap[left], scores)) worst = left;
+				if (right < size && better(heap[worst], heap[right], scores)) worst = right;
+				if (worst == i) return;
+				swap(heap, i, worst);
+				i = worst;
+			}
+		}
+
+		private static void swap(int[] heap, int i, int j) {
+			int temp = heap[i];
+			heap[i] = heap[j];
+			heap[j] = temp;
+		}
+	}
+
+	/**
+	 * The documents containing a term along with the weighted number of occurrences, in increasing document order.
+	 */
+	private static class Postings {
+
+		private int[] docs = new int[4];
+		private int[] frequencies = new int[4];
+		private int size;
+
+		private void add(int doc, int frequency) {
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+				frequencies = Arrays.copyOf(frequencies, size * 2);
+			}
+			docs[size] = doc;
+			frequencies[size] = frequency;
+			size++;
+		}
+
+		private void renumber(int[] newNumbers) {
+			int next = 0;
+			for (int i = 0; i < size; i++) {
+				int doc = newNumbers[docs[i]];
+				if (doc >= 0) {
+					docs[next] = doc;
+					frequencies[next] = frequencies[i];
+					next++;
+				}
+			}
+			size = next;
+		}
+	}
+
+	/**
+	 * A growable list of primitive integers.
+	 */
+	private static class IntList {
+
+		private int[] values = new int[4];
+		private int size;
+
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+
+	/**
+	 * Score accumulators reused between queries, used by one query at a time. Only the entries of touched documents are
+	 * non-zero, so they can be cleared without visiting the entire array.
+	 */
+	private static class Scratch {
+
+		private float[] scores = new float[0];
+		private int[] touched = new int[64];
+		private int touchedCount;
+
+		private void ensureCapacity(int docCount) {
+			if (scores.length < docCount) {
+				scores = new float[docCount];
+			}
+		}
+
+		private void add(int doc, float score) {
+			if (scores[doc] == 0) {
+				if (touchedCount == touched.length) {
+					touched = Arrays.copyOf(touched, touchedCount * 2);
+				}
+				touched[touchedCount++] = doc;
+			}
+			scores[doc] += score;
+		}
+
+		private void reset() {
+			for (int i = 0; i < touchedCount; i++) {
+				scores[touched[i]] = 0;
+			}
+			touchedCount = 0;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package pim.business;
+
+import shared.Async;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Coalesces concurrent loads of the same key into one. The first thread to load a key runs the load, and threads
+ * loading the same key while it is running wait for it and share its result, or its failure. Once the load has
+ * completed, the next load of the key runs again, so results are never kept. This is used for loads from persistence,
+ * where many threads requesting the same popular product at once would otherwise each run the same queries.
+ * <p>
+ * A thread joining a load in progress gets the result of a load that started before it asked. This is no different
+ * from the load it would have run itself completing just before a concurrent change, so it is only suitable for reads
+ * that do not have to see changes made while they run.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ * @author Kasper
+ */
+class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight;
+
+	/**
+	 * Constructs a new single flight with no loads in progress.
+	 */
+	public SingleFlight() {
+		inFlight = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Load the specified key, or wait for the load of it in progress if there is one. The loader must not load the
+	 * same key from this single flight, as it would wait for itself.
+	 *
+	 * @param key    the key to load
+	 * @param loader the load to run if no load of the key is in progress
+	 * @return the result of the load
+	 * @throws IOException if the load fails
+	 */
+	public V load(K key, Async.IOSupplier<V> loader) throws IOException {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null) {
+			return Async.join(existing);
+		}
+
+		try {
+			V result = loader.get();
+			flight.complete(result);
+			return result;
+		} catch (IOException | RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+
+	/**
+	 * Get the number of loads in progress.
+	 *
+	 * @return the number of loads in progress
+	 */
+	public int size() {
+		return inFlight.size();
+	}
+}
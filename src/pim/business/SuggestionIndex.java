@@ -0,0 +1,447 @@
+package pim.business;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An in-memory index for completing product names and tags as the user types. A product name can be completed from the
+ * start of any of its words, so typing "lap" suggests "Omen laptop". Suggestions are ranked by popularity: that of the
+ * product for product names, and the summed popularity of the products having the tag for tags. Ties are broken
+ * alphabetically.
+ * <p>
+ * The completions are kept in a sorted array of name suffixes, each beginning at the start of a word, so that all
+ * completions of a prefix form a contiguous range found by binary search. A segment tree over the popularity of the
+ * entries gives the best entry of any range, from which the top completions are extracted in time proportional to
+ * their number rather than to the size of the range.
+ * <p>
+ * The index is immutable once built. Changes are applied by building a new index on a background thread and then
+ * swapping it in, so readers never wait. Changes arriving while a rebuild is pending are coalesced into that rebuild.
+ * Popularity changes with reviews rather than with saves, so it is read when the index is built and then refreshed
+ * periodically on the same background thread, rather than for every change.
+ *
+ * @author Kasper
+ */
+class SuggestionIndex implements ProductIndex {
+
+	/**
+	 * The maximum number of entries inspected per requested suggestion, which bounds the cost of skipping duplicates.
+	 */
+	private static final int MAX_ENTRIES_PER_SUGGESTION = 16;
+
+	/**
+	 * The time between refreshes of the popularity of products.
+	 */
+	private static final long POPULARITY_REFRESH_MILLIS = 5 * 60 * 1000;
+
+	private final PopularitySource popularitySource;
+	private final Map<Integer, Source> sources;
+	private Map<Integer, Double> popularity;
+	private volatile Snapshot snapshot;
+
+	/**
+	 * The number of changes made to the sources and popularity, and the number of changes included in the published
+	 * snapshot. Snapshots are built outside the lock, so one built from older data may finish last.
+	 */
+	private long generation;
+	private long publishedGeneration;
+
+	private final ScheduledExecutorService rebuilder;
+	private final AtomicBoolean rebuildPending;
+
+	/**
+	 * Constructs a new, empty suggestion index.
+	 *
+	 * @param popularitySource the source of the popularity of products
+	 */
+	public SuggestionIndex(PopularitySource popularitySource) {
+		this(popularitySource, POPULARITY_REFRESH_MILLIS);
+	}
+
+	/**
+	 * Constructs a new, empty suggestion index refreshing the popularity of products at the specified interval.
+	 *
+	 * @param popularitySource        the source of the popularity of products
+	 * @param popularityRefreshMillis the time between refreshes of the popularity in milliseconds
+	 */
+	SuggestionIndex(PopularitySource popularitySource, long popularityRefreshMillis) {
+		this.popularitySource = popularitySource;
+		sources = new HashMap<>();
+		popularity = Collections.emptyMap();
+		snapshot = new Snapshot(Collections.emptyMap(), popularity);
+
+		rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Suggestion index rebuilder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		rebuildPending = new AtomicBoolean();
+		rebuilder.scheduleWithFixedDelay(this::refreshPopularity, popularityRefreshMillis, popularityRefreshMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void rebuild(Collection<Product> products) {
+		Map<Integer, Double> newPopularity = readPopularity();
+
+		Map<Integer, Source> copy;
+		Map<Integer, Double> currentPopularity;
+		long builtGeneration;
+		synchronized (this) {
+			sources.clear();
+			for (Product product : products) {
+				put(product);
+			}
+			if (newPopularity != null) {
+				popularity = newPopularity;
+			}
+			copy = new HashMap<>(sources);
+			currentPopularity = popularity;
+			builtGeneration = ++generation;
+		}
+
+		//The first build happens on the calling thread, which is waiting for the index anyway
+		publish(new Snapshot(copy, currentPopularity), builtGeneration);
+	}
+
+	@Override
+	public void update(Product product) {
+		update(Collections.singleton(product));
+	}
+
+	@Override
+	public void update(Collection<Product> products) {
+		synchronized (this) {
+			for (Product product : products) {
+				put(product);
+			}
+			generation++;
+		}
+		scheduleRebuild();
+	}
+
+	@Override
+	public boolean remove(int productID) {
+		synchronized (this) {
+			sources.remove(productID);
+			generation++;
+		}
+		scheduleRebuild();
+		return true;
+	}
+
+	private void scheduleRebuild() {
+		//Only schedule a rebuild if one is not already waiting to start, as that one will include these changes
+		if (rebuildPending.compareAndSet(false, true)) {
+			rebuilder.execute(() -> {
+				rebuildPending.set(false);
+
+				Map<Integer, Source> copy;
+				Map<Integer, Double> currentPopularity;
+				long builtGeneration;
+				synchronized (this) {
+					copy = new HashMap<>(sources);
+					currentPopularity = popularity;
+					builtGeneration = generation;
+				}
+				publish(new Snapshot(copy, currentPopularity), builtGeneration);
+			});
+		}
+	}
+
+	/**
+	 * Make the specified snapshot the one used for suggestions, unless a snapshot of newer data has been published
+	 * already.
+	 */
+	private synchronized void publish(Snapshot built, long builtGeneration) {
+		if (builtGeneration > publishedGeneration) {
+			snapshot = built;
+			publishedGeneration = builtGeneration;
+		}
+	}
+
+	/**
+	 * Get the best completions of the specified prefix.
+	 *
+	 * @param prefix the text typed so far
+	 * @param limit  the maximum number of suggestions
+	 * @return the suggested product names and tags, best first
+	 */
+	public List<String> suggest(String prefix, int limit) {
+		return snapshot.suggest(prefix.trim().toLowerCase(Locale.ROOT), limit);
+	}
+
+	private void put(Product product) {
+		if (!product.hasValidID()) return;
+
+		List<String> tags = new ArrayList<>();
+		for (Tag tag : product.getTagsView()) {
+			tags.add(tag.getName());
+		}
+		sources.put(product.getID(), new Source(product.getName(), tags.toArray(new String[0])));
+	}
+
+	private void refreshPopularity() {
+		//There is nothing to rank before the index has been built
+		synchronized (this) {
+			if (publishedGeneration == 0) return;
+		}
+
+		Map<Integer, Double> newPopularity = readPopularity();
+		if (newPopularity == null) return;
+
+		synchronized (this) {
+			popularity = newPopularity;
+			generation++;
+		}
+		scheduleRebuild();
+	}
+
+	/**
+	 * Read the popularity of products without holding the lock, as it is read from the database.
+	 *
+	 * @return the popularity of products, or null if it could not be read
+	 */
+	private Map<Integer, Double> readPopularity() {
+		try {
+			return popularitySource.getPopularity();
+		} catch (IOException e) {
+			//Keep ranking by the previous popularity rather than not updating the index at all
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Interface describing where the popularity of products comes from.
+	 */
+	interface PopularitySource {
+
+		/**
+		 * Get the popularity of products.
+		 *
+		 * @return a map from product ids to their popularity. Products that are not in the map have no popularity
+		 * @throws IOException if something goes wrong
+		 */
+		Map<Integer, Double> getPopularity() throws IOException;
+	}
+
+	/**
+	 * The data of a product that is needed for building the index.
+	 */
+	private static class Source {
+
+		private final String name;
+		private final String[] tags;
+
+		private Source(String name, String[] tags) {
+			this.name = name;
+			this.tags = tags;
+		}
+	}
+
+	/**
+	 * An immutable, built index.
+	 */
+	private static class Snapshot {
+
+		/* The texts that can be suggested, along with their lower case form and their score */
+		private final String[] displays;
+		private final String[] texts;
+		private final float[] scores;
+
+		/* The entries, each being a suffix of a text, in sorted order */
+		private final int[] entryTexts;
+		private final int[] entryOffsets;
+
+		/* Segment tree holding the best entry of each node */
+		private final int[] tree;
+		private final int leaves;
+
+		private Snapshot(Map<Integer, Source> sources, Map<Integer, Double> popularity) {
+			List<String> displayList = new ArrayList<>();
+			List<Float> scoreList = new ArrayList<>();
+
+			//Products, and the summed popularity of every tag
+			Map<String, Double> tagScores = new HashMap<>();
+			for (Map.Entry<Integer, Source> entry : sources.entrySet()) {
+				double score = popularity.getOrDefault(entry.getKey(), 0.0);
+				Source source = entry.getValue();
+				if (source.name != null) {
+					displayList.add(source.name);
+					scoreList.add((float) score);
+				}
+				for (String tag : source.tags) {
+					tagScores.merge(tag, score, Double::sum);
+				}
+			}
+			for (Map.Entry<String, Double> entry : tagScores.entrySet()) {
+				displayList.add(entry.getKey());
+				scoreList.add(entry.getValue().floatValue());
+			}
+
+			displays = displayList.toArray(new String[0]);
+			texts = new String[displays.length];
+			scores = new float[displays.length];
+			for (int i = 0; i < displays.length; i++) {
+				texts[i] = displays[i].toLowerCase(Locale.ROOT);
+				scores[i] = scoreList.get(i);
+			}
+
+			//Create an entry for every word start, and sort them by the text from there on
+			List<Integer> unsortedTexts = new ArrayList<>();
+			List<Integer> unsortedOffsets = new ArrayList<>();
+			for (int t = 0; t < texts.length; t++) {
+				String text = texts[t];
+				for (int i = 0; i < text.length(); i++) {
+					if (Character.isLetterOrDigit(text.charAt(i)) &&
+							(i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+						unsortedTexts.add(t);
+						unsortedOffsets.add(i);
+					}
+				}
+			}
+
+			Integer[] order = new Integer[unsortedTexts.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> compareSuffixes(texts[unsortedTexts.get(a)], unsortedOffsets.get(a),
+					texts[unsortedTexts.get(b)], unsortedOffsets.get(b)));
+
+			entryTexts = new int[order.length];
+			entryOffsets = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				entryTexts[i] = unsortedTexts.get(order[i]);
+				entryOffsets[i] = unsortedOffsets.get(order[i]);
+			}
+
+			//Build the segment tree bottom up
+			int size = 1;
+			while (size < entryTexts.length) {
+				size *= 2;
+			}
+			leaves = size;
+			tree = new int[2 * size];
+			Arrays.fill(tree, -1);
+			for (int i = 0; i < entryTexts.length; i++) {
+				tree[size + i] = i;
+			}
+			for (int node = size - 1; node > 0; node--) {
+				tree[node] = best(tree[2 * node], tree[2 * node + 1]);
+			}
+		}
+
+		private List<String> suggest(String prefix, int limit) {
+			List<String> result = new ArrayList<>();
+			if (prefix.isEmpty() || limit <= 0) return result;
+
+			int from = lowerBound(prefix);
+			int to = upperBound(prefix, from);
+			if (from >= to) return result;
+
+			//Repeatedly take the best entry of the best range, and split that range around it
+			PriorityQueue<int[]> ranges = new PriorityQueue<>((r1, r2) -> better(r1[2], r2[2]) ? -1 : 1);
+			ranges.add(new int[]{from, to, bestInRange(from, to)});
+			int inspected = 0;
+			while (!ranges.isEmpty() && result.size() < limit && inspected < limit * MAX_ENTRIES_PER_SUGGESTION) {
+				int[] range = ranges.poll();
+				int entry = range[2];
+				inspected++;
+
+				//The same text may be reached from several of its words, and several products may share a name
+				String display = displays[entryTexts[entry]];
+				if (!result.contains(display)) {
+					result.add(display);
+				}
+
+				if (range[0] < entry) {
+					ranges.add(new int[]{range[0], entry, bestInRange(range[0], entry)});
+				}
+				if (entry + 1 < range[1]) {
+					ranges.add(new int[]{entry + 1, range[1], bestInRange(entry + 1, range[1])});
+				}
+			}
+
+			return result;
+		}
+
+		/**
+		 * Find the first entry that is not less than the prefix.
+		 */
+		private int lowerBound(String prefix) {
+			int low = 0;
+			int high = entryTexts.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (compareToPrefix(mid, prefix) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Find the first entry from the specified one that does not start with the prefix.
+		 */
+		private int upperBound(String prefix, int from) {
+			int low = from;
+			int high = entryTexts.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (texts[entryTexts[mid]].startsWith(prefix, entryOffsets[mid])) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		private int compareToPrefix(int entry, String prefix) {
+			return compareSuffixes(texts[entryTexts[entry]], entryOffsets[entry], prefix, 0);
+		}
+
+		/**
+		 * Get the best entry in the range from (inclusive) to (exclusive).
+		 */
+		private int bestInRange(int from, int to) {
+			int result = -1;
+			for (int low = from + leaves, high = to + leaves; low < high; low >>= 1, high >>= 1) {
+				if ((low & 1) == 1) result = best(result, tree[low++]);
+				if ((high & 1) == 1) result = best(result, tree[--high]);
+			}
+			return result;
+		}
+
+		private int best(int entry1, int entry2) {
+			if (entry1 < 0) return entry2;
+			if (entry2 < 0) return entry1;
+			return better(entry1, entry2) ? entry1 : entry2;
+		}
+
+		private boolean better(int entry1, int entry2) {
+			float score1 = scores[entryTexts[entry1]];
+			float score2 = scores[entryTexts[entry2]];
+
+			//Entries are sorted, so the lower entry is alphabetically first
+			return score1 > score2 || (score1 == score2 && entry1 < entry2);
+		}
+
+		private static int compareSuffixes(String text1, int offset1, String text2, int offset2) {
+			int length1 = text1.length() - offset1;
+			int length2 = text2.length() - offset2;
+			int length = Math.min(length1, length2);
+			for (int i = 0; i < length; i++) {
+				int difference = text1.charAt(offset1 + i) - text2.charAt(offset2 + i);
+				if (difference != 0) return difference;
+			}
+			return length1 - length2;
+		}
+	}
+}
@@ -1,22 +1,21 @@
 package pim.business;
 
-import java.util.HashMap;
-
 /**
- * Manages tags and prevents duplication
+ * Manages tags and prevents duplication. Tags are only held weakly, so that the ones no longer referenced by any
+ * product can be reclaimed.
  *
  * @author Mikkel
  * @author Kasper
  */
 class TagManager {
 
-	private HashMap<String, Tag> tags;
+	private final WeakValueMap<String, Tag> tags;
 
 	/**
 	 * Constructs a new tag manager.
 	 */
 	public TagManager() {
-		tags = new HashMap<>();
+		tags = new WeakValueMap<>();
 	}
 
 	/**
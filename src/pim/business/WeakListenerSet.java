@@ -0,0 +1,124 @@
+package pim.business;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A set of listeners held through weak references. Registering with a business entity, such as a product listening to
+ * its categories, will therefore not keep the listener alive, and listeners that have been reclaimed by the garbage
+ * collector are removed the next time the set is accessed. As a consequence, whoever registers a listener must keep it
+ * strongly reachable for as long as it should receive notifications.
+ * <p>
+ * Listeners are compared by identity. This set is safe for use by multiple threads.
+ *
+ * @param <L> the type of listeners
+ * @author Kasper
+ */
+class WeakListenerSet<L> {
+
+	private final Set<ListenerReference<L>> listeners;
+	private final ReferenceQueue<L> queue;
+
+	/**
+	 * Constructs a new, empty set.
+	 */
+	public WeakListenerSet() {
+		listeners = new HashSet<>();
+		queue = new ReferenceQueue<>();
+	}
+
+	/**
+	 * Add a listener to this set.
+	 *
+	 * @param listener the listener to add
+	 * @return true if the listener was added, false if it was already in the set
+	 */
+	public synchronized boolean add(L listener) {
+		expungeStaleEntries();
+		return listeners.add(new ListenerReference<>(listener, queue));
+	}
+
+	/**
+	 * Remove a listener from this set.
+	 *
+	 * @param listener the listener to remove
+	 * @return true if the listener was removed, false if it was not in the set
+	 */
+	public synchronized boolean remove(L listener) {
+		expungeStaleEntries();
+		return listeners.remove(new ListenerReference<>(listener, null));
+	}
+
+	/**
+	 * Get a list of the listeners in this set that have not yet been reclaimed. The list is a copy, which can be used
+	 * for notifying the listeners without holding any locks.
+	 *
+	 * @return a list of all live listeners
+	 */
+	public synchronized List<L> snapshot() {
+		expungeStaleEntries();
+		List<L> live = new ArrayList<>(listeners.size());
+		for (ListenerReference<L> ref : listeners) {
+			L listener = ref.get();
+			if (listener != null) {
+				live.add(listener);
+			}
+		}
+
+		return live;
+	}
+
+	/**
+	 * Get the number of listeners in this set. This may include listeners that have been reclaimed, but which have not
+	 * yet been removed.
+	 *
+	 * @return the number of listeners in this set
+	 */
+	public synchronized int size() {
+		expungeStaleEntries();
+		return listeners.size();
+	}
+
+	/**
+	 * Remove the listeners that have been reclaimed by the garbage collector.
+	 */
+	private void expungeStaleEntries() {
+		Object ref;
+		while ((ref = queue.poll()) != null) {
+			listeners.remove(ref);
+		}
+	}
+
+	/**
+	 * A weak reference to a listener, which is equal to other references to the same listener. The hash code is
+	 * computed up front, so that the reference can still be found after the listener has been reclaimed.
+	 */
+	private static class ListenerReference<L> extends WeakReference<L> {
+
+		private final int hash;
+
+		private ListenerReference(L listener, ReferenceQueue<L> queue) {
+			super(listener, queue);
+			this.hash = System.identityHashCode(listener);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof ListenerReference)) return false;
+
+			//Cleared references are only equal to themselves
+			Object listener = get();
+			return listener != null && listener == ((ListenerReference<?>) obj).get();
+		}
+	}
+}
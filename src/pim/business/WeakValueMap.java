@@ -0,0 +1,171 @@
+package pim.business;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A map holding its values through weak references. This is used by the entity managers as identity maps: as long as
+ * an entity is referenced from somewhere else in the application, the map guarantees that the same instance is returned
+ * for its key, but once it is no longer referenced it may be reclaimed by the garbage collector. Entries of reclaimed
+ * values are removed from the map the next time it is accessed.
+ * <p>
+ * This map is safe for use by multiple threads, and {@link #computeIfAbsent(Object, Function)} is atomic, so that
+ * concurrent construction of the same entity yields a single instance.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author Kasper
+ */
+class WeakValueMap<K, V> {
+
+	private final ConcurrentMap<K, ValueReference<K, V>> map;
+	private final ReferenceQueue<V> queue;
+
+	/**
+	 * Constructs a new, empty map.
+	 */
+	public WeakValueMap() {
+		map = new ConcurrentHashMap<>();
+		queue = new ReferenceQueue<>();
+	}
+
+	/**
+	 * Get the value for the specified key.
+	 *
+	 * @param key the key to get the value for
+	 * @return the value for the key, or null if there is no value or if it has been reclaimed
+	 */
+	public V get(K key) {
+		expungeStaleEntries();
+		ValueReference<K, V> ref = map.get(key);
+		return ref == null ? null : ref.get();
+	}
+
+	/**
+	 * Test whether this map contains a value for the specified key that has not yet been reclaimed.
+	 *
+	 * @param key the key to test for
+	 * @return true if a live value exists for the key, false otherwise
+	 */
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Associate the specified value with the specified key.
+	 *
+	 * @param key   the key
+	 * @param value the value
+	 * @return the previous value for the key, or null if there was none
+	 */
+	public V put(K key, V value) {
+		expungeStaleEntries();
+		ValueReference<K, V> old = map.put(key, new ValueReference<>(key, value, queue));
+		return old == null ? null : old.get();
+	}
+
+	/**
+	 * Get the value for the specified key. If there is no live value, a new one is computed using the specified
+	 * function and stored in the map. This operation is atomic, so the function is invoked at most once per missing
+	 * value even if multiple threads ask for the same key at the same time.
+	 *
+	 * @param key             the key
+	 * @param mappingFunction the function used to compute a missing value
+	 * @return the existing or computed value
+	 */
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		V value = get(key);
+		if (value != null) return value;
+
+		//The computed value must be kept strongly reachable until it is returned, as the map only references it weakly
+		List<V> created = new ArrayList<>(1);
+		ValueReference<K, V> ref = map.compute(key, (k, existing) -> {
+			if (existing != null) {
+				V existingValue = existing.get();
+				if (existingValue != null) {
+					created.add(existingValue);
+					return existing;
+				}
+			}
+
+			V newValue = mappingFunction.apply(k);
+			created.add(newValue);
+			return new ValueReference<>(k, newValue, queue);
+		});
+
+		return created.isEmpty() ? ref.get() : created.get(0);
+	}
+
+	/**
+	 * Remove the value for the specified key.
+	 *
+	 * @param key the key to remove
+	 * @return the removed value, or null if there was none
+	 */
+	public V remove(K key) {
+		expungeStaleEntries();
+		ValueReference<K, V> old = map.remove(key);
+		return old == null ? null : old.get();
+	}
+
+	/**
+	 * Get a list of all the values in this map that have not yet been reclaimed. The list is a copy, so holding on to
+	 * it will keep the values alive.
+	 *
+	 * @return a list of all live values
+	 */
+	public List<V> values() {
+		expungeStaleEntries();
+		List<V> values = new ArrayList<>(map.size());
+		for (ValueReference<K, V> ref : map.values()) {
+			V value = ref.get();
+			if (value != null) {
+				values.add(value);
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Get the number of entries in this map. This may include entries whose values have been reclaimed, but which
+	 * have not yet been removed.
+	 *
+	 * @return the number of entries in this map
+	 */
+	public int size() {
+		expungeStaleEntries();
+		return map.size();
+	}
+
+	/**
+	 * Remove the entries whose values have been reclaimed by the garbage collector.
+	 */
+	@SuppressWarnings("unchecked")
+	private void expungeStaleEntries() {
+		ValueReference<K, V> ref;
+		while ((ref = (ValueReference<K, V>) queue.poll()) != null) {
+			//Only remove the entry if it has not already been replaced by a new value
+			map.remove(ref.key, ref);
+		}
+	}
+
+	/**
+	 * A weak reference that remembers the key it is stored under, so that the entry can be removed once the value has
+	 * been reclaimed.
+	 */
+	private static class ValueReference<K, V> extends WeakReference<V> {
+
+		private final K key;
+
+		private ValueReference(K key, V value, ReferenceQueue<V> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+	}
+}
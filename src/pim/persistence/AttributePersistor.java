@@ -9,6 +9,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Class used for performing operations on attributes in the database.
@@ -81,10 +82,11 @@ class AttributePersistor {
 		     PreparedStatement storeAttributeDataNew = connection.prepareStatement("INSERT INTO attribute VALUES (DEFAULT, ?, ?) RETURNING attributeid;");
 		     PreparedStatement storeLegalValues = connection.prepareStatement("INSERT INTO legalvalue VALUES (?, ?) ON CONFLICT (attributeid, value) DO NOTHING;")) {
 
-			//Turn of auto commit to ensure each attribute is saved fully
+			//Turn of auto commit to ensure each attribute is saved fully. Attributes are committed in groups, but an
+			//attribute that fails is rolled back by itself, so as many attributes as possible are saved
 			connection.setAutoCommit(false);
 
-			for (Attribute attribute : attributes) {
+			GroupCommit.writeAll(connection, attributes, dbf.getGroupCommitSize(), attribute -> {
 				//Store basic attribute data
 				//If attribute has an invalid id, generate a new one
 				if (attribute.hasValidID()) {
@@ -103,8 +105,7 @@ class AttributePersistor {
 						attribute.setID(id); //Subsequent calls to attribute.getID() are now safe for use
 					} else {
 						//Nothing returned, so something must have gone wrong
-						connection.rollback();
-						throw new IOException("Unable to save attribute! No ID returned from database");
+						throw new SQLException("Unable to save attribute! No ID returned from database");
 					}
 				}
 
@@ -118,11 +119,8 @@ class AttributePersistor {
 						storeLegalValues.executeUpdate();
 					}
 				}
-
-				//Commit per attribute. This might result in only some of the attributes being saved, but that should be
-				//better than saving none of them
-				connection.commit();
-			}
+			}, group -> dbf.recordChanges(connection, PIMDatabaseFacade.ATTRIBUTE_CHANGE,
+					group.stream().map(Attribute::getID).collect(Collectors.toList())));
 		} catch (SQLException e) {
 			throw new IOException("Unable to save all attributes! Some attributes might not be saved!", e);
 		} finally {
@@ -141,11 +139,25 @@ class AttributePersistor {
 		Connection connection = dbf.getConnection();
 
 		try (PreparedStatement deleteAttributeData = connection.prepareStatement("DELETE FROM attribute WHERE attributeid = ?")) {
+			//Turn of auto commit so that the deletion is recorded in the same transaction
+			connection.setAutoCommit(false);
+
 			//Delete attribute entry. The constraints in the database should ensure that the deletion is cascaded
 			deleteAttributeData.setInt(1, id);
 			deleteAttributeData.executeUpdate();
+			dbf.recordChange(connection, PIMDatabaseFacade.ATTRIBUTE_CHANGE, id);
+			connection.commit();
 		} catch (SQLException e) {
 			throw new IOException("Unable to delete attribute with id " + id + "!", e);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+
+				//We should close the connection to ensure that it causes no more harm
+				DBUtil.close(connection);
+			}
 		}
 	}
 
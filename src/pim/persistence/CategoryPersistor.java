@@ -79,17 +79,18 @@ class CategoryPersistor {
 		     PreparedStatement deleteRemovedAttributes = connection.prepareStatement("DELETE FROM categoryattribute WHERE categoryname = ?  AND NOT (attributeid = ANY(?));");
 		     PreparedStatement addNewAttributes = connection.prepareStatement("INSERT INTO categoryattribute VALUES (?, ?) ON CONFLICT (categoryname, attributeid) DO NOTHING")) {
 
-			//Turn of auto commit to ensure each category is saved fully
+			//Turn of auto commit to ensure each category is saved fully. Categories are committed in groups, but a
+			//category that fails is rolled back by itself, so as many categories as possible are saved
 			connection.setAutoCommit(false);
 
-			for (Category category : categories) {
+			GroupCommit.writeAll(connection, categories, dbf.getGroupCommitSize(), category -> {
 				//Store basic category data
 				storeCategoryData.setString(1, category.getName());
 				storeCategoryData.executeUpdate();
 
 				//Delete removed attributes
 				//Construct array of attribute ids for this category
-				Set<Attribute> attributes = category.getAttributes();
+				Set<Attribute> attributes = category.getAttributesView();
 				Integer[] attributeIDs =
 						attributes.stream().map(Attribute::getID).collect(Collectors.toList()).toArray(new Integer[0]);
 				Array attributeArray = connection.createArrayOf("INTEGER", attributeIDs);
@@ -107,11 +108,8 @@ class CategoryPersistor {
 					addNewAttributes.setInt(2, attribute.getID());
 					addNewAttributes.executeUpdate();
 				}
-
-				//Commit per category. This might result in only some of the categories being saved, but that should be
-				//better than saving none of them
-				connection.commit();
-			}
+			}, group -> dbf.recordChanges(connection, PIMDatabaseFacade.CATEGORY_CHANGE,
+					group.stream().map(Category::getName).collect(Collectors.toList())));
 		} catch (SQLException e) {
 			throw new IOException("Unable to save all categories! Some categories might not be saved!", e);
 		} finally {
@@ -131,11 +129,25 @@ class CategoryPersistor {
 
 		try (PreparedStatement deleteCategoryData = connection.prepareStatement("DELETE FROM category WHERE categoryname = ?")) {
 
+			//Turn of auto commit so that the deletion is recorded in the same transaction
+			connection.setAutoCommit(false);
+
 			//Delete category entry. The constraints in the database should ensure that the deletion is cascaded
 			deleteCategoryData.setString(1, name);
 			deleteCategoryData.executeUpdate();
+			dbf.recordChange(connection, PIMDatabaseFacade.CATEGORY_CHANGE, name);
+			connection.commit();
 		} catch (SQLException e) {
 			throw new IOException("Unable to delete category with name " + name + "!", e);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+
+				//We should close the connection to ensure that it causes no more harm
+				DBUtil.close(connection);
+			}
 		}
 	}
 
@@ -3,6 +3,7 @@ package pim.persistence;
 import pim.business.*;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -21,9 +22,28 @@ public interface DataCache {
 	 * @param name        the name of the product
 	 * @param description the description of the product
 	 * @param price       the price of the product
+	 * @param version     the version of the product row the values were read from
 	 * @return the created product
 	 */
-	Product createProduct(int id, String name, String description, double price);
+	Product createProduct(int id, String name, String description, double price, String version);
+
+	/**
+	 * Get the version of the product row that the product with the given id in memory was last read from.
+	 *
+	 * @param id the id of the product
+	 * @return the version of the product, or null if it is not in memory or its version is not known
+	 */
+	String getProductVersion(int id);
+
+	/**
+	 * Get the product with the given id from memory, if it was last read from the given version of its row. Such a
+	 * product is up to date, and need not be read again.
+	 *
+	 * @param id      the id of the product
+	 * @param version the current version of the product row
+	 * @return the product in memory, or null if it is not in memory or was read from another version
+	 */
+	Product getCurrentProduct(int id, String version);
 
 	/**
 	 * Creates an attribute if one with the given id does not exist already. Otherwise a reference to the existing
@@ -83,4 +103,35 @@ public interface DataCache {
 	 * @return the created image object
 	 */
 	public Image createImage(int id, BufferedImage img);
+
+	/**
+	 * Called when the product with the specified id has been saved or deleted by another instance of the application.
+	 *
+	 * @param id the id of the product
+	 * @throws IOException if the product could not be read again
+	 */
+	void productChanged(int id) throws IOException;
+
+	/**
+	 * Called when the category with the specified name has been saved or deleted by another instance of the
+	 * application.
+	 *
+	 * @param name the name of the category
+	 * @throws IOException if the category could not be read again
+	 */
+	void categoryChanged(String name) throws IOException;
+
+	/**
+	 * Called when the attribute with the specified id has been saved or deleted by another instance of the application.
+	 *
+	 * @param id the id of the attribute
+	 * @throws IOException if the attribute could not be read again
+	 */
+	void attributeChanged(int id) throws IOException;
+
+	/**
+	 * Called when changes made by other instances of the application may have been missed, so that anything held in
+	 * memory may be out of date.
+	 */
+	void changesMissed();
 }
@@ -0,0 +1,201 @@
+package pim.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes a collection of entities in groups, where the entities of a group share one transaction. Each commit waits
+ * for the database to flush its log, so committing a group at a time is much cheaper than committing every entity.
+ * <p>
+ * Every entity is written within a savepoint of its own. An entity that fails is rolled back to its savepoint, and the
+ * other entities of its group are still committed, so as much as possible is saved just as when committing each
+ * entity by itself. Only if the commit itself fails is the whole group lost. Either way, the entities that were not
+ * written are reported, so that the caller knows which of them were.
+ * <p>
+ * Work that concerns a whole group, such as recording the changes in the change journal, is done once for the group
+ * just before it is committed, with the entities that were written. Locks taken then are held only for the commit.
+ *
+ * @author Kasper
+ */
+class GroupCommit {
+
+	private GroupCommit() {
+	}
+
+	/**
+	 * Write the specified entities in groups of the specified size. The connection must have auto commit turned off.
+	 *
+	 * @param connection the connection to write with
+	 * @param entities   the entities to write
+	 * @param groupSize  the number of entities to commit at a time
+	 * @param writer     the function writing a single entity
+	 * @param <T>        the type of the entities
+	 * @throws PartialWriteException if some of the entities could not be written or committed. All other entities have
+	 *                               been committed
+	 */
+	static <T> void writeAll(Connection connection, Collection<T> entities, int groupSize, EntityWriter<T> writer)
+			throws PartialWriteException {
+		writeAll(connection, entities, groupSize, writer, group -> {
+		});
+	}
+
+	/**
+	 * Write the specified entities in groups of the specified size, finishing each group just before it is committed.
+	 * The connection must have auto commit turned off.
+	 *
+	 * @param connection the connection to write with
+	 * @param entities   the entities to write
+	 * @param groupSize  the number of entities to commit at a time
+	 * @param writer     the function writing a single entity
+	 * @param finisher   the function given the entities written in a group, just before the group is committed. If it
+	 *                   fails, the whole group is lost
+	 * @param <T>        the type of the entities
+	 * @throws PartialWriteException if some of the entities could not be written or committed. All other entities have
+	 *                               been committed
+	 */
+	static <T> void writeAll(Connection connection, Collection<T> entities, int groupSize, EntityWriter<T> writer,
+	                         GroupFinisher<T> finisher) throws PartialWriteException {
+		List<T> unwritten = new ArrayList<>();
+		List<T> group = new ArrayList<>();
+		SQLException failure = null;
+		int uncommitted = 0;
+		Iterator<T> iterator = entities.iterator();
+		while (iterator.hasNext()) {
+			T entity = iterator.next();
+			try {
+				//A group of one is its own transaction, so it needs no savepoint
+				Savepoint savepoint = groupSize > 1 ? connection.setSavepoint() : null;
+				try {
+					writer.write(entity);
+					if (savepoint != null) connection.releaseSavepoint(savepoint);
+					group.add(entity);
+				} catch (SQLException e) {
+					if (savepoint != null) {
+						connection.rollback(savepoint);
+					} else {
+						connection.rollback();
+					}
+
+					unwritten.add(entity);
+					if (failure == null) {
+						failure = e;
+					} else {
+						failure.addSuppressed(e);
+					}
+				}
+			} catch (SQLException e) {
+				//The transaction cannot be continued, so nothing after the last commit is known to be written
+				unwritten.add(entity);
+				fail(group, unwritten, iterator, failure, e);
+			}
+
+			if (++uncommitted >= groupSize) {
+				commit(connection, group, unwritten, iterator, failure, finisher);
+				uncommitted = 0;
+			}
+		}
+
+		if (uncommitted > 0) {
+			commit(connection, group, unwritten, iterator, failure, finisher);
+		}
+
+		if (failure != null) throw new PartialWriteException(unwritten, failure);
+	}
+
+	/**
+	 * Finish and commit the entities of the current group. If either fails, the whole group is lost.
+	 */
+	private static <T> void commit(Connection connection, List<T> group, List<T> unwritten, Iterator<T> remaining,
+	                               SQLException failure, GroupFinisher<T> finisher) throws PartialWriteException {
+		try {
+			if (!group.isEmpty()) {
+				try {
+					finisher.finish(group);
+				} catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				}
+			}
+			connection.commit();
+			group.clear();
+		} catch (SQLException e) {
+			fail(group, unwritten, remaining, failure, e);
+		}
+	}
+
+	/**
+	 * Stop writing because of the specified failure, reporting the entities of the current group and those not yet
+	 * written along with the entities that failed before.
+	 */
+	private static <T> void fail(List<T> group, List<T> unwritten, Iterator<T> remaining, SQLException failure,
+	                             SQLException e) throws PartialWriteException {
+		unwritten.addAll(group);
+		remaining.forEachRemaining(unwritten::add);
+		if (failure != null) e.addSuppressed(failure);
+		throw new PartialWriteException(unwritten, e);
+	}
+
+	/**
+	 * Signals that some entities could not be written or committed. The cause is the first failure of an entity, or
+	 * the failure that stopped the writing, with the other failures suppressed by it.
+	 */
+	static class PartialWriteException extends SQLException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<?> unwritten;
+
+		private PartialWriteException(List<?> unwritten, SQLException cause) {
+			super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+			this.unwritten = unwritten;
+		}
+
+		/**
+		 * Get the entities that were not written. All other entities have been committed.
+		 *
+		 * @return the entities that were not written
+		 */
+		List<?> getUnwritten() {
+			return unwritten;
+		}
+	}
+
+	/**
+	 * A function writing a single entity.
+	 *
+	 * @param <T> the type of the entity
+	 */
+	@FunctionalInterface
+	interface EntityWriter<T> {
+
+		/**
+		 * Write the specified entity.
+		 *
+		 * @param entity the entity to write
+		 * @throws SQLException if the entity could not be written
+		 */
+		void write(T entity) throws SQLException;
+	}
+
+	/**
+	 * A function finishing a group of written entities before it is committed.
+	 *
+	 * @param <T> the type of the entities
+	 */
+	@FunctionalInterface
+	interface GroupFinisher<T> {
+
+		/**
+		 * Finish the specified group of entities, in the transaction writing them.
+		 *
+		 * @param group the entities written in the group
+		 * @throws SQLException if the group could not be finished
+		 */
+		void finish(List<T> group) throws SQLException;
+	}
+}
@@ -1,13 +1,19 @@
 package pim.persistence;
 
 import pim.business.*;
-import shared.DBUtil;
+import shared.ChangeEntry;
+import shared.ChangeFeed;
+import shared.ChangeJournal;
+import shared.ChangeNotificationListener;
+import shared.ConnectionPool;
 
+import java.awt.image.BufferedImage;
 import java.io.*;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -24,10 +30,23 @@ class PIMDatabaseFacade implements PIMPersistenceFacade {
 	private final static String user = "postgres";
 	private final static String password = "1234";
 
+	/* Types of changes announced to other instances of the application */
+	static final String PRODUCT_CHANGE = "product";
+	static final String CATEGORY_CHANGE = "category";
+	static final String ATTRIBUTE_CHANGE = "attribute";
+	static final String TAG_CHANGE = "tag";
+	static final String IMAGE_CHANGE = "image";
+
+	/**
+	 * The number of entities committed at a time when saving several at once, unless the system property
+	 * electroshoppen.groupCommitSize is set.
+	 */
+	private static final int DEFAULT_GROUP_COMMIT_SIZE = 50;
+
 	/**
-	 * The database connection.
+	 * The database connections, one for each thread.
 	 */
-	private Connection connection;
+	private final ConnectionPool connectionPool;
 
 	/* Variables for data manipulation */
 	private ProductPersistor productPersistor;
@@ -35,15 +54,37 @@ class PIMDatabaseFacade implements PIMPersistenceFacade {
 	private AttributePersistor attributePersistor;
 	private TagPersistor tagPersistor;
 	private DataCache cache;
+	private volatile int groupCommitSize;
+
+	/**
+	 * Journal of all changes made to the database.
+	 */
+	private final ChangeJournal changeJournal;
+
+	/**
+	 * Applies the changes made by other instances of the application.
+	 */
+	private final ChangeHandler changeHandler;
+
+	/**
+	 * Listener for changes made by other instances of the application.
+	 */
+	private final ChangeNotificationListener changeListener;
 
 	/**
 	 * Constructs a new persistence facade for use with JDBC.
 	 */
 	public PIMDatabaseFacade() {
+		connectionPool = new ConnectionPool(() -> DriverManager.getConnection(url, user, password));
 		productPersistor = new ProductPersistor(this);
 		categoryPersistor = new CategoryPersistor(this);
 		attributePersistor = new AttributePersistor(this);
 		tagPersistor = new TagPersistor(this);
+		groupCommitSize = Math.max(1, Integer.getInteger("electroshoppen.groupCommitSize", DEFAULT_GROUP_COMMIT_SIZE));
+		changeJournal = new ChangeJournal(this::getConnection);
+		changeHandler = new ChangeHandler();
+		changeListener = new ChangeNotificationListener("PIM change listener",
+				() -> DriverManager.getConnection(url, user, password), changeHandler);
 	}
 
 	/**
@@ -94,8 +135,8 @@ class PIMDatabaseFacade implements PIMPersistenceFacade {
 	}
 
 	/**
-	 * Get the connection to the database. If the connection has been closed because of inactivity, it will be
-	 * automatically reopened.
+	 * Get the connection to the database of the current thread. If the connection has been closed because of
+	 * inactivity, it will be automatically reopened.
 	 *
 	 * @return the connection to the database
 	 * @throws IOException if a connection could not be established
@@ -103,21 +144,52 @@ class PIMDatabaseFacade implements PIMPersistenceFacade {
 	@SuppressWarnings("Duplicates")
 	public Connection getConnection() throws IOException {
 		try {
-			if (connection == null || connection.isClosed()) {
-				return connection = DriverManager.getConnection(url, user, password);
-			} else {
-				return connection;
-			}
+			return connectionPool.getConnection();
 		} catch (SQLException e) {
 			throw new IOException(String.format("Could not establish a database connection on\n\t%s\n\tUser: %s\n\tPassword: %s", url, user, password), e);
 		}
 	}
 
+	/**
+	 * Record a change in the change journal, and announce it to the other instances of the application. This must be
+	 * called in the transaction making the change, so that it is recorded if and only if the change is committed.
+	 *
+	 * @param connection the connection used for making the change
+	 * @param type       the type of change
+	 * @param key        the id or name of the entity that changed
+	 * @throws SQLException if something goes wrong
+	 */
+	void recordChange(Connection connection, String type, Object key) throws SQLException {
+		long sequence = changeJournal.append(connection, type, key);
+		ChangeNotificationListener.notifyChange(connection, sequence, type, key);
+	}
+
+	/**
+	 * Record a change of each of the specified entities in the change journal, and announce them to the other instances
+	 * of the application. This must be called in the transaction making the changes, just before it is committed, as
+	 * the journal is locked from then until the commit.
+	 *
+	 * @param connection the connection used for making the changes
+	 * @param type       the type of change
+	 * @param keys       the ids or names of the entities that changed
+	 * @throws SQLException if something goes wrong
+	 */
+	void recordChanges(Connection connection, String type, Collection<?> keys) throws SQLException {
+		for (ChangeEntry change : changeJournal.appendAll(connection, type, keys)) {
+			ChangeNotificationListener.notifyChange(connection, change.getSequence(), type, change.getKey());
+		}
+	}
+
 	@Override
 	public Product getProductByID(int id) throws IOException {
 		return productPersistor.getProductByID(id);
 	}
 
+	@Override
+	public Set<Product> getProductsByIDs(Collection<Integer> ids) throws IOException {
+		return productPersistor.getProductsByIDs(ids);
+	}
+
 	@Override
 	public Set<Product> getProductsByName(String name) throws IOException {
 		return productPersistor.getProductsByName(name);
@@ -153,6 +225,21 @@ class PIMDatabaseFacade implements PIMPersistenceFacade {
 		productPersistor.saveProducts(products);
 	}
 
+	@Override
+	public void setGroupCommitSize(int size) {
+		if (size < 1) throw new IllegalArgumentException("The group commit size must be positive!");
+		groupCommitSize = size;
+	}
+
+	/**
+	 * Get the number of entities to commit at a time when saving several at once.
+	 *
+	 * @return the group commit size
+	 */
+	int getGroupCommitSize() {
+		return groupCommitSize;
+	}
+
 	@Override
 	public void deleteProduct(int id) throws IOException {
 		productPersistor.deleteProduct(id);
@@ -243,6 +330,11 @@ class PIMDatabaseFacade implements PIMPersistenceFacade {
 		return productPersistor.getImages();
 	}
 
+	@Override
+	public BufferedImage getImageData(int id) throws IOException {
+		return productPersistor.getImageData(id);
+	}
+
 	@Override
 	public void saveImage(Image image) throws IOException {
 		productPersistor.saveImage(image);
@@ -261,10 +353,112 @@ class PIMDatabaseFacade implements PIMPersistenceFacade {
 	@Override
 	public void setCache(DataCache cache) {
 		this.cache = cache;
+
+		//Changes are applied through the cache, so listening can start once it is there
+		changeListener.start();
+	}
+
+	@Override
+	public ChangeFeed getChangeFeed() {
+		return changeJournal;
+	}
+
+	@Override
+	public boolean isNotifiedOfChanges() {
+		return changeListener.isActive();
+	}
+
+	@Override
+	public void catchUp(long sequence) throws IOException {
+		changeHandler.catchUp(sequence);
 	}
 
 	@Override
 	public void dispose() {
-		DBUtil.close(connection);
+		changeListener.stop();
+		connectionPool.close();
+	}
+
+	/**
+	 * Applies changes made by other instances of the application to the data cache. If changes are missed, the handler
+	 * catches up by replaying the journal from the last change it applied.
+	 */
+	private class ChangeHandler implements ChangeNotificationListener.ChangeHandler {
+
+		/**
+		 * The maximum number of changes to replay when catching up. Beyond this, reading everything in memory again is
+		 * cheaper.
+		 */
+		private static final int MAX_REPLAYED_CHANGES = 10000;
+
+		/**
+		 * The sequence number up to which changes have been applied, or 0 if unknown. Only used by the listener thread.
+		 */
+		private long appliedSequence;
+
+		@Override
+		public synchronized void changed(ChangeEntry change) throws IOException {
+			switch (change.getType()) {
+				case PRODUCT_CHANGE:
+					cache.productChanged(Integer.parseInt(change.getKey()));
+					break;
+				case CATEGORY_CHANGE:
+					cache.categoryChanged(change.getKey());
+					break;
+				case ATTRIBUTE_CHANGE:
+					cache.attributeChanged(Integer.parseInt(change.getKey()));
+					break;
+				default:
+					//Tags and images are immutable, and products using them are recorded as changed themselves
+					break;
+			}
+			appliedSequence = Math.max(appliedSequence, change.getSequence());
+		}
+
+		@Override
+		public synchronized void changesMissed() {
+			try {
+				if (appliedSequence > 0) {
+					//The replayed changes include the ones made by this instance, which does no harm
+					List<ChangeEntry> changes = changeJournal.getChangesAfter(appliedSequence, MAX_REPLAYED_CHANGES + 1);
+					if (changes.size() <= MAX_REPLAYED_CHANGES) {
+						for (ChangeEntry change : changes) {
+							changed(change);
+						}
+						return;
+					}
+				}
+
+				//Read the sequence first, so that changes made while reloading are replayed next time
+				long latest = changeJournal.getLatestSequence();
+				cache.changesMissed();
+				appliedSequence = latest;
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+				cache.changesMissed();
+				appliedSequence = 0;
+			}
+		}
+
+		/**
+		 * Apply the changes made after the specified sequence number, as the data in memory was read at that point
+		 * rather than from the database. The listener may already have moved past it, in which case the changes in
+		 * between are applied a second time, which does no harm.
+		 *
+		 * @param sequence the sequence number at which the data in memory was read
+		 * @throws IOException if the changes could not be read
+		 */
+		private synchronized void catchUp(long sequence) throws IOException {
+			long latest = changeJournal.getLatestSequence();
+			List<ChangeEntry> changes = changeJournal.getChangesAfter(sequence, MAX_REPLAYED_CHANGES + 1);
+			if (changes.size() <= MAX_REPLAYED_CHANGES) {
+				for (ChangeEntry change : changes) {
+					changed(change);
+				}
+			} else {
+				cache.changesMissed();
+			}
+			appliedSequence = Math.max(appliedSequence, latest);
+		}
 	}
 }
@@ -4,14 +4,17 @@ import pim.business.*;
 import shared.DBUtil;
 
 import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Class used for performing operations on products in the database. Images are also handled by this class, as they are
@@ -23,6 +26,18 @@ import java.util.*;
  */
 class ProductPersistor {
 
+	/**
+	 * An expression for the version of a row in the product table, selected along with the row. The row is written
+	 * whenever a product is saved, which changes its xmin, and deleting a category, attribute, tag or image removes rows
+	 * of the product from other tables without writing the row, which changes the counts. A product read at one version
+	 * is therefore unchanged for as long as the version is the same.
+	 */
+	private static final String ROW_VERSION = "xmin::text || '/' || " +
+			"(SELECT count(*) FROM productcategory c WHERE c.productid = product.productid) || '/' || " +
+			"(SELECT count(*) FROM attributevalue v WHERE v.productid = product.productid) || '/' || " +
+			"(SELECT count(*) FROM producttag t WHERE t.productid = product.productid) || '/' || " +
+			"(SELECT count(*) FROM productimage i WHERE i.productid = product.productid)";
+
 	private PIMDatabaseFacade dbf;
 
 	/**
@@ -35,8 +50,21 @@ class ProductPersistor {
 	}
 
 	public Product getProductByID(int id) throws IOException {
+		//A product in memory that has not changed since it was read only costs the version check
+		if (dbf.getCache().getProductVersion(id) != null) {
+			String version = getProductVersions(Collections.singleton(id)).get(id);
+			if (version == null) return null;
+
+			Product current = dbf.getCache().getCurrentProduct(id, version);
+			if (current != null) return current;
+		}
+
+		return readProductByID(id);
+	}
+
+	private Product readProductByID(int id) throws IOException {
 		Connection connection = dbf.getConnection();
-		try (PreparedStatement getProduct = connection.prepareStatement("SELECT * FROM product WHERE productid = ?;");
+		try (PreparedStatement getProduct = connection.prepareStatement("SELECT *, " + ROW_VERSION + " FROM product WHERE productid = ?;");
 		     PreparedStatement getProductCategories = connection.prepareStatement("SELECT * FROM productcategory WHERE productid = ?;");
 		     PreparedStatement getProductValues = connection.prepareStatement("SELECT * FROM attributevalue WHERE productid = ?;");
 		     PreparedStatement getProductTags = connection.prepareStatement("SELECT * FROM producttag WHERE productid = ?")) {
@@ -67,6 +95,92 @@ class ProductPersistor {
 		}
 	}
 
+	/**
+	 * Get the products with the specified ids. Each table is read with a single query for all the products, including
+	 * the images, so the number of queries does not depend on the number of products. Products in memory are only read
+	 * if their version has changed since they were last read.
+	 *
+	 * @param ids the ids of the products
+	 * @return the products that exist, in no particular order
+	 * @throws IOException if the products could not be read
+	 */
+	public Set<Product> getProductsByIDs(Collection<Integer> ids) throws IOException {
+		Set<Product> result = new HashSet<>();
+		Set<Integer> toRead = new HashSet<>();
+		Set<Integer> inMemory = new HashSet<>();
+		for (int id : ids) {
+			if (dbf.getCache().getProductVersion(id) != null) {
+				inMemory.add(id);
+			} else {
+				toRead.add(id);
+			}
+		}
+
+		if (!inMemory.isEmpty()) {
+			Map<Integer, String> versions = getProductVersions(inMemory);
+			for (Map.Entry<Integer, String> entry : versions.entrySet()) {
+				Product current = dbf.getCache().getCurrentProduct(entry.getKey(), entry.getValue());
+				if (current != null) {
+					result.add(current);
+				} else {
+					toRead.add(entry.getKey());
+				}
+			}
+		}
+
+		result.addAll(readProductsByIDs(toRead));
+		return result;
+	}
+
+	/**
+	 * Get the current versions of the products with the specified ids.
+	 *
+	 * @param ids the ids of the products
+	 * @return the versions by id of the products that exist
+	 * @throws IOException if the versions could not be read
+	 */
+	private Map<Integer, String> getProductVersions(Collection<Integer> ids) throws IOException {
+		Connection connection = dbf.getConnection();
+		try (PreparedStatement getVersions = connection.prepareStatement("SELECT productid, " + ROW_VERSION + " FROM product WHERE productid = ANY(?);")) {
+			getVersions.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+
+			Map<Integer, String> versions = new HashMap<>();
+			try (ResultSet versionData = getVersions.executeQuery()) {
+				while (versionData.next()) {
+					versions.put(versionData.getInt(1), versionData.getString(2));
+				}
+			}
+			return versions;
+		} catch (SQLException e) {
+			throw new IOException("Unable to read versions of products with ids " + ids + "!", e);
+		}
+	}
+
+	private Set<Product> readProductsByIDs(Collection<Integer> ids) throws IOException {
+		if (ids.isEmpty()) return new HashSet<>();
+
+		Connection connection = dbf.getConnection();
+		try (PreparedStatement getProducts = connection.prepareStatement("SELECT *, " + ROW_VERSION + " FROM product WHERE productid = ANY(?);");
+		     PreparedStatement getProductCategories = connection.prepareStatement("SELECT * FROM productcategory WHERE productid = ANY(?);");
+		     PreparedStatement getProductValues = connection.prepareStatement("SELECT * FROM attributevalue WHERE productid = ANY(?);");
+		     PreparedStatement getProductTags = connection.prepareStatement("SELECT * FROM producttag WHERE productid = ANY(?);");
+		     PreparedStatement getProductImages = connection.prepareStatement("SELECT productid, imageid, imagedata FROM image NATURAL JOIN productimage WHERE productid = ANY(?);")) {
+
+			Array idArray = connection.createArrayOf("integer", ids.toArray());
+			getProducts.setArray(1, idArray);
+			getProductCategories.setArray(1, idArray);
+			getProductValues.setArray(1, idArray);
+			getProductTags.setArray(1, idArray);
+			getProductImages.setArray(1, idArray);
+
+			Map<Integer, Set<Image>> images = buildImagesByProduct(getProductImages.executeQuery());
+			return buildProducts(getProducts.executeQuery(), getProductCategories.executeQuery(),
+					getProductValues.executeQuery(), getProductTags.executeQuery(), images);
+		} catch (SQLException e) {
+			throw new IOException("Unable to read products with ids " + ids + "!", e);
+		}
+	}
+
 	public Set<ProductReview> getProductReviews() throws IOException {
 		Connection connection = dbf.getConnection();
 		try (PreparedStatement getReviews = connection.prepareStatement("SELECT * FROM productreview")) {
@@ -89,7 +203,7 @@ class ProductPersistor {
 	public Set<Product> getProductsByName(String name) throws IOException {
 		Connection connection = dbf.getConnection();
 
-		try (PreparedStatement getProducts = connection.prepareStatement("SELECT * FROM product WHERE name = ?;");
+		try (PreparedStatement getProducts = connection.prepareStatement("SELECT *, " + ROW_VERSION + " FROM product WHERE name = ?;");
 		     PreparedStatement getProductCategories = connection.prepareStatement("SELECT productid, categoryName FROM productcategory NATURAL JOIN product WHERE name = ?;");
 		     PreparedStatement getProductValues = connection.prepareStatement("SELECT attributeid, productid, value FROM attributevalue NATURAL JOIN product WHERE name = ?;");
 		     PreparedStatement getProductTags = connection.prepareStatement("SELECT tagname, productid FROM producttag NATURAL JOIN product WHERE name = ?;")) {
@@ -103,7 +217,7 @@ class ProductPersistor {
 	public Set<Product> getProductsByCategory(String name) throws IOException {
 		Connection connection = dbf.getConnection();
 
-		try (PreparedStatement getProducts = connection.prepareStatement("SELECT * FROM product WHERE productid IN (SELECT productid FROM productcategory WHERE categoryname = ?);");
+		try (PreparedStatement getProducts = connection.prepareStatement("SELECT *, " + ROW_VERSION + " FROM product WHERE productid IN (SELECT productid FROM productcategory WHERE categoryname = ?);");
 		     PreparedStatement getProductCategories = connection.prepareStatement("SELECT productid, categoryName FROM productcategory NATURAL JOIN product WHERE productid IN (SELECT productid FROM productcategory WHERE categoryname = ?);");
 		     PreparedStatement getProductValues = connection.prepareStatement("SELECT attributeid, productid, value FROM attributevalue NATURAL JOIN product WHERE productid IN (SELECT productid FROM productcategory WHERE categoryname = ?);");
 		     PreparedStatement getProductTags = connection.prepareStatement("SELECT tagname, productid FROM producttag NATURAL JOIN product WHERE productid IN (SELECT productid FROM productcategory WHERE categoryname = ?);")) {
@@ -117,7 +231,7 @@ class ProductPersistor {
 	public Set<Product> getProductsByTag(String name) throws IOException {
 		Connection connection = dbf.getConnection();
 
-		try (PreparedStatement getProducts = connection.prepareStatement("SELECT * FROM product WHERE productid IN (SELECT productid FROM producttag WHERE tagname = ?);");
+		try (PreparedStatement getProducts = connection.prepareStatement("SELECT *, " + ROW_VERSION + " FROM product WHERE productid IN (SELECT productid FROM producttag WHERE tagname = ?);");
 		     PreparedStatement getProductCategories = connection.prepareStatement("SELECT productid, categoryName FROM productcategory NATURAL JOIN product WHERE productid IN (SELECT productid FROM producttag WHERE tagname = ?);");
 		     PreparedStatement getProductValues = connection.prepareStatement("SELECT attributeid, productid, value FROM attributevalue NATURAL JOIN product WHERE productid IN (SELECT productid FROM producttag WHERE tagname = ?);");
 		     PreparedStatement getProductTags = connection.prepareStatement("SELECT tagname, productid FROM producttag NATURAL JOIN product WHERE productid IN (SELECT productid FROM producttag WHERE tagname = ?);")) {
@@ -159,7 +273,7 @@ class ProductPersistor {
 	public Set<Product> getProducts() throws IOException {
 		Connection connection = dbf.getConnection();
 
-		try (PreparedStatement getProducts = connection.prepareStatement("SELECT * FROM product;");
+		try (PreparedStatement getProducts = connection.prepareStatement("SELECT *, " + ROW_VERSION + " FROM product;");
 		     PreparedStatement getProductCategories = connection.prepareStatement("SELECT * FROM productcategory;");
 		     PreparedStatement getProductValues = connection.prepareStatement("SELECT * FROM attributevalue;");
 		     PreparedStatement getProductTags = connection.prepareStatement("SELECT * FROM producttag;")) {
@@ -199,10 +313,11 @@ class ProductPersistor {
 		     PreparedStatement removeProductImages = connection.prepareStatement("DELETE FROM productimage WHERE productid = ?");
 		     PreparedStatement saveProductImages = connection.prepareStatement("INSERT INTO productimage VALUES(?, ?)")) {
 
-			//Turn of auto commit to ensure each product is saved fully
+			//Turn of auto commit to ensure each product is saved fully. Products are committed in groups, but a product
+			//that fails is rolled back by itself, so as many products as possible are saved
 			connection.setAutoCommit(false);
 
-			for (Product product : products) {
+			GroupCommit.writeAll(connection, products, dbf.getGroupCommitSize(), product -> {
 				//Store basic product data
 				//If product has an invalid id, generate a new one
 				if (product.hasValidID()) {
@@ -223,8 +338,7 @@ class ProductPersistor {
 						product.setID(id); //Subsequent calls to product.getID() are now safe for use
 					} else {
 						//Nothing returned, so something must have gone wrong
-						connection.rollback();
-						throw new IOException("Unable to save product! No ID returned from database");
+						throw new SQLException("Unable to save product! No ID returned from database");
 					}
 				}
 
@@ -234,14 +348,14 @@ class ProductPersistor {
 				removeProductCategories.executeUpdate();
 
 				addProductCategory.setInt(1, product.getID());
-				for (Category category : product.getCategories()) {
+				for (Category category : product.getCategoriesView()) {
 					addProductCategory.setString(2, category.getName());
 					addProductCategory.executeUpdate();
 				}
 
 				//Add product attribute values
 				addAttributeValue.setInt(2, product.getID());
-				for (Attribute.AttributeValue value : product.getAttributeValues()) {
+				for (Attribute.AttributeValue value : product.getAttributeValuesView()) {
 					addAttributeValue.setInt(1, value.getParent().getID());
 					addAttributeValue.setObject(3, PIMDatabaseFacade.objectToBytes(value.getValue()));
 					addAttributeValue.executeUpdate();
@@ -251,7 +365,7 @@ class ProductPersistor {
 				removeProductTags.setInt(1, product.getID());
 				removeProductTags.executeUpdate();
 				saveProductTags.setInt(2, product.getID());
-				for (Tag tag : product.getTags()) {
+				for (Tag tag : product.getTagsView()) {
 					saveProductTags.setString(1, tag.getName());
 					saveProductTags.executeUpdate();
 				}
@@ -261,15 +375,15 @@ class ProductPersistor {
 				removeProductImages.executeUpdate();
 
 				saveProductImages.setInt(2, product.getID());
-				for (Image image : product.getImages()) {
+				for (Image image : product.getImagesView()) {
 					saveProductImages.setInt(1, image.getID());
 					saveProductImages.executeUpdate();
 				}
-
-				//Commit per product. This might result in only some of the products being saved, but that should be
-				//better than saving none of them
-				connection.commit();
-			}
+			}, group -> dbf.recordChanges(connection, PIMDatabaseFacade.PRODUCT_CHANGE,
+					group.stream().map(Product::getID).collect(Collectors.toList())));
+		} catch (GroupCommit.PartialWriteException e) {
+			throw new PartialSaveException("Unable to save all products! Some products might not be saved!",
+					e.getUnwritten(), e);
 		} catch (SQLException e) {
 			throw new IOException("Unable to save all products! Some products might not be saved!", e);
 		} finally {
@@ -289,11 +403,25 @@ class ProductPersistor {
 
 		try (PreparedStatement deleteProductData = connection.prepareStatement("DELETE FROM product WHERE productid = ?")) {
 
+			//Turn of auto commit so that the deletion is recorded in the same transaction
+			connection.setAutoCommit(false);
+
 			//Delete product entry. The constraints in the database should ensure that the deletion is cascaded
 			deleteProductData.setInt(1, id);
 			deleteProductData.executeUpdate();
+			dbf.recordChange(connection, PIMDatabaseFacade.PRODUCT_CHANGE, id);
+			connection.commit();
 		} catch (SQLException e) {
 			throw new IOException("Unable to delete product with id " + id + "!", e);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+
+				//We should close the connection to ensure that it causes no more harm
+				DBUtil.close(connection);
+			}
 		}
 	}
 
@@ -324,6 +452,21 @@ class ProductPersistor {
 		}
 	}
 
+	public BufferedImage getImageData(int id) throws IOException {
+		Connection connection = dbf.getConnection();
+
+		try (PreparedStatement getImage = connection.prepareStatement("SELECT imagedata FROM image WHERE imageid = ?;")) {
+
+			getImage.setInt(1, id);
+			try (ResultSet imageData = getImage.executeQuery()) {
+				if (!imageData.next()) return null;
+				return ImageIO.read(new ByteArrayInputStream(imageData.getBytes(1)));
+			}
+		} catch (SQLException e) {
+			throw new IOException("Unable to read image with id " + id + "!", e);
+		}
+	}
+
 	public void saveImage(Image image) throws IOException {
 		saveImages(Collections.singleton(image));
 	}
@@ -334,11 +477,19 @@ class ProductPersistor {
 		try (PreparedStatement storeImageData = connection.prepareStatement("INSERT INTO image VALUES (?, ?) ON CONFLICT (imageid) DO UPDATE SET imagedata = EXCLUDED.imagedata;");
 		     PreparedStatement storeImageDataNew = connection.prepareStatement("INSERT INTO image VALUES (DEFAULT, ?) RETURNING imageid;")) {
 
-			for (Image image : images) {
+			//Turn of auto commit so that each image is recorded in the same transaction as it is saved. Images are
+			//committed in groups
+			connection.setAutoCommit(false);
+
+			GroupCommit.writeAll(connection, images, dbf.getGroupCommitSize(), image -> {
 				//Store image data
 				//If the image has an invalid id, generate a new one
 				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				ImageIO.write(image.getImage(), "png", baos);
+				try {
+					ImageIO.write(image.getImage(), "png", baos);
+				} catch (IOException e) {
+					throw new SQLException("Unable to encode image!", e);
+				}
 
 				if (image.hasValidID()) {
 					storeImageData.setInt(1, image.getID());
@@ -354,13 +505,22 @@ class ProductPersistor {
 						image.setID(id); //Subsequent calls to image.getID() are now safe for use
 					} else {
 						//Nothing returned, so something must have gone wrong
-						connection.rollback();
-						throw new IOException("Unable to save image! No ID returned from database");
+						throw new SQLException("Unable to save image! No ID returned from database");
 					}
 				}
-			}
+			}, group -> dbf.recordChanges(connection, PIMDatabaseFacade.IMAGE_CHANGE,
+					group.stream().map(Image::getID).collect(Collectors.toList())));
 		} catch (SQLException e) {
 			throw new IOException("Unable to save all images! Some images might not be saved!", e);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+
+				//We should close the connection to ensure that it causes no more harm
+				DBUtil.close(connection);
+			}
 		}
 	}
 
@@ -375,6 +535,21 @@ class ProductPersistor {
 	 * @throws SQLException if something goes wrong
 	 */
 	private Set<Product> buildProducts(ResultSet productData, ResultSet productCategoryData, ResultSet productValueData, ResultSet productTagData) throws SQLException, IOException {
+		return buildProducts(productData, productCategoryData, productValueData, productTagData, null);
+	}
+
+	/**
+	 * Build a set of products from result sets, with images that have already been read.
+	 *
+	 * @param productData         the data describing the products
+	 * @param productCategoryData the data describing product categories
+	 * @param productValueData    the data describing attribute values
+	 * @param productTagData      the data describing product tags
+	 * @param productImages       the images of each product, or null to read the images of each product separately
+	 * @return a set of all products that could be built from the data
+	 * @throws SQLException if something goes wrong
+	 */
+	private Set<Product> buildProducts(ResultSet productData, ResultSet productCategoryData, ResultSet productValueData, ResultSet productTagData, Map<Integer, Set<Image>> productImages) throws SQLException, IOException {
 		Map<Integer, Product> products = new HashMap<>();
 
 		//Construct all products
@@ -383,8 +558,9 @@ class ProductPersistor {
 			String name = productData.getString(2).trim();
 			double price = productData.getDouble(3);
 			String description = productData.getString(4);
+			String version = productData.getString(5);
 
-			products.put(id, dbf.getCache().createProduct(id, name, description, price));
+			products.put(id, dbf.getCache().createProduct(id, name, description, price, version));
 		}
 		productData.close();
 
@@ -442,7 +618,11 @@ class ProductPersistor {
 
 		//Add all images
 		for (Map.Entry<Integer, Product> productEntry : products.entrySet()) {
-			productEntry.getValue().setImages(getImagesForProduct(productEntry.getKey()));
+			if (productImages != null) {
+				productEntry.getValue().setImages(productImages.getOrDefault(productEntry.getKey(), new HashSet<>()));
+			} else {
+				productEntry.getValue().setImages(getImagesForProduct(productEntry.getKey()));
+			}
 		}
 
 		//Return set of products
@@ -470,4 +650,28 @@ class ProductPersistor {
 
 		return images;
 	}
+
+	/**
+	 * Build the images of products from a result set with the id of the product as the first column, followed by the
+	 * columns of an image.
+	 *
+	 * @param imageData the data describing the images
+	 * @return the images of each product
+	 * @throws SQLException if something goes wrong
+	 */
+	private Map<Integer, Set<Image>> buildImagesByProduct(ResultSet imageData) throws SQLException, IOException {
+		Map<Integer, Set<Image>> images = new HashMap<>();
+
+		while (imageData.next()) {
+			int productID = imageData.getInt(1);
+			int imageID = imageData.getInt(2);
+			ByteArrayInputStream bais = new ByteArrayInputStream(imageData.getBytes(3));
+			Image image = dbf.getCache().createImage(imageID, ImageIO.read(bais));
+			images.computeIfAbsent(productID, id -> new HashSet<>()).add(image);
+		}
+
+		DBUtil.close(imageData);
+
+		return images;
+	}
 }
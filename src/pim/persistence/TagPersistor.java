@@ -1,16 +1,20 @@
 package pim.persistence;
 
 import pim.business.Tag;
+import shared.DBUtil;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Class used for performing operations on tags in the database.
@@ -69,24 +73,66 @@ class TagPersistor {
 		Connection connection = dbf.getConnection();
 
 		try (PreparedStatement tagData = connection.prepareStatement("INSERT INTO tag VALUES (?) ON CONFLICT (tagname) DO NOTHING;")) {
-			for (Tag tag : tags) {
+			//Turn of auto commit so that each tag is recorded in the same transaction as it is saved. Tags are committed
+			//in groups
+			connection.setAutoCommit(false);
+
+			GroupCommit.writeAll(connection, tags, dbf.getGroupCommitSize(), tag -> {
 				tagData.setString(1, tag.getName());
 				tagData.executeUpdate();
-			}
+			}, group -> dbf.recordChanges(connection, PIMDatabaseFacade.TAG_CHANGE,
+					group.stream().map(Tag::getName).collect(Collectors.toList())));
 		} catch (SQLException e) {
 			throw new IOException("Unable to save all tags! Some tags might not be saved!", e);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+
+				//We should close the connection to ensure that it causes no more harm
+				DBUtil.close(connection);
+			}
 		}
 	}
 
 	public void deleteTag(String name) throws IOException {
 		Connection connection = dbf.getConnection();
 
-		try (PreparedStatement delete = connection.prepareStatement("DELETE FROM tag WHERE tagname = ?")) {
+		try (PreparedStatement getProducts = connection.prepareStatement("SELECT productid FROM producttag WHERE tagname = ?");
+		     PreparedStatement delete = connection.prepareStatement("DELETE FROM tag WHERE tagname = ?")) {
+
+			//Turn of auto commit so that the products are recorded as changed only if the tag is deleted
+			connection.setAutoCommit(false);
+
+			//The deletion is cascaded to the products having the tag, so those are changed as well
+			getProducts.setString(1, name);
+			ResultSet productData = getProducts.executeQuery();
+			List<Integer> productIDs = new ArrayList<>();
+			while (productData.next()) {
+				productIDs.add(productData.getInt(1));
+			}
+			DBUtil.close(productData);
+
 			//Deletion should be cascaded
 			delete.setString(1, name);
 			delete.executeUpdate();
+
+			//The changes are recorded last, as the journal stays locked until the commit
+			dbf.recordChanges(connection, PIMDatabaseFacade.PRODUCT_CHANGE, productIDs);
+			dbf.recordChange(connection, PIMDatabaseFacade.TAG_CHANGE, name);
+			connection.commit();
 		} catch (SQLException e) {
 			throw new IOException("Unable to delete tag " + name + "!", e);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+
+				//We should close the connection to ensure that it causes no more harm
+				DBUtil.close(connection);
+			}
 		}
 	}
 
@@ -0,0 +1,134 @@
+package shared;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Static utility methods for running blocking operations asynchronously with {@link CompletableFuture}s.
+ * <p>
+ * Asynchronous methods never wait for other asynchronous operations on the executor they run on. They compose the
+ * futures instead, so that a bounded executor cannot end up with all its threads waiting for tasks that have no thread
+ * to run on.
+ *
+ * @author Kasper
+ */
+public class Async {
+
+	/**
+	 * The number of threads of the default executor. Every thread gets its own database connection, so this also bounds
+	 * the number of connections used for asynchronous operations.
+	 */
+	private static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final ExecutorService DEFAULT_EXECUTOR;
+
+	static {
+		AtomicInteger threadCount = new AtomicInteger();
+		DEFAULT_EXECUTOR = Executors.newFixedThreadPool(DEFAULT_THREADS, r -> {
+			Thread thread = new Thread(r, "Async worker " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Get the executor used for asynchronous operations when no other executor is specified. Its threads are daemons,
+	 * so they do not keep the application running.
+	 *
+	 * @return the default executor
+	 */
+	public static Executor defaultExecutor() {
+		return DEFAULT_EXECUTOR;
+	}
+
+	/**
+	 * Run the specified operation on an executor. If the operation throws an IOException, the future completes
+	 * exceptionally with it.
+	 *
+	 * @param operation the operation to run
+	 * @param executor  the executor to run the operation on
+	 * @param <T>       the type of the result
+	 * @return a future completed with the result of the operation
+	 */
+	public static <T> CompletableFuture<T> supply(IOSupplier<T> operation, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return operation.get();
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Combine a map of futures into a future of a map of their results. The future completes once all the futures
+	 * have completed, and completes exceptionally if any of them did.
+	 *
+	 * @param futures the futures by key
+	 * @param <K>     the type of the keys
+	 * @param <V>     the type of the results
+	 * @return a future completed with the results by key
+	 */
+	public static <K, V> CompletableFuture<Map<K, V>> all(Map<K, CompletableFuture<V>> futures) {
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+			Map<K, V> results = new HashMap<>();
+			for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+				results.put(entry.getKey(), entry.getValue().join());
+			}
+			return results;
+		});
+	}
+
+	/**
+	 * Wait for the specified future to complete and get its result. This is used for implementing blocking methods
+	 * with their asynchronous counterparts, and must not be called from the threads of an executor used for these.
+	 *
+	 * @param future the future to wait for
+	 * @param <T>    the type of the result
+	 * @return the result of the future
+	 * @throws IOException if the future completed exceptionally with an IOException
+	 */
+	public static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the operation to complete!", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * An operation that produces a result, and may fail with an IOException.
+	 *
+	 * @param <T> the type of the result
+	 */
+	@FunctionalInterface
+	public interface IOSupplier<T> {
+
+		/**
+		 * Run the operation.
+		 *
+		 * @return the result
+		 * @throws IOException if the operation fails
+		 */
+		T get() throws IOException;
+	}
+}
@@ -0,0 +1,73 @@
+package shared;
+
+import java.util.Date;
+
+/**
+ * An entry in a {@link ChangeFeed}, describing that an entity was saved or deleted. The entry only identifies the
+ * entity, which must be read again to find out what changed, or whether it still exists.
+ *
+ * @author Kasper
+ */
+public class ChangeEntry {
+
+	private final long sequence;
+	private final String type;
+	private final String key;
+	private final Date time;
+
+	/**
+	 * Constructs a new change entry.
+	 *
+	 * @param sequence the sequence number of the change
+	 * @param type     the type of the entity that changed
+	 * @param key      the id or name of the entity that changed
+	 * @param time     the time of the change
+	 */
+	public ChangeEntry(long sequence, String type, String key, Date time) {
+		this.sequence = sequence;
+		this.type = type;
+		this.key = key;
+		this.time = time;
+	}
+
+	/**
+	 * Get the sequence number of this change. Changes are numbered in the order they were committed.
+	 *
+	 * @return the sequence number
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get the type of the entity that changed, such as "product".
+	 *
+	 * @return the type of the entity
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Get the id or name of the entity that changed.
+	 *
+	 * @return the key of the entity
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the time of this change.
+	 *
+	 * @return the time of the change
+	 */
+	public Date getTime() {
+		return time;
+	}
+
+	@Override
+	public String toString() {
+		return sequence + ": " + type + " " + key;
+	}
+}
@@ -0,0 +1,33 @@
+package shared;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Interface describing a feed of all changes made to a database, in the order they were committed. Anything derived
+ * from the database, such as a cache or an index, can remember the sequence number of the last change it has applied
+ * and later catch up by replaying the changes after it, rather than being rebuilt from scratch.
+ *
+ * @author Kasper
+ */
+public interface ChangeFeed {
+
+	/**
+	 * Get the changes made after the change with the specified sequence number.
+	 *
+	 * @param sequence the sequence number of the last change already applied, or 0 to start from the beginning
+	 * @param limit    the maximum number of changes to return
+	 * @return a list of the changes, in the order they were committed
+	 * @throws IOException if the operation fails
+	 */
+	List<ChangeEntry> getChangesAfter(long sequence, int limit) throws IOException;
+
+	/**
+	 * Get the sequence number of the latest change. Something built from the database at this point in time should
+	 * resume from this number.
+	 *
+	 * @return the sequence number of the latest change, or 0 if there are no changes
+	 * @throws IOException if the operation fails
+	 */
+	long getLatestSequence() throws IOException;
+}
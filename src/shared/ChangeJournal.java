@@ -0,0 +1,177 @@
+package shared;
+
+import java.io.IOException;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An append-only journal of the changes made to a database, stored in a table of that database. Every write appends
+ * an entry in the transaction making the change, so an entry exists if and only if its change was committed.
+ * <p>
+ * Sequence numbers are taken from a database sequence, which by itself only orders the inserts, not the commits. A
+ * reader that has seen entry 10 could later find entry 9, if its transaction committed last, and would then skip it.
+ * To prevent this, appending takes a transaction-level lock that is held until commit, so that writing transactions
+ * commit in the order of their sequence numbers. Only the commits of writers are serialized, while readers are not
+ * affected. The lock is shared by all writers, so a transaction should append its changes all at once and as the last
+ * thing before committing. Taking the lock before other locks of the transaction would hold it while waiting for those,
+ * and could deadlock with a transaction holding them while waiting for the journal.
+ *
+ * @author Kasper
+ */
+public class ChangeJournal implements ChangeFeed {
+
+	/**
+	 * The key of the advisory lock serializing writers of the journal.
+	 */
+	private static final long LOCK_KEY = 0x6A6F75726E616CL;
+
+	private final ConnectionProvider connectionProvider;
+	private volatile boolean tableCreated;
+
+	/**
+	 * Constructs a new change journal.
+	 *
+	 * @param connectionProvider the provider of connections for reading the journal
+	 */
+	public ChangeJournal(ConnectionProvider connectionProvider) {
+		this.connectionProvider = connectionProvider;
+	}
+
+	/**
+	 * Append a change to the journal. The connection must be in a transaction, which should be the one making the
+	 * change.
+	 *
+	 * @param connection the connection used for making the change
+	 * @param type       the type of the entity that changed
+	 * @param key        the id or name of the entity that changed
+	 * @return the sequence number of the change
+	 * @throws SQLException if something goes wrong
+	 */
+	public long append(Connection connection, String type, Object key) throws SQLException {
+		return appendAll(connection, type, Collections.singletonList(key)).get(0).getSequence();
+	}
+
+	/**
+	 * Append a change of each of the specified entities to the journal in a single insert. The connection must be in a
+	 * transaction, which should be the one making the changes.
+	 *
+	 * @param connection the connection used for making the changes
+	 * @param type       the type of the entities that changed
+	 * @param keys       the ids or names of the entities that changed
+	 * @return the appended changes
+	 * @throws SQLException if something goes wrong
+	 */
+	public List<ChangeEntry> appendAll(Connection connection, String type, Collection<?> keys) throws SQLException {
+		List<ChangeEntry> changes = new ArrayList<>(keys.size());
+		if (keys.isEmpty()) return changes;
+
+		ensureTable(connection);
+
+		String[] keyStrings = new String[keys.size()];
+		int i = 0;
+		for (Object key : keys) {
+			keyStrings[i++] = String.valueOf(key);
+		}
+
+		try (PreparedStatement lock = connection.prepareStatement("SELECT pg_advisory_xact_lock(?);");
+		     PreparedStatement insert = connection.prepareStatement("INSERT INTO changejournal (type, key) SELECT ?, unnest(?) RETURNING sequence, key, time;")) {
+
+			lock.setLong(1, LOCK_KEY);
+			lock.execute();
+
+			Array keyArray = connection.createArrayOf("varchar", keyStrings);
+			try {
+				insert.setString(1, type);
+				insert.setArray(2, keyArray);
+				try (ResultSet result = insert.executeQuery()) {
+					while (result.next()) {
+						changes.add(new ChangeEntry(result.getLong("sequence"), type, result.getString("key"),
+								result.getTimestamp("time")));
+					}
+				}
+			} finally {
+				keyArray.free();
+			}
+		}
+		return changes;
+	}
+
+	@Override
+	public List<ChangeEntry> getChangesAfter(long sequence, int limit) throws IOException {
+		try {
+			Connection connection = connectionProvider.getConnection();
+			ensureTable(connection);
+
+			try (PreparedStatement getChanges = connection.prepareStatement("SELECT * FROM changejournal WHERE sequence > ? ORDER BY sequence LIMIT ?;")) {
+				getChanges.setLong(1, sequence);
+				getChanges.setInt(2, limit);
+
+				List<ChangeEntry> changes = new ArrayList<>();
+				try (ResultSet changeData = getChanges.executeQuery()) {
+					while (changeData.next()) {
+						changes.add(new ChangeEntry(changeData.getLong("sequence"), changeData.getString("type").trim(),
+								changeData.getString("key"), changeData.getTimestamp("time")));
+					}
+				}
+				return changes;
+			}
+		} catch (SQLException e) {
+			throw new IOException("Unable to read changes after " + sequence + "!", e);
+		}
+	}
+
+	@Override
+	public long getLatestSequence() throws IOException {
+		try {
+			Connection connection = connectionProvider.getConnection();
+			ensureTable(connection);
+
+			try (Statement getLatest = connection.createStatement();
+			     ResultSet result = getLatest.executeQuery("SELECT coalesce(max(sequence), 0) FROM changejournal;")) {
+				result.next();
+				return result.getLong(1);
+			}
+		} catch (SQLException e) {
+			throw new IOException("Unable to read the latest change!", e);
+		}
+	}
+
+	private void ensureTable(Connection connection) throws SQLException {
+		if (tableCreated) return;
+
+		try (Statement create = connection.createStatement()) {
+			create.execute("CREATE TABLE IF NOT EXISTS changejournal (" +
+					"sequence BIGSERIAL PRIMARY KEY, " +
+					"type VARCHAR(32) NOT NULL, " +
+					"key VARCHAR(255) NOT NULL, " +
+					"time TIMESTAMP NOT NULL DEFAULT now());");
+		}
+
+		//Inside a transaction the table is only known to exist once the transaction commits
+		if (connection.getAutoCommit()) {
+			tableCreated = true;
+		}
+	}
+
+	/**
+	 * Interface describing a way of getting a connection to the database of the journal.
+	 */
+	public interface ConnectionProvider {
+
+		/**
+		 * Get a connection to the database.
+		 *
+		 * @return a connection to the database
+		 * @throws IOException if a connection could not be established
+		 */
+		Connection getConnection() throws IOException;
+	}
+}
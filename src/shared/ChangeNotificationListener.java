@@ -0,0 +1,210 @@
+package shared;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Listener for changes made to the database by other instances of the application. Changes are announced by
+ * {@link #notifyChange(Connection, long, String, Object) sending a notification} in the transaction making them, which
+ * PostgreSQL delivers to all listening connections once the transaction commits. Notifications carry the sequence
+ * number of the change in the {@link ChangeJournal}, so that a listener knows where to resume from if it misses some.
+ * <p>
+ * The listener runs on a background thread with a dedicated connection, as notifications are only delivered to the
+ * connection that issued the LISTEN. Notifications sent by this instance are ignored, as it already knows about its
+ * own changes. If the connection is lost, the listener reconnects and reports that changes may have been missed in the
+ * meantime.
+ *
+ * @author Kasper
+ */
+public class ChangeNotificationListener {
+
+	/**
+	 * The channel on which changes are announced.
+	 */
+	private static final String CHANNEL = "electroshoppen_change";
+
+	/**
+	 * Identifies the notifications sent by this instance of the application.
+	 */
+	private static final String NODE_ID = UUID.randomUUID().toString();
+
+	/**
+	 * The time between checks for new notifications, in milliseconds. The driver has no way to wait for
+	 * notifications, so they are picked up by a cheap query.
+	 */
+	private static final long POLL_INTERVAL = 250;
+
+	/**
+	 * The time to wait before reconnecting after the connection was lost, in milliseconds.
+	 */
+	private static final long RECONNECT_INTERVAL = 5000;
+
+	private final ConnectionSource connectionSource;
+	private final ChangeHandler handler;
+	private final String name;
+	private volatile boolean running;
+	private volatile boolean active;
+	private Thread thread;
+
+	/**
+	 * Constructs a new change notification listener. The listener does not listen until it is started.
+	 *
+	 * @param name             the name of the listener, used for naming its thread
+	 * @param connectionSource the source of the dedicated connection
+	 * @param handler          the handler of changes
+	 */
+	public ChangeNotificationListener(String name, ConnectionSource connectionSource, ChangeHandler handler) {
+		this.name = name;
+		this.connectionSource = connectionSource;
+		this.handler = handler;
+	}
+
+	/**
+	 * Announce a change to the other instances of the application. If the connection is in a transaction, the
+	 * announcement is only delivered if the transaction commits.
+	 *
+	 * @param connection the connection used for making the change
+	 * @param sequence   the sequence number of the change in the journal
+	 * @param type       the type of the entity that changed
+	 * @param key        the key of the entity that changed
+	 * @throws SQLException if something goes wrong
+	 */
+	public static void notifyChange(Connection connection, long sequence, String type, Object key) throws SQLException {
+		try (PreparedStatement notify = connection.prepareStatement("SELECT pg_notify(?, ?);")) {
+			notify.setString(1, CHANNEL);
+			notify.setString(2, NODE_ID + ":" + sequence + ":" + type + ":" + key);
+			notify.execute();
+		}
+	}
+
+	/**
+	 * Start listening for changes, unless this listener is already running.
+	 */
+	public synchronized void start() {
+		if (running) return;
+
+		running = true;
+		thread = new Thread(this::listen, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop listening for changes.
+	 */
+	public synchronized void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Get whether this listener is currently receiving all changes. While this is the case, data that has been read
+	 * from the database and kept in memory is known to be up to date, once pending notifications have been handled.
+	 *
+	 * @return true if this listener is connected and listening, false otherwise
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	private void listen() {
+		while (running) {
+			Connection connection = null;
+			try {
+				connection = connectionSource.open();
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("LISTEN " + CHANNEL + ";");
+				}
+
+				//Changes made before listening started are not delivered
+				handler.changesMissed();
+				active = true;
+
+				PGConnection pgConnection = connection.unwrap(PGConnection.class);
+				try (Statement poll = connection.createStatement()) {
+					while (running) {
+						poll.execute("SELECT 1;");
+						PGNotification[] notifications = pgConnection.getNotifications();
+						if (notifications != null) {
+							for (PGNotification notification : notifications) {
+								handle(notification.getParameter());
+							}
+						}
+
+						Thread.sleep(POLL_INTERVAL);
+					}
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+			} catch (InterruptedException e) {
+				//Stopped
+				break;
+			} finally {
+				active = false;
+				DBUtil.close(connection);
+			}
+
+			try {
+				Thread.sleep(RECONNECT_INTERVAL);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	private void handle(String payload) {
+		String[] parts = payload.split(":", 4);
+		if (parts.length != 4 || parts[0].equals(NODE_ID)) return;
+
+		try {
+			handler.changed(new ChangeEntry(Long.parseLong(parts[1]), parts[2], parts[3], null));
+		} catch (IOException | RuntimeException e) {
+			//The change could not be applied, so whatever it concerns may now be out of date
+			e.printStackTrace();
+			handler.changesMissed();
+		}
+	}
+
+	/**
+	 * Interface describing a way of opening the dedicated connection of the listener.
+	 */
+	public interface ConnectionSource {
+
+		/**
+		 * Open a new connection to the database.
+		 *
+		 * @return the new connection
+		 * @throws SQLException if the connection could not be opened
+		 */
+		Connection open() throws SQLException;
+	}
+
+	/**
+	 * Interface describing a handler of changes made by other instances of the application.
+	 */
+	public interface ChangeHandler {
+
+		/**
+		 * Called when an entity has changed. The time of the change is not known.
+		 *
+		 * @param change the change
+		 * @throws IOException if the change could not be applied
+		 */
+		void changed(ChangeEntry change) throws IOException;
+
+		/**
+		 * Called when changes may have been missed, such as when the listener has reconnected.
+		 */
+		void changesMissed();
+	}
+}
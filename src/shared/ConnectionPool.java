@@ -0,0 +1,126 @@
+package shared;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connections to a database, one for each thread using it. A connection is not meant to be used by several threads at
+ * once, and a transaction begun on a shared connection would include the statements of every other thread using it. By
+ * giving every thread its own connection, operations on different threads run in parallel and transactions stay
+ * isolated, while code on a single thread keeps getting the same connection, as before.
+ * <p>
+ * A thread keeps its connection until it ends or the pool is closed. The connection of a thread that has ended is
+ * given to the next thread needing one, so that short-lived threads, such as one for every request, do not each open a
+ * connection of their own. At most as many connections are open as there have been threads using the pool at once.
+ *
+ * @author Kasper
+ */
+public class ConnectionPool {
+
+	/**
+	 * The number of connections a pool is meant to have open at most. The pool does not enforce this itself, as a
+	 * thread always gets a connection, so executors running database operations must not run more operations at once.
+	 */
+	public static final int MAX_CONNECTIONS = 20;
+
+	private final ChangeNotificationListener.ConnectionSource connectionSource;
+	private final ThreadLocal<Connection> current;
+	private final Map<Thread, Connection> connections;
+
+	/**
+	 * Constructs a new, empty connection pool.
+	 *
+	 * @param connectionSource the source of new connections
+	 */
+	public ConnectionPool(ChangeNotificationListener.ConnectionSource connectionSource) {
+		this.connectionSource = connectionSource;
+		current = new ThreadLocal<>();
+		connections = new HashMap<>();
+	}
+
+	/**
+	 * Get the connection of the current thread, opening a new one if the thread has none or if its connection has been
+	 * closed.
+	 *
+	 * @return the connection of the current thread
+	 * @throws SQLException if a new connection could not be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		Connection connection = current.get();
+		if (connection != null && !connection.isClosed()) return connection;
+
+		//Take over the connection of a thread that has ended, if any
+		List<Connection> abandoned = new ArrayList<>();
+		synchronized (connections) {
+			for (Iterator<Map.Entry<Thread, Connection>> it = connections.entrySet().iterator(); it.hasNext(); ) {
+				Map.Entry<Thread, Connection> entry = it.next();
+				if (!entry.getKey().isAlive()) {
+					abandoned.add(entry.getValue());
+					it.remove();
+				}
+			}
+		}
+
+		connection = null;
+		for (Connection c : abandoned) {
+			if (connection == null && isReusable(c)) {
+				connection = c;
+			} else {
+				DBUtil.close(c);
+			}
+		}
+		if (connection == null) {
+			connection = connectionSource.open();
+		}
+
+		current.set(connection);
+		synchronized (connections) {
+			connections.put(Thread.currentThread(), connection);
+		}
+		return connection;
+	}
+
+	/**
+	 * Get the number of connections in the pool, including those of threads that have ended but have not been taken
+	 * over yet.
+	 *
+	 * @return the number of connections
+	 */
+	public int size() {
+		synchronized (connections) {
+			return connections.size();
+		}
+	}
+
+	/**
+	 * Test whether a connection left behind by a thread can be given to another thread. A connection left in the
+	 * middle of a transaction is not reused, as its state is unknown.
+	 */
+	private static boolean isReusable(Connection connection) {
+		try {
+			return !connection.isClosed() && connection.getAutoCommit();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Close all connections in the pool. Threads will open new connections if they are used again.
+	 */
+	public void close() {
+		List<Connection> open;
+		synchronized (connections) {
+			open = new ArrayList<>(connections.values());
+			connections.clear();
+		}
+
+		for (Connection connection : open) {
+			DBUtil.close(connection);
+		}
+	}
+}
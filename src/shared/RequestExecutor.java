@@ -0,0 +1,134 @@
+package shared;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor for serving webshop requests, which runs every task on its own virtual thread when the runtime supports
+ * them, and on a pool of platform threads otherwise. The database operations of the PIM and the CMS block while waiting
+ * for the database, and a virtual thread waiting for the database does not tie up a thread of the operating system, so
+ * any number of requests can be waiting at once.
+ * <p>
+ * Every thread using a {@link ConnectionPool} gets its own connection, so the number of tasks running at once is
+ * limited to the size of the connection pool. Tasks beyond the limit wait for a permit on their virtual thread, which
+ * is cheap, rather than on a connection of their own. When threads end, their connections are taken over by the
+ * threads of new tasks.
+ * <p>
+ * Tasks must not wait for other tasks on the same executor, as all permits could be held by tasks waiting for tasks
+ * without one. Use the asynchronous methods of the PIM and CMS, which compose their futures instead.
+ *
+ * @author Kasper
+ */
+public class RequestExecutor implements Executor, AutoCloseable {
+
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final int maxConcurrentTasks;
+	private final boolean virtualThreads;
+
+	/**
+	 * Constructs a new request executor, which runs as many tasks at once as a connection pool has connections.
+	 * Virtual threads are used if the runtime supports them.
+	 */
+	public RequestExecutor() {
+		this(ConnectionPool.MAX_CONNECTIONS, true);
+	}
+
+	/**
+	 * Constructs a new request executor.
+	 *
+	 * @param maxConcurrentTasks the maximum number of tasks to run at once
+	 * @param useVirtualThreads  whether to use virtual threads if the runtime supports them, as opposed to always using
+	 *                           a pool of platform threads
+	 * @throws IllegalArgumentException if the maximum number of tasks is not positive
+	 */
+	public RequestExecutor(int maxConcurrentTasks, boolean useVirtualThreads) {
+		if (maxConcurrentTasks < 1) {
+			throw new IllegalArgumentException("The maximum number of tasks must be positive!");
+		}
+		this.maxConcurrentTasks = maxConcurrentTasks;
+		permits = new Semaphore(maxConcurrentTasks);
+
+		ExecutorService virtualExecutor = useVirtualThreads ? createVirtualThreadExecutor() : null;
+		if (virtualExecutor != null) {
+			executor = virtualExecutor;
+			virtualThreads = true;
+		} else {
+			//One thread for every permit, so that no task is waiting for a permit on a platform thread
+			AtomicInteger threadCount = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(maxConcurrentTasks, r -> {
+				Thread thread = new Thread(r, "Request worker " + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			virtualThreads = false;
+		}
+	}
+
+	/**
+	 * Create an executor starting a virtual thread for every task. The source level of the project predates virtual
+	 * threads, so the factory method is looked up when running.
+	 *
+	 * @return the executor, or null if the runtime does not support virtual threads
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			//Not supported by this runtime
+			return null;
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(() -> {
+			permits.acquireUninterruptibly();
+			try {
+				task.run();
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	/**
+	 * Test whether this executor runs its tasks on virtual threads.
+	 *
+	 * @return true if tasks run on virtual threads, false if they run on a pool of platform threads
+	 */
+	public boolean isUsingVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Get the maximum number of tasks this executor runs at once.
+	 *
+	 * @return the maximum number of tasks
+	 */
+	public int getMaxConcurrentTasks() {
+		return maxConcurrentTasks;
+	}
+
+	/**
+	 * Get the number of tasks currently running, not counting tasks waiting for a permit.
+	 *
+	 * @return the number of running tasks
+	 */
+	public int getRunningTasks() {
+		return maxConcurrentTasks - permits.availablePermits();
+	}
+
+	/**
+	 * Stop accepting new tasks. Tasks already submitted are still run.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -303,7 +303,7 @@ public class ProductController implements Initializable {
 			//Categories
 			try {
 				List<Category> categories = pim.getCategories();
-				categories.removeAll(product.getCategories());
+				categories.removeAll(product.getCategoriesView());
 				availableCategories.setAll(categories);
 			} catch (IOException e) {
 				AlertUtil.newAlertDialog(
@@ -313,11 +313,11 @@ public class ProductController implements Initializable {
 						"Unable to load categories")
 						.showAndWait();
 			}
-			containedCategories.setAll(product.getCategories());
+			containedCategories.setAll(product.getCategoriesView());
 
 			//Attributes
 			attributeVBox.getChildren().clear();
-			for (Attribute.AttributeValue value : product.getAttributeValues()) {
+			for (Attribute.AttributeValue value : product.getAttributeValuesView()) {
 				HBox valueBox = new HBox(4);
 				valueBox.setAlignment(Pos.CENTER_LEFT);
 
@@ -339,7 +339,7 @@ public class ProductController implements Initializable {
 
 			//Set tags
 			StringBuilder tagText = new StringBuilder();
-			for (Iterator<Tag> iter = product.getTags().iterator(); iter.hasNext(); ) {
+			for (Iterator<Tag> iter = product.getTagsView().iterator(); iter.hasNext(); ) {
 				tagText.append(iter.next().getName());
 				if (iter.hasNext()) tagText.append(", ");
 			}
@@ -347,7 +347,7 @@ public class ProductController implements Initializable {
 
 			//Set images
 			productImagePane.getChildren().clear();
-			for (pim.business.Image img : product.getImages()) {
+			for (pim.business.Image img : product.getImagesView()) {
 				productImagePane.getChildren().add(new RemoveableImage(img, this::removeImage));
 			}
 		} else { //Else clear the fields
@@ -415,7 +415,7 @@ public class ProductController implements Initializable {
 			//Add categories and products to tree view
 			TreeItem<Object> uncategorised = new TreeItem<>("Uncategorised", new ImageView(redPackageImage));
 			for (Product p : products) {
-				if (p.getCategories().isEmpty()) {
+				if (p.getCategoryCount() == 0) {
 
 					//Only make uncategorised category if some products belong to it
 					if (treeRoot.getChildren().isEmpty()) {
@@ -441,7 +441,7 @@ public class ProductController implements Initializable {
 				Map<Category, TreeItem<Object>> categoryNodes = new HashMap<>();
 
 				for (Product p : products) {
-					for (Category c : p.getCategories()) {
+					for (Category c : p.getCategoriesView()) {
 						TreeItem<Object> category = categoryNodes.getOrDefault(c, new TreeItem<>(c, new ImageView(packageImage)));
 						treeRoot.getChildren().add(category);
 						category.getChildren().add(new TreeItem<>(p));
@@ -1,13 +1,18 @@
 package shared.presentation.webshop;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Worker;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.geometry.Side;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
 import javafx.scene.control.TitledPane;
 import javafx.scene.web.WebView;
 import netscape.javascript.JSObject;
@@ -21,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for the web shop view.
@@ -30,14 +36,30 @@ import java.util.ResourceBundle;
  */
 public class WebshopController implements Initializable {
 
+	private static final int SEARCH_RESULTS = 50;
+	private static final int SUGGESTIONS = 8;
+
 	@FXML
 	private TitledPane titledPaneCenter;
 	@FXML
 	private ListView<Object> listViewAside;
 	@FXML
 	private WebView webView;
+	@FXML
+	private TextField searchField;
 
 	private ObservableList<Object> asideList;
+	private ContextMenu suggestionMenu;
+
+	/**
+	 * The number of the latest page requested, used for showing only the latest page when several are loading.
+	 */
+	private int pageRequest;
+
+	/**
+	 * The number of the latest suggestions requested, used for showing only the suggestions for the latest text.
+	 */
+	private int suggestionRequest;
 
 	/**
 	 * The mediator for the business layer.
@@ -61,15 +83,15 @@ public class WebshopController implements Initializable {
 		asideList = FXCollections.observableArrayList();
 		listViewAside.setItems(asideList);
 		listViewAside.getSelectionModel().selectedItemProperty().addListener(this::listViewSelectionChanged);
+
+		//Suggest completions as the user types in the search field
+		suggestionMenu = new ContextMenu();
+		searchField.textProperty().addListener((observable, oldValue, newValue) -> showSuggestions(newValue));
 	}
 
 	public void onEnter() {
 		//Attempt to load and show the landing page
-		try {
-			present(webshop.getLandingPage());
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		present(webshop.getLandingPageAsync());
 	}
 
 	@FXML
@@ -83,11 +105,7 @@ public class WebshopController implements Initializable {
 	private void landingOnAction(ActionEvent event) {
 		asideList.clear();
 		titledPaneCenter.setText("Home");
-		try {
-			present(webshop.getLandingPage());
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		present(webshop.getLandingPageAsync());
 	}
 
 	@FXML
@@ -123,6 +141,80 @@ public class WebshopController implements Initializable {
 		}
 	}
 
+	@FXML
+	private void searchOnAction(ActionEvent event) {
+		search(searchField.getText());
+	}
+
+	/**
+	 * Search for products and show the results in the list view.
+	 *
+	 * @param query the search query
+	 */
+	private void search(String query) {
+		//Suggestions still being found are no longer wanted
+		suggestionRequest++;
+		suggestionMenu.hide();
+		if (query.trim().isEmpty()) return;
+
+		try {
+			titledPaneCenter.setText("Search results");
+			asideList.setAll(webshop.search(query, SEARCH_RESULTS));
+			listViewAside.getSelectionModel().selectFirst();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Show suggestions for completing the text in the search field. The suggestions are found in the background, as
+	 * the index may have to be built first, and only those for the latest text are shown.
+	 *
+	 * @param prefix the text in the search field
+	 */
+	private void showSuggestions(String prefix) {
+		int request = ++suggestionRequest;
+		if (webshop == null || prefix.trim().isEmpty()) {
+			suggestionMenu.hide();
+			return;
+		}
+
+		webshop.getSuggestionsAsync(prefix, SUGGESTIONS).whenComplete((suggestions, e) -> Platform.runLater(() -> {
+			if (e != null) {
+				e.printStackTrace();
+			} else if (request == suggestionRequest) {
+				showSuggestions(suggestions);
+			}
+		}));
+	}
+
+	/**
+	 * Show the specified suggestions below the search field.
+	 *
+	 * @param suggestions the suggestions to show, best first
+	 */
+	private void showSuggestions(List<String> suggestions) {
+		if (suggestions.isEmpty()) {
+			suggestionMenu.hide();
+			return;
+		}
+
+		List<MenuItem> items = new ArrayList<>();
+		for (String suggestion : suggestions) {
+			MenuItem item = new MenuItem(suggestion);
+			item.setOnAction(event -> {
+				searchField.setText(suggestion);
+				search(suggestion);
+			});
+			items.add(item);
+		}
+		suggestionMenu.getItems().setAll(items);
+
+		if (!suggestionMenu.isShowing()) {
+			suggestionMenu.show(searchField, Side.BOTTOM, 0, 0);
+		}
+	}
+
 	/**
 	 * Makes a list from the map with Page objects and show Page names in the list view.
 	 *
@@ -143,28 +235,35 @@ public class WebshopController implements Initializable {
 	 */
 	private void listViewSelectionChanged(javafx.beans.Observable observable) {
 		Object selected = listViewAside.getSelectionModel().getSelectedItem();
-		if (selected != null) {
-			try {
-				if (selected instanceof Page) {
-					present(webshop.getPage(((Page) selected).getPageId()));
-				} else if (selected instanceof Product) {
-					present(webshop.getProductPage(((Product) selected).getID()));
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+		if (selected instanceof Page) {
+			present(webshop.getPageAsync(((Page) selected).getPageId()));
+		} else if (selected instanceof Product) {
+			present(webshop.getProductPageAsync(((Product) selected).getID()));
 		}
 	}
 
 	@SuppressWarnings("unused")
 	public void linkPressed(Object anchor) {
-		try {
-			//Calling toString() on the anchor element returns the content of the href attribute, which is the id of the
-			//page we want to access
-			present(webshop.getPage(Integer.parseInt(anchor.toString())));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		//Calling toString() on the anchor element returns the content of the href attribute, which is the id of the
+		//page we want to access
+		present(webshop.getPageAsync(Integer.parseInt(anchor.toString())));
+	}
+
+	/**
+	 * Present the page described by the specified html once it has been loaded. The page is loaded in the background,
+	 * so the user interface stays responsive. If another page is requested in the meantime, this page is not shown.
+	 *
+	 * @param html the future html to present
+	 */
+	private void present(CompletableFuture<String> html) {
+		int request = ++pageRequest;
+		html.whenComplete((result, e) -> Platform.runLater(() -> {
+			if (e != null) {
+				e.printStackTrace();
+			} else if (request == pageRequest) {
+				present(result);
+			}
+		}));
 	}
 
 	/**
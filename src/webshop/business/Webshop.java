@@ -1,10 +1,16 @@
 package webshop.business;
 
+import pim.business.FacetResult;
 import pim.business.Product;
+import pim.business.ProductFilter;
+import pim.business.ProductOrder;
+import pim.business.ProductRow;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Interface describing the functionality that must be provided by all webshop implementations.
@@ -63,4 +69,157 @@ public interface Webshop {
 	 * @throws IOException if the operation fails
 	 */
 	List<Product> getAllProducts() throws IOException;
+
+	/**
+	 * Get a page of the products in the specified category, in the specified order.
+	 *
+	 * @param categoryName the category to get products from
+	 * @param order        the order of the products
+	 * @param offset       the number of products to skip
+	 * @param limit        the maximum number of products to return
+	 * @return a list of the products on the page, in order
+	 * @throws IOException if the operation fails
+	 */
+	List<Product> getProducts(String categoryName, ProductOrder order, int offset, int limit) throws IOException;
+
+	/**
+	 * Visit the listing data of a page of the products in the specified category, in the specified order, without
+	 * loading the products. The visitor must not keep the row it is given.
+	 *
+	 * @param categoryName the category to visit products in
+	 * @param order        the order of the products
+	 * @param offset       the number of products to skip
+	 * @param limit        the maximum number of products to visit
+	 * @param visitor      the visitor of the products on the page
+	 * @throws IOException if the operation fails
+	 */
+	void visitProducts(String categoryName, ProductOrder order, int offset, int limit, Consumer<ProductRow> visitor) throws IOException;
+
+	/**
+	 * Search for products matching the specified query.
+	 *
+	 * @param query the words to search for
+	 * @param limit the maximum number of products to return
+	 * @return a list of the matching products, best match first
+	 * @throws IOException if the operation fails
+	 */
+	List<Product> search(String query, int limit) throws IOException;
+
+	/**
+	 * Visit the listing data of the products matching the specified query, without loading the products. The visitor
+	 * must not keep the row it is given.
+	 *
+	 * @param query   the words to search for
+	 * @param limit   the maximum number of products to visit
+	 * @param visitor the visitor of the matching products, best match first
+	 * @throws IOException if the operation fails
+	 */
+	void visitSearchResults(String query, int limit, Consumer<ProductRow> visitor) throws IOException;
+
+	/**
+	 * Get suggestions for completing a search as it is being typed.
+	 *
+	 * @param prefix the text typed so far
+	 * @param limit  the maximum number of suggestions to return
+	 * @return a list of suggestions, best first
+	 * @throws IOException if the operation fails
+	 */
+	List<String> getSuggestions(String prefix, int limit) throws IOException;
+
+	/**
+	 * Find the products matching the specified filter, along with facet counts for narrowing the filter further.
+	 *
+	 * @param filter the filter
+	 * @param offset the number of matching products to skip
+	 * @param limit  the maximum number of products to return
+	 * @return the matching products and facet counts
+	 * @throws IOException if the operation fails
+	 */
+	FacetResult filterProducts(ProductFilter filter, int offset, int limit) throws IOException;
+
+	/**
+	 * Visit the listing data of the products matching the specified filter, without loading the products. The
+	 * returned result has the facet counts, but no products. The visitor must not keep the row it is given.
+	 *
+	 * @param filter  the filter
+	 * @param offset  the number of matching products to skip
+	 * @param limit   the maximum number of products to visit
+	 * @param visitor the visitor of the matching products
+	 * @return the facet counts
+	 * @throws IOException if the operation fails
+	 */
+	FacetResult filterProducts(ProductFilter filter, int offset, int limit, Consumer<ProductRow> visitor) throws IOException;
+
+	/**
+	 * Get the html of the landing page asynchronously, as with {@link #getLandingPage()}. This and the other
+	 * asynchronous methods complete exceptionally with an IOException if the operation failed, and do not block the
+	 * calling thread.
+	 *
+	 * @return a future completed with the html of the landing page
+	 */
+	CompletableFuture<String> getLandingPageAsync();
+
+	/**
+	 * Get the html of the page with the specified id asynchronously, as with {@link #getPage(int)}.
+	 *
+	 * @param id the id of the page
+	 * @return a future completed with the html of the page
+	 */
+	CompletableFuture<String> getPageAsync(int id);
+
+	/**
+	 * Get the html of the product page for the product with the specified id asynchronously, as with
+	 * {@link #getProductPage(int)}.
+	 *
+	 * @param id the id of the product
+	 * @return a future completed with the html of the product page
+	 */
+	CompletableFuture<String> getProductPageAsync(int id);
+
+	/**
+	 * Get all products asynchronously, as with {@link #getAllProducts()}.
+	 *
+	 * @return a future completed with all products
+	 */
+	CompletableFuture<List<Product>> getAllProductsAsync();
+
+	/**
+	 * Get a page of the products in the specified category asynchronously, as with
+	 * {@link #getProducts(String, ProductOrder, int, int)}.
+	 *
+	 * @param categoryName the category to get products from
+	 * @param order        the order of the products
+	 * @param offset       the number of products to skip
+	 * @param limit        the maximum number of products to return
+	 * @return a future completed with the products on the page, in order
+	 */
+	CompletableFuture<List<Product>> getProductsAsync(String categoryName, ProductOrder order, int offset, int limit);
+
+	/**
+	 * Search for products asynchronously, as with {@link #search(String, int)}.
+	 *
+	 * @param query the words to search for
+	 * @param limit the maximum number of products to return
+	 * @return a future completed with the matching products, best match first
+	 */
+	CompletableFuture<List<Product>> searchAsync(String query, int limit);
+
+	/**
+	 * Get suggestions for completing a search asynchronously, as with {@link #getSuggestions(String, int)}.
+	 *
+	 * @param prefix the text typed so far
+	 * @param limit  the maximum number of suggestions to return
+	 * @return a future completed with the suggestions, best first
+	 */
+	CompletableFuture<List<String>> getSuggestionsAsync(String prefix, int limit);
+
+	/**
+	 * Filter products asynchronously, as with {@link #filterProducts(ProductFilter, int, int)}.
+	 *
+	 * @param filter the filter
+	 * @param offset the number of matching products to skip
+	 * @param limit  the maximum number of products to return
+	 * @return a future completed with the matching products and facet counts
+	 */
+	CompletableFuture<FacetResult> filterProductsAsync(ProductFilter filter, int offset, int limit);
 }
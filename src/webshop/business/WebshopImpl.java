@@ -1,12 +1,18 @@
 package webshop.business;
 
 import cms.business.CMS;
+import pim.business.FacetResult;
 import pim.business.PIM;
 import pim.business.Product;
+import pim.business.ProductFilter;
+import pim.business.ProductOrder;
+import pim.business.ProductRow;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Implementation of the webshop interface.
@@ -58,4 +64,79 @@ public class WebshopImpl implements Webshop {
 	public List<Product> getAllProducts() throws IOException {
 		return pim.getProducts();
 	}
+
+	@Override
+	public List<Product> getProducts(String categoryName, ProductOrder order, int offset, int limit) throws IOException {
+		return pim.getProducts(categoryName, order, offset, limit);
+	}
+
+	@Override
+	public void visitProducts(String categoryName, ProductOrder order, int offset, int limit, Consumer<ProductRow> visitor) throws IOException {
+		pim.visitProducts(categoryName, order, offset, limit, visitor);
+	}
+
+	@Override
+	public List<Product> search(String query, int limit) throws IOException {
+		return pim.search(query, limit);
+	}
+
+	@Override
+	public void visitSearchResults(String query, int limit, Consumer<ProductRow> visitor) throws IOException {
+		pim.visitSearchResults(query, limit, visitor);
+	}
+
+	@Override
+	public List<String> getSuggestions(String prefix, int limit) throws IOException {
+		return pim.getSuggestions(prefix, limit);
+	}
+
+	@Override
+	public FacetResult filterProducts(ProductFilter filter, int offset, int limit) throws IOException {
+		return pim.filterProducts(filter, offset, limit);
+	}
+
+	@Override
+	public FacetResult filterProducts(ProductFilter filter, int offset, int limit, Consumer<ProductRow> visitor) throws IOException {
+		return pim.filterProducts(filter, offset, limit, visitor);
+	}
+
+	@Override
+	public CompletableFuture<String> getLandingPageAsync() {
+		return cms.getLandingPageAsync();
+	}
+
+	@Override
+	public CompletableFuture<String> getPageAsync(int id) {
+		return cms.getPageAsync(id);
+	}
+
+	@Override
+	public CompletableFuture<String> getProductPageAsync(int id) {
+		return cms.getProductPageAsync(id);
+	}
+
+	@Override
+	public CompletableFuture<List<Product>> getAllProductsAsync() {
+		return pim.getProductsAsync();
+	}
+
+	@Override
+	public CompletableFuture<List<Product>> getProductsAsync(String categoryName, ProductOrder order, int offset, int limit) {
+		return pim.getProductsAsync(categoryName, order, offset, limit);
+	}
+
+	@Override
+	public CompletableFuture<List<Product>> searchAsync(String query, int limit) {
+		return pim.searchAsync(query, limit);
+	}
+
+	@Override
+	public CompletableFuture<List<String>> getSuggestionsAsync(String prefix, int limit) {
+		return pim.getSuggestionsAsync(prefix, limit);
+	}
+
+	@Override
+	public CompletableFuture<FacetResult> filterProductsAsync(ProductFilter filter, int offset, int limit) {
+		return pim.filterProductsAsync(filter, offset, limit);
+	}
 }
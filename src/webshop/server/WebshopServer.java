@@ -0,0 +1,502 @@
+package webshop.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import pim.business.Product;
+import pim.business.ProductOrder;
+import webshop.business.Webshop;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An HTTP server for the webshop, serving the same pages as the webshop view without a user interface. The following
+ * paths are served:
+ * <ul>
+ * <li>{@code /} - the landing page</li>
+ * <li>{@code /page/<id>} or {@code /<id>} - a CMS page. Links in CMS pages are relative ids, so they resolve to
+ * either</li>
+ * <li>{@code /product/<id>} - the page of a product</li>
+ * <li>{@code /products?category=<name>&order=<order>&offset=<n>&limit=<n>} - a page of the products in a category</li>
+ * <li>{@code /search?q=<query>&limit=<n>} - a list of the products matching a search</li>
+ * </ul>
+ * <p>
+ * Pages are loaded with the asynchronous methods of the webshop, so waiting for the database does not hold a thread of
+ * the server. The server threads only parse requests and encode responses, which needs no more threads than there are
+ * processors. Responses have a content length, so connections are kept alive between requests.
+ * <p>
+ * Responses are compressed with gzip when the client accepts it. The pages have no modification time of their own, so
+ * the ETag of a response is a hash of its content, and its Last-Modified time is when that content was first served.
+ * Clients revalidating with If-None-Match or If-Modified-Since get a 304 response when the content has not changed,
+ * which saves compressing and sending it again.
+ *
+ * @author Kasper
+ */
+public class WebshopServer {
+
+	/**
+	 * The maximum number of products in a product list.
+	 */
+	private static final int MAX_LIMIT = 100;
+	private static final int DEFAULT_LIMIT = 20;
+
+	/**
+	 * The size below which responses are not compressed, as the gzip header would take up most of the gain.
+	 */
+	private static final int MIN_GZIP_SIZE = 256;
+
+	/**
+	 * The number of responses to remember the ETag and Last-Modified time of.
+	 */
+	private static final int VALIDATOR_CACHE_SIZE = 10_000;
+
+	/**
+	 * The number of connections waiting to be accepted before new connections are refused.
+	 */
+	private static final int BACKLOG = 1024;
+
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+	private final Webshop webshop;
+	private final HttpServer server;
+	private final ExecutorService workers;
+	private final Map<String, Validator> validators;
+
+	/**
+	 * Constructs a new webshop server. The server is not started until {@link #start()} is called.
+	 *
+	 * @param webshop the webshop to serve
+	 * @param address the address to listen on
+	 * @throws IOException if the server could not be bound to the address
+	 */
+	public WebshopServer(Webshop webshop, InetSocketAddress address) throws IOException {
+		this.webshop = webshop;
+
+		//Keep more idle connections open than the default, as every client keeps its connection alive. These are read
+		//once when the first server is created, so settings given on the command line take precedence.
+		setDefaultProperty("sun.net.httpserver.maxIdleConnections", "1000");
+		setDefaultProperty("sun.net.httpserver.idleInterval", "60");
+
+		AtomicInteger threadCount = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread thread = new Thread(r, "Webshop server " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		//Least recently used responses are forgotten first
+		validators = new LinkedHashMap<String, Validator>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Validator> eldest) {
+				return size() > VALIDATOR_CACHE_SIZE;
+			}
+		};
+
+		server = HttpServer.create(address, BACKLOG);
+		server.setExecutor(workers);
+		server.createContext("/", this::handle);
+	}
+
+	private static void setDefaultProperty(String key, String value) {
+		if (System.getProperty(key) == null) {
+			System.setProperty(key, value);
+		}
+	}
+
+	/**
+	 * Start accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stop accepting requests, and wait for the requests being handled to complete.
+	 *
+	 * @param delay the maximum number of seconds to wait for requests to complete
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		workers.shutdown();
+	}
+
+	/**
+	 * Get the address the server is listening on.
+	 *
+	 * @return the address of the server
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Handle a request. The response is sent once the page has been loaded, on a server thread.
+	 */
+	private void handle(HttpExchange exchange) {
+		try {
+			String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				sendError(exchange, 405, "Method not allowed");
+				return;
+			}
+
+			CompletableFuture<String> html;
+			try {
+				html = route(exchange.getRequestURI());
+			} catch (IllegalArgumentException e) {
+				//Also thrown for malformed numbers
+				sendError(exchange, 400, "Bad request");
+				return;
+			}
+			if (html == null) {
+				sendError(exchange, 404, "Not found");
+				return;
+			}
+
+			html.whenCompleteAsync((result, e) -> {
+				try {
+					if (e != null) {
+						e.printStackTrace();
+						sendInternalError(exchange);
+					} else if (result == null) {
+						//The page, or the product it is about, does not exist
+						sendError(exchange, 404, "Not found");
+					} else {
+						send(exchange, result);
+					}
+				} catch (IOException ex) {
+					//The client has probably closed the connection
+					exchange.close();
+				} catch (RuntimeException ex) {
+					ex.printStackTrace();
+					sendInternalError(exchange);
+				}
+			}, workers);
+		} catch (IOException e) {
+			exchange.close();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			sendInternalError(exchange);
+		}
+	}
+
+	/**
+	 * Find the page for the specified request.
+	 *
+	 * @param uri the uri of the request
+	 * @return a future completed with the html of the page, or null if there is no such page. The future may also be
+	 * completed with null if the page turns out not to exist
+	 * @throws IllegalArgumentException if the request has invalid parameters
+	 */
+	private CompletableFuture<String> route(URI uri) {
+		String[] path = uri.getPath().split("/");
+		Map<String, String> query = parseQuery(uri.getRawQuery());
+
+		if (path.length == 0) {
+			return webshop.getLandingPageAsync();
+		} else if (path.length == 2 && isNumber(path[1])) {
+			return webshop.getPageAsync(Integer.parseInt(path[1]));
+		} else if (path.length == 3 && path[1].equals("page")) {
+			return webshop.getPageAsync(Integer.parseInt(path[2]));
+		} else if (path.length == 3 && path[1].equals("product")) {
+			return webshop.getProductPageAsync(Integer.parseInt(path[2]));
+		} else if (path.length == 2 && path[1].equals("products")) {
+			//Pages are read from the listing of a category, so listing every product would load all of them
+			String category = query.get("category");
+			if (category == null) throw new IllegalArgumentException("Missing category");
+			int offset = getInt(query, "offset", 0);
+			int limit = Math.min(getInt(query, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+			String order = query.get("order");
+			ProductOrder productOrder = order == null ? ProductOrder.NAME : ProductOrder.valueOf(order.toUpperCase());
+			return webshop.getProductsAsync(category, productOrder, offset, limit)
+					.thenApply(products -> renderProducts(category, products));
+		} else if (path.length == 2 && path[1].equals("search")) {
+			String q = query.get("q");
+			if (q == null) throw new IllegalArgumentException("Missing query");
+			int limit = Math.min(getInt(query, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+			return webshop.searchAsync(q, limit).thenApply(products -> renderProducts("Search results", products));
+		}
+
+		return null;
+	}
+
+	private static boolean isNumber(String s) {
+		if (s.isEmpty()) return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (!Character.isDigit(s.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	private static int getInt(Map<String, String> query, String key, int defaultValue) {
+		String value = query.get(key);
+		if (value == null) return defaultValue;
+
+		int result = Integer.parseInt(value);
+		if (result < 0) throw new IllegalArgumentException(key + " must not be negative!");
+		return result;
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<>();
+		if (rawQuery == null) return query;
+
+		try {
+			for (String parameter : rawQuery.split("&")) {
+				int split = parameter.indexOf('=');
+				if (split < 0) continue;
+				query.put(URLDecoder.decode(parameter.substring(0, split), "UTF-8"),
+						URLDecoder.decode(parameter.substring(split + 1), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			//UTF-8 is always supported
+			throw new AssertionError(e);
+		}
+		return query;
+	}
+
+	/**
+	 * Render a list of products as html, with links to their product pages.
+	 */
+	private static String renderProducts(String title, List<Product> products) {
+		StringBuilder html = new StringBuilder();
+		html.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>").append(escape(title))
+				.append("</title></head><body><h1>").append(escape(title)).append("</h1><ul>");
+		for (Product product : products) {
+			html.append("<li><a href=\"/product/").append(product.getID()).append("\">")
+					.append(escape(product.getName() == null ? "" : product.getName())).append("</a> ")
+					.append(String.format("%.2f", product.getPrice())).append("</li>");
+		}
+		html.append("</ul></body></html>");
+		return html.toString();
+	}
+
+	private static String escape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '<':
+					sb.append("&lt;");
+					break;
+				case '>':
+					sb.append("&gt;");
+					break;
+				case '&':
+					sb.append("&amp;");
+					break;
+				case '"':
+					sb.append("&quot;");
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Send a page, or a 304 response if the client already has it.
+	 */
+	private void send(HttpExchange exchange, String html) throws IOException {
+		byte[] body = html.getBytes(StandardCharsets.UTF_8);
+		Validator validator = getValidator(exchange.getRequestURI().toString(), body);
+
+		Headers requestHeaders = exchange.getRequestHeaders();
+		boolean gzip = body.length >= MIN_GZIP_SIZE && acceptsGzip(requestHeaders.getFirst("Accept-Encoding"));
+		String etag = gzip ? validator.gzipETag : validator.etag;
+
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("ETag", etag);
+		headers.set("Last-Modified", HTTP_DATE.format(Instant.ofEpochSecond(validator.lastModified)));
+		headers.set("Cache-Control", "no-cache");
+		headers.set("Vary", "Accept-Encoding");
+
+		if (isNotModified(requestHeaders, validator)) {
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+
+		if (gzip) {
+			body = validator.getGzipped(body);
+			headers.set("Content-Encoding", "gzip");
+		}
+		headers.set("Content-Type", "text/html; charset=utf-8");
+		sendBody(exchange, 200, body);
+	}
+
+	/**
+	 * Test whether the client already has the current version of a page. If-Modified-Since is only used if the
+	 * request has no If-None-Match header, as ETags are more precise.
+	 */
+	private static boolean isNotModified(Headers requestHeaders, Validator validator) {
+		String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) tag = tag.substring(2);
+				if (tag.equals("*") || tag.equals(validator.etag) || tag.equals(validator.gzipETag)) return true;
+			}
+			return false;
+		}
+
+		String ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+		if (ifModifiedSince != null) {
+			try {
+				long since = ZonedDateTime.parse(ifModifiedSince, HTTP_DATE).toEpochSecond();
+				return validator.lastModified <= since;
+			} catch (DateTimeParseException e) {
+				//Invalid dates are ignored
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) return false;
+
+		for (String encoding : acceptEncoding.split(",")) {
+			String[] parts = encoding.trim().split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				//A quality of 0 means gzip is not acceptable
+				return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		sendBody(exchange, status, message.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Respond to a request that failed unexpectedly. If the response could not be sent, such as when it had already
+	 * been started, the exchange is closed instead, so the client is not left waiting.
+	 */
+	private static void sendInternalError(HttpExchange exchange) {
+		try {
+			sendError(exchange, 500, "Internal server error");
+		} catch (IOException | RuntimeException e) {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Send a response with a body. The body of a response to a HEAD request is left out, but its length is still sent.
+	 */
+	private static void sendBody(HttpExchange exchange, int status, byte[] body) throws IOException {
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+			return;
+		}
+
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Get the validator for the current content of the response to a request. If the content has changed since the
+	 * request was last served, the Last-Modified time is now.
+	 *
+	 * @param key  the request
+	 * @param body the content of the response
+	 * @return the validator of the content
+	 */
+	private Validator getValidator(String key, byte[] body) {
+		String etag = "\"" + hash(body) + "\"";
+		synchronized (validators) {
+			Validator validator = validators.get(key);
+			if (validator == null || !validator.etag.equals(etag)) {
+				validator = new Validator(etag, System.currentTimeMillis() / 1000);
+				validators.put(key, validator);
+			}
+			return validator;
+		}
+	}
+
+	private static String hash(byte[] body) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 12; i++) {
+				sb.append(String.format("%02x", digest[i]));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			//SHA-1 is always supported
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * The ETag and Last-Modified time of the current content of a response, along with the compressed content.
+	 */
+	private static class Validator {
+
+		private final String etag;
+		private final String gzipETag;
+		private final long lastModified;
+		private volatile byte[] gzipped;
+
+		private Validator(String etag, long lastModified) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+
+			//The compressed content is a different representation, so it must have a different ETag
+			gzipETag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+		}
+
+		/**
+		 * Get the compressed content, compressing it if it has not been compressed before. Another thread may
+		 * compress it at the same time, which is harmless.
+		 *
+		 * @param body the content, which has the ETag of this validator
+		 * @return the compressed content
+		 * @throws IOException if the content could not be compressed
+		 */
+		private byte[] getGzipped(byte[] body) throws IOException {
+			byte[] result = gzipped;
+			if (result == null) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+				try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+					gzip.write(body);
+				}
+				result = out.toByteArray();
+				gzipped = result;
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test class for {@link AttributeValueTable}. This class tests the following methods:
+ * <ul>
+ * <li>{@link AttributeValueTable#retain(Attribute)}</li>
+ * <li>{@link AttributeValueTable#release(Attribute)}</li>
+ * <li>{@link AttributeValueTable#replace(Attribute.AttributeValue)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class AttributeValueTableTest {
+
+	@Test
+	public void retain() {
+		AttributeValueTable table = new AttributeValueTable();
+		Attribute someAttribute = new Attribute(1, "First attribute", 'c');
+
+		//Retain a new attribute
+		Assert.assertTrue(table.retain(someAttribute));
+		Assert.assertTrue(table.size() == 1 && table.contains(someAttribute));
+		Assert.assertEquals(someAttribute.getDefaultValue(), table.get(someAttribute).getValue());
+
+		//Retain the same attribute again
+		Assert.assertFalse(table.retain(someAttribute));
+		Assert.assertEquals(1, table.size());
+
+		//Attributes without a valid id are still distinct
+		Assert.assertTrue(table.retain(new Attribute("Unsaved", 1, null)));
+		Assert.assertTrue(table.retain(new Attribute("Unsaved", 1, null)));
+		Assert.assertEquals(3, table.size());
+	}
+
+	@Test
+	public void release() {
+		AttributeValueTable table = new AttributeValueTable();
+		Attribute someAttribute = new Attribute(1, "First attribute", 'c');
+		table.retain(someAttribute);
+		table.retain(someAttribute);
+
+		//The attribute stays until its last reference is released
+		Assert.assertFalse(table.release(someAttribute));
+		Assert.assertTrue(table.contains(someAttribute));
+		Assert.assertTrue(table.release(someAttribute));
+		Assert.assertFalse(table.contains(someAttribute));
+		Assert.assertEquals(0, table.size());
+
+		//Releasing an attribute that is not in the table
+		Assert.assertFalse(table.release(someAttribute));
+	}
+
+	@Test
+	public void replace() {
+		AttributeValueTable table = new AttributeValueTable();
+		Attribute someAttribute = new Attribute(1, "First attribute", 'c');
+
+		//Replacing the value of an absent attribute does nothing
+		Assert.assertFalse(table.replace(someAttribute.createValue('d')));
+		Assert.assertFalse(table.contains(someAttribute));
+
+		//Replacing the value of a present attribute keeps its reference count
+		table.retain(someAttribute);
+		table.retain(someAttribute);
+		Assert.assertTrue(table.replace(someAttribute.createValue('d')));
+		Assert.assertEquals('d', table.get(someAttribute).getValue());
+		Assert.assertFalse(table.release(someAttribute));
+		Assert.assertEquals('d', table.get(someAttribute).getValue());
+	}
+
+	@Test
+	public void manyAttributes() {
+		//Compare against a hash map through many insertions and removals, which grows the table and exercises removal
+		//from the middle of probe sequences
+		AttributeValueTable table = new AttributeValueTable();
+		Map<Attribute, Integer> expected = new HashMap<>();
+		List<Attribute> attributes = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			attributes.add(new Attribute(i, "Attribute " + i, i));
+		}
+
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			Attribute attribute = attributes.get(random.nextInt(attributes.size()));
+			if (random.nextBoolean()) {
+				Assert.assertEquals(!expected.containsKey(attribute), table.retain(attribute));
+				expected.merge(attribute, 1, Integer::sum);
+			} else {
+				Integer count = expected.get(attribute);
+				Assert.assertEquals(count != null && count == 1, table.release(attribute));
+				if (count != null) {
+					if (count == 1) {
+						expected.remove(attribute);
+					} else {
+						expected.put(attribute, count - 1);
+					}
+				}
+			}
+		}
+
+		Assert.assertEquals(expected.size(), table.size());
+		Assert.assertEquals(expected.size(), table.values().size());
+		for (Attribute attribute : attributes) {
+			Assert.assertEquals(expected.containsKey(attribute), table.contains(attribute));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Test class for {@link BatchLoader}. This class tests the following methods:
+ * <ul>
+ * <li>{@link BatchLoader#load(Object)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class BatchLoaderTest {
+
+	/**
+	 * Runs batches on the calling thread.
+	 */
+	private static final Executor DIRECT = Runnable::run;
+
+	@Test
+	public void load() {
+		//Set up
+		List<Set<Integer>> batches = new ArrayList<>();
+		BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+			synchronized (batches) {
+				batches.add(new HashSet<>(keys));
+			}
+			Map<Integer, String> results = new HashMap<>();
+			for (int key : keys) {
+				if (key != 3) results.put(key, "Product " + key);
+			}
+			return results;
+		}, DIRECT, 50_000, 100);
+
+		//Keys requested within the window are loaded together, and repeated keys only once
+		CompletableFuture<String> first = loader.load(1);
+		CompletableFuture<String> second = loader.load(2);
+		CompletableFuture<String> again = loader.load(1);
+		CompletableFuture<String> missing = loader.load(3);
+
+		Assert.assertEquals("Product 1", first.join());
+		Assert.assertEquals("Product 2", second.join());
+		Assert.assertEquals("Product 1", again.join());
+		Assert.assertNull(missing.join());
+		Assert.assertEquals(Arrays.asList(new HashSet<>(Arrays.asList(1, 2, 3))), batches);
+
+		//A key requested after the window has closed is in a new batch
+		Assert.assertEquals("Product 4", loader.load(4).join());
+		Assert.assertEquals(2, batches.size());
+	}
+
+	@Test
+	public void loadFullBatch() {
+		//A full batch is loaded without waiting for the window to close
+		List<Integer> sizes = new ArrayList<>();
+		BatchLoader<Integer, Integer> loader = new BatchLoader<>(keys -> {
+			sizes.add(keys.size());
+			Map<Integer, Integer> results = new HashMap<>();
+			for (int key : keys) {
+				results.put(key, key);
+			}
+			return results;
+		}, DIRECT, 60_000_000, 3);
+
+		loader.load(1);
+		loader.load(2);
+		Assert.assertEquals(Integer.valueOf(3), loader.load(3).join());
+		Assert.assertEquals(Arrays.asList(3), sizes);
+	}
+
+	@Test
+	public void loadFailure() {
+		//Every key in a failed batch fails with the exception of the batch
+		BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+			throw new IOException("Connection lost");
+		}, DIRECT, 1000, 100);
+
+		CompletableFuture<String> first = loader.load(1);
+		CompletableFuture<String> second = loader.load(2);
+		for (CompletableFuture<String> future : Arrays.asList(first, second)) {
+			try {
+				future.join();
+				Assert.fail("The failure of the batch was not passed on");
+			} catch (CompletionException e) {
+				Assert.assertTrue(e.getCause() instanceof IOException);
+			}
+		}
+	}
+}
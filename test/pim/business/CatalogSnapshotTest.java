@@ -0,0 +1,107 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Test class for {@link CatalogSnapshot}. This class tests the following methods:
+ * <ul>
+ * <li>{@link CatalogSnapshot#write(File, long, Collection, Collection, Collection)}</li>
+ * <li>{@link CatalogSnapshot#read(File)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class CatalogSnapshotTest {
+
+	@Test
+	public void writeAndRead() throws IOException {
+		//Set up
+		Attribute color = new Attribute(1, "Color", "Black", new HashSet<>(Arrays.asList("Black", "White")));
+		Attribute ram = new Attribute(2, "RAM", 8);
+		Attribute touch = new Attribute(3, "Touch screen", false);
+		Category laptops = new Category("Laptops", new HashSet<>(Arrays.asList(color, ram)));
+		Category tablets = new Category("Tablets", new HashSet<>(Arrays.asList(color, touch)));
+		TagManager tags = new TagManager();
+		Product omen = new Product(1, "Omen", "Gaming laptop", 9999.95);
+		omen.addCategory(laptops);
+		omen.setAttribute(color, "White");
+		omen.setAttribute(ram, 16);
+		omen.addTag(tags.createTag("Epic"));
+		omen.addImage(new Image(7, new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)));
+		Product surface = new Product(2, "Surface", null, 6999);
+		surface.setCategories(Arrays.asList(laptops, tablets));
+		surface.addTag(tags.createTag("Epic"));
+		surface.addTag(tags.createTag("Must-have"));
+
+		File file = File.createTempFile("catalog", ".snapshot");
+		file.deleteOnExit();
+		new CatalogSnapshot(null, null, null, null).write(file, 42,
+				Collections.singletonList(color), Collections.singletonList(laptops), Arrays.asList(omen, surface));
+
+		//Read into empty managers
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		ProductManager productManager = new ProductManager(null);
+		CatalogSnapshot snapshot = new CatalogSnapshot(productManager, new AttributeManager(null, index),
+				new CategoryManager(null, index), new TagManager());
+		CatalogSnapshot.Contents contents = snapshot.read(file);
+		Assert.assertEquals(42, contents.sequence);
+		Assert.assertEquals(2, contents.products.size());
+
+		Product readOmen = contents.products.get(0);
+		Assert.assertEquals(1, readOmen.getID());
+		Assert.assertEquals("Omen", readOmen.getName());
+		Assert.assertEquals("Gaming laptop", readOmen.getDescription());
+		Assert.assertEquals(9999.95, readOmen.getPrice(), 0);
+		Assert.assertEquals("Laptops", readOmen.getCategoriesView().get(0).getName());
+		Assert.assertEquals(Collections.singleton("Epic"), tagNames(readOmen));
+		Assert.assertEquals(7, readOmen.getImagesView().iterator().next().getID());
+
+		Map<Integer, Object> values = new HashMap<>();
+		for (Attribute.AttributeValue value : readOmen.getAttributeValuesView()) {
+			values.put(value.getParent().getID(), value.getValue());
+		}
+		Assert.assertEquals("White", values.get(1));
+		Assert.assertEquals(16, values.get(2));
+
+		//Categories and attributes only referred to by products are included
+		Product readSurface = contents.products.get(1);
+		Assert.assertNull(readSurface.getDescription());
+		Assert.assertEquals(2, readSurface.getCategoryCount());
+		Assert.assertEquals(new HashSet<>(Arrays.asList("Epic", "Must-have")), tagNames(readSurface));
+		Assert.assertEquals(Arrays.asList(1, 3), index.getAttributesOfCategory("Tablets").stream()
+				.map(Attribute::getID).sorted().collect(Collectors.toList()));
+		Assert.assertEquals(new HashSet<>(Arrays.asList("Black", "White")), index.getAttributesOfCategory("Laptops")
+				.stream().filter(a -> a.getID() == 1).findFirst().map(Attribute::getLegalValues).orElse(null));
+
+		//Entities are shared
+		Assert.assertSame(readOmen.getCategoriesView().get(0), readSurface.getCategoriesView().stream()
+				.filter(c -> c.getName().equals("Laptops")).findFirst().orElse(null));
+	}
+
+	@Test(expected = IOException.class)
+	public void readInvalidFile() throws IOException {
+		File file = File.createTempFile("catalog", ".snapshot");
+		file.deleteOnExit();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write("Not a snapshot at all".getBytes("UTF-8"));
+		}
+
+		new CatalogSnapshot(null, null, null, null).read(file);
+	}
+
+	private static Set<String> tagNames(Product product) {
+		Set<String> names = new HashSet<>();
+		for (Tag tag : product.getTagsView()) {
+			names.add(tag.getName());
+		}
+		return names;
+	}
+}
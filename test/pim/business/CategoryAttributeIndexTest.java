@@ -0,0 +1,76 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for {@link CategoryAttributeIndex}. This class tests the following methods:
+ * <ul>
+ * <li>{@link CategoryAttributeIndex#putCategory(Category, java.util.Collection)}</li>
+ * <li>{@link CategoryAttributeIndex#removeCategory(String)}</li>
+ * <li>{@link CategoryAttributeIndex#removeAttribute(int)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class CategoryAttributeIndexTest {
+
+	@Test
+	public void putCategory() {
+		//Set up
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		Attribute someAttribute1 = new Attribute(1, "First attribute", 'c');
+		Attribute someAttribute2 = new Attribute(2, "Second attribute", false);
+		Attribute someAttribute3 = new Attribute(3, "Third attribute", 3);
+		index.putAttribute(someAttribute3);
+		Category someCategory = new Category("Some category");
+		Category otherCategory = new Category("Other category");
+
+		//Add categories
+		index.putCategory(someCategory, Arrays.asList(someAttribute1, someAttribute2));
+		index.putCategory(otherCategory, Collections.singletonList(someAttribute2));
+		Assert.assertEquals(Collections.singletonList(someCategory), index.getCategoriesWithAttribute(1));
+		Assert.assertEquals(2, index.getCategoriesWithAttribute(2).size());
+		Assert.assertTrue(index.getCategoriesWithAttribute(3).isEmpty());
+		Assert.assertEquals(Collections.singletonList(someAttribute2), index.getAttributesOfCategory("Other category"));
+		Assert.assertEquals(Collections.singletonList(someAttribute3), index.getAttributesNotInCategory("Some category"));
+
+		//Update a category
+		index.putCategory(someCategory, Arrays.asList(someAttribute2, someAttribute3));
+		Assert.assertTrue(index.getCategoriesWithAttribute(1).isEmpty());
+		Assert.assertEquals(Collections.singletonList(someCategory), index.getCategoriesWithAttribute(3));
+		Assert.assertEquals(2, index.getAttributesOfCategory("Some category").size());
+
+		//Unknown category
+		Assert.assertNull(index.getAttributesOfCategory("Unknown category"));
+	}
+
+	@Test
+	public void remove() {
+		//Set up
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		Attribute someAttribute1 = new Attribute(1, "First attribute", 'c');
+		Attribute someAttribute2 = new Attribute(2, "Second attribute", false);
+		Category someCategory = new Category("Some category");
+		Category otherCategory = new Category("Other category");
+		index.putCategory(someCategory, Arrays.asList(someAttribute1, someAttribute2));
+		index.putCategory(otherCategory, Collections.singletonList(someAttribute2));
+
+		//Remove an attribute
+		index.removeAttribute(2);
+		Assert.assertTrue(index.getCategoriesWithAttribute(2).isEmpty());
+		Assert.assertEquals(Collections.singletonList(someAttribute1), index.getAttributesOfCategory("Some category"));
+		Assert.assertTrue(index.getAttributesOfCategory("Other category").isEmpty());
+
+		//Remove a category
+		index.removeCategory("Some category");
+		Assert.assertNull(index.getAttributesOfCategory("Some category"));
+		Assert.assertTrue(index.getCategoriesWithAttribute(1).isEmpty());
+		List<Attribute> notInOther = index.getAttributesNotInCategory("Other category");
+		Assert.assertEquals(Collections.singletonList(someAttribute1), notInOther);
+	}
+}
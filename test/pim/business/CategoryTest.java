@@ -3,11 +3,17 @@ package pim.business;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Test class for {@link Product}. This class tests the following methods:
  * <ul>
  * <li>{@link Category#addAttribute(Attribute)}</li>
  * <li>{@link Category#removeAttribute(Attribute)}</li>
+ * <li>{@link Category#setAttributes(Collection)}</li>
  * </ul>
  *
  * @author Kasper
@@ -54,4 +60,60 @@ public class CategoryTest {
 		Assert.assertTrue(someCategory.getAttributes().size() == 1 && someCategory.getAttributes().contains(someAttribute2));
 		Assert.assertTrue(p.getAttributeValues().size() == 1 && p.getAttributeValues().get(0).getValue().equals(someAttribute2.getDefaultValue()));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void setAttributes() {
+		//Set up
+		Category someCategory = new Category("Some category");
+		Attribute someAttribute1 = new Attribute(1, "First attribute", 'c');
+		Attribute someAttribute2 = new Attribute(2, "Second attribute", false);
+		Attribute someAttribute3 = new Attribute(3, "Third attribute", 3);
+		someCategory.addAttribute(someAttribute1);
+		someCategory.addAttribute(someAttribute2);
+		List<Collection<Attribute>> changes = new ArrayList<>();
+		CategoryChangeListener listener = (category, added, removed) -> {
+			changes.add(added);
+			changes.add(removed);
+		};
+		someCategory.addChangeListener(listener);
+
+		//Replace the attributes in a single change
+		someCategory.setAttributes(Arrays.asList(someAttribute2, someAttribute3));
+		Assert.assertEquals(2, changes.size());
+		Assert.assertTrue(changes.get(0).size() == 1 && changes.get(0).contains(someAttribute3));
+		Assert.assertTrue(changes.get(1).size() == 1 && changes.get(1).contains(someAttribute1));
+
+		//Setting the same attributes again is not a change
+		someCategory.setAttributes(Arrays.asList(someAttribute3, someAttribute2));
+		Assert.assertEquals(2, changes.size());
+
+		//Listeners are held weakly, so keep this one reachable until here
+		someCategory.removeChangeListener(listener);
+	}
+
+	@Test
+	public void setAttributesOnManyProducts() {
+		//Set up enough products for the change to be delivered in parallel, with one attribute shared with another
+		//category
+		Category someCategory = new Category("Some category");
+		Category otherCategory = new Category("Other category");
+		Attribute someAttribute1 = new Attribute(1, "First attribute", 'c');
+		Attribute someAttribute2 = new Attribute(2, "Second attribute", false);
+		someCategory.addAttribute(someAttribute1);
+		otherCategory.addAttribute(someAttribute1);
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			Product p = new Product(i, "Product " + i, "Description " + i, i);
+			p.addCategory(someCategory);
+			p.addCategory(otherCategory);
+			products.add(p);
+		}
+
+		//The shared attribute must remain on all products
+		someCategory.setAttributes(Arrays.asList(someAttribute2));
+		for (Product p : products) {
+			Assert.assertEquals(2, p.getAttributeValueCount());
+			Assert.assertTrue(p.hasAttribute(someAttribute1) && p.hasAttribute(someAttribute2));
+		}
+	}
+}
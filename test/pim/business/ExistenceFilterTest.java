@@ -0,0 +1,109 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class for {@link ExistenceFilter} and {@link BloomFilter}. This class tests the following methods:
+ * <ul>
+ * <li>{@link BloomFilter#mightContain(Object)}</li>
+ * <li>{@link ExistenceFilter#isKnownMissing(Object)}</li>
+ * <li>{@link ExistenceFilter#markMissing(Object, long)}</li>
+ * <li>{@link ExistenceFilter#markExists(Object)}</li>
+ * <li>{@link ExistenceFilter#rebuild(java.util.Collection, long)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class ExistenceFilterTest {
+
+	@Test
+	public void mightContain() {
+		BloomFilter filter = new BloomFilter(10_000, 0.01);
+		for (int i = 0; i < 10_000; i++) {
+			filter.add(i * 2);
+		}
+
+		//Added keys are always found
+		for (int i = 0; i < 10_000; i++) {
+			Assert.assertTrue(filter.mightContain(i * 2));
+		}
+
+		//Few keys that were not added are found
+		int falsePositives = 0;
+		for (int i = 0; i < 10_000; i++) {
+			if (filter.mightContain(i * 2 + 1)) falsePositives++;
+		}
+		Assert.assertTrue("Too many false positives: " + falsePositives, falsePositives < 300);
+	}
+
+	@Test
+	public void isKnownMissing() {
+		//Set up
+		boolean[] complete = {true};
+		ExistenceFilter<String> filter = new ExistenceFilter<>(60_000, () -> complete[0]);
+
+		//Nothing is known before the filter is built
+		Assert.assertFalse(filter.isKnownMissing("Laptops"));
+		filter.markMissing("Laptpos", filter.getVersion());
+		Assert.assertTrue(filter.isKnownMissing("Laptpos"));
+
+		//Keys not among all keys are missing, as long as the filter is complete
+		filter.rebuild(Arrays.asList("Laptops", "Phones"), filter.getVersion());
+		Assert.assertFalse(filter.isKnownMissing("Laptops"));
+		Assert.assertTrue(filter.isKnownMissing("Tablets"));
+		complete[0] = false;
+		Assert.assertFalse(filter.isKnownMissing("Tablets"));
+		complete[0] = true;
+
+		//Created keys are no longer missing
+		filter.markExists("Tablets");
+		Assert.assertFalse(filter.isKnownMissing("Tablets"));
+
+		//Everything is forgotten when invalidated
+		filter.invalidate();
+		Assert.assertFalse(filter.isKnownMissing("Televisions"));
+	}
+
+	@Test
+	public void markMissing() throws InterruptedException {
+		//Missing keys are forgotten once they expire
+		ExistenceFilter<Integer> filter = new ExistenceFilter<>(50, () -> true);
+		filter.markMissing(42, filter.getVersion());
+		Assert.assertTrue(filter.isKnownMissing(42));
+		Thread.sleep(100);
+		Assert.assertFalse(filter.isKnownMissing(42));
+
+		//A key created during the lookup is not remembered as missing
+		long version = filter.getVersion();
+		filter.markExists(42);
+		filter.markMissing(42, version);
+		Assert.assertFalse(filter.isKnownMissing(42));
+	}
+
+	@Test
+	public void rebuild() {
+		//A key created while all keys were read is not lost
+		ExistenceFilter<Integer> filter = new ExistenceFilter<>(60_000, () -> true);
+		long version = filter.getVersion();
+		List<Integer> read = new ArrayList<>(Arrays.asList(1, 2, 3));
+		filter.markExists(4);
+		filter.rebuild(read, version);
+		Assert.assertFalse(filter.isKnownMissing(4));
+
+		//The next build is used
+		filter.rebuild(Arrays.asList(1, 2, 3, 4), filter.getVersion());
+		Assert.assertFalse(filter.isKnownMissing(4));
+		Assert.assertTrue(filter.isKnownMissing(5));
+
+		//A filter that has grown too full is discarded rather than giving false answers
+		for (int i = 0; i < 2000; i++) {
+			filter.markExists(100 + i);
+		}
+		Assert.assertFalse(filter.isKnownMissing(5));
+	}
+}
@@ -0,0 +1,129 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Test class for {@link FacetIndex}. This class tests the following methods:
+ * <ul>
+ * <li>{@link FacetIndex#filter(ProductFilter, int, int)}</li>
+ * <li>{@link FacetIndex#update(Product)}</li>
+ * <li>{@link FacetIndex#remove(int)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class FacetIndexTest {
+
+	@Test
+	public void filter() {
+		//Set up
+		Attribute color = new Attribute(1, "Color", "Black");
+		Category laptops = new Category("Laptops", new HashSet<>(Arrays.asList(color)));
+		Category phones = new Category("Phones", new HashSet<>(Arrays.asList(color)));
+		Tag gaming = new Tag("gaming");
+		Tag office = new Tag("office");
+
+		//Enough products for the common sets to become bitmaps
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			Product p = new Product(i, "Product " + i, "", i * 10);
+			p.addCategory(i % 2 == 0 ? laptops : phones);
+			p.addTag(i % 4 < 2 ? gaming : office);
+			p.setAttribute(color, i % 3 == 0 ? "White" : "Black");
+			products.add(p);
+		}
+		FacetIndex index = new FacetIndex();
+		index.rebuild(products);
+
+		//No criteria matches everything
+		FacetIndex.Matches matches = index.filter(new ProductFilter(), 0, 10);
+		Assert.assertEquals(200, matches.totalCount);
+		Assert.assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, matches.productIDs);
+		Assert.assertEquals(100, (int) matches.categoryCounts.get("Laptops"));
+		Assert.assertEquals(67, (int) matches.attributeCounts.get(1).get("White"));
+
+		//Criteria of different kinds must all match
+		ProductFilter filter = new ProductFilter();
+		filter.addCategory("Laptops");
+		filter.addTag("gaming");
+		matches = index.filter(filter, 0, 100);
+		Assert.assertEquals(50, matches.totalCount);
+		for (int id : matches.productIDs) {
+			Assert.assertTrue(id % 4 == 0);
+		}
+		Assert.assertNull(matches.categoryCounts.get("Phones"));
+		Assert.assertEquals(50, (int) matches.tagCounts.get("gaming"));
+
+		//Either of several values of the same kind may match
+		filter.addTag("office");
+		Assert.assertEquals(100, index.filter(filter, 0, 0).totalCount);
+
+		//Attribute values and prices
+		filter.addAttributeValue(color, "White");
+		filter.setPriceRange(0, 600);
+		matches = index.filter(filter, 0, 100);
+		Assert.assertArrayEquals(new int[]{0, 6, 12, 18, 24, 30, 36, 42, 48, 54}, matches.productIDs);
+		Assert.assertEquals(10, (int) matches.categoryCounts.get("Laptops"));
+		Assert.assertEquals(10, (int) matches.attributeCounts.get(1).get("White"));
+		Assert.assertNull(matches.attributeCounts.get(1).get("Black"));
+
+		//Paging
+		matches = index.filter(filter, 8, 5);
+		Assert.assertEquals(10, matches.totalCount);
+		Assert.assertArrayEquals(new int[]{48, 54}, matches.productIDs);
+
+		//Unknown values match nothing
+		filter = new ProductFilter();
+		filter.addCategory("Fridges");
+		matches = index.filter(filter, 0, 10);
+		Assert.assertEquals(0, matches.totalCount);
+		Assert.assertTrue(matches.categoryCounts.isEmpty());
+	}
+
+	@Test
+	public void update() {
+		//Set up
+		Category laptops = new Category("Laptops");
+		Category phones = new Category("Phones");
+		Product first = new Product(1, "First", "", 100);
+		first.addCategory(laptops);
+		Product second = new Product(2, "Second", "", 200);
+		second.addCategory(laptops);
+		FacetIndex index = new FacetIndex();
+		index.rebuild(Arrays.asList(first, second));
+
+		ProductFilter filter = new ProductFilter();
+		filter.addCategory("Laptops");
+		Assert.assertArrayEquals(new int[]{1, 2}, index.filter(filter, 0, 10).productIDs);
+
+		//Move a product to another category
+		first.removeCategory(laptops);
+		first.addCategory(phones);
+		index.update(first);
+		Assert.assertArrayEquals(new int[]{2}, index.filter(filter, 0, 10).productIDs);
+
+		filter.addCategory("Phones");
+		FacetIndex.Matches matches = index.filter(filter, 0, 10);
+		Assert.assertArrayEquals(new int[]{1, 2}, matches.productIDs);
+		Assert.assertEquals(1, (int) matches.categoryCounts.get("Phones"));
+
+		//New products are added
+		Product third = new Product(3, "Third", "", 300);
+		third.addCategory(phones);
+		index.update(third);
+		Assert.assertEquals(3, index.filter(filter, 0, 10).totalCount);
+
+		//Removed products no longer match, not even an empty filter
+		index.remove(1);
+		matches = index.filter(filter, 0, 10);
+		Assert.assertArrayEquals(new int[]{2, 3}, matches.productIDs);
+		Assert.assertEquals(1, (int) matches.categoryCounts.get("Phones"));
+		Assert.assertEquals(2, index.filter(new ProductFilter(), 0, 10).totalCount);
+	}
+}
@@ -0,0 +1,135 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Test class for {@link ListingIndex}. This class tests the following methods:
+ * <ul>
+ * <li>{@link ListingIndex#getPage(String, ProductOrder, int, int)}</li>
+ * <li>{@link ListingIndex#update(Product)}</li>
+ * <li>{@link ListingIndex#remove(int)}</li>
+ * <li>{@link ListingIndex#removeCategory(String)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class ListingIndexTest {
+
+	@Test
+	public void getPage() {
+		//Set up
+		Category laptops = new Category("Laptops");
+		Category phones = new Category("Phones");
+		Product omen = new Product(1, "Omen", "", 9999);
+		omen.addCategory(laptops);
+		Product aspire = new Product(2, "aspire", "", 4999);
+		aspire.addCategory(laptops);
+		Product zenbook = new Product(3, "Zenbook", "", 7999);
+		zenbook.addCategory(laptops);
+		Product galaxy = new Product(4, "Galaxy", "", 5999);
+		galaxy.addCategory(phones);
+
+		Map<Integer, Double> popularity = new HashMap<>();
+		popularity.put(1, 3.0);
+		popularity.put(3, 4.5);
+		ListingIndex index = new ListingIndex(() -> popularity);
+		index.rebuild(Arrays.asList(omen, aspire, zenbook, galaxy));
+
+		//Every order
+		Assert.assertArrayEquals(new int[]{2, 3, 1}, index.getPage("Laptops", ProductOrder.PRICE_ASCENDING, 0, 10));
+		Assert.assertArrayEquals(new int[]{1, 3, 2}, index.getPage("Laptops", ProductOrder.PRICE_DESCENDING, 0, 10));
+		Assert.assertArrayEquals(new int[]{2, 1, 3}, index.getPage("Laptops", ProductOrder.NAME, 0, 10));
+		Assert.assertArrayEquals(new int[]{3, 1, 2}, index.getPage("Laptops", ProductOrder.POPULARITY, 0, 10));
+		Assert.assertEquals(3, index.getCount("Laptops"));
+
+		//Pages
+		Assert.assertArrayEquals(new int[]{3}, index.getPage("Laptops", ProductOrder.PRICE_ASCENDING, 1, 1));
+		Assert.assertArrayEquals(new int[]{2}, index.getPage("Laptops", ProductOrder.PRICE_DESCENDING, 2, 5));
+		Assert.assertArrayEquals(new int[0], index.getPage("Laptops", ProductOrder.NAME, 3, 5));
+		Assert.assertArrayEquals(new int[]{2, 3}, index.getPage("Laptops", ProductOrder.PRICE_ASCENDING, -1, 2));
+
+		//Unknown category
+		Assert.assertArrayEquals(new int[0], index.getPage("Fridges", ProductOrder.NAME, 0, 5));
+		Assert.assertEquals(0, index.getCount("Fridges"));
+	}
+
+	@Test
+	public void update() {
+		//Set up
+		Category laptops = new Category("Laptops");
+		Category phones = new Category("Phones");
+		Product first = new Product(1, "First", "", 100);
+		first.addCategory(laptops);
+		Product second = new Product(2, "Second", "", 200);
+		second.addCategory(laptops);
+		ListingIndex index = new ListingIndex(HashMap::new);
+		index.rebuild(Arrays.asList(first, second));
+
+		//A changed price moves the product
+		first.setPrice(300);
+		index.update(first);
+		Assert.assertArrayEquals(new int[]{2, 1}, index.getPage("Laptops", ProductOrder.PRICE_ASCENDING, 0, 10));
+
+		//A changed category moves the product to another listing
+		first.removeCategory(laptops);
+		first.addCategory(phones);
+		index.update(first);
+		Assert.assertArrayEquals(new int[]{2}, index.getPage("Laptops", ProductOrder.NAME, 0, 10));
+		Assert.assertArrayEquals(new int[]{1}, index.getPage("Phones", ProductOrder.NAME, 0, 10));
+
+		//New products are added
+		Product third = new Product(3, "Third", "", 50);
+		third.addCategory(laptops);
+		index.update(third);
+		Assert.assertArrayEquals(new int[]{3, 2}, index.getPage("Laptops", ProductOrder.PRICE_ASCENDING, 0, 10));
+
+		//Deleted categories are no longer listed
+		index.removeCategory("Laptops");
+		Assert.assertEquals(0, index.getCount("Laptops"));
+		second.removeCategory(laptops);
+		second.setPrice(10);
+		index.update(second);
+		Assert.assertEquals(0, index.getCount("Laptops"));
+		Assert.assertArrayEquals(new int[]{1}, index.getPage("Phones", ProductOrder.NAME, 0, 10));
+
+		//Removed products are no longer listed
+		index.remove(1);
+		Assert.assertEquals(0, index.getCount("Phones"));
+	}
+
+	@Test
+	public void refreshPopularity() throws InterruptedException {
+		//Set up
+		Category laptops = new Category("Laptops");
+		Product omen = new Product(1, "Omen", "", 9999);
+		omen.addCategory(laptops);
+		Product zenbook = new Product(2, "Zenbook", "", 7999);
+		zenbook.addCategory(laptops);
+		Map<Integer, Double> popularity = new ConcurrentHashMap<>();
+		popularity.put(1, 1.0);
+		ListingIndex index = new ListingIndex(() -> new HashMap<>(popularity), 10);
+		index.rebuild(Arrays.asList(omen, zenbook));
+		Assert.assertArrayEquals(new int[]{1, 2}, index.getPage("Laptops", ProductOrder.POPULARITY, 0, 10));
+
+		//Changes in popularity are picked up without any products being saved
+		popularity.put(2, 2.0);
+		for (int i = 0; i < 500 && index.getPage("Laptops", ProductOrder.POPULARITY, 0, 10)[0] == 1; i++) {
+			Thread.sleep(10);
+		}
+		Assert.assertArrayEquals(new int[]{2, 1}, index.getPage("Laptops", ProductOrder.POPULARITY, 0, 10));
+
+		//The refreshed listing is still updated by saves
+		omen.setPrice(100);
+		index.update(omen);
+		Assert.assertArrayEquals(new int[]{1, 2}, index.getPage("Laptops", ProductOrder.PRICE_ASCENDING, 0, 10));
+		Assert.assertArrayEquals(new int[]{2, 1}, index.getPage("Laptops", ProductOrder.POPULARITY, 0, 10));
+		index.remove(2);
+		Assert.assertArrayEquals(new int[]{1}, index.getPage("Laptops", ProductOrder.POPULARITY, 0, 10));
+	}
+}
@@ -5,6 +5,7 @@ import pim.persistence.PIMPersistenceFactory;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -16,6 +17,9 @@ import org.junit.Test;
  * Test class for {@link Product}. This class tests the following methods:
  * <ul>
  * <li>{@link ProductManager#getProduct(int)}</li>
+ * <li>{@link ProductManager#getCurrentProduct(int, String)}</li>
+ * <li>{@link ProductManager#getProductIDsUsingImage(Image)}</li>
+ * <li>{@link ProductManager#saveProducts(java.util.Collection)}</li>
  * </ul>
  *
  * @author Kasper
@@ -27,8 +31,9 @@ public class ProductManagerTest {
 		//Set up
 		PIMPersistenceFacade persistence = PIMPersistenceFactory.createDatabaseMediator();
 		ProductManager pManager = new ProductManager(persistence);
-		AttributeManager aManager = new AttributeManager(persistence);
-		CategoryManager cManager = new CategoryManager(persistence);
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		AttributeManager aManager = new AttributeManager(persistence, index);
+		CategoryManager cManager = new CategoryManager(persistence, index);
 		TagManager tManager = new TagManager();
 		persistence.setCache(new DataCacheImpl(pManager, aManager, cManager, tManager));
 
@@ -82,6 +87,95 @@ public class ProductManagerTest {
 		}
 	}
 
+	@Test
+	public void getCurrentProduct() {
+		//Set up
+		ProductManager pManager = new ProductManager(null);
+		Product p = pManager.constructProduct(30, "HP OMEN 15-AX005NO", "Cool gaming laptop.", 8999.95, "1021/1/6");
+
+		//The product is current only at the version it was read from
+		Assert.assertEquals("1021/1/6", pManager.getProductVersion(30));
+		Assert.assertSame(p, pManager.getCurrentProduct(30, "1021/1/6"));
+		Assert.assertNull(pManager.getCurrentProduct(30, "1022/1/6"));
+		Assert.assertNull(pManager.getCurrentProduct(31, "1021/1/6"));
+
+		//A product read without a version is never current
+		Assert.assertSame(p, pManager.constructProduct(30, "HP OMEN 15-AX005NO", "Cool gaming laptop.", 8999.95));
+		Assert.assertNull(pManager.getProductVersion(30));
+		Assert.assertNull(pManager.getCurrentProduct(30, "1021/1/6"));
+	}
+
+	@Test
+	public void getProductIDsUsingImage() throws InterruptedException {
+		//Set up
+		ProductManager pManager = new ProductManager(null);
+		Image image = pManager.constructImage(7, new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+		Product omen = pManager.constructProduct(1, "Omen", "Gaming laptop", 9999.95);
+		Product surface = pManager.constructProduct(2, "Surface", null, 6999);
+
+		//Owners are registered as images are added and removed
+		omen.addImage(image);
+		surface.addImage(image);
+		Assert.assertEquals(new HashSet<>(Arrays.asList(1, 2)), pManager.getProductIDsUsingImage(image));
+		omen.removeImage(image);
+		Assert.assertEquals(Collections.singleton(2), pManager.getProductIDsUsingImage(image));
+		surface.removeImage(image);
+		Assert.assertTrue(pManager.getProductIDsUsingImage(image).isEmpty());
+
+		//An owner added while the last owner is removed is not lost
+		Product tablet = pManager.constructProduct(3, "Tablet", null, 2999);
+		Thread churn = new Thread(() -> {
+			for (int i = 0; i < 100_000; i++) {
+				pManager.imageAdded(omen, image);
+				pManager.imageRemoved(omen, image);
+			}
+		});
+		churn.start();
+		for (int i = 0; i < 100_000 && churn.isAlive(); i++) {
+			pManager.imageAdded(tablet, image);
+			Assert.assertTrue(pManager.getProductIDsUsingImage(image).contains(3));
+			pManager.imageRemoved(tablet, image);
+		}
+		churn.join();
+	}
+
+	@Test
+	public void saveProducts() throws IOException {
+		//Set up a persistence layer failing to save one of the products
+		Product omen = new Product(1, "Omen laptop", "", 9999);
+		Product yoga = new Product(2, "Yoga laptop", "", 7999);
+		PIMPersistenceFacade persistence = (PIMPersistenceFacade) Proxy.newProxyInstance(
+				PIMPersistenceFacade.class.getClassLoader(), new Class<?>[]{PIMPersistenceFacade.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "isNotifiedOfChanges":
+							return true;
+						case "getProducts":
+							return new HashSet<Product>();
+						case "saveProducts":
+							throw new PartialSaveException("Unable to save all products!",
+									Collections.singleton(yoga), new IOException("Invalid product"));
+						default:
+							return null;
+					}
+				});
+		ProductManager pManager = new ProductManager(persistence);
+		SearchIndex index = new SearchIndex();
+		pManager.addIndex(index);
+		pManager.ensureIndexesBuilt();
+
+		//The saved product is known even though the other one failed
+		try {
+			pManager.saveProducts(Arrays.asList(omen, yoga));
+			Assert.fail("The failed save was not reported");
+		} catch (PartialSaveException e) {
+			Assert.assertEquals(Collections.singleton(yoga), e.getUnsaved());
+		}
+		Assert.assertSame(omen, pManager.getLoadedProduct(1));
+		Assert.assertNull(pManager.getLoadedProduct(2));
+		Assert.assertArrayEquals(new int[]{1}, index.search("laptop", 10));
+	}
+
 	boolean compareImages(BufferedImage i1, BufferedImage i2) {
 		//Early out, if possible
 		if (i1.getWidth() != i2.getWidth() || i1.getHeight() != i2.getHeight()) {
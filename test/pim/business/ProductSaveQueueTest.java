@@ -0,0 +1,192 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Test class for {@link ProductSaveQueue}. This class tests the following methods:
+ * <ul>
+ * <li>{@link ProductSaveQueue#enqueue(Product)}</li>
+ * <li>{@link ProductSaveQueue#flush()}</li>
+ * <li>{@link ProductSaveQueue#close()}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class ProductSaveQueueTest {
+
+	@Test
+	public void enqueue() throws IOException {
+		//Set up
+		File file = File.createTempFile("products", ".queue");
+		file.deleteOnExit();
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		ProductManager productManager = new ProductManager(null);
+		Product omen = productManager.constructProduct(1, "Omen", "Gaming laptop", 9999.95);
+		List<List<Integer>> saves = new ArrayList<>();
+
+		try (ProductSaveQueue queue = new ProductSaveQueue(file, products -> {
+			List<Integer> ids = new ArrayList<>();
+			for (Product p : products) {
+				ids.add(p.getID());
+			}
+			saves.add(ids);
+		}, productManager, new AttributeManager(null, index), new CategoryManager(null, index), new TagManager(),
+				60_000, 100)) {
+
+			//Saves of the same product are carried out as one
+			Assert.assertTrue(queue.enqueue(omen));
+			omen.setPrice(8999.95);
+			Assert.assertTrue(queue.enqueue(omen));
+			Assert.assertEquals(1, queue.size());
+			Assert.assertTrue(saves.isEmpty());
+
+			queue.flush();
+			Assert.assertEquals(Collections.singletonList(Collections.singletonList(1)), saves);
+			Assert.assertEquals(0, queue.size());
+
+			//Products that have not been saved before must be saved directly
+			Assert.assertFalse(queue.enqueue(new Product(-1, "Surface", null, 6999)));
+		}
+	}
+
+	@Test
+	public void flush() throws IOException {
+		//Set up
+		File file = File.createTempFile("products", ".queue");
+		file.deleteOnExit();
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		ProductManager productManager = new ProductManager(null);
+		TagManager tagManager = new TagManager();
+		Product omen = productManager.constructProduct(1, "Omen", "Gaming laptop", 9999.95);
+		List<String> saved = new ArrayList<>();
+
+		try (ProductSaveQueue queue = new ProductSaveQueue(file, products -> {
+			for (Product p : products) {
+				saved.add(p.getName() + " " + p.getPrice() + " " + p.getTagsView().size());
+			}
+		}, productManager, new AttributeManager(null, index), new CategoryManager(null, index), tagManager,
+				60_000, 100)) {
+			omen.setName("Omen 15");
+			omen.setPrice(8999.95);
+			omen.addTag(tagManager.createTag("Epic"));
+			Assert.assertTrue(queue.enqueue(omen));
+
+			//Reading the product from persistence before the save gives it the data from before the save
+			Assert.assertSame(omen, productManager.constructProduct(1, "Omen", "Gaming laptop", 9999.95, "1"));
+			omen.setTags(new HashSet<>());
+
+			//The save still writes the queued data, which the product is given back
+			queue.flush();
+			Assert.assertEquals(Collections.singletonList("Omen 15 8999.95 1"), saved);
+			Assert.assertEquals("Omen 15", omen.getName());
+			Assert.assertEquals(8999.95, omen.getPrice(), 0);
+			Assert.assertNull(omen.getPersistedVersion());
+		}
+	}
+
+	@Test
+	public void flushPartially() throws IOException {
+		//Set up
+		File file = File.createTempFile("products", ".queue");
+		file.deleteOnExit();
+		File failedFile = new File(file.getPath() + ".failed");
+		failedFile.deleteOnExit();
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		ProductManager productManager = new ProductManager(null);
+		Product omen = productManager.constructProduct(1, "Omen", "Gaming laptop", 9999.95);
+		Product invalid = productManager.constructProduct(2, "Invalid", "Rejected by the database", 1);
+		List<Integer> saved = new ArrayList<>();
+
+		try (ProductSaveQueue queue = new ProductSaveQueue(file, products -> {
+			List<Product> unsaved = new ArrayList<>();
+			for (Product p : products) {
+				if (p == invalid) {
+					unsaved.add(p);
+				} else {
+					saved.add(p.getID());
+				}
+			}
+			if (!unsaved.isEmpty()) throw new PartialSaveException("Invalid product", unsaved, null);
+		}, productManager, new AttributeManager(null, index), new CategoryManager(null, index), new TagManager(),
+				60_000, 100)) {
+			Assert.assertTrue(queue.enqueue(omen));
+			Assert.assertTrue(queue.enqueue(invalid));
+
+			//Only the product that was not saved remains in the queue
+			try {
+				queue.flush();
+				Assert.fail("The failed save was not reported");
+			} catch (PartialSaveException e) {
+				Assert.assertEquals(Collections.singletonList(invalid), e.getUnsaved());
+			}
+			Assert.assertEquals(Collections.singletonList(1), saved);
+			Assert.assertEquals(1, queue.size());
+
+			//A save that keeps failing is given up and set aside
+			for (int i = 0; i < 100 && queue.size() > 0; i++) {
+				try {
+					queue.flush();
+				} catch (PartialSaveException e) {
+					//Expected until the save is given up
+				}
+			}
+			Assert.assertEquals(0, queue.size());
+			Assert.assertEquals(Collections.singletonList(1), saved);
+			Assert.assertTrue(failedFile.length() > 0);
+		}
+		Assert.assertEquals(0, file.length());
+	}
+
+	@Test
+	public void close() throws IOException {
+		//Set up
+		File file = File.createTempFile("products", ".queue");
+		file.deleteOnExit();
+		CategoryAttributeIndex index = new CategoryAttributeIndex();
+		ProductManager productManager = new ProductManager(null);
+		AttributeManager attributeManager = new AttributeManager(null, index);
+		CategoryManager categoryManager = new CategoryManager(null, index);
+		TagManager tagManager = new TagManager();
+		attributeManager.constructAttribute(2, "RAM", 8);
+		Category laptops = categoryManager.constructCategory("Laptops",
+				Collections.singleton(attributeManager.getLoadedAttribute(2)));
+		Product omen = productManager.constructProduct(1, "Omen", "Gaming laptop", 9999.95);
+		omen.addCategory(laptops);
+		omen.setAttribute(attributeManager.getLoadedAttribute(2), 16);
+		omen.addTag(tagManager.createTag("Epic"));
+
+		//Saves that could not be carried out remain in the file
+		ProductSaveQueue failing = new ProductSaveQueue(file, products -> {
+			throw new IOException("Connection lost");
+		}, productManager, attributeManager, categoryManager, tagManager, 60_000, 100);
+		Assert.assertTrue(failing.enqueue(omen));
+		try {
+			failing.close();
+			Assert.fail("The failed save was not reported");
+		} catch (IOException e) {
+			Assert.assertEquals("Connection lost", e.getMessage());
+		}
+
+		//The next queue restores the product as it was saved, and carries out the save
+		omen.setPrice(0);
+		omen.setAttribute(attributeManager.getLoadedAttribute(2), 4);
+		List<Product> saved = new ArrayList<>();
+		try (ProductSaveQueue queue = new ProductSaveQueue(file, products -> {
+			synchronized (saved) {
+				saved.addAll(products);
+			}
+		}, productManager, attributeManager, categoryManager, tagManager, 60_000, 100)) {
+			queue.flush();
+			Assert.assertEquals(Collections.singletonList(omen), saved);
+			Assert.assertEquals(9999.95, omen.getPrice(), 0);
+			Assert.assertEquals(16, omen.getAttributeValuesView().get(0).getValue());
+			Assert.assertEquals("Epic", omen.getTagsView().iterator().next().getName());
+		}
+		Assert.assertEquals(0, file.length());
+	}
+}
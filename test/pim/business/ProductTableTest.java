@@ -0,0 +1,132 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Test class for {@link ProductTable}. This class tests the following methods:
+ * <ul>
+ * <li>{@link ProductTable#visit(int[], java.util.function.Consumer)}</li>
+ * <li>{@link ProductTable#update(Product)}</li>
+ * <li>{@link ProductTable#remove(int)}</li>
+ * <li>{@link ProductTable#removeCategory(String)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class ProductTableTest {
+
+	@Test
+	public void visit() {
+		//Set up
+		Category laptops = new Category("Laptops");
+		Category gaming = new Category("Gaming");
+		TagManager tags = new TagManager();
+		Product omen = new Product(1, "Omen æøå", "", 9999);
+		omen.setCategories(Arrays.asList(laptops, gaming));
+		omen.addTag(tags.createTag("Epic"));
+		Product aspire = new Product(2, "Aspire", "", 4999);
+		aspire.addCategory(laptops);
+		ProductTable table = new ProductTable();
+		table.rebuild(Arrays.asList(omen, aspire));
+
+		//Rows are visited in the requested order, and unknown ids are skipped
+		List<String> visited = new ArrayList<>();
+		table.visit(new int[]{2, 3, 1}, row -> {
+			StringBuilder sb = new StringBuilder();
+			sb.append(row.getID()).append(' ').append(row.getName()).append(' ').append(row.getPrice());
+			//The categories of a product are unordered
+			Set<String> categories = new TreeSet<>();
+			for (int i = 0; i < row.getCategoryCount(); i++) {
+				categories.add(row.getCategoryName(i));
+			}
+			for (String category : categories) {
+				sb.append(' ').append(category);
+			}
+			for (int i = 0; i < row.getTagCount(); i++) {
+				sb.append(" #").append(row.getTagName(i));
+			}
+			visited.add(sb.toString());
+		});
+		Assert.assertEquals(Arrays.asList("2 Aspire 4999.0 Laptops", "1 Omen æøå 9999.0 Gaming Laptops #Epic"), visited);
+		Assert.assertEquals(2, table.size());
+	}
+
+	@Test
+	public void update() {
+		//Set up
+		Category laptops = new Category("Laptops");
+		Category phones = new Category("Phones");
+		ProductTable table = new ProductTable();
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Product product = new Product(i, "Product " + i, "", i);
+			product.addCategory(laptops);
+			products.add(product);
+		}
+		table.rebuild(products.subList(0, 10));
+
+		//Adding products grows the table, and changing them many times reclaims the space of the old data
+		for (int round = 0; round < 20; round++) {
+			for (Product product : products) {
+				product.setName("Renamed product " + round + " " + product.getID());
+				product.setPrice(round);
+			}
+			table.update(products);
+		}
+		Assert.assertEquals(100, table.size());
+
+		List<String> names = new ArrayList<>();
+		table.visit(new int[]{0, 99}, row -> names.add(row.getName() + " " + row.getPrice()));
+		Assert.assertEquals(Arrays.asList("Renamed product 19 0 19.0", "Renamed product 19 99 19.0"), names);
+
+		//Deleted categories are removed from all rows
+		products.get(5).addCategory(phones);
+		table.update(products.get(5));
+		table.removeCategory("Laptops");
+		List<Integer> counts = new ArrayList<>();
+		table.visit(new int[]{4, 5}, row -> counts.add(row.getCategoryCount()));
+		Assert.assertEquals(Arrays.asList(0, 1), counts);
+		table.visit(new int[]{5}, row -> Assert.assertEquals("Phones", row.getCategoryName(0)));
+	}
+
+	@Test
+	public void remove() {
+		//Set up
+		ProductTable table = new ProductTable();
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			products.add(new Product(i, "Product " + i, "", i));
+		}
+		table.rebuild(products);
+
+		//Removed products are no longer visited, while the others are still found
+		for (int i = 0; i < 100; i += 2) {
+			table.remove(i);
+		}
+		table.remove(1000);
+		Assert.assertEquals(50, table.size());
+
+		int[] all = new int[100];
+		for (int i = 0; i < 100; i++) {
+			all[i] = i;
+		}
+		List<String> names = new ArrayList<>();
+		table.visit(all, row -> names.add(row.getName()));
+		Assert.assertEquals(50, names.size());
+		for (int i = 0; i < 50; i++) {
+			Assert.assertEquals("Product " + (2 * i + 1), names.get(i));
+		}
+
+		//Removed products can be added again
+		table.update(products.get(0));
+		table.visit(new int[]{0}, row -> Assert.assertEquals("Product 0", row.getName()));
+		Assert.assertEquals(51, table.size());
+	}
+}
@@ -0,0 +1,132 @@
+package pim.business;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Benchmark comparing the allocation rate of reading a full catalog through the copying getters of {@link Product} and
+ * {@link Category} with reading it through their views. Each pass imitates what rendering a page and saving a product
+ * does for every product in the catalog: visiting its categories, attribute values, tags and images.
+ * <p>
+ * This is a plain program rather than a unit test, as it does not assert anything. Run it with a fixed heap, e.g.
+ * {@code java -Xmx1g pim.business.ProductViewBenchmark}. It relies on the HotSpot extension of the thread MXBean for
+ * measuring allocated bytes.
+ *
+ * @author Kasper
+ */
+public class ProductViewBenchmark {
+
+	private static final int PRODUCTS = 50_000;
+	private static final int WARMUP_PASSES = 10;
+	private static final int MEASURED_PASSES = 20;
+
+	public static void main(String[] args) {
+		List<Product> catalog = createCatalog();
+
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			passWithCopies(catalog);
+			passWithViews(catalog);
+		}
+
+		report("Copying getters", catalog, false);
+		report("Views", catalog, true);
+	}
+
+	/**
+	 * Measure and print the allocation and time per pass of the specified kind.
+	 */
+	private static void report(String name, List<Product> catalog, boolean views) {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long checksum = 0;
+
+		long bytesBefore = bean.getThreadAllocatedBytes(thread);
+		long timeBefore = System.nanoTime();
+		for (int i = 0; i < MEASURED_PASSES; i++) {
+			checksum += views ? passWithViews(catalog) : passWithCopies(catalog);
+		}
+		long time = System.nanoTime() - timeBefore;
+		long bytes = bean.getThreadAllocatedBytes(thread) - bytesBefore;
+
+		System.out.printf("%-16s %10.1f bytes/product %8.2f ms/pass (checksum %d)%n", name,
+				(double) bytes / MEASURED_PASSES / catalog.size(), time / 1e6 / MEASURED_PASSES, checksum);
+	}
+
+	private static long passWithCopies(List<Product> catalog) {
+		long visited = 0;
+		for (Product p : catalog) {
+			for (Category c : p.getCategories()) {
+				visited += c.getAttributes().size();
+			}
+			for (Attribute.AttributeValue value : p.getAttributeValues()) {
+				visited += value.getParent().getID();
+			}
+			for (Tag t : p.getTags()) {
+				visited += t.getName().length();
+			}
+			for (Image i : p.getImages()) {
+				visited += i.getID();
+			}
+		}
+		return visited;
+	}
+
+	private static long passWithViews(List<Product> catalog) {
+		long visited = 0;
+		for (Product p : catalog) {
+			for (Category c : p.getCategoriesView()) {
+				visited += c.getAttributeCount();
+			}
+			for (Attribute.AttributeValue value : p.getAttributeValuesView()) {
+				visited += value.getParent().getID();
+			}
+			for (Tag t : p.getTagsView()) {
+				visited += t.getName().length();
+			}
+			for (Image i : p.getImagesView()) {
+				visited += i.getID();
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Create a synthetic catalog of products spread over a few categories, each with some attributes, tags and an
+	 * image.
+	 */
+	private static List<Product> createCatalog() {
+		List<Attribute> attributes = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			attributes.add(new Attribute(i, "Attribute " + i, i));
+		}
+
+		List<Category> categories = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			categories.add(new Category("Category " + i,
+					new HashSet<>(Arrays.asList(attributes.get(i), attributes.get(i + 2), attributes.get(i + 4)))));
+		}
+
+		List<Tag> tags = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			tags.add(new Tag("Tag " + i));
+		}
+
+		BufferedImage data = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+		List<Product> catalog = new ArrayList<>(PRODUCTS);
+		for (int i = 0; i < PRODUCTS; i++) {
+			Product p = new Product(i, "Product " + i, "Description of product " + i, i * 1.5);
+			p.addCategory(categories.get(i % categories.size()));
+			p.addCategory(categories.get((i + 3) % categories.size()));
+			p.addTag(tags.get(i % tags.size()));
+			p.addTag(tags.get((i + 7) % tags.size()));
+			p.addImage(new Image(i, data));
+			catalog.add(p);
+		}
+
+		return catalog;
+	}
+}
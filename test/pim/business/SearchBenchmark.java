@@ -0,0 +1,160 @@
+package pim.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmark measuring the query latency of {@link SearchIndex} and {@link SuggestionIndex} over a synthetic catalog of
+ * half a million products. Product names, descriptions and tags are drawn from a small vocabulary with a skewed
+ * distribution, so that some words are very common and others rare, as in a real catalog. The queries mix common words,
+ * rare words and misspelled words that have to go through typo tolerance. Suggestions are requested for every prefix of
+ * the queries, as when typing.
+ * <p>
+ * This is a plain program rather than a unit test, as it does not assert anything. Run it with a fixed heap, e.g.
+ * {@code java -Xmx4g pim.business.SearchBenchmark}.
+ *
+ * @author Kasper
+ */
+public class SearchBenchmark {
+
+	private static final int PRODUCTS = 500_000;
+	private static final int WARMUP_QUERIES = 20_000;
+	private static final int MEASURED_QUERIES = 20_000;
+	private static final int LIMIT = 20;
+
+	private static final String[] BRANDS = {"HP", "Lenovo", "Asus", "Acer", "Dell", "Samsung", "Sony", "Apple",
+			"Philips", "Bosch", "Siemens", "Logitech", "Razer", "Corsair", "Canon", "Nikon"};
+	private static final String[] KINDS = {"laptop", "desktop", "monitor", "keyboard", "mouse", "headset", "speaker",
+			"television", "camera", "printer", "router", "tablet", "phone", "charger", "cable", "fridge", "dishwasher",
+			"microwave", "vacuum", "kettle"};
+	private static final String[] WORDS = {"fast", "silent", "wireless", "portable", "compact", "gaming", "office",
+			"premium", "budget", "black", "white", "silver", "ergonomic", "durable", "efficient", "smart", "bluetooth",
+			"ultra", "slim", "powerful", "bright", "quiet", "energy", "saving", "display", "battery", "storage",
+			"memory", "processor", "graphics", "resolution", "warranty", "design", "connectivity", "performance"};
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		List<Product> catalog = createCatalog(random);
+
+		long buildStart = System.nanoTime();
+		SearchIndex index = new SearchIndex();
+		index.rebuild(catalog);
+		System.out.printf("Built search index in %.1f s%n", (System.nanoTime() - buildStart) / 1e9);
+
+		String[] queries = createQueries(random);
+		long checksum = 0;
+		for (int i = 0; i < WARMUP_QUERIES; i++) {
+			checksum += index.search(queries[i % queries.length], LIMIT).length;
+		}
+
+		long[] latencies = new long[MEASURED_QUERIES];
+		for (int i = 0; i < MEASURED_QUERIES; i++) {
+			long start = System.nanoTime();
+			checksum += index.search(queries[i % queries.length], LIMIT).length;
+			latencies[i] = System.nanoTime() - start;
+		}
+		report("Query", latencies, checksum);
+
+		//Suggestions, with every product having a random popularity
+		Map<Integer, Double> popularity = new HashMap<>();
+		for (Product p : catalog) {
+			popularity.put(p.getID(), random.nextDouble() * 5);
+		}
+		buildStart = System.nanoTime();
+		SuggestionIndex suggestions = new SuggestionIndex(() -> popularity);
+		suggestions.rebuild(catalog);
+		System.out.printf("Built suggestion index in %.1f s%n", (System.nanoTime() - buildStart) / 1e9);
+
+		String[] prefixes = createPrefixes(queries);
+		for (int i = 0; i < WARMUP_QUERIES; i++) {
+			checksum += suggestions.suggest(prefixes[i % prefixes.length], 10).size();
+		}
+		for (int i = 0; i < MEASURED_QUERIES; i++) {
+			long start = System.nanoTime();
+			checksum += suggestions.suggest(prefixes[i % prefixes.length], 10).size();
+			latencies[i] = System.nanoTime() - start;
+		}
+		report("Suggestion", latencies, checksum);
+	}
+
+	private static void report(String name, long[] latencies, long checksum) {
+		Arrays.sort(latencies);
+		System.out.printf("%s latency: p50 %.1f us, p90 %.1f us, p99 %.1f us, max %.1f us (checksum %d)%n", name,
+				percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+				latencies[latencies.length - 1] / 1e3, checksum);
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) (p * (sorted.length - 1))] / 1e3;
+	}
+
+	/**
+	 * Create every prefix of the specified queries, as typed one character at a time.
+	 */
+	private static String[] createPrefixes(String[] queries) {
+		List<String> prefixes = new ArrayList<>();
+		for (String query : queries) {
+			for (int i = 1; i <= query.length(); i++) {
+				prefixes.add(query.substring(0, i));
+			}
+		}
+		return prefixes.toArray(new String[0]);
+	}
+
+	/**
+	 * Pick a random element, with a bias towards the start of the array.
+	 */
+	private static String skewed(Random random, String[] values) {
+		double r = random.nextDouble();
+		return values[(int) (r * r * values.length)];
+	}
+
+	private static List<Product> createCatalog(Random random) {
+		List<Tag> tags = new ArrayList<>();
+		for (String word : WORDS) {
+			tags.add(new Tag(word));
+		}
+
+		List<Product> catalog = new ArrayList<>(PRODUCTS);
+		for (int i = 0; i < PRODUCTS; i++) {
+			String name = skewed(random, BRANDS) + " " + skewed(random, WORDS) + " " + skewed(random, KINDS) + " " +
+					Integer.toString(i, 36);
+			StringBuilder description = new StringBuilder();
+			for (int j = 0; j < 12; j++) {
+				description.append(skewed(random, WORDS)).append(' ');
+			}
+
+			Product p = new Product(i, name, description.toString(), random.nextInt(10_000));
+			p.addTag(tags.get(random.nextInt(tags.size())));
+			catalog.add(p);
+		}
+
+		return catalog;
+	}
+
+	private static String[] createQueries(Random random) {
+		String[] queries = new String[1000];
+		for (int i = 0; i < queries.length; i++) {
+			switch (i % 4) {
+				case 0: //Common words
+					queries[i] = skewed(random, WORDS) + " " + skewed(random, KINDS);
+					break;
+				case 1: //Brand and kind
+					queries[i] = BRANDS[random.nextInt(BRANDS.length)] + " " + KINDS[random.nextInt(KINDS.length)];
+					break;
+				case 2: //A specific product
+					queries[i] = Integer.toString(random.nextInt(PRODUCTS), 36);
+					break;
+				default: //A misspelled word
+					String kind = KINDS[random.nextInt(KINDS.length)];
+					int pos = 1 + random.nextInt(kind.length() - 2);
+					queries[i] = kind.substring(0, pos) + kind.charAt(pos + 1) + kind.charAt(pos) + kind.substring(pos + 2);
+			}
+		}
+		return queries;
+	}
+}
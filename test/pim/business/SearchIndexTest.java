@@ -0,0 +1,123 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class for {@link SearchIndex}. This class tests the following methods:
+ * <ul>
+ * <li>{@link SearchIndex#search(String, int)}</li>
+ * <li>{@link SearchIndex#update(Product)}</li>
+ * <li>{@link SearchIndex#remove(int)}</li>
+ * <li>{@link SearchIndex#tokenize(String)}</li>
+ * <li>{@link SearchIndex#editDistance(String, String)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class SearchIndexTest {
+
+	@Test
+	public void tokenize() {
+		Assert.assertEquals(Arrays.asList("hp", "omen", "15", "ax005no", "bærbar"),
+				SearchIndex.tokenize("HP Omen-15, AX005NO (Bærbar)"));
+		Assert.assertTrue(SearchIndex.tokenize(null).isEmpty());
+		Assert.assertTrue(SearchIndex.tokenize(" - ").isEmpty());
+	}
+
+	@Test
+	public void editDistance() {
+		Assert.assertEquals(0, SearchIndex.editDistance("laptop", "laptop"));
+		Assert.assertEquals(1, SearchIndex.editDistance("laptop", "labtop"));
+		Assert.assertEquals(1, SearchIndex.editDistance("laptop", "latpop"));
+		Assert.assertEquals(1, SearchIndex.editDistance("laptop", "laptops"));
+		Assert.assertEquals(2, SearchIndex.editDistance("laptop", "lptp"));
+	}
+
+	@Test
+	public void search() {
+		//Set up
+		Product laptop = new Product(1, "Omen laptop", "A fast gaming laptop", 9999);
+		Product mouse = new Product(2, "Gaming mouse", "Works well with any laptop", 299);
+		Product fridge = new Product(3, "Fridge", "Keeps food cold", 3999);
+		fridge.addTag(new Tag("kitchen"));
+		SearchIndex index = new SearchIndex();
+		index.rebuild(Arrays.asList(laptop, mouse, fridge));
+
+		//Words in the name rank higher than words in the description
+		assertResults(index.search("laptop", 10), 1, 2);
+		assertResults(index.search("laptop", 1), 1);
+
+		//Tags are searchable
+		assertResults(index.search("Kitchen", 10), 3);
+
+		//Typos are tolerated
+		assertResults(index.search("fridhe", 10), 3);
+
+		//Nothing matches
+		assertResults(index.search("television", 10));
+		assertResults(index.search("", 10));
+	}
+
+	@Test
+	public void update() {
+		//Set up
+		Product laptop = new Product(1, "Omen laptop", "A fast gaming laptop", 9999);
+		SearchIndex index = new SearchIndex();
+		index.rebuild(Arrays.asList(laptop));
+
+		//Update the product
+		laptop.setName("Omen notebook");
+		laptop.setDescription("A fast gaming notebook");
+		index.update(laptop);
+		assertResults(index.search("laptop", 10));
+		assertResults(index.search("notebook", 10), 1);
+
+		//Add a new product, and update enough times for the index to be compacted
+		Product mouse = new Product(2, "Gaming mouse", "", 299);
+		index.update(mouse);
+		for (int i = 0; i < 3000; i++) {
+			index.update(laptop);
+		}
+		assertResults(index.search("gaming", 10), 2, 1);
+	}
+
+	@Test
+	public void remove() {
+		//Set up
+		Product laptop = new Product(1, "Omen laptop", "A fast gaming laptop", 9999);
+		Product fridge = new Product(2, "Fridge", "Keeps food cold", 3999);
+		SearchIndex index = new SearchIndex();
+		index.rebuild(Arrays.asList(laptop, fridge));
+		int termCount = index.getTermCount();
+
+		//Removed products are no longer found
+		index.remove(2);
+		assertResults(index.search("fridge", 10));
+		assertResults(index.search("laptop", 10), 1);
+
+		//Once the index is compacted, the words only used by removed products are forgotten
+		for (int i = 0; i < 3000; i++) {
+			index.update(laptop);
+		}
+		Assert.assertEquals(termCount - 4, index.getTermCount());
+		assertResults(index.search("fridhe", 10));
+		assertResults(index.search("gaming", 10), 1);
+	}
+
+	private static void assertResults(int[] actual, int... expected) {
+		List<Integer> expectedList = new ArrayList<>();
+		for (int id : expected) {
+			expectedList.add(id);
+		}
+		List<Integer> actualList = new ArrayList<>();
+		for (int id : actual) {
+			actualList.add(id);
+		}
+		Assert.assertEquals(expectedList, actualList);
+	}
+}
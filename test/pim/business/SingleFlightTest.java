@@ -0,0 +1,103 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for {@link SingleFlight}. This class tests the following methods:
+ * <ul>
+ * <li>{@link SingleFlight#load(Object, shared.Async.IOSupplier)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class SingleFlightTest {
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void load() throws InterruptedException {
+		//Set up
+		SingleFlight<Integer, String> flight = new SingleFlight<>();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> results = new ArrayList<>();
+
+		//Every thread loads the same key while the first load is blocked
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					String result = flight.load(1, () -> {
+						loads.incrementAndGet();
+						started.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							throw new IOException(e);
+						}
+						return "Product 1";
+					});
+					synchronized (results) {
+						results.add(result);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		started.await();
+		//Give the other threads time to join the load in progress
+		Thread.sleep(200);
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(THREADS, results.size());
+		for (String result : results) {
+			Assert.assertEquals("Product 1", result);
+		}
+		Assert.assertEquals(0, flight.size());
+	}
+
+	@Test
+	public void loadAgain() throws IOException {
+		//Loads that have completed are not remembered
+		SingleFlight<Integer, String> flight = new SingleFlight<>();
+		AtomicInteger loads = new AtomicInteger();
+		flight.load(1, () -> "Load " + loads.incrementAndGet());
+		Assert.assertEquals("Load 2", flight.load(1, () -> "Load " + loads.incrementAndGet()));
+	}
+
+	@Test
+	public void loadFailure() {
+		//A failed load throws its exception, and does not prevent loading again
+		SingleFlight<Integer, String> flight = new SingleFlight<>();
+		try {
+			flight.load(1, () -> {
+				throw new IOException("Connection lost");
+			});
+			Assert.fail("The exception of the load was not thrown");
+		} catch (IOException e) {
+			Assert.assertEquals("Connection lost", e.getMessage());
+		}
+
+		try {
+			Assert.assertEquals("Product 1", flight.load(1, () -> "Product 1"));
+		} catch (IOException e) {
+			Assert.fail("The key could not be loaded after a failed load");
+		}
+	}
+}
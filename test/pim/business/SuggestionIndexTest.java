@@ -0,0 +1,95 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Test class for {@link SuggestionIndex}. This class tests the following methods:
+ * <ul>
+ * <li>{@link SuggestionIndex#suggest(String, int)}</li>
+ * <li>{@link SuggestionIndex#update(Product)}</li>
+ * <li>{@link SuggestionIndex#remove(int)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class SuggestionIndexTest {
+
+	@Test
+	public void suggest() {
+		//Set up
+		Map<Integer, Double> popularity = new HashMap<>();
+		popularity.put(2, 4.5);
+		popularity.put(3, 2.0);
+		Product omen = new Product(1, "Omen laptop", "", 9999);
+		Product yoga = new Product(2, "Lenovo Yoga laptop", "", 7999);
+		Product latitude = new Product(3, "Dell Latitude", "", 8999);
+		latitude.addTag(new Tag("Business"));
+		SuggestionIndex index = new SuggestionIndex(() -> popularity);
+		index.rebuild(Arrays.asList(omen, yoga, latitude));
+
+		//Completions from any word start, most popular first, and alphabetically for equal popularity
+		Assert.assertEquals(Arrays.asList("Lenovo Yoga laptop", "Dell Latitude", "Omen laptop"),
+				index.suggest("La", 10));
+		Assert.assertEquals(Arrays.asList("Lenovo Yoga laptop", "Omen laptop"), index.suggest("lapt", 10));
+		Assert.assertEquals(Collections.singletonList("Lenovo Yoga laptop"), index.suggest("la", 1));
+		Assert.assertEquals(Collections.singletonList("Omen laptop"), index.suggest("omen lap", 10));
+
+		//Tags
+		Assert.assertEquals(Collections.singletonList("Business"), index.suggest("bus", 10));
+
+		//No completions
+		Assert.assertTrue(index.suggest("x", 10).isEmpty());
+		Assert.assertTrue(index.suggest("aptop", 10).isEmpty());
+		Assert.assertTrue(index.suggest(" ", 10).isEmpty());
+	}
+
+	@Test
+	public void update() throws InterruptedException {
+		//Set up
+		Product omen = new Product(1, "Omen laptop", "", 9999);
+		SuggestionIndex index = new SuggestionIndex(Collections::emptyMap);
+		index.rebuild(Collections.singletonList(omen));
+
+		//Updates are applied in the background
+		omen.setName("Omen notebook");
+		index.update(omen);
+		for (int i = 0; i < 500 && index.suggest("note", 10).isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(Collections.singletonList("Omen notebook"), index.suggest("note", 10));
+		Assert.assertTrue(index.suggest("lap", 10).isEmpty());
+
+		//Removals are applied in the background as well
+		index.remove(1);
+		for (int i = 0; i < 500 && !index.suggest("note", 10).isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(index.suggest("note", 10).isEmpty());
+	}
+
+	@Test
+	public void refreshPopularity() throws InterruptedException {
+		//Set up
+		Map<Integer, Double> popularity = new ConcurrentHashMap<>();
+		popularity.put(1, 1.0);
+		Product omen = new Product(1, "Omen laptop", "", 9999);
+		Product yoga = new Product(2, "Lenovo Yoga laptop", "", 7999);
+		SuggestionIndex index = new SuggestionIndex(() -> new HashMap<>(popularity), 10);
+		index.rebuild(Arrays.asList(omen, yoga));
+		Assert.assertEquals(Arrays.asList("Omen laptop", "Lenovo Yoga laptop"), index.suggest("lap", 10));
+
+		//Changes in popularity are picked up without any products being saved
+		popularity.put(2, 2.0);
+		for (int i = 0; i < 500 && index.suggest("lap", 10).get(0).startsWith("Omen"); i++) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(Arrays.asList("Lenovo Yoga laptop", "Omen laptop"), index.suggest("lap", 10));
+	}
+}
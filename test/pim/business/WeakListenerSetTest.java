@@ -0,0 +1,54 @@
+package pim.business;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link WeakListenerSet}. This class tests the following methods:
+ * <ul>
+ * <li>{@link WeakListenerSet#add(Object)}</li>
+ * <li>{@link WeakListenerSet#remove(Object)}</li>
+ * <li>{@link WeakListenerSet#snapshot()}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class WeakListenerSetTest {
+
+	@Test
+	public void addAndRemove() {
+		WeakListenerSet<Object> set = new WeakListenerSet<>();
+		Object listener1 = new Object();
+		Object listener2 = new Object();
+
+		//Add listeners
+		Assert.assertTrue(set.add(listener1));
+		Assert.assertTrue(set.add(listener2));
+		Assert.assertFalse(set.add(listener1));
+		Assert.assertTrue(set.size() == 2 && set.snapshot().contains(listener1) && set.snapshot().contains(listener2));
+
+		//Remove listeners
+		Assert.assertTrue(set.remove(listener1));
+		Assert.assertFalse(set.remove(listener1));
+		Assert.assertTrue(set.size() == 1 && set.snapshot().contains(listener2));
+	}
+
+	@Test
+	public void reclaimedListenersAreRemoved() throws InterruptedException {
+		WeakListenerSet<Object> set = new WeakListenerSet<>();
+		Object kept = new Object();
+		set.add(kept);
+		for (int i = 0; i < 100; i++) {
+			set.add(new Object());
+		}
+
+		//Give the garbage collector a few chances to reclaim the unreferenced listeners
+		for (int i = 0; i < 50 && set.size() > 1; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		Assert.assertEquals(1, set.size());
+		Assert.assertTrue(set.snapshot().contains(kept));
+	}
+}
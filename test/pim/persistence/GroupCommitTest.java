@@ -0,0 +1,130 @@
+package pim.persistence;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for {@link GroupCommit}. This class tests the following methods:
+ * <ul>
+ * <li>{@link GroupCommit#writeAll(Connection, java.util.Collection, int, GroupCommit.EntityWriter)}</li>
+ * <li>{@link GroupCommit#writeAll(Connection, java.util.Collection, int, GroupCommit.EntityWriter,
+ * GroupCommit.GroupFinisher)}</li>
+ * </ul>
+ *
+ * @author Kasper
+ */
+public class GroupCommitTest {
+
+	@Test
+	public void writeAll() {
+		//Set up
+		List<String> calls = new ArrayList<>();
+		Connection connection = loggingConnection(calls);
+
+		//Entities are committed in groups, and a failed entity is only rolled back to its own savepoint
+		try {
+			GroupCommit.writeAll(connection, Arrays.asList(1, 2, 3, 4, 5), 2, entity -> {
+				calls.add("write " + entity);
+				if (entity == 3) throw new SQLException("Invalid product");
+			});
+			Assert.fail("The failed entity was not reported");
+		} catch (GroupCommit.PartialWriteException e) {
+			Assert.assertEquals("Invalid product", e.getMessage());
+			Assert.assertEquals(Collections.singletonList(3), e.getUnwritten());
+		}
+		Assert.assertEquals(Arrays.asList(
+				"setSavepoint", "write 1", "releaseSavepoint",
+				"setSavepoint", "write 2", "releaseSavepoint", "commit",
+				"setSavepoint", "write 3", "rollback",
+				"setSavepoint", "write 4", "releaseSavepoint", "commit",
+				"setSavepoint", "write 5", "releaseSavepoint", "commit"), calls);
+
+		//A group of one needs no savepoints
+		calls.clear();
+		try {
+			GroupCommit.writeAll(connection, Arrays.asList(1, 2), 1, entity -> calls.add("write " + entity));
+		} catch (SQLException e) {
+			Assert.fail(e.getMessage());
+		}
+		Assert.assertEquals(Arrays.asList("write 1", "commit", "write 2", "commit"), calls);
+
+		//A failed commit loses its group, and the entities after it are not written
+		int[] commits = new int[1];
+		Connection failingCommit = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+					if (method.getName().equals("commit") && ++commits[0] == 2) throw new SQLException("Connection lost");
+					return method.getName().equals("setSavepoint") ? connection.setSavepoint() : null;
+				});
+		try {
+			GroupCommit.writeAll(failingCommit, Arrays.asList(1, 2, 3, 4, 5), 2, entity -> {
+				calls.add("write " + entity);
+				if (entity == 1) throw new SQLException("Invalid product");
+			});
+			Assert.fail("The failed commit was not reported");
+		} catch (GroupCommit.PartialWriteException e) {
+			Assert.assertEquals("Connection lost", e.getMessage());
+			Assert.assertEquals("Invalid product", e.getCause().getSuppressed()[0].getMessage());
+			Assert.assertEquals(Arrays.asList(1, 3, 4, 5), e.getUnwritten());
+		}
+	}
+
+	@Test
+	public void writeAllFinished() {
+		//Set up
+		List<String> calls = new ArrayList<>();
+		Connection connection = loggingConnection(calls);
+
+		//Each group is finished once, with the entities that were written, just before it is committed
+		try {
+			GroupCommit.writeAll(connection, Arrays.asList(1, 2, 3, 4, 5), 2, entity -> {
+				calls.add("write " + entity);
+				if (entity == 3) throw new SQLException("Invalid product");
+			}, group -> calls.add("finish " + group));
+			Assert.fail("The failed entity was not reported");
+		} catch (GroupCommit.PartialWriteException e) {
+			Assert.assertEquals(Collections.singletonList(3), e.getUnwritten());
+		}
+		Assert.assertEquals(Arrays.asList(
+				"setSavepoint", "write 1", "releaseSavepoint",
+				"setSavepoint", "write 2", "releaseSavepoint", "finish [1, 2]", "commit",
+				"setSavepoint", "write 3", "rollback",
+				"setSavepoint", "write 4", "releaseSavepoint", "finish [4]", "commit",
+				"setSavepoint", "write 5", "releaseSavepoint", "finish [5]", "commit"), calls);
+
+		//A group that could not be finished is rolled back and lost, and the entities after it are not written
+		calls.clear();
+		try {
+			GroupCommit.writeAll(connection, Arrays.asList(1, 2, 3), 1, entity -> calls.add("write " + entity),
+					group -> {
+						if (group.contains(2)) throw new SQLException("Journal unavailable");
+					});
+			Assert.fail("The failed group was not reported");
+		} catch (GroupCommit.PartialWriteException e) {
+			Assert.assertEquals("Journal unavailable", e.getMessage());
+			Assert.assertEquals(Arrays.asList(2, 3), e.getUnwritten());
+		}
+		Assert.assertEquals(Arrays.asList("write 1", "commit", "write 2", "rollback"), calls);
+	}
+
+	/**
+	 * Create a connection that records the names of the transaction methods called on it.
+	 */
+	private static Connection loggingConnection(List<String> calls) {
+		Savepoint savepoint = (Savepoint) Proxy.newProxyInstance(Savepoint.class.getClassLoader(),
+				new Class<?>[]{Savepoint.class}, (proxy, method, args) -> null);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+				(proxy, method, args) -> {
+					calls.add(method.getName());
+					return method.getName().equals("setSavepoint") ? savepoint : null;
+				});
+	}
+}
@@ -0,0 +1,184 @@
+package shared;
+
+import cms.business.CMS;
+import cms.business.CMSFacade;
+import pim.business.PIMFacade;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Load test measuring the requests per second served by a {@link RequestExecutor} with a thousand concurrent clients.
+ * Every client sends a request, waits for the response and sends the next one. A request loads a page as the CMS does:
+ * the template and the page are loaded at the same time, and the products of the page afterwards. Every database
+ * operation takes a connection from a {@link ConnectionPool} and blocks for a fixed time, as if waiting for the
+ * database. The connections are fake, so no database is needed.
+ * <p>
+ * The executor is run with virtual threads, with a pool of platform threads limited in the same way, and with a pool
+ * of a platform thread for every client, which is what serving every client at once took before. The number of
+ * connections opened shows how the limit keeps the connection pool small.
+ * <p>
+ * Passing {@code live} as an argument loads the landing page from the real database instead. This is a plain program
+ * rather than a unit test, as it does not assert anything. Virtual threads need Java 21 or later, e.g.
+ * {@code java -Xmx1g shared.RequestLoadBenchmark}.
+ *
+ * @author Kasper
+ */
+public class RequestLoadBenchmark {
+
+	private static final int CLIENTS = 1000;
+	private static final long DATABASE_LATENCY_MILLIS = 5;
+	private static final long WARMUP_MILLIS = 2_000;
+	private static final long MEASURED_MILLIS = 10_000;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0 && args[0].equals("live")) {
+			try (RequestExecutor executor = new RequestExecutor()) {
+				CMS cms = CMSFacade.createCMS(PIMFacade.createPIM(executor), executor);
+				System.out.printf("Live, %s threads:%n", executor.isUsingVirtualThreads() ? "virtual" : "platform");
+				run(cms::getLandingPageAsync);
+			}
+			return;
+		}
+
+		int limit = ConnectionPool.MAX_CONNECTIONS;
+		try (RequestExecutor executor = new RequestExecutor(limit, true)) {
+			if (!executor.isUsingVirtualThreads()) {
+				System.out.println("Virtual threads are not supported by this runtime, skipping them");
+			} else {
+				simulate("Virtual threads, " + limit + " at once", executor);
+			}
+		}
+		try (RequestExecutor executor = new RequestExecutor(limit, false)) {
+			simulate("Platform threads, " + limit + " at once", executor);
+		}
+		try (RequestExecutor executor = new RequestExecutor(CLIENTS, false)) {
+			simulate("Platform threads, " + CLIENTS + " at once", executor);
+		}
+	}
+
+	/**
+	 * Run the load test with simulated database operations.
+	 */
+	private static void simulate(String name, RequestExecutor executor) throws InterruptedException {
+		AtomicInteger opened = new AtomicInteger();
+		ConnectionPool pool = new ConnectionPool(() -> {
+			opened.incrementAndGet();
+			return fakeConnection();
+		});
+		Async.IOSupplier<String> operation = () -> {
+			try {
+				pool.getConnection();
+				Thread.sleep(DATABASE_LATENCY_MILLIS);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return "";
+		};
+
+		System.out.printf("%s:%n", name);
+		run(() -> {
+			CompletableFuture<String> template = Async.supply(operation, executor);
+			CompletableFuture<String> page = Async.supply(operation, executor);
+			return CompletableFuture.allOf(template, page)
+					.thenCompose(v -> Async.supply(operation, executor));
+		});
+		System.out.printf("  connections opened: %d%n", opened.get());
+		pool.close();
+	}
+
+	/**
+	 * Let every client send requests until the time is up, and report the requests per second and the latencies after
+	 * the warmup.
+	 */
+	private static void run(Supplier<CompletableFuture<String>> request) throws InterruptedException {
+		long start = System.nanoTime();
+		long measureStart = start + WARMUP_MILLIS * 1_000_000;
+		long end = measureStart + MEASURED_MILLIS * 1_000_000;
+		AtomicLong completed = new AtomicLong();
+		AtomicLong failed = new AtomicLong();
+		long[][] latencies = new long[CLIENTS][];
+		int[] counts = new int[CLIENTS];
+		CountDownLatch done = new CountDownLatch(CLIENTS);
+
+		for (int i = 0; i < CLIENTS; i++) {
+			latencies[i] = new long[1024];
+			sendNext(i, request, measureStart, end, latencies, counts, completed, failed, done);
+		}
+		done.await();
+
+		long[] all = new long[(int) completed.get()];
+		int pos = 0;
+		for (int i = 0; i < CLIENTS; i++) {
+			System.arraycopy(latencies[i], 0, all, pos, counts[i]);
+			pos += counts[i];
+		}
+		Arrays.sort(all);
+		System.out.printf("  %.0f requests/s, %d failed%n", completed.get() / (MEASURED_MILLIS / 1e3), failed.get());
+		if (all.length > 0) {
+			System.out.printf("  latency: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n", percentile(all, 0.5),
+					percentile(all, 0.99), all[all.length - 1] / 1e6);
+		}
+	}
+
+	/**
+	 * Send the next request of a client, and the one after that once it completes. Each client only touches its own
+	 * latencies, and the next request is sent after the previous one has completed, so they need no locking.
+	 */
+	private static void sendNext(int client, Supplier<CompletableFuture<String>> request, long measureStart, long end,
+	                             long[][] latencies, int[] counts, AtomicLong completed, AtomicLong failed,
+	                             CountDownLatch done) {
+		long sent = System.nanoTime();
+		if (sent >= end) {
+			done.countDown();
+			return;
+		}
+
+		request.get().whenComplete((html, e) -> {
+			long received = System.nanoTime();
+			if (sent >= measureStart && received < end) {
+				if (e != null) {
+					failed.incrementAndGet();
+				} else {
+					if (counts[client] == latencies[client].length) {
+						latencies[client] = Arrays.copyOf(latencies[client], counts[client] * 2);
+					}
+					latencies[client][counts[client]++] = received - sent;
+					completed.incrementAndGet();
+				}
+			}
+			sendNext(client, request, measureStart, end, latencies, counts, completed, failed, done);
+		});
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) (p * (sorted.length - 1))] / 1e6;
+	}
+
+	/**
+	 * Create a connection that is always open and does nothing.
+	 */
+	private static Connection fakeConnection() {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "isClosed":
+							return false;
+						case "getAutoCommit":
+							return true;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+					}
+				});
+	}
+}